@@ -38,8 +38,10 @@ public class BlobImpl implements Blob {
      */
     private static final byte[] EMPTY_BLOB = new byte[0];
 
-    /** The underlying <code>BlobBuffer</code>. */
-    private final BlobBuffer blobBuffer;
+    /** The underlying <code>BlobBuffer</code>, once the value is loaded. */
+    private BlobBuffer blobBuffer;
+    /** The text pointer of a value not loaded yet, see {@link LobLocator}. */
+    private LobLocator locator;
 
     /**
      * Constructs a new empty <code>Blob</code> instance.
@@ -65,35 +67,67 @@ public class BlobImpl implements Blob {
         blobBuffer.setBuffer(bytes, false);
     }
 
+    /**
+     * Constructs a new <code>Blob</code> instance whose data is read from
+     * the server when first needed.
+     *
+     * @param locator the text pointer of the value
+     */
+    BlobImpl(LobLocator locator) {
+        this.locator = locator;
+    }
+
+    /**
+     * Retrieves the underlying <code>BlobBuffer</code>, reading the whole
+     * value from the server first if necessary.
+     *
+     * @return the underlying <code>BlobBuffer</code>
+     * @throws SQLException if the value cannot be read
+     */
+    private BlobBuffer buffer() throws SQLException {
+        if (locator != null) {
+            blobBuffer = locator.getBlob().blobBuffer;
+            locator = null;
+        }
+        return blobBuffer;
+    }
+
     //
     // ------ java.sql.Blob interface methods from here -------
     //
 
     public InputStream getBinaryStream() throws SQLException {
-        return blobBuffer.getBinaryStream(false);
+        return buffer().getBinaryStream(false);
     }
 
     public byte[] getBytes(long pos, int length) throws SQLException {
+        if (locator != null) {
+            // Only transfer the requested range
+            return locator.getBytes(pos, length);
+        }
         return blobBuffer.getBytes(pos, length);
     }
 
     public long length() throws SQLException {
+        if (locator != null) {
+            return locator.getLength();
+        }
         return blobBuffer.getLength();
     }
 
     public long position(byte[] pattern, long start) throws SQLException {
-        return blobBuffer.position(pattern, start);
+        return buffer().position(pattern, start);
     }
 
     public long position(Blob pattern, long start) throws SQLException {
         if (pattern == null) {
             throw new SQLException(Messages.get("error.blob.badpattern"), "HY009");
         }
-        return blobBuffer.position(pattern.getBytes(1, (int) pattern.length()), start);
+        return buffer().position(pattern.getBytes(1, (int) pattern.length()), start);
     }
 
     public OutputStream setBinaryStream(final long pos) throws SQLException {
-        return blobBuffer.setBinaryStream(pos, false);
+        return buffer().setBinaryStream(pos, false);
     }
 
     public int setBytes(long pos, byte[] bytes) throws SQLException {
@@ -111,11 +145,11 @@ public class BlobImpl implements Blob {
         // Force BlobBuffer to take a copy of the byte array
         // In many cases this is wasteful but the user may
         // reuse the byte buffer corrupting the original set
-        return blobBuffer.setBytes(pos, bytes, offset, len, true);
+        return buffer().setBytes(pos, bytes, offset, len, true);
     }
 
     public void truncate(long len) throws SQLException {
-        blobBuffer.truncate(len);
+        buffer().truncate(len);
     }
 
     /////// JDBC4 demarcation, do NOT put any JDBC3 code below this line ///////
@@ -19,12 +19,16 @@ package net.sourceforge.jtds.jdbc;
 
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * A memory cached scrollable/updateable result set.
@@ -53,6 +57,15 @@ import java.util.HashSet;
  *   <li>Named forward read only declared cursors can have a larger fetch size
  *     specified allowing a cursor alternative to the default direct select
  *     method.
+ *   <li>If the <code>deferRowUpdates</code> connection property is set,
+ *     changes to insensitive result sets are queued and sent in batches. On
+ *     SQL Server each run of changes with the same statement shape is sent
+ *     as one batch of parameterized statements, on Sybase the changes are
+ *     packed into language batches. The queue is sent when the result set
+ *     moves anywhere but to the next row, moves past the last row, holds
+ *     <code>batchSize</code> changes, is refreshed or closed, when the
+ *     connection commits or sets a savepoint, or when
+ *     {@link #flushRowUpdates()} is called. A rollback discards it.
  * </ol>
  *
  * @author Mike Hutchinson
@@ -95,6 +108,15 @@ public class CachedResultSet extends JtdsResultSet {
     /** The parent connection object */
     protected JtdsConnection connection;
 
+    /** Row change types, also used in the statement shape keys. */
+    private static final int UPDATE = 0, DELETE = 1, INSERT = 2;
+    /** Maximum number of queued row changes if the batch size is unlimited. */
+    private static final int MAX_DEFERRED_ROWS = 1000;
+    /** Queued row changes or <code>null</code> if changes are executed immediately. */
+    private ArrayList deferredRows;
+    /** Statement shapes of the queued row changes, keyed by change type and columns. */
+    private HashMap rowShapes;
+
     /**
      * Constructs a new cached result set.
      * <p/>
@@ -136,6 +158,17 @@ public class CachedResultSet extends JtdsResultSet {
         // Now create the specified type of cursor
         //
         cursorCreate();
+        //
+        // Sensitive result sets refresh each row from the server and named
+        // cursors use positioned updates, so neither can defer changes.
+        //
+        if (connection.getDeferRowUpdates()
+                && concurrency != ResultSet.CONCUR_READ_ONLY
+                && resultSetType < ResultSet.TYPE_SCROLL_SENSITIVE
+                && cursorName == null) {
+            deferredRows = new ArrayList();
+            rowShapes = new HashMap();
+        }
     }
 
     /**
@@ -167,7 +200,7 @@ public class CachedResultSet extends JtdsResultSet {
             columns[i] = ci;
         }
         columnCount   = getColumnCount(columns);
-        rowData       = new ArrayList(INITIAL_ROW_COUNT);
+        rowData       = new RowBuffer(columns.length, INITIAL_ROW_COUNT);
         rowsInResult  = 0;
         pos           = POS_BEFORE_FIRST;
         tempResultSet = true;
@@ -215,7 +248,7 @@ public class CachedResultSet extends JtdsResultSet {
 
         columns       = rs.getColumns();
         columnCount   = getColumnCount(columns);
-        rowData       = new ArrayList(INITIAL_ROW_COUNT);
+        rowData       = new RowBuffer(columns.length, INITIAL_ROW_COUNT);
         rowsInResult  = 0;
         pos           = POS_BEFORE_FIRST;
         tempResultSet = true;
@@ -229,7 +262,7 @@ public class CachedResultSet extends JtdsResultSet {
         //
         if (load) {
             while (rs.next()) {
-                rowData.add(copyRow(rs.getCurrentRow()));
+                rowData.add(rs.getCurrentRow());
             }
             rowsInResult  = rowData.size();
         }
@@ -248,18 +281,63 @@ public class CachedResultSet extends JtdsResultSet {
         super(statement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, null);
         this.columns       = columns;
         columnCount   = getColumnCount(columns);
-        rowData       = new ArrayList(1);
+        rowData       = new RowBuffer(columns.length, 1);
         rowsInResult  = 1;
         pos           = POS_BEFORE_FIRST;
         tempResultSet = true;
         cursorName    = null;
-        rowData.add(copyRow(data));
+        rowData.add(data);
+        cursorTds     = null;
+        updateTds     = null;
+        procName      = null;
+        procedureParams = null;
+    }
+
+    /**
+     * Creates a read only cached result set from a copy of cached rows.
+     *
+     * @param statement   the parent statement object
+     * @param columns     the column descriptor array, shared with the cache
+     * @param columnCount the number of visible columns
+     * @param rows        the row data as <code>Object[]</code> arrays
+     * @throws SQLException if an error occurs
+     */
+    CachedResultSet(JtdsStatement statement, ColInfo[] columns,
+            int columnCount, List rows) throws SQLException {
+        super(statement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, null);
+        this.columns       = columns;
+        this.columnCount   = columnCount;
+        rowData       = new RowBuffer(columns.length, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            rowData.add((Object[]) rows.get(i));
+        }
+        rowsInResult  = rows.size();
+        pos           = POS_BEFORE_FIRST;
+        tempResultSet = true;
+        cursorName    = null;
         cursorTds     = null;
         updateTds     = null;
         procName      = null;
         procedureParams = null;
     }
 
+    /**
+     * Retrieves copies of all rows of the result set, excluding deleted rows.
+     * Used to store metadata results in the cache before they are read.
+     *
+     * @return the rows as a list of <code>Object[]</code> arrays
+     */
+    List getRows() {
+        ArrayList rows = new ArrayList(rowData.size());
+        for (int i = 0; i < rowData.size(); i++) {
+            Object[] row = rowData.get(i);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
    /**
     * <p> <b>Warning! Ensure the provided data matches the column layout of this
     * {@link ResultSet}. All kind of weird behavior and errors could be expected
@@ -271,7 +349,7 @@ public class CachedResultSet extends JtdsResultSet {
    void addRow( Object data[] )
    {
       rowsInResult ++;
-      rowData.add( copyRow( data ) );
+      rowData.add( data );
    }
 
     /**
@@ -438,7 +516,7 @@ public class CachedResultSet extends JtdsResultSet {
                 }
                 columns = cursorTds.getColumns();
                 columnCount = getColumnCount(columns);
-                rowData = new ArrayList(INITIAL_ROW_COUNT);
+                rowData = new RowBuffer(columns.length, INITIAL_ROW_COUNT);
                 //
                 // Load result set into buffer
                 //
@@ -475,7 +553,7 @@ public class CachedResultSet extends JtdsResultSet {
                 }
                 columns = cursorTds.getColumns();
                 columnCount = getColumnCount(columns);
-                rowData = new ArrayList(INITIAL_ROW_COUNT);
+                rowData = new RowBuffer(columns.length, INITIAL_ROW_COUNT);
                 //
                 // Load result set into buffer
                 //
@@ -636,6 +714,14 @@ public class CachedResultSet extends JtdsResultSet {
             throws SQLException {
         rowUpdated = false;
         //
+        // Send queued changes unless moving forward one row
+        //
+        if (deferredRows != null && !deferredRows.isEmpty()
+                && (rowNum != pos + 1 || rowNum > rowsInResult
+                    || deferredRows.size() >= getDeferredRowLimit())) {
+            flushRowUpdates();
+        }
+        //
         if (cursorName != null) {
             //
             // Using a conventional forward only server cursor
@@ -697,8 +783,11 @@ public class CachedResultSet extends JtdsResultSet {
             return false;
         }
         pos = rowNum;
-        currentRow = (Object[])rowData.get(rowNum-1);
+        currentRow = rowData.get(rowNum-1, rowView);
         rowDeleted = currentRow == null;
+        if (!rowDeleted) {
+            rowView = currentRow;
+        }
 
         if (resultSetType >= ResultSet.TYPE_SCROLL_SENSITIVE &&
             currentRow != null) {
@@ -856,10 +945,7 @@ public class CachedResultSet extends JtdsResultSet {
             int count = 0;
             for (int i = 0; i < columns.length; i++) {
                 if (currentRow[i] == null) {
-                    if (!"text".equals(columns[i].sqlType)
-                            && !"ntext".equals(columns[i].sqlType)
-                            && !"image".equals(columns[i].sqlType)
-                            && columns[i].tableName != null) {
+                    if (isSearchable(columns[i])) {
                         if (count > 0) {
                             sql.append(" AND ");
                         }
@@ -882,10 +968,7 @@ public class CachedResultSet extends JtdsResultSet {
                     } else {
                         // Include all available 'searchable' columns in updates/deletes to protect
                         // against lost updates.
-                        if (!"text".equals(columns[i].sqlType)
-                                && !"ntext".equals(columns[i].sqlType)
-                                && !"image".equals(columns[i].sqlType)
-                                && columns[i].tableName != null) {
+                        if (isSearchable(columns[i])) {
                             if (count > 0) {
                                 sql.append(" AND ");
                             }
@@ -902,6 +985,396 @@ public class CachedResultSet extends JtdsResultSet {
         return (ParamInfo[]) params.toArray(new ParamInfo[params.size()]);
     }
 
+    /**
+     * Checks whether a column can be used in the WHERE clause of an UPDATE or
+     * DELETE statement.
+     *
+     * @param ci the column descriptor
+     * @return <code>true</code> if the column belongs to the updated table
+     *         and is not a TEXT, NTEXT or IMAGE column
+     */
+    private static boolean isSearchable(ColInfo ci) {
+        return !"text".equals(ci.sqlType)
+                && !"ntext".equals(ci.sqlType)
+                && !"image".equals(ci.sqlType)
+                && ci.tableName != null;
+    }
+
+    /**
+     * Builds an UPDATE statement for the current row from the updated
+     * column values.
+     *
+     * @param sql the buffer to build the statement in
+     * @return the parameters of the statement
+     * @throws SQLException if an error occurs
+     */
+    private ParamInfo[] buildUpdate(StringBuilder sql) throws SQLException {
+        ArrayList params = new ArrayList();
+        sql.append("UPDATE ");
+        sql.append(tableName);
+        //
+        // OK now create assign new values
+        //
+        sql.append(" SET ");
+        int count = 0;
+        for (int i = 0; i < columnCount; i++) {
+            if (updateRow[i] != null) {
+                if (count > 0) {
+                    sql.append(", ");
+                }
+                sql.append(columns[i].realName);
+                sql.append("=?");
+                updateRow[i].markerPos = sql.length()-1;
+                params.add(updateRow[i]);
+                count++;
+            }
+        }
+        //
+        // Now construct where clause
+        //
+        return buildWhereClause(sql, params, false);
+    }
+
+    /**
+     * Builds a DELETE statement for the current row.
+     *
+     * @param sql the buffer to build the statement in
+     * @return the parameters of the statement
+     * @throws SQLException if an error occurs
+     */
+    private ParamInfo[] buildDelete(StringBuilder sql) throws SQLException {
+        ArrayList params = new ArrayList();
+        sql.append("DELETE FROM ");
+        sql.append(tableName);
+        //
+        // Create the WHERE clause
+        //
+        return buildWhereClause(sql, params, false);
+    }
+
+    /**
+     * Builds an INSERT statement from the insert row values.
+     *
+     * @param sql the buffer to build the statement in
+     * @return the parameters of the statement
+     */
+    private ParamInfo[] buildInsert(StringBuilder sql) {
+        ArrayList params = new ArrayList();
+        sql.append("INSERT INTO ");
+        sql.append(tableName);
+        int sqlLen = sql.length();
+        //
+        // Create column list
+        //
+        sql.append(" (");
+        int count = 0;
+        for (int i = 0; i < columnCount; i++) {
+            if (insertRow[i] != null) {
+                if (count > 0) {
+                    sql.append(", ");
+                }
+                sql.append(columns[i].realName);
+                count++;
+            }
+        }
+        //
+        // Create new values list
+        //
+        sql.append(") VALUES(");
+        count = 0;
+        for (int i = 0; i < columnCount; i++) {
+            if (insertRow[i] != null) {
+                if (count > 0) {
+                    sql.append(", ");
+                }
+                sql.append('?');
+                insertRow[i].markerPos = sql.length()-1;
+                params.add(insertRow[i]);
+                count++;
+            }
+        }
+        sql.append(')');
+        if (count == 0) {
+            // Empty insert
+            sql.setLength(sqlLen);
+            if (isSybase) {
+                sql.append(" VALUES()");
+            } else {
+                sql.append(" DEFAULT VALUES");
+            }
+        }
+        return (ParamInfo[]) params.toArray(new ParamInfo[params.size()]);
+    }
+
+    /**
+     * Executes an UPDATE, DELETE or INSERT statement.
+     *
+     * @param sql        the SQL statement
+     * @param parameters the statement parameters
+     * @return the update count
+     * @throws SQLException if an error occurs
+     */
+    private int executeRowChange(String sql, ParamInfo[] parameters)
+            throws SQLException {
+        updateTds.executeSQL(sql, null, parameters, false, 0,
+                statement.getMaxRows(), statement.getMaxFieldSize(), true);
+        int updateCount = 0;
+        while (!updateTds.isEndOfResponse()) {
+            if (!updateTds.getMoreResults()) {
+                if (updateTds.isUpdateCount()) {
+                    updateCount = updateTds.getUpdateCount();
+                }
+            }
+        }
+        updateTds.clearResponseQueue();
+        statement.getMessages().checkErrors();
+        return updateCount;
+    }
+
+    /**
+     * Queues a change to the current row or an insert of the insert row.
+     * <p/>
+     * The SQL statement is only built once for each shape, that is for each
+     * combination of change type, changed columns and (for the WHERE clause)
+     * null columns; the queued change just holds a copy of the parameters.
+     *
+     * @param type the change type, <code>UPDATE</code>, <code>DELETE</code>
+     *             or <code>INSERT</code>
+     * @throws SQLException if an error occurs
+     */
+    private void deferRowChange(int type) throws SQLException {
+        ParamInfo[] values = (type == UPDATE) ? updateRow
+                : (type == INSERT) ? insertRow : null;
+        int width = columns.length;
+        BitSet key = new BitSet(2 * width + 3);
+        key.set(2 * width + type);
+        for (int i = 0; i < width; i++) {
+            if (values != null && i < values.length && values[i] != null) {
+                key.set(i);
+            }
+            if (type != INSERT && currentRow[i] == null) {
+                key.set(width + i);
+            }
+        }
+        RowShape shape = (RowShape) rowShapes.get(key);
+        if (shape == null) {
+            StringBuilder sql = new StringBuilder(128);
+            ParamInfo[] params = (type == UPDATE) ? buildUpdate(sql)
+                    : (type == DELETE) ? buildDelete(sql) : buildInsert(sql);
+            shape = new RowShape(type, sql.toString(), params);
+            rowShapes.put(key, shape);
+        }
+        //
+        // Copy the parameters in the same order as the build methods, the
+        // update and insert rows are reused for the next change
+        //
+        ParamInfo[] params = new ParamInfo[shape.markers.length];
+        int count = 0;
+        if (values != null) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    ParamInfo pi = (ParamInfo) values[i].clone();
+                    pi.markerPos = shape.markers[count];
+                    params[count++] = pi;
+                }
+            }
+        }
+        if (type != INSERT) {
+            for (int i = 0; i < width; i++) {
+                if (currentRow[i] != null && isSearchable(columns[i])) {
+                    params[count] = buildParameter(shape.markers[count], columns[i],
+                            currentRow[i], connection.getUseUnicode());
+                    count++;
+                }
+            }
+        }
+        if (deferredRows.isEmpty()) {
+            // Have the connection send the changes before a commit
+            connection.addDeferredRowUpdates(this);
+        }
+        deferredRows.add(new DeferredRow(shape, params));
+    }
+
+    /**
+     * Discards the queued row changes, as the transaction they belong to has
+     * been rolled back.
+     */
+    void discardRowUpdates() {
+        if (deferredRows != null) {
+            deferredRows.clear();
+        }
+        connection.removeDeferredRowUpdates(this);
+    }
+
+    /**
+     * Retrieves the number of queued row changes that causes the queue to be
+     * sent when moving to the next row.
+     */
+    private int getDeferredRowLimit() {
+        int batchSize = connection.getBatchSize();
+        return batchSize > 0 ? batchSize : MAX_DEFERRED_ROWS;
+    }
+
+    /**
+     * Sends the queued row changes to the server.
+     * <p/>
+     * Only has an effect if the <code>deferRowUpdates</code> connection
+     * property is set. On SQL Server each run of changes with the same
+     * statement shape is sent as one batch of parameterized statements, on
+     * Sybase the changes are packed into language batches. Requests hold at
+     * most <code>batchSize</code> statements.
+     *
+     * @throws BatchUpdateException if the server reports an error or a change
+     *         fails the optimistic concurrency check because the row has been
+     *         changed or deleted by another user; the update counts of the
+     *         changes sent are included
+     * @throws SQLException if a database access error occurs
+     */
+    public void flushRowUpdates() throws SQLException {
+        if (deferredRows == null || deferredRows.isEmpty()) {
+            return;
+        }
+        ArrayList rows = deferredRows;
+        deferredRows = new ArrayList();
+        connection.removeDeferredRowUpdates(this);
+
+        int executeSize = connection.getBatchSize();
+        if (executeSize == 0) {
+            executeSize = Integer.MAX_VALUE;
+        }
+        ArrayList counts = new ArrayList(rows.size());
+        SQLException sqlEx = isSybase
+                ? flushSybaseRowUpdates(rows, executeSize, counts)
+                : flushMSRowUpdates(rows, executeSize, counts);
+
+        int updateCounts[] = new int[counts.size()];
+        for (int i = 0; i < updateCounts.length; i++) {
+            updateCounts[i] = ((Integer) counts.get(i)).intValue();
+        }
+        if (sqlEx != null) {
+            BatchUpdateException batchEx =
+                    new BatchUpdateException(sqlEx.getMessage(),
+                                             sqlEx.getSQLState(),
+                                             sqlEx.getErrorCode(),
+                                             updateCounts);
+            // Chain any other exceptions
+            batchEx.setNextException(sqlEx.getNextException());
+            throw batchEx;
+        }
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                // Possibly row was changed on database by another user?
+                int type = ((DeferredRow) rows.get(i)).shape.type;
+                String msg = (type == UPDATE) ? "error.resultset.updatefail"
+                        : (type == DELETE) ? "error.resultset.deletefail"
+                        : "error.resultset.insertfail";
+                throw new BatchUpdateException(Messages.get(msg), "24000", updateCounts);
+            }
+        }
+    }
+
+    /**
+     * Sends queued row changes to a SQL Server as batches of parameterized
+     * statements, one for each run of changes with the same shape.
+     *
+     * @param rows        the queued changes
+     * @param executeSize the maximum number of statements in one request
+     * @param counts      the returned update counts
+     * @return chained exceptions linked to a <code>SQLException</code>
+     * @throws SQLException if a serious error occurs during execution
+     */
+    private SQLException flushMSRowUpdates(ArrayList rows, int executeSize, ArrayList counts)
+            throws SQLException {
+        SQLException sqlEx = null;
+        for (int i = 0; i < rows.size();) {
+            DeferredRow row = (DeferredRow) rows.get(i);
+            ++i;
+            // Execute batch now if max size reached, end of batch or the
+            // next change has a different shape
+            boolean executeNow = i == rows.size()
+                    || i % executeSize == 0
+                    || ((DeferredRow) rows.get(i)).shape != row.shape;
+
+            updateTds.startBatch();
+            updateTds.executeSQL(row.shape.sql, null, row.params, false, 0,
+                    -1, -1, executeNow);
+
+            // If the batch has been sent, process the results
+            if (executeNow) {
+                sqlEx = updateTds.getBatchCounts(counts, sqlEx);
+
+                // If a serious error then we stop execution now as count
+                // is too small.
+                if (sqlEx != null && counts.size() != i) {
+                    break;
+                }
+            }
+        }
+        return sqlEx;
+    }
+
+    /**
+     * Sends queued row changes to a Sybase server packed into language
+     * batches, in the same way as <code>JtdsPreparedStatement</code> sends
+     * a batch.
+     *
+     * @param rows        the queued changes
+     * @param executeSize the maximum number of statements in one request
+     * @param counts      the returned update counts
+     * @return chained exceptions linked to a <code>SQLException</code>
+     * @throws SQLException if a serious error occurs during execution
+     */
+    private SQLException flushSybaseRowUpdates(ArrayList rows, int executeSize, ArrayList counts)
+            throws SQLException {
+        // Be conservative the actual maximums are 256 for older servers and 2048.
+        int maxParams = (connection.getDatabaseMajorVersion() < 12 ||
+                (connection.getDatabaseMajorVersion() == 12 && connection.getDatabaseMinorVersion() < 50)) ?
+                200 : 1000;
+        StringBuilder sqlBuf = new StringBuilder(rows.size() * 64);
+        ArrayList paramList = new ArrayList();
+        SQLException sqlEx = null;
+        int batchCount = 0;
+        for (int i = 0; i < rows.size();) {
+            DeferredRow row = (DeferredRow) rows.get(i);
+            ++i;
+            ++batchCount;
+
+            int offset = sqlBuf.length();
+            sqlBuf.append(row.shape.sql).append(' ');
+            for (int n = 0; n < row.params.length; n++) {
+                ParamInfo p = row.params[n];
+                // Allow for the position of the '?' marker in the buffer
+                p.markerPos += offset;
+                paramList.add(p);
+            }
+            // Execute batch now if max size reached, end of batch or the
+            // next change would need too many parameters
+            boolean executeNow = i == rows.size()
+                    || batchCount == executeSize
+                    || paramList.size()
+                       + ((DeferredRow) rows.get(i)).params.length > maxParams;
+
+            if (executeNow) {
+                ParamInfo args[];
+                args = (ParamInfo[]) paramList.toArray(new ParamInfo[paramList.size()]);
+                updateTds.executeSQL(sqlBuf.toString(), null, args, false, 0,
+                        -1, -1, true);
+                sqlBuf.setLength(0);
+                paramList.clear();
+                batchCount = 0;
+                // If the batch has been sent, process the results
+                sqlEx = updateTds.getBatchCounts(counts, sqlEx);
+
+                // If a serious error or a server error then we stop
+                // execution now as count is too small.
+                if (sqlEx != null && counts.size() != i) {
+                    break;
+                }
+            }
+        }
+        return sqlEx;
+    }
+
     /**
      * Refreshes a result set row from keyed tables.
      * <p/>
@@ -963,8 +1436,9 @@ public class CachedResultSet extends JtdsResultSet {
         }
         tds.clearResponseQueue();
         statement.getMessages().checkErrors();
+        // The buffer holds a copy of the row so store the refreshed values
+        rowData.set(pos-1, currentRow);
         if (currentRow == null) {
-            rowData.set(pos-1, null);
             rowDeleted = true;
         }
     }
@@ -1027,7 +1501,11 @@ public class CachedResultSet extends JtdsResultSet {
      public void close() throws SQLException {
          if (!closed) {
              try {
-                 cursorClose();
+                 try {
+                     flushRowUpdates();
+                 } finally {
+                     cursorClose();
+                 }
              } finally {
                  closed    = true;
                  statement = null;
@@ -1047,36 +1525,19 @@ public class CachedResultSet extends JtdsResultSet {
              throw new SQLException(Messages.get("error.resultset.insrow"), "24000");
          }
 
-         //
-         // Construct an SQL DELETE statement
-         //
-         StringBuilder sql = new StringBuilder(128);
-         ArrayList params = new ArrayList();
-         sql.append("DELETE FROM ");
-         sql.append(tableName);
-         //
-         // Create the WHERE clause
-         //
-         ParamInfo parameters[] = buildWhereClause(sql, params, false);
-         //
-         // Execute the delete statement
-         //
-         updateTds.executeSQL(sql.toString(), null, parameters, false, 0,
-                 statement.getMaxRows(), statement.getMaxFieldSize(), true);
-         int updateCount = 0;
-         while (!updateTds.isEndOfResponse()) {
-             if (!updateTds.getMoreResults()) {
-                 if (updateTds.isUpdateCount()) {
-                     updateCount = updateTds.getUpdateCount();
-                 }
+         if (deferredRows != null) {
+             deferRowChange(DELETE);
+         } else {
+             //
+             // Construct and execute an SQL DELETE statement
+             //
+             StringBuilder sql = new StringBuilder(128);
+             ParamInfo parameters[] = buildDelete(sql);
+             if (executeRowChange(sql.toString(), parameters) == 0) {
+                 // No delete. Possibly row was changed on database by another user?
+                 throw new SQLException(Messages.get("error.resultset.deletefail"), "24000");
              }
          }
-         updateTds.clearResponseQueue();
-         statement.getMessages().checkErrors();
-         if (updateCount == 0) {
-             // No delete. Possibly row was changed on database by another user?
-             throw new SQLException(Messages.get("error.resultset.deletefail"), "24000");
-         }
          rowDeleted = true;
          currentRow = null;
          if (resultSetType != ResultSet.TYPE_FORWARD_ONLY) {
@@ -1095,75 +1556,20 @@ public class CachedResultSet extends JtdsResultSet {
          }
 
          if (!tempResultSet) {
-             //
-             // Construct an SQL INSERT statement
-             //
-             StringBuilder sql = new StringBuilder(128);
-             ArrayList params = new ArrayList();
-             sql.append("INSERT INTO ");
-             sql.append(tableName);
-             int sqlLen = sql.length();
-             //
-             // Create column list
-             //
-             sql.append(" (");
-             int count = 0;
-             for (int i = 0; i < columnCount; i++) {
-                 if (insertRow[i] != null) {
-                     if (count > 0) {
-                         sql.append(", ");
-                     }
-                     sql.append(columns[i].realName);
-                     count++;
-                 }
-             }
-             //
-             // Create new values list
-             //
-             sql.append(") VALUES(");
-             count = 0;
-             for (int i = 0; i < columnCount; i++) {
-                 if (insertRow[i] != null) {
-                     if (count > 0) {
-                         sql.append(", ");
-                     }
-                     sql.append('?');
-                     insertRow[i].markerPos = sql.length()-1;
-                     params.add(insertRow[i]);
-                     count++;
-                 }
-             }
-             sql.append(')');
-             if (count == 0) {
-                 // Empty insert
-                 sql.setLength(sqlLen);
-                 if (isSybase) {
-                     sql.append(" VALUES()");
-                 } else {
-                     sql.append(" DEFAULT VALUES");
+             if (deferredRows != null) {
+                 deferRowChange(INSERT);
+             } else {
+                 //
+                 // Construct and execute an SQL INSERT statement
+                 //
+                 StringBuilder sql = new StringBuilder(128);
+                 ParamInfo parameters[] = buildInsert(sql);
+                 if (executeRowChange(sql.toString(), parameters) < 1) {
+                     // No Insert. Probably will not get here as duplicate key etc
+                     // will have already been reported as an exception.
+                     throw new SQLException(Messages.get("error.resultset.insertfail"), "24000");
                  }
              }
-             ParamInfo parameters[] = (ParamInfo[]) params.toArray(new ParamInfo[params.size()]);
-             //
-             // execute the insert statement
-             //
-             updateTds.executeSQL(sql.toString(), null, parameters, false, 0,
-                     statement.getMaxRows(), statement.getMaxFieldSize(), true);
-             int updateCount = 0;
-             while (!updateTds.isEndOfResponse()) {
-                 if (!updateTds.getMoreResults()) {
-                     if (updateTds.isUpdateCount()) {
-                         updateCount = updateTds.getUpdateCount();
-                     }
-                 }
-             }
-             updateTds.clearResponseQueue();
-             statement.getMessages().checkErrors();
-             if (updateCount < 1) {
-                 // No Insert. Probably will not get here as duplicate key etc
-                 // will have already been reported as an exception.
-                 throw new SQLException(Messages.get("error.resultset.insertfail"), "24000");
-             }
          }
          //
          if (resultSetType >= ResultSet.TYPE_SCROLL_SENSITIVE
@@ -1215,6 +1621,10 @@ public class CachedResultSet extends JtdsResultSet {
              throw new SQLException(Messages.get("error.resultset.insrow"), "24000");
          }
 
+         //
+         // Send any queued changes, the refreshed row must include them
+         //
+         flushRowUpdates();
          //
          // If row is being updated discard updates now
          //
@@ -1262,27 +1672,9 @@ public class CachedResultSet extends JtdsResultSet {
              return;
          }
          boolean keysChanged = false;
-         //
-         // Construct an SQL UPDATE statement
-         //
-         StringBuilder sql = new StringBuilder(128);
-         ArrayList params = new ArrayList();
-         sql.append("UPDATE ");
-         sql.append(tableName);
-         //
-         // OK now create assign new values
-         //
-         sql.append(" SET ");
          int count = 0;
          for (int i = 0; i < columnCount; i++) {
              if (updateRow[i] != null) {
-                 if (count > 0) {
-                     sql.append(", ");
-                 }
-                 sql.append(columns[i].realName);
-                 sql.append("=?");
-                 updateRow[i].markerPos = sql.length()-1;
-                 params.add(updateRow[i]);
                  count++;
                  if (columns[i].isKey) {
                      // Key is changing so in memory row will need to be deleted
@@ -1296,30 +1688,19 @@ public class CachedResultSet extends JtdsResultSet {
              // so bail out now.
              return;
          }
-         //
-         // Now construct where clause
-         //
-         ParamInfo parameters[] = buildWhereClause(sql, params, false);
-         //
-         // Now execute update
-         //
-         updateTds.executeSQL(sql.toString(), null, parameters, false, 0,
-                 statement.getMaxRows(), statement.getMaxFieldSize(), true);
-         int updateCount = 0;
-         while (!updateTds.isEndOfResponse()) {
-             if (!updateTds.getMoreResults()) {
-                 if (updateTds.isUpdateCount()) {
-                     updateCount = updateTds.getUpdateCount();
-                 }
+         if (deferredRows != null) {
+             deferRowChange(UPDATE);
+         } else {
+             //
+             // Construct and execute an SQL UPDATE statement
+             //
+             StringBuilder sql = new StringBuilder(128);
+             ParamInfo parameters[] = buildUpdate(sql);
+             if (executeRowChange(sql.toString(), parameters) == 0) {
+                 // No update. Possibly row was changed on database by another user?
+                 throw new SQLException(Messages.get("error.resultset.updatefail"), "24000");
              }
          }
-         updateTds.clearResponseQueue();
-         statement.getMessages().checkErrors();
-
-         if (updateCount == 0) {
-             // No update. Possibly row was changed on database by another user?
-             throw new SQLException(Messages.get("error.resultset.updatefail"), "24000");
-         }
          //
          // Update local copy of data
          //
@@ -1358,6 +1739,10 @@ public class CachedResultSet extends JtdsResultSet {
              currentRow = null;
              rowDeleted = true;
          } else {
+             if (rowData != null && resultSetType != ResultSet.TYPE_SCROLL_INSENSITIVE) {
+                 // The buffer holds a copy of the row so store the new values
+                 rowData.set(pos-1, currentRow);
+             }
              rowUpdated = true;
          }
          //
@@ -1449,4 +1834,36 @@ public class CachedResultSet extends JtdsResultSet {
         }
         throw new SQLException(Messages.get("error.resultset.noposupdate"), "24000");
     }
+
+    /**
+     * The SQL statement for one shape of row change, with the positions of
+     * its parameter markers.
+     */
+    private static class RowShape {
+        final int type;
+        final String sql;
+        final int[] markers;
+
+        RowShape(int type, String sql, ParamInfo[] params) {
+            this.type = type;
+            this.sql = sql;
+            markers = new int[params.length];
+            for (int i = 0; i < params.length; i++) {
+                markers[i] = params[i].markerPos;
+            }
+        }
+    }
+
+    /**
+     * A queued row change.
+     */
+    private static class DeferredRow {
+        final RowShape shape;
+        final ParamInfo[] params;
+
+        DeferredRow(RowShape shape, ParamInfo[] params) {
+            this.shape = shape;
+            this.params = params;
+        }
+    }
 }
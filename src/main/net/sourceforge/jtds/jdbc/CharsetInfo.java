@@ -17,6 +17,9 @@
 //
 package net.sourceforge.jtds.jdbc;
 
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Properties;
@@ -52,11 +55,21 @@ public final class CharsetInfo {
     private static final HashMap charsets = new HashMap();
 
     /** Locale id to Java charset map. */
-    private static final HashMap lcidToCharsetMap = new HashMap();
+    private static final IntMap lcidToCharsetMap = new IntMap(128);
 
     /** Sort order to Java charset map. */
     private static final CharsetInfo[] sortToCharsetMap = new CharsetInfo[256];
 
+    /**
+     * Collations seen so far by any connection, indexed by the hash of their
+     * 5 bytes packed into a <code>long</code>. The table is copied on every
+     * insertion, so it can be read without locking.
+     */
+    private static volatile Collation[] collations = new Collation[64];
+
+    /** Number of entries in {@link #collations}. */
+    private static int collationCount;
+
     static {
         // Load character set mappings
         InputStream stream = null;
@@ -114,7 +127,7 @@ public final class CharsetInfo {
                     }
 
                     if (key.startsWith("LCID_")) {
-                        Integer lcid = new Integer(key.substring(5));
+                        int lcid = Integer.parseInt(key.substring(5));
                         lcidToCharsetMap.put(lcid, value);
                     } else if (key.startsWith("SORT_")) {
                         sortToCharsetMap[Integer.parseInt(key.substring(5))] = value;
@@ -158,7 +171,7 @@ public final class CharsetInfo {
      * @return the associated <code>CharsetInfo</code>
      */
     public static CharsetInfo getCharsetForLCID(int lcid) {
-        return (CharsetInfo) lcidToCharsetMap.get(new Integer(lcid));
+        return (CharsetInfo) lcidToCharsetMap.get(lcid);
     }
 
     /**
@@ -181,6 +194,121 @@ public final class CharsetInfo {
      */
     public static CharsetInfo getCharset(byte[] collation)
             throws SQLException {
+        CharsetInfo charset = findCollation(collationKey(collation)).charset;
+
+        if (charset == null) {
+            throw new SQLException(
+                    Messages.get("error.charset.nocollation", Support.toHex(collation)),
+                    "2C000");
+        }
+
+        return charset;
+    }
+
+    /**
+     * Packs the 5 bytes of a collation into a <code>long</code>, with the
+     * first byte in the least significant position.
+     *
+     * @param collation the 5 byte server collation
+     * @return the collation key
+     */
+    static long collationKey(byte[] collation) {
+        return ((long) collation[4] & 0xFF) << 32
+                | ((long) collation[3] & 0xFF) << 24
+                | ((long) collation[2] & 0xFF) << 16
+                | ((long) collation[1] & 0xFF) << 8
+                | ((long) collation[0] & 0xFF);
+    }
+
+    /**
+     * Retrieves the shared byte array for a collation. All columns and
+     * connections using the same collation get the same array, so it can be
+     * compared by reference and its charset is only resolved once.
+     * <p/>
+     * The returned array must not be modified.
+     *
+     * @param key the collation packed by {@link #collationKey(byte[])}
+     * @return the 5 byte collation
+     */
+    static byte[] internCollation(long key) {
+        return findCollation(key).collation;
+    }
+
+    /**
+     * Looks up a collation in the shared table, adding it if not found.
+     *
+     * @param key the packed collation
+     * @return the table entry, never <code>null</code>
+     */
+    private static Collation findCollation(long key) {
+        Collation[] table = collations;
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].key == key) {
+                return table[i];
+            }
+        }
+        return addCollation(key);
+    }
+
+    /**
+     * Adds a collation to the shared table, copying the table.
+     *
+     * @param key the packed collation
+     * @return the table entry
+     */
+    private static synchronized Collation addCollation(long key) {
+        Collation[] table = collations;
+        // Check again, another thread may have added it in the meantime
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].key == key) {
+                return table[i];
+            }
+        }
+
+        int length = table.length;
+        if ((collationCount + 1) * 2 > length) {
+            length *= 2;
+        }
+        Collation[] copy = new Collation[length];
+        mask = length - 1;
+        for (int j = 0; j < table.length; j++) {
+            if (table[j] != null) {
+                int i = hash(table[j].key) & mask;
+                while (copy[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                copy[i] = table[j];
+            }
+        }
+
+        Collation entry = new Collation(key);
+        int i = hash(key) & mask;
+        while (copy[i] != null) {
+            i = (i + 1) & mask;
+        }
+        copy[i] = entry;
+        collationCount++;
+        collations = copy;
+        return entry;
+    }
+
+    /**
+     * Hashes a packed collation.
+     */
+    private static int hash(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Resolves the charset of a collation from its sort order or LCID.
+     *
+     * @param collation the 5 byte server collation
+     * @return the charset or <code>null</code> if unknown
+     */
+    private static CharsetInfo resolveCharset(byte[] collation) {
         CharsetInfo charset;
 
         if (collation[4] != 0) {
@@ -194,15 +322,30 @@ public final class CharsetInfo {
                     | ((int) collation[0] & 0xFF));
         }
 
-        if (charset == null) {
-            throw new SQLException(
-                    Messages.get("error.charset.nocollation", Support.toHex(collation)),
-                    "2C000");
-        }
-
         return charset;
     }
 
+    /**
+     * Entry of the shared collation table.
+     */
+    private static final class Collation {
+        /** The packed collation. */
+        final long key;
+        /** The collation bytes, shared by all users. */
+        final byte[] collation;
+        /** The charset, <code>null</code> if the collation is unknown. */
+        final CharsetInfo charset;
+
+        Collation(long key) {
+            this.key = key;
+            collation = new byte[5];
+            for (int i = 0; i < 5; i++) {
+                collation[i] = (byte) (key >>> (i * 8));
+            }
+            charset = resolveCharset(collation);
+        }
+    }
+
     //
     // Non-static fields and methods
     //
@@ -211,6 +354,13 @@ public final class CharsetInfo {
     private final String charset;
     /** Indicates whether current charset is wide (ie multi-byte). */
     private final boolean wideChars;
+    /** The Java charset, <code>null</code> if not supported by this JVM. */
+    private final Charset javaCharset;
+    /**
+     * Per-thread encoder cache; <code>CharsetInfo</code> instances are shared
+     * by all connections but <code>CharsetEncoder</code>s are not thread-safe.
+     */
+    private final ThreadLocal<CharsetEncoder> encoder = new ThreadLocal<>();
 
     /**
      * Constructs a <code>CharsetInfo</code> object from a character set
@@ -223,6 +373,14 @@ public final class CharsetInfo {
     public CharsetInfo(String descriptor) {
         wideChars = !"1".equals(descriptor.substring(0, 1));
         charset = descriptor.substring(2);
+
+        Charset cs = null;
+        try {
+            cs = Charset.forName(charset);
+        } catch (Exception e) {
+            // unsupported or illegal charset name, fall back to String.getBytes()
+        }
+        javaCharset = cs;
     }
 
     /**
@@ -239,6 +397,43 @@ public final class CharsetInfo {
         return wideChars;
     }
 
+    /**
+     * Retrieves the Java <code>Charset</code> for this character set.
+     *
+     * @return the <code>Charset</code> or <code>null</code> if the charset is
+     *         not supported by the JVM
+     */
+    Charset getJavaCharset() {
+        return javaCharset;
+    }
+
+    /**
+     * Retrieves a reset <code>CharsetEncoder</code> for this character set,
+     * cached per thread. Malformed input and unmappable characters are
+     * replaced, matching the behavior of <code>String.getBytes()</code>.
+     *
+     * @return the encoder or <code>null</code> if the charset is not supported
+     *         by the JVM
+     */
+    CharsetEncoder getEncoder() {
+        if (javaCharset == null || !javaCharset.canEncode()) {
+            return null;
+        }
+
+        CharsetEncoder enc = encoder.get();
+
+        if (enc == null) {
+            enc = javaCharset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoder.set(enc);
+        } else {
+            enc.reset();
+        }
+
+        return enc;
+    }
+
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -29,8 +29,11 @@ import net.sourceforge.jtds.util.BlobBuffer;
  * Implementation note:
  * <ol>
  *   <li>This implementation stores the CLOB data in a byte array managed by
- *     the <code>BlobBuffer</code> class. Each character is stored in 2
- *     sequential bytes using UTF-16LE encoding.
+ *     the <code>BlobBuffer</code> class. As long as all characters are in
+ *     the ISO-8859-1 range each character is stored in a single byte (like
+ *     <code>String</code>'s compact strings); the first time a wider
+ *     character is written the data is converted and each character is then
+ *     stored in 2 sequential bytes using UTF-16LE encoding.
  *   <li>As a consequence of using UTF-16LE, Unicode 3.1 supplementary
  *     characters may require an additional 2 bytes of storage. This
  *     implementation assumes that character position parameters supplied to
@@ -56,8 +59,14 @@ public class ClobImpl implements Clob {
      */
     private static final String EMPTY_CLOB = "";
 
-    /** The underlying <code>BlobBuffer</code>. */
-    private final BlobBuffer blobBuffer;
+    /** The parent connection, for the buffer settings. */
+    private final JtdsConnection connection;
+    /** The underlying <code>BlobBuffer</code>, once the value is loaded. */
+    private BlobBuffer blobBuffer;
+    /** True if the buffer holds one ISO-8859-1 byte per character. */
+    private boolean latin1 = true;
+    /** The text pointer of a value not loaded yet, see {@link LobLocator}. */
+    private LobLocator locator;
 
     /**
      * Constructs a new empty <code>Clob</code> instance.
@@ -78,9 +87,11 @@ public class ClobImpl implements Clob {
         if (str == null) {
             throw new IllegalArgumentException("str cannot be null");
         }
+        this.connection = connection;
         blobBuffer = new BlobBuffer(connection.getBufferDir(), connection.getLobBuffer());
         try {
-            byte[] data = str.getBytes("UTF-16LE");
+            latin1 = isLatin1(str);
+            byte[] data = str.getBytes(latin1 ? "ISO-8859-1" : "UTF-16LE");
             blobBuffer.setBuffer(data, false);
         } catch (UnsupportedEncodingException e) {
             // This should never happen!
@@ -89,26 +100,135 @@ public class ClobImpl implements Clob {
     }
 
     /**
-     * Obtain this object's backing <code>BlobBuffer</code> object.
+     * Constructs a new <code>Clob</code> instance whose data is read from
+     * the server when first needed.
+     *
+     * @param connection a reference to the parent connection object
+     * @param locator    the text pointer of the value
+     */
+    ClobImpl(JtdsConnection connection, LobLocator locator) {
+        this.connection = connection;
+        this.locator = locator;
+    }
+
+    /**
+     * Obtain the backing <code>BlobBuffer</code> of an empty
+     * <code>Clob</code> being built, to be filled with UTF-16LE data.
      *
      * @return the underlying <code>BlobBuffer</code>
      */
     BlobBuffer getBlobBuffer() {
+        latin1 = false;
         return this.blobBuffer;
     }
 
+    /**
+     * Retrieves the data as a big endian Unicode <code>InputStream</code>.
+     *
+     * @return the <code>InputStream</code> built over the CLOB data
+     * @throws SQLException if the value cannot be read
+     */
+    InputStream getUnicodeStream() throws SQLException {
+        // Only used by the deprecated getUnicodeStream()
+        inflate();
+        return blobBuffer.getUnicodeStream();
+    }
+
+    /**
+     * Reads the whole value from the server, if it has not been read yet.
+     *
+     * @throws SQLException if the value cannot be read
+     */
+    private void load() throws SQLException {
+        if (locator != null) {
+            ClobImpl clob = locator.getClob();
+            blobBuffer = clob.blobBuffer;
+            latin1 = clob.latin1;
+            locator = null;
+        }
+    }
+
+    /**
+     * Converts the buffer from ISO-8859-1 to UTF-16LE, before a character
+     * outside of the ISO-8859-1 range is stored.
+     *
+     * @throws SQLException if the data cannot be converted
+     */
+    private void inflate() throws SQLException {
+        load();
+        if (!latin1) {
+            return;
+        }
+        int length = (int) blobBuffer.getLength();
+        BlobBuffer wide = new BlobBuffer(connection.getBufferDir(), connection.getLobBuffer());
+        if (length * 2L <= connection.getLobBuffer()) {
+            // Small enough to convert in memory
+            byte[] data = blobBuffer.getBytes(1, length);
+            byte[] wideData = new byte[length * 2];
+            for (int i = 0; i < length; i++) {
+                wideData[i * 2] = data[i];
+            }
+            wide.setBuffer(wideData, false);
+        } else {
+            try {
+                InputStream in = blobBuffer.getBinaryStream(false);
+                OutputStream out = wide.setBinaryStream(1, false);
+                byte[] data = new byte[4096];
+                byte[] wideData = new byte[data.length * 2];
+                int count;
+                while ((count = in.read(data, 0, data.length)) > 0) {
+                    for (int i = 0; i < count; i++) {
+                        wideData[i * 2] = data[i];
+                    }
+                    out.write(wideData, 0, count * 2);
+                }
+                out.close();
+                in.close();
+            } catch (IOException e) {
+                throw new SQLException(Messages.get("error.generic.ioerror",
+                        e.getMessage()),
+                        "HY000");
+            }
+        }
+        // Release the work file, if any
+        blobBuffer.truncate(0);
+        blobBuffer = wide;
+        latin1 = false;
+    }
+
+    /**
+     * Checks whether all characters of a string are in the ISO-8859-1 range.
+     *
+     * @param str the string to check
+     * @return <code>true</code> if the string can be stored in single bytes
+     */
+    private static boolean isLatin1(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     //
     // ---- java.sql.Blob interface methods from here ----
     //
 
     public InputStream getAsciiStream() throws SQLException {
+        load();
+        if (latin1) {
+            return new AsciiInputStream(blobBuffer.getBinaryStream(false));
+        }
         return blobBuffer.getBinaryStream(true);
     }
 
     public Reader getCharacterStream() throws SQLException {
+        load();
         try {
             return new BufferedReader(new InputStreamReader(
-                    blobBuffer.getBinaryStream(false), "UTF-16LE"));
+                    blobBuffer.getBinaryStream(false),
+                    latin1 ? "ISO-8859-1" : "UTF-16LE"));
         } catch (UnsupportedEncodingException e) {
             // This should never happen!
             throw new IllegalStateException(
@@ -117,10 +237,18 @@ public class ClobImpl implements Clob {
     }
 
     public String getSubString(long pos, int length) throws SQLException {
+        if (locator != null && locator.isCharAddressed()) {
+            // Only transfer the requested range
+            return locator.getSubString(pos, length);
+        }
         if (length == 0) {
             return EMPTY_CLOB;
         }
+        load();
         try {
+            if (latin1) {
+                return new String(blobBuffer.getBytes(pos, length), "ISO-8859-1");
+            }
             byte data[] = blobBuffer.getBytes((pos - 1) * 2 + 1, length * 2);
             return new String(data, "UTF-16LE");
         } catch (IOException e) {
@@ -131,7 +259,11 @@ public class ClobImpl implements Clob {
     }
 
     public long length() throws SQLException {
-        return blobBuffer.getLength() / 2;
+        if (locator != null && locator.isCharAddressed()) {
+            return locator.getLength();
+        }
+        load();
+        return latin1 ? blobBuffer.getLength() : blobBuffer.getLength() / 2;
     }
 
     public long position(String searchStr, long start) throws SQLException {
@@ -139,7 +271,14 @@ public class ClobImpl implements Clob {
             throw new SQLException(
                     Messages.get("error.clob.searchnull"), "HY009");
         }
+        load();
         try {
+            if (latin1) {
+                // A wider character cannot match, an empty pattern never does
+                byte[] pattern = isLatin1(searchStr)
+                        ? searchStr.getBytes("ISO-8859-1") : new byte[0];
+                return blobBuffer.position(pattern, start);
+            }
             byte[] pattern = searchStr.getBytes("UTF-16LE");
             int pos = blobBuffer.position(pattern, (start - 1) * 2 + 1);
             return (pos < 0) ? pos : (pos - 1) / 2 + 1;
@@ -155,25 +294,23 @@ public class ClobImpl implements Clob {
             throw new SQLException(
                     Messages.get("error.clob.searchnull"), "HY009");
         }
-        BlobBuffer bbuf = ((ClobImpl) searchStr).getBlobBuffer();
-        byte[] pattern = bbuf.getBytes(1, (int) bbuf.getLength());
-        int pos = blobBuffer.position(pattern, (start - 1) * 2 + 1);
-        return (pos < 0) ? pos : (pos - 1) / 2 + 1;
+        return position(searchStr.getSubString(1, (int) searchStr.length()), start);
     }
 
     public OutputStream setAsciiStream(final long pos) throws SQLException {
+        load();
+        if (latin1) {
+            return blobBuffer.setBinaryStream(pos, false);
+        }
         return blobBuffer.setBinaryStream((pos - 1) * 2 + 1, true);
     }
 
     public Writer setCharacterStream(final long pos) throws SQLException {
-        try {
-            return new BufferedWriter(new OutputStreamWriter(
-                    blobBuffer.setBinaryStream((pos - 1) * 2 + 1, false),
-                    "UTF-16LE"));
-        } catch (UnsupportedEncodingException e) {
-            // Should never happen
-            throw new IllegalStateException("UTF-16LE encoding is not supported.");
+        load();
+        if (latin1) {
+            return new BufferedWriter(new CompactWriter(pos));
         }
+        return wideWriter(pos);
     }
 
     public int setString(long pos, String str) throws SQLException {
@@ -194,13 +331,19 @@ public class ClobImpl implements Clob {
             throw new SQLException(
                     Messages.get("error.blobclob.badlen"), "HY090");
         }
+        load();
         try {
-            byte[] data = str.substring(offset, offset + len)
-                    .getBytes("UTF-16LE");
+            String value = str.substring(offset, offset + len);
+            if (latin1 && isLatin1(value)) {
+                byte[] data = value.getBytes("ISO-8859-1");
+                return blobBuffer.setBytes(pos, data, 0, data.length, false);
+            }
+            inflate();
+            byte[] data = value.getBytes("UTF-16LE");
             // No need to force BlobBuffer to copy the bytes as this is a local
             // buffer and cannot be corrupted by the user.
             return blobBuffer.setBytes(
-                    (pos - 1) * 2 + 1, data, 0, data.length, false);
+                    (pos - 1) * 2 + 1, data, 0, data.length, false) / 2;
         } catch (UnsupportedEncodingException e) {
             // This should never happen!
             throw new IllegalStateException(
@@ -209,7 +352,110 @@ public class ClobImpl implements Clob {
     }
 
     public void truncate(long len) throws SQLException {
-        blobBuffer.truncate(len * 2);
+        load();
+        blobBuffer.truncate(latin1 ? len : len * 2);
+    }
+
+    /**
+     * Creates a <code>Writer</code> over the UTF-16LE buffer.
+     *
+     * @param pos the start position in the CLOB (from 1)
+     */
+    private Writer wideWriter(long pos) throws SQLException {
+        try {
+            return new BufferedWriter(new OutputStreamWriter(
+                    blobBuffer.setBinaryStream((pos - 1) * 2 + 1, false),
+                    "UTF-16LE"));
+        } catch (UnsupportedEncodingException e) {
+            // Should never happen
+            throw new IllegalStateException("UTF-16LE encoding is not supported.");
+        }
+    }
+
+    /**
+     * A <code>Writer</code> storing single byte characters until a wider
+     * character is written, then converting the buffer to UTF-16LE.
+     */
+    private class CompactWriter extends Writer {
+        /** The single byte stream, <code>null</code> once converted. */
+        private OutputStream out;
+        /** The UTF-16LE writer once the buffer has been converted. */
+        private Writer wide;
+        /** The position of the next character (from 1). */
+        private long pos;
+
+        CompactWriter(long pos) throws SQLException {
+            out = blobBuffer.setBinaryStream(pos, false);
+            this.pos = pos;
+        }
+
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (wide != null) {
+                wide.write(cbuf, off, len);
+                return;
+            }
+            byte[] data = new byte[len];
+            for (int i = 0; i < len; i++) {
+                char c = cbuf[off + i];
+                if (c > 0xFF) {
+                    out.write(data, 0, i);
+                    out.close();
+                    out = null;
+                    try {
+                        inflate();
+                        wide = wideWriter(pos + i);
+                    } catch (SQLException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                    wide.write(cbuf, off + i, len - i);
+                    return;
+                }
+                data[i] = (byte) c;
+            }
+            out.write(data, 0, len);
+            pos += len;
+        }
+
+        public void flush() throws IOException {
+            if (wide != null) {
+                wide.flush();
+            } else {
+                out.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            if (wide != null) {
+                wide.close();
+            } else {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * An ASCII <code>InputStream</code> over single byte CLOB data,
+     * replacing characters outside of the ASCII range with '?'.
+     */
+    private static class AsciiInputStream extends FilterInputStream {
+        AsciiInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = in.read();
+            return (b > 0x7F) ? '?' : b;
+        }
+
+        public int read(byte[] bytes, int offset, int len) throws IOException {
+            int count = in.read(bytes, offset, len);
+            for (int i = 0; i < count; i++) {
+                if (bytes[offset + i] < 0) {
+                    bytes[offset + i] = '?';
+                }
+            }
+            return count;
+        }
     }
 
     /////// JDBC4 demarcation, do NOT put any JDBC3 code below this line ///////
@@ -224,4 +470,4 @@ public class ClobImpl implements Clob {
         throw new AbstractMethodError();
     }
 
-}
\ No newline at end of file
+}
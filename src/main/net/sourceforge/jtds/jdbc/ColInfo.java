@@ -137,6 +137,11 @@ public class ColInfo implements Cloneable
     */
    String      sqlType;
 
+   /**
+    * Text and image values are read on demand, see {@link LobLocator}
+    */
+   boolean     lazyLob;
+
    /////////////////////////////////////////////////////////////////////////////
    // overridden methods of class Object
    /////////////////////////////////////////////////////////////////////////////
@@ -194,6 +199,48 @@ public class ColInfo implements Cloneable
           && Arrays.equals( collation, o.collation );
    }
 
+   /////////////////////////////////////////////////////////////////////////////
+   // package private methods
+   /////////////////////////////////////////////////////////////////////////////
+
+   /**
+    * <p> Compares the column description sent by the server in a result set
+    * header, i.e. everything but the table and key information that is set
+    * later from the table name and column info tokens. </p>
+    *
+    * @param o
+    *    the column descriptor to compare with
+    *
+    * @return
+    *    {@code true} if both describe the same column
+    */
+   boolean isSameDescriptor( ColInfo o )
+   {
+      return
+
+             tdsType         == o.tdsType
+          && jdbcType        == o.jdbcType
+          && nullable        == o.nullable
+          && userType        == o.userType
+          && displaySize     == o.displaySize
+          && bufferSize      == o.bufferSize
+          && precision       == o.precision
+          && scale           == o.scale
+          && isCaseSensitive == o.isCaseSensitive
+          && isWriteable     == o.isWriteable
+          && isIdentity      == o.isIdentity
+
+          && compare( name       , o.name        )
+          && compare( sqlType    , o.sqlType     )
+          && charsetInfo     == o.charsetInfo
+
+          // interned, see CharsetInfo.internCollation()
+          && collation       == o.collation
+
+          // only set here for text, ntext and image columns
+          && ( tableName == null || tableName.equals( o.tableName ) );
+   }
+
    /////////////////////////////////////////////////////////////////////////////
    // private methods
    /////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,258 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Converts the values of one result set column for the typed getters.
+ * <p/>
+ * A converter is chosen once per column from the JDBC type of the column
+ * ({@link #forType(int)}) and used for every getter call on that column. It
+ * expects the values of the column to be of the Java type <code>TdsData</code>
+ * reads that JDBC type as (e.g. <code>Integer</code> for an
+ * <code>INTEGER</code> column) and converts those directly to the requested
+ * primitive, without going through the generic type dispatch of
+ * {@link Support#convert} and without boxing the result. Values of any other
+ * type, and conversions that may fail, are still left to
+ * <code>Support.convert</code>, so the results and errors are always the
+ * same.
+ */
+final class ColumnConverter {
+    /** Values of any other type; always use <code>Support.convert</code>. */
+    private static final int OTHER    = 0;
+    private static final int INTEGER  = 1;
+    private static final int LONG     = 2;
+    private static final int FLOAT    = 3;
+    private static final int DOUBLE   = 4;
+    private static final int DECIMAL  = 5;
+    private static final int BOOLEAN  = 6;
+    private static final int DATETIME = 7;
+
+    private static final ColumnConverter OTHER_CONVERTER =
+            new ColumnConverter(OTHER, null);
+    private static final ColumnConverter INTEGER_CONVERTER =
+            new ColumnConverter(INTEGER, Integer.class);
+    private static final ColumnConverter LONG_CONVERTER =
+            new ColumnConverter(LONG, Long.class);
+    private static final ColumnConverter FLOAT_CONVERTER =
+            new ColumnConverter(FLOAT, Float.class);
+    private static final ColumnConverter DOUBLE_CONVERTER =
+            new ColumnConverter(DOUBLE, Double.class);
+    private static final ColumnConverter DECIMAL_CONVERTER =
+            new ColumnConverter(DECIMAL, BigDecimal.class);
+    private static final ColumnConverter BOOLEAN_CONVERTER =
+            new ColumnConverter(BOOLEAN, Boolean.class);
+    private static final ColumnConverter DATETIME_CONVERTER =
+            new ColumnConverter(DATETIME, DateTime.class);
+
+    /** The kind of values expected in the column. */
+    private final int kind;
+    /** The exact class of the values expected in the column. */
+    private final Class valueClass;
+
+    private ColumnConverter(int kind, Class valueClass) {
+        this.kind = kind;
+        this.valueClass = valueClass;
+    }
+
+    /**
+     * Returns the converter for a column of the given JDBC type.
+     *
+     * @param jdbcType the JDBC type of the column
+     * @return the (shared) converter instance
+     */
+    static ColumnConverter forType(int jdbcType) {
+        switch (jdbcType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INTEGER_CONVERTER;
+            case Types.BIGINT:
+                return LONG_CONVERTER;
+            case Types.REAL:
+                return FLOAT_CONVERTER;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE_CONVERTER;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL_CONVERTER;
+            case Types.BIT:
+            case JtdsStatement.BOOLEAN:
+                return BOOLEAN_CONVERTER;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return DATETIME_CONVERTER;
+            default:
+                return OTHER_CONVERTER;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the value is of the type expected in the
+     * column and can be converted directly.
+     */
+    private boolean expected(Object value) {
+        return value != null && value.getClass() == valueClass;
+    }
+
+    byte getByte(Object caller, Object value) throws SQLException {
+        if (expected(value) && kind == INTEGER) {
+            int i = ((Integer) value).intValue();
+            if (i == (byte) i) {
+                return (byte) i;
+            }
+        }
+        return ((Integer) Support.convert(caller, value, Types.TINYINT, null)).byteValue();
+    }
+
+    short getShort(Object caller, Object value) throws SQLException {
+        if (expected(value) && kind == INTEGER) {
+            int i = ((Integer) value).intValue();
+            if (i == (short) i) {
+                return (short) i;
+            }
+        }
+        return ((Integer) Support.convert(caller, value, Types.SMALLINT, null)).shortValue();
+    }
+
+    int getInt(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case INTEGER:
+                    return ((Integer) value).intValue();
+                case LONG:
+                    long l = ((Long) value).longValue();
+                    if (l == (int) l) {
+                        return (int) l;
+                    }
+                    break;
+                case BOOLEAN:
+                    return ((Boolean) value).booleanValue() ? 1 : 0;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+        return ((Integer) Support.convert(caller, value, Types.INTEGER, null)).intValue();
+    }
+
+    long getLong(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case INTEGER:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                    return ((Number) value).longValue();
+                case BOOLEAN:
+                    return ((Boolean) value).booleanValue() ? 1 : 0;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+        return ((Long) Support.convert(caller, value, Types.BIGINT, null)).longValue();
+    }
+
+    float getFloat(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case INTEGER:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                case DECIMAL:
+                    return ((Number) value).floatValue();
+                case BOOLEAN:
+                    return ((Boolean) value).booleanValue() ? 1 : 0;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+        return ((Float) Support.convert(caller, value, Types.REAL, null)).floatValue();
+    }
+
+    double getDouble(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case INTEGER:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                case DECIMAL:
+                    return ((Number) value).doubleValue();
+                case BOOLEAN:
+                    return ((Boolean) value).booleanValue() ? 1 : 0;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+        return ((Double) Support.convert(caller, value, Types.DOUBLE, null)).doubleValue();
+    }
+
+    boolean getBoolean(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case BOOLEAN:
+                    return ((Boolean) value).booleanValue();
+                case INTEGER:
+                    return ((Integer) value).intValue() != 0;
+            }
+        } else if (value == null) {
+            return false;
+        }
+        return ((Boolean) Support.convert(caller, value, JtdsStatement.BOOLEAN, null)).booleanValue();
+    }
+
+    BigDecimal getBigDecimal(Object caller, Object value) throws SQLException {
+        if (expected(value)) {
+            switch (kind) {
+                case DECIMAL:
+                    return (BigDecimal) value;
+                case INTEGER:
+                case LONG:
+                    return BigDecimal.valueOf(((Number) value).longValue());
+            }
+        }
+        return (BigDecimal) Support.convert(caller, value, Types.DECIMAL, null);
+    }
+
+    java.sql.Date getDate(Object caller, Object value) throws SQLException {
+        if (expected(value) && kind == DATETIME) {
+            return ((DateTime) value).toDate();
+        }
+        return (java.sql.Date) Support.convert(caller, value, Types.DATE, null);
+    }
+
+    java.sql.Time getTime(Object caller, Object value) throws SQLException {
+        if (expected(value) && kind == DATETIME) {
+            return ((DateTime) value).toTime();
+        }
+        return (java.sql.Time) Support.convert(caller, value, Types.TIME, null);
+    }
+
+    java.sql.Timestamp getTimestamp(Object caller, Object value) throws SQLException {
+        if (expected(value) && kind == DATETIME) {
+            return ((DateTime) value).toTimestamp();
+        }
+        return (java.sql.Timestamp) Support.convert(caller, value, Types.TIMESTAMP, null);
+    }
+}
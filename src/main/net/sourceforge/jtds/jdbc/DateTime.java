@@ -23,10 +23,18 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 /**
  * Encapsulates Sybase date/time values and provides conversions to and from
  * Java classes.
+ * <p/>
+ * The conversions compute the date fields arithmetically and only look up
+ * the offset of the default time zone, so that converting a value does not
+ * need a <code>Calendar</code>. A <code>GregorianCalendar</code> is still
+ * used close to a time zone transition, where a local time may be skipped or
+ * repeated, and for dates before the switch to the Gregorian calendar, so the
+ * results are always the ones the calendar gives.
  *
  * @author Mike Hutchinson
  * @version $Id: DateTime.java,v 1.4.2.2 2009-08-20 19:44:04 ickzon Exp $
@@ -36,6 +44,17 @@ public class DateTime {
     static final int DATE_NOT_USED = Integer.MIN_VALUE;
     /** Indicates time value not used. */
     static final int TIME_NOT_USED = Integer.MIN_VALUE;
+    /** Milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 86400000L;
+    /** Julian day number of the Sybase epoch, 1900-01-01. */
+    private static final int JULIAN_DAY_1900 = 2415021;
+    /** Julian day number of the Java epoch, 1970-01-01. */
+    private static final int JULIAN_DAY_1970 = 2440588;
+    /**
+     * Days since 1970-01-01 of the default switch to the Gregorian calendar,
+     * 1582-10-15; earlier dates are Julian calendar dates.
+     */
+    private static final long GREGORIAN_CHANGE_DAYS = -141427;
     /** The date component of the server datetime value. */
     private int   date;
     /** The time component of the server datetime value. */
@@ -97,19 +116,7 @@ public class DateTime {
      */
     DateTime(Timestamp ts) throws SQLException {
         tsValue = ts;
-        GregorianCalendar cal = new GregorianCalendar();
-        cal.setTime(ts);
-
-        if (cal.get(Calendar.ERA) != GregorianCalendar.AD)
-            throw new SQLException(Messages.get("error.datetime.range.era"), "22007");
-
-        year   = (short)cal.get(Calendar.YEAR);
-        month  = (short)(cal.get(Calendar.MONTH) + 1);
-        day    = (short)cal.get(Calendar.DAY_OF_MONTH);
-        hour   = (short)cal.get(Calendar.HOUR_OF_DAY);
-        minute = (short)cal.get(Calendar.MINUTE);
-        second = (short)cal.get(Calendar.SECOND);
-        millis = (short)cal.get(Calendar.MILLISECOND);
+        unpackMillis(ts.getTime());
         packDate();
         packTime();
         unpacked = true;
@@ -123,20 +130,11 @@ public class DateTime {
      */
     DateTime(Time t) throws SQLException {
         timeValue = t;
-        GregorianCalendar cal = new GregorianCalendar();
-        cal.setTime(t);
-
-        if (cal.get(Calendar.ERA) != GregorianCalendar.AD)
-            throw new SQLException(Messages.get("error.datetime.range.era"), "22007");
-
+        unpackMillis(t.getTime());
         date   = DATE_NOT_USED;
         year   = 1900;
         month  = 1;
         day    = 1;
-        hour   = (short)cal.get(Calendar.HOUR_OF_DAY);
-        minute = (short)cal.get(Calendar.MINUTE);
-        second = (short)cal.get(Calendar.SECOND);
-        millis = (short)cal.get(Calendar.MILLISECOND);
         packTime();
         year  = 1970;
         month = 1;
@@ -152,15 +150,7 @@ public class DateTime {
      */
     DateTime(Date d) throws SQLException {
         dateValue = d;
-        GregorianCalendar cal = new GregorianCalendar();
-        cal.setTime(d);
-
-        if (cal.get(Calendar.ERA) != GregorianCalendar.AD)
-            throw new SQLException(Messages.get("error.datetime.range.era"), "22007");
-
-        year   = (short)cal.get(Calendar.YEAR);
-        month  = (short)(cal.get(Calendar.MONTH) + 1);
-        day    = (short)cal.get(Calendar.DAY_OF_MONTH);
+        unpackMillis(d.getTime());
         hour   = 0;
         minute = 0;
         second = 0;
@@ -234,19 +224,7 @@ public class DateTime {
                 month = 1;
                 day   = 1;
             } else {
-                int l = date + 68569 + 2415021;
-                int n = 4 * l / 146097;
-                l = l - (146097 * n + 3) / 4;
-                int i = 4000 * (l + 1) / 1461001;
-                l = l - 1461 * i / 4 + 31;
-                int j = 80 * l / 2447;
-                int k = l - 2447 * j / 80;
-                l = j / 11;
-                j = j + 2 - 12 * l;
-                i = 100 * (n - 49) + i + l;
-                year  = (short)i;
-                month = (short)j;
-                day   = (short)k;
+                setDate(gregorianDate(date + JULIAN_DAY_1900));
             }
         }
         if (time == TIME_NOT_USED) {
@@ -254,21 +232,187 @@ public class DateTime {
             minute = 0;
             second = 0;
         } else {
-            int hours = time / 1080000;
-            time = time - hours * 1080000;
-            int minutes = time / 18000;
-            time = time - (minutes * 18000);
-            int seconds = time / 300;
-            time = time - seconds * 300;
-            time = Math.round(time * 1000 / 300f);
+            int t = time;
+            int hours = t / 1080000;
+            t = t - hours * 1080000;
+            int minutes = t / 18000;
+            t = t - (minutes * 18000);
+            int seconds = t / 300;
+            t = t - seconds * 300;
+            t = Math.round(t * 1000 / 300f);
             hour = (short)hours;
             minute = (short)minutes;
             second = (short)seconds;
-            millis = (short)time;
+            millis = (short)t;
         }
         unpacked = true;
     }
 
+    /**
+     * Computes the Gregorian calendar date of a Julian day number.
+     * <p/>
+     * See {@link #unpackDateTime()} for the algorithm.
+     *
+     * @param julianDay the Julian day number
+     * @return the date as <code>year * 10000 + month * 100 + day</code>
+     */
+    private static int gregorianDate(int julianDay) {
+        int l = julianDay + 68569;
+        int n = 4 * l / 146097;
+        l = l - (146097 * n + 3) / 4;
+        int i = 4000 * (l + 1) / 1461001;
+        l = l - 1461 * i / 4 + 31;
+        int j = 80 * l / 2447;
+        int k = l - 2447 * j / 80;
+        l = j / 11;
+        j = j + 2 - 12 * l;
+        i = 100 * (n - 49) + i + l;
+        return i * 10000 + j * 100 + k;
+    }
+
+    /**
+     * Computes the Julian day number of a Gregorian calendar date.
+     * <p/>
+     * See {@link #packDate()} for the algorithm.
+     */
+    private static int julianDay(int year, int month, int day) {
+        return day - 32075 + 1461 * (year + 4800 + (month - 14) / 12) / 4
+                + 367 * (month - 2 - (month - 14) / 12 * 12) / 12
+                - 3 * ((year + 4900 + (month -14) / 12) / 100) / 4;
+    }
+
+    /**
+     * Sets the unpacked date fields.
+     *
+     * @param ymd the date as returned by {@link #gregorianDate(int)}
+     */
+    private void setDate(int ymd) {
+        year  = (short)(ymd / 10000);
+        month = (short)(ymd / 100 % 100);
+        day   = (short)(ymd % 100);
+    }
+
+    /**
+     * Sets the unpacked date and time fields from a Java time value, in the
+     * default time zone.
+     *
+     * @param value milliseconds since the epoch
+     * @throws SQLException if the date is before the Christian era
+     */
+    private void unpackMillis(long value) throws SQLException {
+        if (value < (GREGORIAN_CHANGE_DAYS + 1) * MILLIS_PER_DAY) {
+            GregorianCalendar cal = new GregorianCalendar();
+            cal.setTimeInMillis(value);
+
+            if (cal.get(Calendar.ERA) != GregorianCalendar.AD)
+                throw new SQLException(Messages.get("error.datetime.range.era"), "22007");
+
+            year   = (short)cal.get(Calendar.YEAR);
+            month  = (short)(cal.get(Calendar.MONTH) + 1);
+            day    = (short)cal.get(Calendar.DAY_OF_MONTH);
+            hour   = (short)cal.get(Calendar.HOUR_OF_DAY);
+            minute = (short)cal.get(Calendar.MINUTE);
+            second = (short)cal.get(Calendar.SECOND);
+            millis = (short)cal.get(Calendar.MILLISECOND);
+            return;
+        }
+
+        long local = value + TimeZone.getDefault().getOffset(value);
+        long days = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        int t = (int) (local - days * MILLIS_PER_DAY);
+        setDate(gregorianDate((int) days + JULIAN_DAY_1970));
+        hour   = (short)(t / 3600000);
+        minute = (short)(t / 60000 % 60);
+        second = (short)(t / 1000 % 60);
+        millis = (short)(t % 1000);
+    }
+
+    /**
+     * Converts a local date and time to milliseconds since the epoch.
+     *
+     * @param local the local date and time as milliseconds since 1970-01-01
+     *              00:00 of the (proleptic) Gregorian calendar
+     * @param zone  the time zone of the local date and time
+     * @return the milliseconds since the epoch, as a lenient
+     *         <code>GregorianCalendar</code> in <code>zone</code> would
+     *         compute them from the same fields
+     */
+    static long toMillis(long local, TimeZone zone) {
+        long days = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+
+        if (days > GREGORIAN_CHANGE_DAYS) {
+            int offset = zone.getOffset(local - zone.getRawOffset());
+            long value = local - offset;
+
+            // Unless there is a transition nearby the offset is unambiguous
+            if (zone.getOffset(value) == offset
+                    && zone.getOffset(value - MILLIS_PER_DAY) == offset
+                    && zone.getOffset(value + MILLIS_PER_DAY) == offset) {
+                return value;
+            }
+        }
+
+        int ymd = gregorianDate((int) days + JULIAN_DAY_1970);
+        int t = (int) (local - days * MILLIS_PER_DAY);
+        GregorianCalendar cal = new GregorianCalendar(zone);
+        cal.set(Calendar.YEAR, ymd / 10000);
+        cal.set(Calendar.MONTH, ymd / 100 % 100 - 1);
+        cal.set(Calendar.DAY_OF_MONTH, ymd % 100);
+        cal.set(Calendar.HOUR_OF_DAY, t / 3600000);
+        cal.set(Calendar.MINUTE, t / 60000 % 60);
+        cal.set(Calendar.SECOND, t / 1000 % 60);
+        cal.set(Calendar.MILLISECOND, t % 1000);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Converts a time value to the one with the same local date and time in
+     * another time zone, as <code>GregorianCalendar</code>s would.
+     *
+     * @param value milliseconds since the epoch
+     * @param from  the time zone to take the local date and time in
+     * @param to    the time zone to interpret the local date and time in
+     * @return the milliseconds since the epoch in <code>to</code>, or
+     *         <code>Long.MIN_VALUE</code> if the value is before the switch to
+     *         the Gregorian calendar and must be converted with calendars
+     */
+    static long changeZone(long value, TimeZone from, TimeZone to) {
+        if (value < (GREGORIAN_CHANGE_DAYS + 1) * MILLIS_PER_DAY) {
+            return Long.MIN_VALUE;
+        }
+        return toMillis(value + from.getOffset(value), to);
+    }
+
+    /**
+     * Retrieves the local date in days since 1970-01-01.
+     */
+    private long localDays() {
+        if (unpacked) {
+            return julianDay(year, month, day) - JULIAN_DAY_1970;
+        }
+        return (date == DATE_NOT_USED) ? 0 : date + JULIAN_DAY_1900 - JULIAN_DAY_1970;
+    }
+
+    /**
+     * Retrieves the local time in milliseconds since midnight.
+     */
+    private int localTime() {
+        if (unpacked) {
+            return ((hour * 60 + minute) * 60 + second) * 1000 + millis;
+        }
+        if (time == TIME_NOT_USED) {
+            return 0;
+        }
+        int seconds = time / 300;
+        return seconds * 1000 + Math.round((time - seconds * 300) * 1000 / 300f);
+    }
+
     /**
      * Converts a calendar date into days since 1900 (Sybase epoch).
      * <p>
@@ -300,9 +444,7 @@ public class DateTime {
         if (year < 1753 || year > 9999) {
             throw new SQLException(Messages.get("error.datetime.range"), "22003");
         }
-        date = day - 32075 + 1461 * (year + 4800 + (month - 14) / 12) / 4
-                + 367 * (month - 2 - (month - 14) / 12 * 12) / 12
-                - 3 * ((year + 4900 + (month -14) / 12) / 100) / 4 - 2415021;
+        date = julianDay(year, month, day) - JULIAN_DAY_1900;
     }
 
     /**
@@ -322,14 +464,7 @@ public class DateTime {
             second = 0;
             millis = 0;
             if (date != DATE_NOT_USED) {
-                GregorianCalendar cal = new GregorianCalendar();
-                cal.set(Calendar.YEAR, year);
-                cal.set(Calendar.MONTH, month - 1);
-                cal.set(Calendar.DAY_OF_MONTH, day);
-                cal.add(Calendar.DATE, 1);
-                year   = (short)cal.get(Calendar.YEAR);
-                month  = (short)(cal.get(Calendar.MONTH) + 1);
-                day    = (short)cal.get(Calendar.DAY_OF_MONTH);
+                setDate(gregorianDate(julianDay(year, month, day) + 1));
                 date++;
             }
         }
@@ -342,18 +477,9 @@ public class DateTime {
      */
     public Timestamp toTimestamp() {
         if (tsValue == null) {
-            if (!unpacked) {
-                unpackDateTime();
-            }
-            GregorianCalendar cal = new GregorianCalendar();
-            cal.set(Calendar.YEAR, year);
-            cal.set(Calendar.MONTH, month - 1);
-            cal.set(Calendar.DAY_OF_MONTH, day);
-            cal.set(Calendar.HOUR_OF_DAY, hour);
-            cal.set(Calendar.MINUTE, minute);
-            cal.set(Calendar.SECOND, second);
-            cal.set(Calendar.MILLISECOND, millis);
-            tsValue = new Timestamp(cal.getTime().getTime());
+            tsValue = new Timestamp(toMillis(
+                    localDays() * MILLIS_PER_DAY + localTime(),
+                    TimeZone.getDefault()));
         }
         return tsValue;
     }
@@ -365,18 +491,8 @@ public class DateTime {
      */
     public Date toDate() {
         if (dateValue == null) {
-            if (!unpacked) {
-                unpackDateTime();
-            }
-            GregorianCalendar cal = new GregorianCalendar();
-            cal.set(Calendar.YEAR, year);
-            cal.set(Calendar.MONTH, month - 1);
-            cal.set(Calendar.DAY_OF_MONTH, day);
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-            dateValue = new Date(cal.getTime().getTime());
+            dateValue = new Date(toMillis(localDays() * MILLIS_PER_DAY,
+                                          TimeZone.getDefault()));
         }
         return dateValue;
     }
@@ -388,18 +504,7 @@ public class DateTime {
      */
     public Time toTime() {
         if (timeValue == null) {
-            if (!unpacked) {
-                unpackDateTime();
-            }
-            GregorianCalendar cal = new GregorianCalendar();
-            cal.set(Calendar.YEAR, 1970);
-            cal.set(Calendar.MONTH, 0);
-            cal.set(Calendar.DAY_OF_MONTH, 1);
-            cal.set(Calendar.HOUR_OF_DAY, hour);
-            cal.set(Calendar.MINUTE, minute);
-            cal.set(Calendar.SECOND, second);
-            cal.set(Calendar.MILLISECOND, millis);
-            timeValue = new Time(cal.getTime().getTime());
+            timeValue = new Time(toMillis(localTime(), TimeZone.getDefault()));
         }
         return timeValue;
     }
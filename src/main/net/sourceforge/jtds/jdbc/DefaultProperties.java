@@ -141,6 +141,28 @@ public final class DefaultProperties {
     public static final String SOCKET_KEEPALIVE = "false";
     /** Default <code>processId</code> property. */
     public static final String PROCESS_ID = "123";
+    /** Default <code>cursorFetchBuffer</code> property. */
+    public static final String CURSOR_FETCH_BUFFER = "0";
+    /** Default <code>instanceCacheTtl</code> property. */
+    public static final String INSTANCE_CACHE_TTL = "600";
+    /** Default <code>maxWarnings</code> property. */
+    public static final String MAX_WARNINGS = "0";
+    /** Default <code>deferRowUpdates</code> property. */
+    public static final String DEFER_ROW_UPDATES = "false";
+    /** Default <code>packedCallBatch</code> property. */
+    public static final String PACKED_CALL_BATCH = "false";
+    /** Default <code>metaDataCacheTtl</code> property. */
+    public static final String METADATA_CACHE_TTL = "0";
+    /** Default <code>metaDataCacheSize</code> property. */
+    public static final String METADATA_CACHE_SIZE = "1000";
+    /** Default <code>deferSessionState</code> property. */
+    public static final String DEFER_SESSION_STATE = "false";
+    /** Default <code>closeCancelThreshold</code> property. */
+    public static final String CLOSE_CANCEL_THRESHOLD = "0";
+    /** Default <code>lazyLOBs</code> property. */
+    public static final String LAZY_LOBS = "false";
+    /** Default <code>maxPooledStatements</code> property. */
+    public static final String MAX_POOLED_STATEMENTS = "20";
 
     /** Default <code>serverType</code> property for SQL Server. */
     public static final String SERVER_TYPE_SQLSERVER = "sqlserver";
@@ -258,6 +280,17 @@ public final class DefaultProperties {
         addDefaultPropertyIfNotSet(props, Driver.BINDADDRESS, BIND_ADDRESS);
         addDefaultPropertyIfNotSet(props, Driver.USEJCIFS, USEJCIFS);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERDIR, BUFFER_DIR);
+        addDefaultPropertyIfNotSet(props, Driver.CURSORFETCHBUFFER, CURSOR_FETCH_BUFFER);
+        addDefaultPropertyIfNotSet(props, Driver.INSTANCECACHETTL, INSTANCE_CACHE_TTL);
+        addDefaultPropertyIfNotSet(props, Driver.MAXWARNINGS, MAX_WARNINGS);
+        addDefaultPropertyIfNotSet(props, Driver.DEFERROWUPDATES, DEFER_ROW_UPDATES);
+        addDefaultPropertyIfNotSet(props, Driver.PACKEDCALLBATCH, PACKED_CALL_BATCH);
+        addDefaultPropertyIfNotSet(props, Driver.METADATACACHETTL, METADATA_CACHE_TTL);
+        addDefaultPropertyIfNotSet(props, Driver.METADATACACHESIZE, METADATA_CACHE_SIZE);
+        addDefaultPropertyIfNotSet(props, Driver.DEFERSESSIONSTATE, DEFER_SESSION_STATE);
+        addDefaultPropertyIfNotSet(props, Driver.CLOSECANCELTHRESHOLD, CLOSE_CANCEL_THRESHOLD);
+        addDefaultPropertyIfNotSet(props, Driver.LAZYLOBS, LAZY_LOBS);
+        addDefaultPropertyIfNotSet(props, Driver.MAXPOOLEDSTATEMENTS, MAX_POOLED_STATEMENTS);
 
         return props;
     }
@@ -85,17 +85,28 @@ public class Driver implements java.sql.Driver {
     public static final String BUFFERMINPACKETS = "prop.bufferminpackets";
     public static final String CACHEMETA     = "prop.cachemetadata";
     public static final String CHARSET       = "prop.charset";
+    public static final String CLOSECANCELTHRESHOLD = "prop.closecancelthreshold";
+    public static final String CURSORFETCHBUFFER = "prop.cursorfetchbuffer";
     public static final String DATABASENAME  = "prop.databasename";
+    public static final String DEFERROWUPDATES = "prop.deferrowupdates";
+    public static final String DEFERSESSIONSTATE = "prop.defersessionstate";
     public static final String DOMAIN        = "prop.domain";
     public static final String INSTANCE      = "prop.instance";
+    public static final String INSTANCECACHETTL = "prop.instancecachettl";
     public static final String LANGUAGE      = "prop.language";
     public static final String LASTUPDATECOUNT = "prop.lastupdatecount";
+    public static final String LAZYLOBS      = "prop.lazylobs";
     public static final String LOBBUFFER     = "prop.lobbuffer";
     public static final String LOGFILE       = "prop.logfile";
     public static final String LOGINTIMEOUT  = "prop.logintimeout";
     public static final String MACADDRESS    = "prop.macaddress";
+    public static final String MAXPOOLEDSTATEMENTS = "prop.maxpooledstatements";
     public static final String MAXSTATEMENTS = "prop.maxstatements";
+    public static final String MAXWARNINGS   = "prop.maxwarnings";
+    public static final String METADATACACHESIZE = "prop.metadatacachesize";
+    public static final String METADATACACHETTL = "prop.metadatacachettl";
     public static final String NAMEDPIPE     = "prop.namedpipe";
+    public static final String PACKEDCALLBATCH = "prop.packedcallbatch";
     public static final String PACKETSIZE    = "prop.packetsize";
     public static final String PASSWORD      = "prop.password";
     public static final String PORTNUMBER    = "prop.portnumber";
@@ -0,0 +1,124 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+/**
+ * Map from <code>int</code> keys to object values, held in open addressing
+ * arrays so that lookups neither box the key nor allocate.
+ * <p/>
+ * Used for the static lookup tables that are consulted for every message or
+ * column, such as the SQLSTATE and LCID tables. Instances are not synchronized;
+ * they must be filled before being shared, e.g. in a static initializer.
+ * <code>null</code> values are not supported.
+ */
+final class IntMap {
+    /** The keys, valid where the value is not <code>null</code>. */
+    private int[] keys;
+    /** The values, <code>null</code> for empty slots. */
+    private Object[] values;
+    /** The number of entries. */
+    private int size;
+
+    /**
+     * Creates a map with room for the specified number of entries.
+     *
+     * @param expectedSize the number of entries expected
+     */
+    IntMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Retrieves the value mapped to a key.
+     *
+     * @param key the key
+     * @return the value or <code>null</code> if there is none
+     */
+    Object get(int key) {
+        int mask = values.length - 1;
+        for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value, not <code>null</code>
+     */
+    void put(int key, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value");
+        }
+        if ((size + 1) * 2 > values.length) {
+            resize();
+        }
+        int mask = values.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * Retrieves the number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the capacity, rehashing all entries.
+     */
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Spreads the key bits, as error numbers and LCIDs are often sequential.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -126,6 +126,25 @@ public class JtdsCallableStatement extends JtdsPreparedStatement implements Call
         return value;
     }
 
+    /**
+     * Also discards the output parameter registrations and values, so that
+     * the next user of a pooled statement cannot read them.
+     */
+    @Override
+    public boolean recycle() throws SQLException {
+        if (!super.recycle()) {
+            return false;
+        }
+
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i].isOutput = false;
+            parameters[i].clearOutValue();
+        }
+        paramWasNull = false;
+
+        return true;
+    }
+
     /**
      * Check that this statement is still open.
      *
@@ -184,10 +203,14 @@ public class JtdsCallableStatement extends JtdsPreparedStatement implements Call
      * For the rare case of CallableStatement batches each statement is executed individually. This ensures that
      * problems with the server reading into the middle of a statement are avoided. See bug report [1374518] for more
      * details.
+     * <p/>
+     * If the <code>packedCallBatch</code> connection property is set and the call can be sent as an RPC, up to
+     * <code>executeSize</code> calls are sent in one request instead. The update count of each call is taken from the
+     * <code>DONEPROC</code> token ending it, as are the boundaries for assigning return statuses.
      *
      * @param size        the total size of the batch
-     * @param executeSize the maximum number of statements to send in one request (ignored for this version of the
-     *                    method as only one statement will be sent at a time)
+     * @param executeSize the maximum number of statements to send in one request (ignored unless
+     *                    <code>packedCallBatch</code> is set, as otherwise only one statement will be sent at a time)
      * @param counts the returned update counts
      * @return chained exceptions linked to a <code>SQLException</code>
      * @throws SQLException if a serious error occurs during execution
@@ -201,20 +224,31 @@ public class JtdsCallableStatement extends JtdsPreparedStatement implements Call
             return super.executeSybaseBatch(size, executeSize, counts);
         }
 
+        // Calls that could not be parsed into an RPC are sent as language
+        // statements, which are never packed
+        boolean packed = connection.getPackedCallBatch() && procName != null;
         SQLException sqlEx = null;
 
         for (int i = 0; i < size;) {
             Object value = batchValues.get(i);
             ++i;
-            tds.executeSQL(sql, procName, (ParamInfo[]) value, false, 0, -1, -1, true);
+            // Execute batch now if not packing calls, max size reached or end of batch
+            boolean executeNow = !packed || (i % executeSize == 0) || i == size;
+
+            if (packed) {
+                tds.startBatch();
+            }
+            tds.executeSQL(sql, procName, (ParamInfo[]) value, false, 0, -1, -1, executeNow);
 
             // If the batch has been sent, process the results
-            sqlEx = tds.getBatchCounts(counts, sqlEx);
+            if (executeNow) {
+                sqlEx = tds.getBatchCounts(counts, sqlEx);
 
-            // If a serious error then we stop execution now as count
-            // is too small.
-            if (sqlEx != null && counts.size() != i) {
-                break;
+                // If a serious error then we stop execution now as count
+                // is too small.
+                if (sqlEx != null && counts.size() != i) {
+                    break;
+                }
             }
         }
         return sqlEx;
@@ -17,19 +17,23 @@
 //
 package net.sourceforge.jtds.jdbc;
 
-import java.lang.ref.WeakReference;
 import java.sql.*;
 import java.net.UnknownHostException;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sourceforge.jtds.jdbc.cache.*;
 import net.sourceforge.jtds.util.*;
@@ -87,6 +91,29 @@ public class JtdsConnection implements java.sql.Connection {
                                                          "SET IMPLICIT_TRANSACTIONS OFF\r\n" +
                                                          "SET QUOTED_IDENTIFIER ON\r\n"+
                                                          "SET TEXTSIZE 2147483647";
+
+    /**
+     * Server charset learned by querying, for the servers that do not send
+     * it on login (Sybase and SQL Server 6.5), cached by server address so
+     * that later connections to the same server can skip the query. Servers
+     * sending their collation on login are not cached, nothing would be
+     * saved.
+     */
+    private static final class ServerInfo {
+        /** The server version the charset was learned from. */
+        final String version;
+        /** The server charset. */
+        final String charset;
+
+        ServerInfo(String version, String charset) {
+            this.version = version;
+            this.charset = charset;
+        }
+    }
+
+    /** Cache of <code>ServerInfo</code>, keyed by server address. */
+    private static final ConcurrentHashMap<String, ServerInfo> serverInfoCache =
+            new ConcurrentHashMap<>();
     /**
      * SQL Server custom transaction isolation level.
      */
@@ -154,8 +181,19 @@ public class JtdsConnection implements java.sql.Connection {
     private boolean closed;
     /** True if this connection is read only. */
     private boolean readOnly;
-    /** List of statements associated with this connection. */
-    private final ArrayList statements = new ArrayList();
+    /**
+     * Statements associated with this connection. The statements are weakly
+     * referenced; the entries of statements reclaimed by the garbage collector
+     * are expunged from the map's reference queue on its next access.
+     */
+    private final Set statements = Collections.newSetFromMap(new WeakHashMap());
+    /**
+     * Result sets holding row changes queued because of the
+     * <code>deferRowUpdates</code> property, in the order the changes were
+     * queued. Strongly referenced so that the changes of a result set the
+     * application has dropped are still sent.
+     */
+    private final Set deferredRowUpdates = new LinkedHashSet();
     /** Default transaction isolation level. */
     private int transactionIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
     /** Default auto commit state. */
@@ -226,8 +264,46 @@ public class JtdsConnection implements java.sql.Connection {
     private int bufferMaxMemory;
     /** The minimum number of packets per statement to buffer to memory. */
     private int bufferMinPackets;
+    /** The memory budget for adaptive cursor fetches (in kilobytes). */
+    private int cursorFetchBuffer;
+    /** Time to cache named instance ports (in seconds). */
+    private int instanceCacheTtl;
+    /** The maximum number of warnings retained per statement, 0 for no limit. */
+    private int maxWarnings;
+    /** Time to cache <code>DatabaseMetaData</code> results (in seconds). */
+    private int metaDataCacheTtl;
+    /** Maximum number of cached <code>DatabaseMetaData</code> results. */
+    private int metaDataCacheSize;
+    /** The <code>DatabaseMetaData</code> cache or <code>null</code> if disabled. */
+    private MetaDataCache metaDataCache;
+    /** Receives the informational messages sent by the server. */
+    private volatile MessageListener messageListener;
+    /** Rows read when closing a result set before cancelling, 0 to read all. */
+    private int closeCancelThreshold;
+    /** Idle statements kept by each <code>jdbcx.PooledConnection</code>. */
+    private int maxPooledStatements;
+    /** Queue changes to cached updatable result sets and send them in batches. */
+    private boolean deferRowUpdates;
+    /** Send batches of Sybase procedure calls in one request. */
+    private boolean packedCallBatch;
+    /** Apply catalog, isolation and auto commit changes with the next request. */
+    private boolean deferSessionState;
+    /** Guards the deferred session state, see takeSessionStateSql. */
+    private final Object sessionStateLock = new Object();
+    /** Catalog requested by <code>setCatalog()</code> but not yet selected. */
+    private String pendingCatalog;
+    /** Isolation level set on the server, -1 if unknown. */
+    private int serverIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
+    /** Auto commit mode set on the server, <code>null</code> if unknown. */
+    private Boolean serverAutoCommit = Boolean.TRUE;
+    /** Isolation level sent with the last prepended session state, or -1. */
+    private int prefixedIsolation = -1;
+    /** Auto commit mode sent with the last prepended session state. */
+    private Boolean prefixedAutoCommit;
     /** Map large types (IMAGE and TEXT/NTEXT) to LOBs by default. */
     private boolean useLOBs;
+    /** Fetch text and image values on demand rather than with the row. */
+    private boolean lazyLOBs;
     /** A cached <code>TdsCore</code> instance to reuse on new statements. */
     private TdsCore cachedTds;
     /** The local address to bind to when connecting to a database via TCP/IP. */
@@ -241,6 +317,15 @@ public class JtdsConnection implements java.sql.Connection {
 
     /** the number of currently open connections */
     private static int[] connections = new int[1];
+    /** Cleanup action for connections reclaimed without being closed. */
+    private static final Runnable CONNECTION_CLEANUP = new Runnable() {
+        public void run() {
+            // The socket has its own cleanup action, just update the count
+            releaseConnection();
+        }
+    };
+    /** Registration of this connection with the cleaner. */
+    private final ResourceCleaner.Cleanable cleanable;
     /** The list of savepoints. */
     private ArrayList savepoints;
     /** Maps each savepoint to a list of temp procedures created since the savepoint */
@@ -257,6 +342,7 @@ public class JtdsConnection implements java.sql.Connection {
         synchronized( connections ) {
             connections[0] ++;
         }
+        cleanable = ResourceCleaner.register(this, CONNECTION_CLEANUP, "Connection");
         url = null;
         socket = null;
         baseTds = null;
@@ -275,21 +361,21 @@ public class JtdsConnection implements java.sql.Connection {
         synchronized( connections ) {
             connections[0] ++;
         }
+        cleanable = ResourceCleaner.register(this, CONNECTION_CLEANUP, "Connection");
         this.url = url;
         //
         // Extract properties into instance variables
         //
         unpackProperties(info);
-        messages = new SQLDiagnostic(serverType);
+        messages = new SQLDiagnostic(this);
         //
         // Get the instance port, if it is specified.
         // Named pipes use instance names differently.
         //
         if (instanceName.length() > 0 && !namedPipe) {
             try {
-                final MSSqlServerInfo msInfo = new MSSqlServerInfo(serverName);
-
-                portNumber = msInfo.getPortForInstance(instanceName);
+                portNumber = MSSqlServerInfo.getPortForInstance(serverName,
+                        instanceName, instanceCacheTtl);
             } catch (SQLException e) {
                // may already have a valid portNumber but Microsoft SQL Server Browser disabled
                if (portNumber <= 0) {
@@ -385,7 +471,7 @@ public class JtdsConnection implements java.sql.Connection {
             // Save any login warnings so that they will not be overwritten by
             // the internal configuration SQL statements e.g. setCatalog() etc.
             //
-            warn = messages.warnings;
+            warn = messages.getWarnings();
 
             // Update the tdsVersion with the value in baseTds. baseTds sets
             // the TDS version for the socket and there are no other objects
@@ -396,31 +482,56 @@ public class JtdsConnection implements java.sql.Connection {
                 setCatalog(databaseName);
             }
 
+            String serverKey = serverType + ":" + serverName.toLowerCase()
+                    + ':' + portNumber + '/' + instanceName.toLowerCase();
+
             // If charset is still unknown and the collation is not set either,
             // determine the charset by querying (we're using Sybase or SQL Server
-            // 6.5)
+            // 6.5), unless an earlier connection to the same server has done
+            // so and the server version has not changed since
+            String charsetQuery = null;
             if ((serverCharset == null || serverCharset.length() == 0)
                     && collation == null) {
-                loadCharset(determineServerCharset());
+                ServerInfo cachedInfo = serverInfoCache.get(serverKey);
+                if (cachedInfo != null && cachedInfo.version.equals(databaseProductVersion)) {
+                    loadCharset(cachedInfo.charset);
+                } else {
+                    charsetQuery = getServerCharsetQuery();
+                }
             }
 
             // Initial database settings.
             // Sets: auto commit mode  = true
             //       transaction isolation = read committed.
             if (serverType == Driver.SYBASE) {
-                baseTds.submitSQL(SYBASE_INITIAL_SQL);
+                if (charsetQuery != null) {
+                    // Determine the charset in the same round trip
+                    loadCharset(queryServerCharset(charsetQuery + "\r\n"
+                            + SYBASE_INITIAL_SQL));
+                } else {
+                    baseTds.submitSQL(SYBASE_INITIAL_SQL);
+                }
             } else {
+                if (charsetQuery != null) {
+                    loadCharset(queryServerCharset(charsetQuery));
+                }
                 // Also discover the maximum decimal precision:  28 (default)
                 // or 38 for MS SQL Server 6.5/7, or 38 for 2000 and later.
-                Statement stmt = this.createStatement();
-                ResultSet rs = stmt.executeQuery(SQL_SERVER_INITIAL_SQL);
+                Object precision = executeInitialQuery(SQL_SERVER_INITIAL_SQL);
 
-                if (rs.next()) {
-                    maxPrecision = rs.getByte(1);
+                if (precision != null) {
+                    maxPrecision = ((Number) precision).intValue();
                 }
+            }
 
-                rs.close();
-                stmt.close();
+            if (charsetQuery != null && databaseProductVersion != null) {
+                serverInfoCache.put(serverKey,
+                        new ServerInfo(databaseProductVersion, serverCharset));
+            }
+
+            if (metaDataCacheTtl > 0) {
+                metaDataCache = MetaDataCache.getInstance(serverKey + '/'
+                        + domainName + '\\' + user, metaDataCacheSize);
             }
         } catch (UnknownHostException e) {
             loginError = true;
@@ -429,6 +540,10 @@ public class JtdsConnection implements java.sql.Connection {
                             e.getMessage()), "08S03"), e);
         } catch (IOException e) {
             loginError = true;
+            if (instanceName.length() > 0 && !namedPipe) {
+                // The instance may have moved to another port
+                MSSqlServerInfo.invalidate(serverName, instanceName);
+            }
             if (loginTimeout > 0 && e.getMessage().indexOf("timed out") >= 0) {
                 throw Support.linkException(
                         new SQLException(Messages.get("error.connection.timeout"), "HYT01"), e);
@@ -461,25 +576,12 @@ public class JtdsConnection implements java.sql.Connection {
         // Restore any login warnings so that the user can retrieve them
         // by calling Connection.getWarnings()
         //
-        messages.warnings = warn;
+        messages.clearWarnings();
+        if (warn != null) {
+            messages.addWarning(warn);
+        }
     }
 
-   /**
-    * Ensure all resources are released.
-    */
-   protected void finalize()
-      throws Throwable
-   {
-      try
-      {
-         close();
-      }
-      finally
-      {
-         super.finalize();
-      }
-   }
-
     /**
      * Creates a {@link SharedSocket} object representing a connection to a named
      * pipe.  If the <code>os.name</code> system property starts with "Windows"
@@ -690,7 +792,7 @@ public class JtdsConnection implements java.sql.Connection {
             //
 
             // If already used by the statement, decrement use count
-            if (pstmt.handles != null && pstmt.handles.contains(proc)) {
+            if (pstmt.handles.contains(proc)) {
                 proc.release();
             }
 
@@ -742,10 +844,6 @@ public class JtdsConnection implements java.sql.Connection {
         // Add the handle to the prepared statement so that the handles
         // can be used to clean up the statement cache properly when the
         // prepared statement is closed.
-        if (pstmt.handles == null) {
-            pstmt.handles = new HashSet(10);
-        }
-
         pstmt.handles.add(proc);
 
         // Give the user the name will be null if prepare failed
@@ -812,6 +910,78 @@ public class JtdsConnection implements java.sql.Connection {
         return serverType;
     }
 
+    /**
+     * Retrieves the maximum number of warnings retained per statement.
+     *
+     * @return the warning limit, 0 for no limit
+     */
+    int getMaxWarnings() {
+        return maxWarnings;
+    }
+
+    /**
+     * Retrieves the <code>DatabaseMetaData</code> cache shared by the
+     * connections to this server as this user.
+     *
+     * @return the cache or <code>null</code> if caching is disabled
+     */
+    MetaDataCache getMetaDataCache() {
+        return metaDataCache;
+    }
+
+    /**
+     * Retrieves the time to cache <code>DatabaseMetaData</code> results.
+     *
+     * @return the time to live in seconds
+     */
+    int getMetaDataCacheTtl() {
+        return metaDataCacheTtl;
+    }
+
+    /**
+     * Retrieves the number of rows read when closing a result set that has
+     * not been read to the end, before the rest of the response is cancelled.
+     *
+     * @return the number of rows or 0 to always read all rows
+     */
+    int getCloseCancelThreshold() {
+        return closeCancelThreshold;
+    }
+
+    /**
+     * Retrieves the number of idle prepared and callable statements a
+     * <code>jdbcx.PooledConnection</code> wrapping this connection keeps for
+     * reuse.
+     *
+     * @return the statement pool size or 0 if statements are not pooled
+     */
+    public int getMaxPooledStatements() {
+        return maxPooledStatements;
+    }
+
+    /**
+     * Sets the listener to receive the informational messages sent by the
+     * server, such as the output of <code>PRINT</code> statements, as they
+     * are read. Messages the listener handles are not added to the warning
+     * chain of the statement or connection.
+     *
+     * @param listener the message listener or <code>null</code> to remove
+     *                 the current listener
+     */
+    public void setMessageListener(MessageListener listener) {
+        messageListener = listener;
+    }
+
+    /**
+     * Retrieves the listener receiving the informational messages sent by
+     * the server.
+     *
+     * @return the message listener or <code>null</code>
+     */
+    public MessageListener getMessageListener() {
+        return messageListener;
+    }
+
     /**
      * Sets the network packet size.
      *
@@ -944,6 +1114,103 @@ public class JtdsConnection implements java.sql.Connection {
         return useLOBs;
     }
 
+    /**
+     * Indicates whether text and image values are fetched on demand with
+     * <code>READTEXT</code> instead of being read with the row.
+     *
+     * @return <code>true</code> if LOB values are read lazily
+     */
+    boolean getLazyLOBs() {
+        return lazyLOBs;
+    }
+
+    /**
+     * Indicates whether changes to cached updatable result sets are queued
+     * and sent in batches.
+     *
+     * @return <code>true</code> if row updates are deferred
+     */
+    boolean getDeferRowUpdates() {
+        return deferRowUpdates;
+    }
+
+    /**
+     * Indicates whether batches of procedure calls are sent to Sybase in one
+     * request rather than one request per call.
+     *
+     * @return <code>true</code> if procedure call batches are packed
+     */
+    boolean getPackedCallBatch() {
+        return packedCallBatch;
+    }
+
+    /**
+     * Retrieves the SQL needed to bring the server in line with the catalog,
+     * isolation level and auto commit mode set on this connection, if
+     * changes are deferred (see the <code>deferSessionState</code> property).
+     * The state is assumed to be applied once retrieved.
+     * <p/>
+     * Not synchronized on the connection because it is called while holding
+     * the network mutex.
+     *
+     * @param prefix <code>true</code> if the SQL will be prepended to an SQL
+     *               batch; a catalog change is then left pending, because a
+     *               failing <code>USE</code> must be reported on its own
+     * @return the SQL to execute or <code>null</code> if nothing is pending
+     * @throws SQLException if the isolation level is not supported
+     */
+    String takeSessionStateSql(boolean prefix) throws SQLException {
+        if (!deferSessionState) {
+            return null;
+        }
+
+        synchronized (sessionStateLock) {
+            StringBuilder sql = new StringBuilder();
+            if (!prefix && pendingCatalog != null) {
+                sql.append(getCatalogSql(pendingCatalog)).append("\r\n");
+                pendingCatalog = null;
+            }
+            if (prefix) {
+                prefixedIsolation = -1;
+                prefixedAutoCommit = null;
+            }
+            if (serverIsolation != transactionIsolation) {
+                sql.append(getIsolationLevelSql(transactionIsolation)).append("\r\n");
+                serverIsolation = transactionIsolation;
+                if (prefix) {
+                    prefixedIsolation = transactionIsolation;
+                }
+            }
+            if (serverAutoCommit == null
+                    || serverAutoCommit.booleanValue() != autoCommit) {
+                sql.append(getAutoCommitSql(autoCommit)).append("\r\n");
+                serverAutoCommit = Boolean.valueOf(autoCommit);
+                if (prefix) {
+                    prefixedAutoCommit = serverAutoCommit;
+                }
+            }
+            return sql.length() == 0 ? null : sql.toString();
+        }
+    }
+
+    /**
+     * Called when a batch with prepended session state returned an error.
+     * The batch may not have been executed at all (e.g. because of a syntax
+     * error), so the state it contained is sent again with the next request.
+     */
+    void sessionStateFailed() {
+        synchronized (sessionStateLock) {
+            if (prefixedIsolation != -1 && serverIsolation == prefixedIsolation) {
+                serverIsolation = -1;
+            }
+            if (prefixedAutoCommit != null && prefixedAutoCommit.equals(serverAutoCommit)) {
+                serverAutoCommit = null;
+            }
+            prefixedIsolation = -1;
+            prefixedAutoCommit = null;
+        }
+    }
+
     /**
      * Indicates whether, when doing Windows authentication to an MS SQL server,
      * NTLMv2 should be used. When this is set to "false", LM and NTLM responses
@@ -1008,6 +1275,16 @@ public class JtdsConnection implements java.sql.Connection {
         return bufferMinPackets;
     }
 
+    /**
+     * Retrieves the memory budget in Kb for adaptive server-side cursor
+     * fetches.
+     *
+     * @return the memory budget in Kb or 0 if adaptive fetching is disabled
+     */
+    int getCursorFetchBuffer() {
+        return cursorFetchBuffer;
+    }
+
     /**
      * Retrieves the database name for this connection.
      *
@@ -1198,9 +1475,13 @@ public class JtdsConnection implements java.sql.Connection {
         lastUpdateCount = parseBooleanProperty(info,Driver.LASTUPDATECOUNT);
         useUnicode = parseBooleanProperty(info,Driver.SENDSTRINGPARAMETERSASUNICODE);
         namedPipe = parseBooleanProperty(info,Driver.NAMEDPIPE);
+        deferRowUpdates = parseBooleanProperty(info, Driver.DEFERROWUPDATES);
+        deferSessionState = parseBooleanProperty(info, Driver.DEFERSESSIONSTATE);
+        packedCallBatch = parseBooleanProperty(info, Driver.PACKEDCALLBATCH);
         tcpNoDelay = parseBooleanProperty(info,Driver.TCPNODELAY);
         useCursors = (serverType == Driver.SQLSERVER) && parseBooleanProperty(info,Driver.USECURSORS);
         useLOBs = parseBooleanProperty(info,Driver.USELOBS);
+        lazyLOBs = parseBooleanProperty(info, Driver.LAZYLOBS);
         useMetadataCache = parseBooleanProperty(info,Driver.CACHEMETA);
         xaEmulation = parseBooleanProperty(info,Driver.XAEMULATION);
         useJCIFS = parseBooleanProperty(info,Driver.USEJCIFS);
@@ -1299,6 +1580,48 @@ public class JtdsConnection implements java.sql.Connection {
             throw new SQLException(Messages.get("error.connection.badprop",
                     Messages.get(Driver.BUFFERMINPACKETS)), "08001");
         }
+
+        cursorFetchBuffer = parseIntegerProperty(info, Driver.CURSORFETCHBUFFER);
+        if (cursorFetchBuffer < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.CURSORFETCHBUFFER)), "08001");
+        }
+
+        instanceCacheTtl = parseIntegerProperty(info, Driver.INSTANCECACHETTL);
+        if (instanceCacheTtl < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.INSTANCECACHETTL)), "08001");
+        }
+
+        maxWarnings = parseIntegerProperty(info, Driver.MAXWARNINGS);
+        if (maxWarnings < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.MAXWARNINGS)), "08001");
+        }
+
+        closeCancelThreshold = parseIntegerProperty(info, Driver.CLOSECANCELTHRESHOLD);
+        if (closeCancelThreshold < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.CLOSECANCELTHRESHOLD)), "08001");
+        }
+
+        maxPooledStatements = parseIntegerProperty(info, Driver.MAXPOOLEDSTATEMENTS);
+        if (maxPooledStatements < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.MAXPOOLEDSTATEMENTS)), "08001");
+        }
+
+        metaDataCacheTtl = parseIntegerProperty(info, Driver.METADATACACHETTL);
+        if (metaDataCacheTtl < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.METADATACACHETTL)), "08001");
+        }
+
+        metaDataCacheSize = parseIntegerProperty(info, Driver.METADATACACHESIZE);
+        if (metaDataCacheSize < 1) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.METADATACACHESIZE)), "08001");
+        }
     }
 
     /**
@@ -1482,20 +1805,18 @@ public class JtdsConnection implements java.sql.Connection {
     }
 
     /**
-     * Discovers the server charset for server versions that do not send
-     * <code>ENVCHANGE</code> packets on login ack, by executing a DB
-     * vendor/version specific query.
+     * Retrieves the DB vendor/version specific query that discovers the server
+     * charset for server versions that do not send <code>ENVCHANGE</code>
+     * packets on login ack.
      * <p>
      * Will throw an <code>SQLException</code> if used on SQL Server 7.0 or
      * 2000; the idea is that the charset should already be determined from
      * <code>ENVCHANGE</code> packets for these DB servers.
-     * <p>
-     * Should only be called from the constructor.
      *
-     * @return the default server charset
+     * @return the charset query
      * @throws SQLException if an error condition occurs
      */
-    private String determineServerCharset() throws SQLException {
+    private String getServerCharsetQuery() throws SQLException {
         String queryStr = null;
 
         switch (serverType) {
@@ -1515,14 +1836,54 @@ public class JtdsConnection implements java.sql.Connection {
                 break;
         }
 
-        Statement stmt = this.createStatement();
-        ResultSet rs = stmt.executeQuery(queryStr);
-        rs.next();
-        String charset = rs.getString(1);
-        rs.close();
-        stmt.close();
+        return queryStr;
+    }
+
+    /**
+     * Executes an initialization batch starting with the server charset query
+     * and returns the charset name.
+     *
+     * @param sql the charset query, possibly followed by more initialization
+     *            SQL
+     * @return the server charset name
+     * @throws SQLException if the query fails or returns no row
+     */
+    private String queryServerCharset(String sql) throws SQLException {
+        Object charset = executeInitialQuery(sql);
+
+        if (charset == null) {
+            throw new SQLException(Messages.get("error.resultset.norow"), "24000");
+        }
 
-        return charset;
+        return charset.toString();
+    }
+
+    /**
+     * Executes an initialization batch on the base <code>TdsCore</code>,
+     * without the overhead of a <code>Statement</code>, and returns the
+     * value of the first column of the first row returned.
+     * <p>
+     * Should only be called from the constructor.
+     *
+     * @param sql the initialization SQL
+     * @return the first value returned, or <code>null</code>
+     * @throws SQLException if an error condition occurs
+     */
+    private Object executeInitialQuery(String sql) throws SQLException {
+        Object value = null;
+
+        messages.clearWarnings();
+        baseTds.executeSQL(sql, null, null, false, 0, -1, -1, true);
+        while (!baseTds.isEndOfResponse()) {
+            if (baseTds.getMoreResults() && value == null
+                    && baseTds.getNextRow()) {
+                value = baseTds.getRowData()[0];
+            }
+        }
+        baseTds.clearResponseQueue();
+        messages.checkErrors();
+
+        return value;
     }
 
     /**
@@ -1553,7 +1914,9 @@ public class JtdsConnection implements java.sql.Connection {
         CharsetInfo tmp = CharsetInfo.getCharset(collation);
 
         loadCharset(tmp, strCollation);
-        this.collation = collation;
+        // Use the shared array, so columns can compare it by reference
+        this.collation = CharsetInfo.internCollation(
+                CharsetInfo.collationKey(collation));
 
         if (Logger.isActive()) {
             Logger.println("Set collation to " + strCollation + '/'
@@ -1657,80 +2020,181 @@ public class JtdsConnection implements java.sql.Connection {
             throws SQLException {
         // Remove the JtdsStatement from the statement list
         synchronized (statements) {
-            for (int i = 0; i < statements.size(); i++) {
-                WeakReference wr = (WeakReference) statements.get(i);
+            statements.remove(statement);
+        }
 
-                if (wr != null) {
-                    Statement stmt = (Statement) wr.get();
+        if (statement.cleanable != null) {
+            statement.cleanable.cancel();
+        }
 
-                    // Remove the statement if found but also remove all
-                    // statements that have already been garbage collected
-                    if (stmt == null || stmt == statement) {
-                        statements.set(i, null);
+        if (statement instanceof JtdsPreparedStatement) {
+            releaseHandles(((JtdsPreparedStatement) statement).handles);
+        }
+    }
+
+    /**
+     * Decrements the usage count of the procedures used by a prepared
+     * statement and drops the procedures that are no longer required.
+     *
+     * @param stmtHandles the handles used by the statement
+     */
+    private void releaseHandles(Collection stmtHandles) throws SQLException {
+        // Clean up the prepared statement cache; getObsoleteHandles will
+        // decrement the usage count for the set of used handles
+        Collection handles = statementCache.getObsoleteHandles(stmtHandles);
+
+        if (handles != null) {
+            if (serverType == Driver.SQLSERVER) {
+                // SQL Server unprepare
+                StringBuilder cleanupSql = new StringBuilder(handles.size() * 32);
+                for (Iterator iterator = handles.iterator(); iterator.hasNext(); ) {
+                    ProcEntry pe = (ProcEntry) iterator.next();
+                    // Could get put back if in a transaction that is
+                    // rolled back
+                    pe.appendDropSQL(cleanupSql);
+                }
+                if (cleanupSql.length() > 0) {
+                    baseTds.executeSQL(cleanupSql.toString(), null, null, true, 0,
+                                        -1, -1, true);
+                    baseTds.clearResponseQueue();
+                }
+            } else {
+                // Sybase unprepare
+                for (Iterator iterator = handles.iterator(); iterator.hasNext(); ) {
+                    ProcEntry pe = (ProcEntry)iterator.next();
+                    if (pe.toString() != null) {
+                        // Remove the Sybase light weight proc
+                        baseTds.sybaseUnPrepare(pe.toString());
                     }
                 }
             }
         }
+    }
 
-        if (statement instanceof JtdsPreparedStatement) {
-            // Clean up the prepared statement cache; getObsoleteHandles will
-            // decrement the usage count for the set of used handles
-            Collection handles = statementCache.getObsoleteHandles(
-                                          ((JtdsPreparedStatement) statement).handles);
-
+    /**
+     * Releases the resources of a statement that has been reclaimed by the
+     * garbage collector without being closed.
+     * <p>
+     * Synchronized because it accesses the statement cache and the
+     * <code>baseTds</code>.
+     *
+     * @param tds     the statement's <code>TdsCore</code>
+     * @param handles the handles used by the statement or <code>null</code>
+     */
+    synchronized void releaseStatement(TdsCore tds, Collection handles) {
+        if (closed) {
+            return;
+        }
+        try {
+            releaseTds(tds);
             if (handles != null) {
-                if (serverType == Driver.SQLSERVER) {
-                    // SQL Server unprepare
-                    StringBuilder cleanupSql = new StringBuilder(handles.size() * 32);
-                    for (Iterator iterator = handles.iterator(); iterator.hasNext(); ) {
-                        ProcEntry pe = (ProcEntry) iterator.next();
-                        // Could get put back if in a transaction that is
-                        // rolled back
-                        pe.appendDropSQL(cleanupSql);
-                    }
-                    if (cleanupSql.length() > 0) {
-                        baseTds.executeSQL(cleanupSql.toString(), null, null, true, 0,
-                                            -1, -1, true);
-                        baseTds.clearResponseQueue();
-                    }
-                } else {
-                    // Sybase unprepare
-                    for (Iterator iterator = handles.iterator(); iterator.hasNext(); ) {
-                        ProcEntry pe = (ProcEntry)iterator.next();
-                        if (pe.toString() != null) {
-                            // Remove the Sybase light weight proc
-                            baseTds.sybaseUnPrepare(pe.toString());
-                        }
-                    }
-                }
+                releaseHandles(handles);
+            }
+        } catch (SQLException e) {
+            Logger.logException(e);
+        }
+    }
+
+    /**
+     * Registers a result set that has queued row changes, so that they are
+     * sent before the transaction ends.
+     *
+     * @param rs the result set
+     */
+    void addDeferredRowUpdates(CachedResultSet rs) {
+        synchronized (deferredRowUpdates) {
+            deferredRowUpdates.add(rs);
+        }
+    }
+
+    /**
+     * Unregisters a result set whose queued row changes have been sent or
+     * discarded.
+     *
+     * @param rs the result set
+     */
+    void removeDeferredRowUpdates(CachedResultSet rs) {
+        synchronized (deferredRowUpdates) {
+            deferredRowUpdates.remove(rs);
+        }
+    }
+
+    /**
+     * Sends the queued row changes of all result sets, before the current
+     * transaction is committed or a savepoint is set.
+     *
+     * @throws SQLException if the changes cannot be sent
+     */
+    private void flushDeferredRowUpdates() throws SQLException {
+        ArrayList tmpList;
+        synchronized (deferredRowUpdates) {
+            if (deferredRowUpdates.isEmpty()) {
+                return;
+            }
+            tmpList = new ArrayList(deferredRowUpdates);
+        }
+        for (int i = 0; i < tmpList.size(); i++) {
+            ((CachedResultSet) tmpList.get(i)).flushRowUpdates();
+        }
+    }
+
+    /**
+     * Discards the queued row changes of all result sets, which belong to
+     * the transaction or savepoint being rolled back.
+     */
+    private void discardDeferredRowUpdates() {
+        ArrayList tmpList;
+        synchronized (deferredRowUpdates) {
+            if (deferredRowUpdates.isEmpty()) {
+                return;
             }
+            tmpList = new ArrayList(deferredRowUpdates);
+        }
+        for (int i = 0; i < tmpList.size(); i++) {
+            ((CachedResultSet) tmpList.get(i)).discardRowUpdates();
         }
     }
 
     /**
      * Adds a statement object to the list maintained by the connection.
      * <p/>
-     * WeakReferences are used so that statements can still be closed and
-     * garbage collected even if not explicitly closed by the connection.
+     * The statement is weakly referenced so that it can still be garbage
+     * collected if not explicitly closed; it is registered with the
+     * {@link ResourceCleaner} to release its <code>TdsCore</code> and
+     * prepared procedures in that case.
      *
      * @param statement statement to add
      */
     void addStatement(JtdsStatement statement) {
         synchronized (statements) {
-            for (int i = 0; i < statements.size(); i++) {
-                WeakReference wr = (WeakReference) statements.get(i);
+            statements.add(statement);
+        }
 
-                // FIXME: entries from statements should be dropped immediately
-                // on GC, instead of being kept until overwritten or connection
-                // being closed
+        statement.cleanable = ResourceCleaner.register(statement,
+                new StatementCleanup(this, statement.getTds(),
+                        statement instanceof JtdsPreparedStatement
+                                ? ((JtdsPreparedStatement) statement).handles
+                                : null),
+                "Statement");
+    }
 
-                if (wr == null || wr.get() == null) {
-                    statements.set(i, new WeakReference(statement));
-                    return;
-                }
-            }
+    /**
+     * Cleanup action for statements reclaimed without being closed. Holds
+     * the statement's resources but not the statement itself.
+     */
+    private static class StatementCleanup implements Runnable {
+        private final JtdsConnection connection;
+        private final TdsCore tds;
+        private final Collection handles;
+
+        StatementCleanup(JtdsConnection connection, TdsCore tds, Collection handles) {
+            this.connection = connection;
+            this.tds = tds;
+            this.handles = handles;
+        }
 
-            statements.add(new WeakReference(statement));
+        public void run() {
+            connection.releaseStatement(tds, handles);
         }
     }
 
@@ -2100,17 +2564,28 @@ public class JtdsConnection implements java.sql.Connection {
                 }
 
                 for (int i = 0; i < tmpList.size(); i++) {
-                    WeakReference wr = (WeakReference)tmpList.get(i);
-
-                    if (wr != null) {
-                        Statement stmt = (Statement) wr.get();
-                        if (stmt != null) {
-                            try {
-                                stmt.close();
-                            } catch (SQLException ex) {
-                                // Ignore
-                            }
-                        }
+                    Statement stmt = (Statement) tmpList.get(i);
+                    try {
+                        stmt.close();
+                    } catch (SQLException ex) {
+                        // Ignore
+                    }
+                }
+
+                //
+                // Close result sets still holding queued row changes, as
+                // closing their statements would have
+                //
+                synchronized (deferredRowUpdates) {
+                    tmpList = new ArrayList(deferredRowUpdates);
+                    deferredRowUpdates.clear();
+                }
+
+                for (int i = 0; i < tmpList.size(); i++) {
+                    try {
+                        ((CachedResultSet) tmpList.get(i)).close();
+                    } catch (SQLException ex) {
+                        // Ignore
                     }
                 }
 
@@ -2136,11 +2611,20 @@ public class JtdsConnection implements java.sql.Connection {
                 // Ignore
             } finally {
                 closed = true;
-                synchronized( connections ) {
-                    if (--connections[0] == 0) {
-                        TimerThread.stopTimer();
-                    }
-                }
+                cleanable.cancel();
+                releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Decrements the number of open connections, stopping the timer thread
+     * when the last connection is closed.
+     */
+    private static void releaseConnection() {
+        synchronized( connections ) {
+            if (--connections[0] == 0) {
+                TimerThread.stopTimer();
             }
         }
     }
@@ -2155,6 +2639,7 @@ public class JtdsConnection implements java.sql.Connection {
                     "25000");
         }
 
+        flushDeferredRowUpdates();
         baseTds.submitSQL("IF @@TRANCOUNT > 0 COMMIT TRAN");
         procInTran.clear();
         clearSavepoints();
@@ -2170,6 +2655,7 @@ public class JtdsConnection implements java.sql.Connection {
                     "25000");
         }
 
+        discardDeferredRowUpdates();
         baseTds.submitSQL("IF @@TRANCOUNT > 0 ROLLBACK TRAN");
 
         for (int i = 0; i < procInTran.size(); i++) {
@@ -2227,6 +2713,28 @@ public class JtdsConnection implements java.sql.Connection {
             return;
         }
 
+        String sql = getIsolationLevelSql(level);
+
+        if (deferSessionState) {
+            synchronized (sessionStateLock) {
+                transactionIsolation = level;
+            }
+            return;
+        }
+
+        transactionIsolation = level;
+        baseTds.submitSQL(sql);
+        serverIsolation = level;
+    }
+
+    /**
+     * Builds the SQL that sets the transaction isolation level.
+     *
+     * @param level the JDBC isolation level
+     * @return the <code>SET TRANSACTION ISOLATION LEVEL</code> statement
+     * @throws SQLException if the level is not supported
+     */
+    private String getIsolationLevelSql(int level) throws SQLException {
         String sql = "SET TRANSACTION ISOLATION LEVEL ";
         boolean sybase = serverType == Driver.SYBASE;
 
@@ -2268,8 +2776,7 @@ public class JtdsConnection implements java.sql.Connection {
                         "HY092");
         }
 
-        transactionIsolation = level;
-        baseTds.submitSQL(sql);
+        return sql;
     }
 
     synchronized public void setAutoCommit(boolean autoCommit) throws SQLException {
@@ -2287,6 +2794,23 @@ public class JtdsConnection implements java.sql.Connection {
             return;
         }
 
+        if (autoCommit) {
+            // The queued row changes belong to the transaction committed
+            // below; sending them may also start it on the server
+            flushDeferredRowUpdates();
+        }
+
+        if (deferSessionState
+                && (!autoCommit || Boolean.TRUE.equals(serverAutoCommit))) {
+            // Switching auto commit off can wait for the next request, as
+            // can switching it back on before it was ever switched off on
+            // the server (no transaction can be open in that case)
+            synchronized (sessionStateLock) {
+                this.autoCommit = autoCommit;
+            }
+            return;
+        }
+
         StringBuilder sql = new StringBuilder(70);
         //
         if (!this.autoCommit) {
@@ -2295,22 +2819,25 @@ public class JtdsConnection implements java.sql.Connection {
             sql.append("IF @@TRANCOUNT > 0 COMMIT TRAN\r\n");
         }
 
-        if (serverType == Driver.SYBASE) {
-            if (autoCommit) {
-                sql.append("SET CHAINED OFF");
-            } else {
-                sql.append("SET CHAINED ON");
-            }
-        } else {
-            if (autoCommit) {
-                sql.append("SET IMPLICIT_TRANSACTIONS OFF");
-            } else {
-                sql.append("SET IMPLICIT_TRANSACTIONS ON");
-            }
-        }
+        sql.append(getAutoCommitSql(autoCommit));
 
         baseTds.submitSQL(sql.toString());
         this.autoCommit = autoCommit;
+        serverAutoCommit = Boolean.valueOf(autoCommit);
+    }
+
+    /**
+     * Builds the SQL that sets the auto commit mode.
+     *
+     * @param autoCommit the new auto commit mode
+     * @return the <code>SET</code> statement
+     */
+    private String getAutoCommitSql(boolean autoCommit) {
+        if (serverType == Driver.SYBASE) {
+            return autoCommit ? "SET CHAINED OFF" : "SET CHAINED ON";
+        }
+        return autoCommit ? "SET IMPLICIT_TRANSACTIONS OFF"
+                : "SET IMPLICIT_TRANSACTIONS ON";
     }
 
     public void setReadOnly(boolean readOnly) throws SQLException {
@@ -2321,13 +2848,19 @@ public class JtdsConnection implements java.sql.Connection {
     synchronized public String getCatalog() throws SQLException {
         checkOpen();
 
-        return currentDatabase;
+        String catalog = pendingCatalog;
+        return catalog != null ? catalog : currentDatabase;
     }
 
     synchronized public void setCatalog(String catalog) throws SQLException {
         checkOpen();
 
         if (currentDatabase != null && currentDatabase.equals(catalog)) {
+            if (pendingCatalog != null) {
+                synchronized (sessionStateLock) {
+                    pendingCatalog = null;
+                }
+            }
             return;
         }
 
@@ -2341,9 +2874,25 @@ public class JtdsConnection implements java.sql.Connection {
                     "3D000");
         }
 
-        String sql = tdsVersion >= Driver.TDS70
+        if (deferSessionState) {
+            synchronized (sessionStateLock) {
+                pendingCatalog = catalog;
+            }
+            return;
+        }
+
+        baseTds.submitSQL(getCatalogSql(catalog));
+    }
+
+    /**
+     * Builds the SQL that selects a catalog.
+     *
+     * @param catalog the catalog name
+     * @return the <code>use</code> statement
+     */
+    private String getCatalogSql(String catalog) {
+        return tdsVersion >= Driver.TDS70
                 ? ("use [" + catalog + ']') : "use " + catalog;
-        baseTds.submitSQL(sql);
     }
 
     public DatabaseMetaData getMetaData() throws SQLException {
@@ -2546,6 +3095,9 @@ public class JtdsConnection implements java.sql.Connection {
     private void setSavepoint(SavepointImpl savepoint) throws SQLException {
         Statement statement = null;
 
+        // Changes queued before the savepoint must not be rolled back to it
+        flushDeferredRowUpdates();
+
         try {
             statement = createStatement();
             statement.execute("IF @@TRANCOUNT=0 BEGIN "
@@ -2648,6 +3200,9 @@ public class JtdsConnection implements java.sql.Connection {
                  Messages.get("error.connection.savenorollback"), "25000");
          }
 
+         // All queued changes were made after the savepoint was set
+         discardDeferredRowUpdates();
+
          Statement statement = null;
 
          try {
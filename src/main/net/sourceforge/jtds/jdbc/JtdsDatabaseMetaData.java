@@ -19,6 +19,7 @@ package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -188,6 +189,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.INTEGER,     Types.INTEGER,
                              Types.SMALLINT,    Types.SMALLINT};
 
+        String key = cacheKey("getBestRowIdentifier", catalog,
+                schema, table, new Integer(scope), Boolean.valueOf(nullable));
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_special_columns ?, ?, ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -219,7 +227,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         // Do not close the statement, rsTmp is also built from it
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -409,6 +417,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.VARCHAR,         Types.VARCHAR,
                              Types.VARCHAR,         Types.SMALLINT,
                              Types.VARCHAR };
+        String key = cacheKey("getColumns", catalog,
+                schemaPattern, tableNamePattern, columnNamePattern);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_columns ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -488,7 +503,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -592,6 +607,17 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.SMALLINT, Types.VARCHAR,
                              Types.VARCHAR,  Types.SMALLINT};
 
+        // sp_fkeys runs in the primary or else the foreign catalog, or the
+        // current catalog if neither is given
+        String key = cacheKey("getCrossReference",
+                primaryCatalog != null ? primaryCatalog : foreignCatalog,
+                primaryCatalog, primarySchema, primaryTable,
+                foreignCatalog, foreignSchema, foreignTable);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_fkeys ?, ?, ?, ?, ?, ?";
 
         if (primaryCatalog != null) {
@@ -628,7 +654,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -961,6 +987,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.VARCHAR,     Types.VARCHAR,
                              Types.INTEGER,     Types.INTEGER,
                              Types.VARCHAR};
+        String key = cacheKey("getIndexInfo", catalog,
+                schema, table, Boolean.valueOf(unique), Boolean.valueOf(approximate));
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_statistics ?, ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -986,7 +1019,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     //----------------------------------------------------------------------
@@ -1290,6 +1323,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         int    colTypes[] = {Types.VARCHAR,  Types.VARCHAR,
                              Types.VARCHAR,  Types.VARCHAR,
                              Types.SMALLINT, Types.VARCHAR};
+        String key = cacheKey("getPrimaryKeys", catalog, schema, table);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_pkeys ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -1312,7 +1351,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -1395,6 +1434,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.SMALLINT,    Types.SMALLINT,
                              Types.VARCHAR};
 
+        String key = cacheKey("getProcedureColumns", catalog,
+                schemaPattern, procedureNamePattern, columnNamePattern);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_sproc_columns ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog,query));
@@ -1472,7 +1518,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rs.close();
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -1524,6 +1570,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.INTEGER,     Types.INTEGER,
                              Types.VARCHAR,     Types.SMALLINT};
 
+        String key = cacheKey("getProcedures", catalog,
+                schemaPattern, procedureNamePattern);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_stored_procedures ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -1564,7 +1617,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -1806,6 +1859,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.VARCHAR,                 Types.VARCHAR,
                              Types.VARCHAR,                 Types.VARCHAR,
                              Types.VARCHAR,                 Types.VARCHAR};
+        String key = cacheKey("getTables", catalog,
+                schemaPattern, tableNamePattern, types);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_tables ?, ?, ?, ?";
 
         CallableStatement cstmt = connection.prepareCall(syscall(catalog, query));
@@ -1849,7 +1909,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -1938,6 +1998,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
      * @throws SQLException if a database-access error occurs.
      */
     public java.sql.ResultSet getTypeInfo() throws SQLException {
+        String key = cacheKey("getTypeInfo", null);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         Statement s = connection.createStatement();
         JtdsResultSet rs;
 
@@ -1949,7 +2015,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         }
 
         try {
-            return createTypeInfoResultSet(rs, connection.getUseLOBs());
+            return cache(key, createTypeInfoResultSet(rs, connection.getUseLOBs()));
         } finally {
             // CachedResultSet retains reference to same statement as rs, so don't close statement
             rs.close();
@@ -2104,6 +2170,12 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.INTEGER, Types.INTEGER,
                              Types.SMALLINT,Types.SMALLINT};
 
+        String key = cacheKey("getVersionColumns", catalog, schema, table);
+        CachedResultSet cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_special_columns ?, ?, ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -2132,7 +2204,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
         rs.close();
-        return rsTmp;
+        return cache(key, rsTmp);
     }
 
     /**
@@ -3454,6 +3526,108 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         return buf.toString();
     }
 
+    /**
+     * Discards the cached <code>DatabaseMetaData</code> results of all
+     * connections to this server as this user, e.g. after schema changes.
+     * Has no effect unless the <code>metaDataCacheTtl</code> connection
+     * property is set.
+     */
+    public void invalidateCache() {
+        MetaDataCache metaDataCache = connection.getMetaDataCache();
+        if (metaDataCache != null) {
+            metaDataCache.clear();
+        }
+    }
+
+    /**
+     * Loads the type information and the parameter descriptions of the
+     * specified procedures into the <code>DatabaseMetaData</code> cache, so
+     * that later calls of <code>getTypeInfo()</code> and
+     * <code>getProcedureColumns()</code> for these procedures are answered
+     * without contacting the server. Has no effect unless the
+     * <code>metaDataCacheTtl</code> connection property is set.
+     *
+     * @param catalog    the catalog of the procedures or <code>null</code>
+     *                   for the current catalog
+     * @param procedures the procedure names, may be <code>null</code>
+     * @throws SQLException if a database access error occurs
+     */
+    public void preloadCache(String catalog, String[] procedures)
+            throws SQLException {
+        if (connection.getMetaDataCache() == null) {
+            return;
+        }
+        getTypeInfo().getStatement().close();
+        for (int i = 0; procedures != null && i < procedures.length; i++) {
+            getProcedureColumns(catalog, null, procedures[i], null).getStatement().close();
+        }
+    }
+
+    /**
+     * Builds the key of a <code>DatabaseMetaData</code> result in the cache.
+     *
+     * @param method  the name of the method returning the result
+     * @param catalog the catalog argument of the method; <code>null</code> is
+     *                keyed by the current catalog, where the query runs
+     * @param args    the other arguments of the method
+     * @return the key or <code>null</code> if caching is disabled
+     * @throws SQLException if the connection is closed
+     */
+    private String cacheKey(String method, String catalog, Object... args)
+            throws SQLException {
+        if (connection.getMetaDataCache() == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(64);
+        key.append(method).append('|').append(connection.getUseLOBs());
+        key.append('|').append(catalog == null ? "*" + connection.getCatalog() : catalog);
+        for (int i = 0; i < args.length; i++) {
+            key.append('|');
+            if (args[i] == null) {
+                key.append('\0');
+            } else if (args[i] instanceof Object[]) {
+                key.append(Arrays.asList((Object[]) args[i]));
+            } else {
+                key.append(args[i]);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Retrieves a copy of a cached <code>DatabaseMetaData</code> result.
+     *
+     * @param key the cache key or <code>null</code> if caching is disabled
+     * @return the result or <code>null</code> if not cached
+     * @throws SQLException if an error occurs
+     */
+    private CachedResultSet getCached(String key) throws SQLException {
+        if (key == null) {
+            return null;
+        }
+        MetaDataCache.Entry entry = connection.getMetaDataCache().get(key);
+        if (entry == null) {
+            return null;
+        }
+        JtdsStatement s = (JtdsStatement) connection.createStatement();
+        return new CachedResultSet(s, entry.columns, entry.columnCount, entry.rows);
+    }
+
+    /**
+     * Stores a copy of a <code>DatabaseMetaData</code> result in the cache.
+     *
+     * @param key the cache key or <code>null</code> if caching is disabled
+     * @param rs  the result, positioned before the first row
+     * @return the result
+     */
+    private CachedResultSet cache(String key, CachedResultSet rs) {
+        if (key != null) {
+            connection.getMetaDataCache().put(key, rs.getColumns(), rs.columnCount,
+                    rs.getRows(), connection.getMetaDataCacheTtl() * 1000L);
+        }
+        return rs;
+    }
+
     /**
      * Format the supplied procedure call as a valid JDBC call escape.
      *
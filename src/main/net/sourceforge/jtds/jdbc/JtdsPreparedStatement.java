@@ -43,6 +43,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.HashSet;
 
 /**
  * jTDS implementation of the java.sql.PreparedStatement interface.
@@ -79,7 +80,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     /** Used to format numeric values when scale is specified. */
     private final static NumberFormat f = NumberFormat.getInstance();
     /** Collection of handles used by this statement */
-    Collection handles;
+    final Collection handles = new HashSet(10);
 
     /**
      * Construct a new preparedStatement object.
@@ -136,6 +137,10 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         }
 
         parameters = (ParamInfo[]) params.toArray(new ParamInfo[params.size()]);
+
+        // The same SQL is executed repeatedly, so keep the result set meta
+        // data as long as the server sends the same column descriptions
+        tds.setReusableColumns(null);
     }
 
     /**
@@ -408,6 +413,11 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         }
     }
 
+    @Override
+    protected boolean returnsGeneratedKeys() {
+        return returnKeys;
+    }
+
     /**
      * Report that user tried to call a method not supported on this type of statement.
      *
@@ -464,7 +474,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
 
             // If the batch has been sent, process the results
             if (executeNow) {
-                sqlEx = tds.getBatchCounts(counts, sqlEx);
+                sqlEx = getBatchCounts(counts, sqlEx);
 
                 // If a serious error then we stop execution now as count
                 // is too small.
@@ -530,7 +540,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
                 sqlBuf.setLength(0);
                 paramList.clear();
                 // If the batch has been sent, process the results
-                sqlEx = tds.getBatchCounts(counts, sqlEx);
+                sqlEx = getBatchCounts(counts, sqlEx);
 
                 // If a serious error or a server error then we stop
                 // execution now as count is too small.
@@ -678,6 +688,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
      */
     void setColMetaData(ColInfo[] value) {
         colMetaData = value;
+        tds.setReusableColumns(value);
     }
 
     /**
@@ -706,9 +717,9 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         try {
             super.close();
         } finally {
-            // Null these fields to reduce memory usage while
-            // waiting for Statement.finalize() to execute.
-            handles = null;
+            // Release these to reduce memory usage while the
+            // statement is still referenced.
+            handles.clear();
             parameters = null;
         }
     }
@@ -760,6 +771,17 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         }
     }
 
+    @Override
+    public boolean recycle() throws SQLException {
+        if (!super.recycle()) {
+            return false;
+        }
+
+        clearParameters();
+
+        return true;
+    }
+
     @Override
     public void clearParameters() throws SQLException {
         checkOpen();
@@ -1087,7 +1109,7 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
          }
       }
 
-      return colMetaData == null ? null : new JtdsResultSetMetaData( colMetaData, JtdsResultSet.getColumnCount( colMetaData ), connection.getUseLOBs() );
+      return colMetaData == null ? null : getResultSetMetaData( colMetaData, JtdsResultSet.getColumnCount( colMetaData ), connection.getUseLOBs() );
    }
 
     @Override
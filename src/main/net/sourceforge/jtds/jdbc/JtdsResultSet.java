@@ -93,7 +93,9 @@ public class JtdsResultSet implements ResultSet {
     /** The current result set row. */
     protected Object[] currentRow;
     /** Cached row data for forward only result set. */
-    protected ArrayList rowData;
+    protected RowBuffer rowData;
+    /** Array the rows read from <code>rowData</code> are copied into. */
+    protected Object[] rowView;
     /** Index of current row in rowData. */
     protected int rowPtr;
     /** True if last column retrieved was null. */
@@ -112,6 +114,15 @@ public class JtdsResultSet implements ResultSet {
     protected String cursorName;
     /** Cache to optimize findColumn(String) lookups */
     private HashMap columnMap;
+    /**
+     * True if the rest of the response may be cancelled on close, i.e. the
+     * result set is the only result of a single select.
+     */
+    boolean cancelOnClose;
+    /** The per column converters used by the typed getters. */
+    private ColumnConverter[] converters;
+    /** The column descriptors <code>converters</code> were chosen for. */
+    private ColInfo[] converterColumns;
 
     /*
      * Private instance variables.
@@ -292,6 +303,28 @@ public class JtdsResultSet implements ResultSet {
         return data;
     }
 
+    /**
+     * Get the converter for a column, chosen from the column's JDBC type the
+     * first time a typed getter is called for the current column
+     * descriptors.
+     *
+     * @param index the column index, already checked by
+     *              {@link #getColumn(int)}
+     * @return the column converter
+     */
+    private ColumnConverter converter(int index) {
+        if (converterColumns != columns) {
+            ColumnConverter[] tmp = new ColumnConverter[columns.length];
+            for (int i = 0; i < tmp.length; i++) {
+                tmp[i] = ColumnConverter.forType(columns[i].jdbcType);
+            }
+            converters = tmp;
+            converterColumns = columns;
+        }
+
+        return converters[index - 1];
+    }
+
     /**
      * Check that this connection is still open.
      *
@@ -395,7 +428,7 @@ public class JtdsResultSet implements ResultSet {
      */
     protected void cacheResultSetRows() throws SQLException {
         if (rowData == null) {
-            rowData = new ArrayList(INITIAL_ROW_COUNT);
+            rowData = new RowBuffer(columns.length, INITIAL_ROW_COUNT);
         }
         if (currentRow != null) {
             // Need to create local copy of currentRow
@@ -407,7 +440,7 @@ public class JtdsResultSet implements ResultSet {
         // Now load the remaining result set rows into memory
         //
         while (statement.getTds().getNextRow()) {
-            rowData.add(copyRow(statement.getTds().getRowData()));
+            rowData.add(statement.getTds().getRowData());
         }
         // Allow statement to process output vars etc
         statement.cacheResults();
@@ -500,7 +533,19 @@ public class JtdsResultSet implements ResultSet {
                    // Skip to end of result set
                    // Could send cancel but this is safer as
                    // cancel could kill other statements in a batch.
-                   while (next());
+                   // Unless the query is a single select and the caller
+                   // opted in, see the closeCancelThreshold connection
+                   // property.
+                   int threshold = cancelOnClose
+                           ? getConnection().getCloseCancelThreshold() : 0;
+                   if (threshold > 0) {
+                       for (int i = 0; i < threshold && next(); i++);
+                       if (pos != POS_AFTER_LAST && rowData == null) {
+                           statement.getTds().cancelAndSkipResponse();
+                       }
+                   } else {
+                       while (next());
+                   }
                 }
             } finally {
                 closed = true;
@@ -595,10 +640,10 @@ public class JtdsResultSet implements ResultSet {
                 // The rest of the result rows have been cached so
                 // return the next row from the buffer.
                 if (rowPtr < rowData.size()) {
-                    currentRow = (Object[])rowData.get(rowPtr);
-                    // This is a forward only result set so null out the buffer ref
-                    // to allow for garbage collection (we can never access the row
-                    // again once we have moved on).
+                    currentRow = rowView = rowData.get(rowPtr, rowView);
+                    // This is a forward only result set so release the row to
+                    // allow for garbage collection of any large values (we can
+                    // never access the row again once we have moved on).
                     rowData.set(rowPtr++, null);
                     pos++;
                     rowsInResult = pos;
@@ -664,27 +709,39 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public byte getByte(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.TINYINT, null)).byteValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getByte(this, value);
     }
 
     public short getShort(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.SMALLINT, null)).shortValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getShort(this, value);
     }
 
     public int getInt(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.INTEGER, null)).intValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getInt(this, value);
     }
 
     public long getLong(int columnIndex) throws SQLException {
-        return ((Long) Support.convert(this, getColumn(columnIndex), java.sql.Types.BIGINT, null)).longValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getLong(this, value);
     }
 
     public float getFloat(int columnIndex) throws SQLException {
-        return ((Float) Support.convert(this, getColumn(columnIndex), java.sql.Types.REAL, null)).floatValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getFloat(this, value);
     }
 
     public double getDouble(int columnIndex) throws SQLException {
-        return ((Double) Support.convert(this, getColumn(columnIndex), java.sql.Types.DOUBLE, null)).doubleValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getDouble(this, value);
     }
 
     public void setFetchDirection(int direction) throws SQLException {
@@ -737,7 +794,9 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public boolean getBoolean(int columnIndex) throws SQLException {
-        return ((Boolean) Support.convert(this, getColumn(columnIndex), JtdsStatement.BOOLEAN, null)).booleanValue();
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getBoolean(this, value);
     }
 
     public boolean relative(int row) throws SQLException {
@@ -810,7 +869,7 @@ public class JtdsResultSet implements ResultSet {
             return null;
         }
 
-        return clob.getBlobBuffer().getUnicodeStream();
+        return clob.getUnicodeStream();
     }
 
     public void updateAsciiStream(int columnIndex, InputStream inputStream, int length)
@@ -1055,11 +1114,13 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-        return (BigDecimal) Support.convert(this, getColumn(columnIndex), java.sql.Types.DECIMAL, null);
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getBigDecimal(this, value);
     }
 
     public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
-        BigDecimal result = (BigDecimal) Support.convert(this, getColumn(columnIndex), java.sql.Types.DECIMAL, null);
+        BigDecimal result = getBigDecimal(columnIndex);
 
         if (result == null) {
             return null;
@@ -1126,7 +1187,9 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public Date getDate(int columnIndex) throws SQLException {
-        return (java.sql.Date)Support.convert(this, getColumn(columnIndex), java.sql.Types.DATE, null);
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getDate(this, value);
     }
 
     public void updateDate(int columnIndex, Date x) throws SQLException {
@@ -1154,8 +1217,7 @@ public class JtdsResultSet implements ResultSet {
         boolean useLOBs = this instanceof CachedResultSet && statement.isClosed()
                 ? false
                 : getConnection().getUseLOBs();
-        return new JtdsResultSetMetaData(columns, columnCount,
-                useLOBs);
+        return statement.getResultSetMetaData(columns, columnCount, useLOBs);
     }
 
     public SQLWarning getWarnings() throws SQLException {
@@ -1171,7 +1233,9 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public Time getTime(int columnIndex) throws SQLException {
-        return (java.sql.Time) Support.convert(this, getColumn(columnIndex), java.sql.Types.TIME, null);
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getTime(this, value);
     }
 
     public void updateTime(int columnIndex, Time x) throws SQLException {
@@ -1179,7 +1243,9 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public Timestamp getTimestamp(int columnIndex) throws SQLException {
-        return (Timestamp) Support.convert(this, getColumn(columnIndex), java.sql.Types.TIMESTAMP, null);
+        Object value = getColumn(columnIndex);
+
+        return converter(columnIndex).getTimestamp(this, value);
     }
 
     public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
@@ -1796,13 +1862,67 @@ public class JtdsResultSet implements ResultSet {
 
     @Override
     public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (type == null) {
+            throw new SQLException(
+                    Messages.get("error.generic.nullparam", "getObject"), "HY092");
+        }
+
+        Object value;
+
+        // Go through the typed getters, so that the date and time classes are
+        // created directly from the server value
+        if (type == String.class) {
+            value = getString(columnIndex);
+        } else if (type == Timestamp.class || type == java.util.Date.class) {
+            value = getTimestamp(columnIndex);
+        } else if (type == Date.class) {
+            value = getDate(columnIndex);
+        } else if (type == Time.class) {
+            value = getTime(columnIndex);
+        } else if (type == BigDecimal.class) {
+            value = getBigDecimal(columnIndex);
+        } else if (type == Integer.class) {
+            int i = getInt(columnIndex);
+            value = wasNull ? null : Integer.valueOf(i);
+        } else if (type == Long.class) {
+            long l = getLong(columnIndex);
+            value = wasNull ? null : Long.valueOf(l);
+        } else if (type == Short.class) {
+            short i = getShort(columnIndex);
+            value = wasNull ? null : Short.valueOf(i);
+        } else if (type == Byte.class) {
+            byte b = getByte(columnIndex);
+            value = wasNull ? null : Byte.valueOf(b);
+        } else if (type == Double.class) {
+            double d = getDouble(columnIndex);
+            value = wasNull ? null : Double.valueOf(d);
+        } else if (type == Float.class) {
+            float f = getFloat(columnIndex);
+            value = wasNull ? null : Float.valueOf(f);
+        } else if (type == Boolean.class) {
+            boolean b = getBoolean(columnIndex);
+            value = wasNull ? null : Boolean.valueOf(b);
+        } else if (type == byte[].class) {
+            value = getBytes(columnIndex);
+        } else if (type == Blob.class) {
+            value = getBlob(columnIndex);
+        } else if (type == Clob.class) {
+            value = getClob(columnIndex);
+        } else {
+            value = getObject(columnIndex);
+            if (value != null && !type.isInstance(value)) {
+                throw new SQLException(
+                        Messages.get("error.convert.badtypes",
+                                value.getClass().getName(),
+                                type.getName()), "22005");
+            }
+        }
+
+        return type.cast(value);
     }
 
     @Override
     public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        return getObject(findColumn(columnLabel), type);
     }
 }
\ No newline at end of file
@@ -50,6 +50,20 @@ public class JtdsResultSetMetaData implements ResultSetMetaData {
         this.useLOBs = useLOBs;
     }
 
+    /**
+     * Checks whether this object was built for the specified columns.
+     *
+     * @param columns     the column descriptor array
+     * @param columnCount the number of visible columns
+     * @param useLOBs     whether LOB types are reported
+     * @return <code>true</code> if it describes the same columns
+     */
+    boolean describes(ColInfo[] columns, int columnCount, boolean useLOBs) {
+        return this.columns == columns
+                && this.columnCount == columnCount
+                && this.useLOBs == useLOBs;
+    }
+
     /**
      * Return the column descriptor given a column index.
      *
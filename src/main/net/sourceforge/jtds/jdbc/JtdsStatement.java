@@ -24,9 +24,14 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import net.sourceforge.jtds.util.ResourceCleaner;
+
 /**
  * jTDS implementation of the java.sql.Statement interface.<p>
  * NB. As allowed by the JDBC standard and like most other drivers,
@@ -46,9 +51,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * </ol>
  * In the event of an IO failure the setClosed() method forces this statement
  * and associated result set to close preventing the propagation of errors.
- * This class includes a finalize method which increases the chances of the
- * statement being closed tidly in a pooled environment where the user has
- * forgotten to explicitly close the statement before it goes out of scope.
+ * The connection registers each statement with the {@link ResourceCleaner},
+ * which releases the statement's resources in a pooled environment where the
+ * user has forgotten to explicitly close the statement before it goes out of
+ * scope.
  *
  * @see
  *    java.sql.Statement
@@ -84,11 +90,22 @@ public class JtdsStatement implements java.sql.Statement
     static final Integer SUCCESS_NO_INFO = new Integer(-2);
     static final Integer EXECUTE_FAILED = new Integer(-3);
     static final int DEFAULT_FETCH_SIZE = 100;
+    /**
+     * Keywords which start a statement, used to recognize batches of more
+     * than one statement.
+     */
+    private static final Set STATEMENT_WORDS = new HashSet(Arrays.asList(new String[] {
+            "alter", "begin", "commit", "create", "declare", "delete", "drop",
+            "exec", "execute", "grant", "if", "insert", "print", "raiserror",
+            "return", "revoke", "rollback", "save", "select", "set", "truncate",
+            "update", "use", "waitfor", "while"}));
 
     /** The connection owning this statement object. */
     protected JtdsConnection connection;
     /** The TDS object used for server access. */
     protected TdsCore tds;
+    /** Registration of this statement with the cleaner, set by the connection. */
+    ResourceCleaner.Cleanable cleanable;
     /** The read query timeout in seconds */
     protected int queryTimeout;
     /** The current <code>ResultSet</code>. */
@@ -128,6 +145,8 @@ public class JtdsStatement implements java.sql.Statement
     protected ArrayList openResultSets;
     /** The cached column meta data. */
     protected ColInfo[] colMetaData;
+    /** The result set meta data last returned, see getResultSetMetaData. */
+    private JtdsResultSetMetaData resultSetMetaData;
 
    /**
     * <table>
@@ -202,26 +221,13 @@ public class JtdsStatement implements java.sql.Statement
 
         tds = connection.getCachedTds();
         if (tds == null) {
-            messages = new SQLDiagnostic(connection.getServerType());
+            messages = new SQLDiagnostic(connection);
             tds = new TdsCore(this.connection, messages);
         } else {
             messages = tds.getMessages();
         }
     }
 
-    /**
-     * Called when this object goes out of scope to close any
-     * <code>ResultSet</code> object and this statement.
-     */
-    protected void finalize() throws Throwable {
-        super.finalize();
-        try {
-            close();
-        } catch (SQLException e) {
-            // Ignore errors
-        }
-    }
-
     /**
      * Get the Statement's TDS object.
      *
@@ -231,6 +237,28 @@ public class JtdsStatement implements java.sql.Statement
         return tds;
     }
 
+    /**
+     * Retrieves the <code>ResultSetMetaData</code> for a column descriptor
+     * array. The last instance is reused as long as the descriptors are the
+     * same, which is the case for repeated executions of a prepared
+     * statement.
+     *
+     * @param columns     the column descriptors
+     * @param columnCount the number of visible columns
+     * @param useLOBs     whether LOB types are reported
+     * @return the result set meta data
+     */
+    JtdsResultSetMetaData getResultSetMetaData(ColInfo[] columns,
+                                               int columnCount,
+                                               boolean useLOBs) {
+        JtdsResultSetMetaData rsmd = resultSetMetaData;
+        if (rsmd == null || !rsmd.describes(columns, columnCount, useLOBs)) {
+            rsmd = new JtdsResultSetMetaData(columns, columnCount, useLOBs);
+            resultSetMetaData = rsmd;
+        }
+        return rsmd;
+    }
+
     /**
      * Get the statement's warnings list.
      *
@@ -353,6 +381,51 @@ public class JtdsStatement implements java.sql.Statement
         messages.addWarning(w);
     }
 
+    /**
+     * Retrieves the update counts of a batch request that has been sent.
+     * If the statement returns generated keys, the keys returned by the
+     * batch are added to the generated keys result set.
+     *
+     * @param counts the returned update counts
+     * @param sqlEx  any previous <code>SQLException</code>(s) encountered
+     * @return updated <code>SQLException</code> or <code>null</code> if no
+     *         error has yet occurred
+     * @throws SQLException if the connection is closed
+     */
+    protected SQLException getBatchCounts(ArrayList counts, SQLException sqlEx)
+            throws SQLException {
+        if (!returnsGeneratedKeys()) {
+            return tds.getBatchCounts(counts, sqlEx);
+        }
+
+        ArrayList keys = new ArrayList();
+        sqlEx = tds.getBatchCounts(counts, keys, sqlEx);
+
+        ColInfo[] columns = tds.getColumns();
+        if (keys.isEmpty() || columns == null || columns.length != 1) {
+            return sqlEx;
+        }
+        if (genKeyResultSet == null) {
+            // fix column name, as for a single execution
+            columns[0].name = "ID";
+            genKeyResultSet = new CachedResultSet(this, columns, 1, keys);
+        } else {
+            for (int i = 0; i < keys.size(); i++) {
+                genKeyResultSet.addRow((Object[]) keys.get(i));
+            }
+        }
+
+        return sqlEx;
+    }
+
+    /**
+     * Returns <code>true</code> if the SQL executed by this statement is
+     * followed by a query returning the generated key.
+     */
+    protected boolean returnsGeneratedKeys() {
+        return false;
+    }
+
     /**
      * Execute the SQL batch on a MS server.
      *
@@ -375,7 +448,7 @@ public class JtdsStatement implements java.sql.Statement
 
             // If the batch has been sent, process the results
             if (executeNow) {
-                sqlEx = tds.getBatchCounts(counts, sqlEx);
+                sqlEx = getBatchCounts(counts, sqlEx);
 
                 // If a serious error then we stop execution now as count
                 // is too small.
@@ -415,7 +488,7 @@ public class JtdsStatement implements java.sql.Statement
                 tds.executeSQL(sql.toString(), null, null, false, 0, -1, -1, true);
                 sql.setLength(0);
                 // If the batch has been sent, process the results
-                sqlEx = tds.getBatchCounts(counts, sqlEx);
+                sqlEx = getBatchCounts(counts, sqlEx);
 
                 // If a serious error or a server error then we stop
                 // execution now as count is too small.
@@ -512,6 +585,10 @@ public class JtdsStatement implements java.sql.Statement
                                               ResultSet.TYPE_FORWARD_ONLY,
                                               ResultSet.CONCUR_READ_ONLY,
                                               tds.getColumns());
+            // Cancelling would also lose the results of any further
+            // statements and the output parameters and return status of a
+            // procedure, so only single selects qualify
+            currentResult.cancelOnClose = isSingleSelect(sql);
         } else {
             throw new SQLException(
                     Messages.get("error.statement.noresult"), "24000");
@@ -520,6 +597,81 @@ public class JtdsStatement implements java.sql.Statement
         return currentResult;
     }
 
+    /**
+     * Checks whether an SQL string is a single <code>SELECT</code> statement.
+     * <p/>
+     * The check is conservative: the SQL must start with <code>SELECT</code>
+     * and no other statement may follow, either after a <code>;</code> or
+     * starting with a keyword outside parentheses. String literals, quoted
+     * identifiers and comments are skipped.
+     *
+     * @param sql the SQL to check
+     * @return <code>true</code> if the SQL is a single select
+     */
+    static boolean isSingleSelect(String sql) {
+        int len = sql.length();
+        int depth = 0;
+        String prevWord = null;
+        boolean ended = false;
+
+        for (int i = 0; i < len;) {
+            char c = sql.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '[') {
+                // Doubled quotes are skipped as two adjacent literals
+                i = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                if (i < 0) {
+                    return false;
+                }
+                i++;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                i = sql.indexOf('\n', i);
+                if (i < 0) {
+                    i = len;
+                }
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                i = sql.indexOf("*/", i + 2);
+                if (i < 0) {
+                    return false;
+                }
+                i += 2;
+            } else if (Character.isJavaIdentifierStart(c) || c == '@' || c == '#') {
+                int start = i;
+                while (i < len && (Character.isJavaIdentifierPart(sql.charAt(i))
+                        || sql.charAt(i) == '@' || sql.charAt(i) == '#')) {
+                    i++;
+                }
+                String word = sql.substring(start, i).toLowerCase();
+                if (prevWord == null) {
+                    if (!"select".equals(word)) {
+                        return false;
+                    }
+                } else if (ended) {
+                    return false;
+                } else if (depth == 0 && STATEMENT_WORDS.contains(word)
+                        && !("select".equals(word) && ("union".equals(prevWord)
+                                || "all".equals(prevWord)
+                                || "except".equals(prevWord)
+                                || "intersect".equals(prevWord)))
+                        && !("update".equals(word) && "for".equals(prevWord))) {
+                    return false;
+                }
+                prevWord = word;
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == ';') {
+                    ended = true;
+                }
+                i++;
+            }
+        }
+
+        return prevWord != null;
+    }
+
     /**
      * Executes any type of SQL.
      *
@@ -728,6 +880,38 @@ public class JtdsStatement implements java.sql.Statement
       closeAllResultSets();
    }
 
+    /**
+     * Closes the results of the statement, discards its batch and restores
+     * its default settings, so that it can be handed out again by the
+     * statement pool of a <code>jdbcx.PooledConnection</code>.
+     *
+     * @return <code>false</code> if the statement cannot be reused because a
+     *         cursor name has been set on it
+     * @throws SQLException if the statement or its connection is closed or
+     *         the pending results cannot be read
+     */
+    public boolean recycle() throws SQLException {
+        checkOpen();
+
+        if (cursorName != null) {
+            return false;
+        }
+
+        reset();
+
+        if (batchValues != null) {
+            batchValues.clear();
+        }
+        fetchDirection = ResultSet.FETCH_FORWARD;
+        fetchSize = DEFAULT_FETCH_SIZE;
+        maxFieldSize = 0;
+        maxRows = 0;
+        queryTimeout = 0;
+        escapeProcessing = true;
+
+        return true;
+    }
+
     /**
      * Implements the common functionality for plain statement {@link #execute}
      * and {#link #executeUpdate}: basic checks, cleaning up of previous
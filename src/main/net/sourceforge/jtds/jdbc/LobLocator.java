@@ -0,0 +1,260 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The text pointer of a <code>text</code>, <code>ntext</code> or
+ * <code>image</code> value whose contents are read on demand (see the
+ * <code>lazyLOBs</code> connection property).
+ * <p/>
+ * The value itself is skipped when the row is read; <code>READTEXT</code> is
+ * used to fetch either the requested range or, the first time the
+ * <code>Blob</code> or <code>Clob</code> is used otherwise, the whole value.
+ * A text pointer only stays valid as long as the row is not updated or
+ * deleted (for values stored in row, only until the end of the transaction),
+ * and <code>READTEXT</code> needs the name of the base table column, so
+ * columns must not be renamed in the select list.
+ */
+final class LobLocator {
+    /** The connection the value was read from. */
+    private final JtdsConnection connection;
+    /** The column descriptor, for the table and column names. */
+    private final ColInfo ci;
+    /** The text pointer sent with the row. */
+    private final byte[] textPtr;
+    /**
+     * The length of the value in <code>READTEXT</code> units: characters for
+     * <code>ntext</code>, bytes for <code>text</code> and <code>image</code>.
+     */
+    private final int length;
+    /** True if offsets and lengths count characters (not multi byte text). */
+    private final boolean charAddressed;
+
+    /**
+     * Constructs a new <code>LobLocator</code>.
+     *
+     * @param connection    the connection the value was read from
+     * @param ci            the column descriptor
+     * @param textPtr       the text pointer
+     * @param length        the length of the value in <code>READTEXT</code>
+     *                      units, greater than zero
+     * @param charAddressed <code>true</code> if the units are characters
+     */
+    LobLocator(JtdsConnection connection, ColInfo ci, byte[] textPtr,
+               int length, boolean charAddressed) {
+        this.connection = connection;
+        this.ci = ci;
+        this.textPtr = textPtr;
+        this.length = length;
+        this.charAddressed = charAddressed;
+    }
+
+    /**
+     * Retrieves the length of the value in <code>READTEXT</code> units.
+     *
+     * @return the length in characters for <code>ntext</code>, in bytes
+     *         otherwise
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Indicates whether offsets and lengths count the characters of a
+     * <code>text</code> or <code>ntext</code> value, which is not the case
+     * for <code>text</code> in a multi byte character set.
+     *
+     * @return <code>true</code> if ranges of characters can be read
+     */
+    boolean isCharAddressed() {
+        return charAddressed;
+    }
+
+    /**
+     * Reads a range of an <code>image</code> value, with the semantics of
+     * <code>Blob.getBytes()</code>.
+     *
+     * @param pos the position of the first byte, starting at 1
+     * @param len the number of bytes to read
+     * @return the bytes read, fewer if the end of the value was reached
+     * @throws SQLException if the range is invalid or the value cannot be read
+     */
+    byte[] getBytes(long pos, int len) throws SQLException {
+        len = checkRange(pos, len);
+        if (len == 0) {
+            return new byte[0];
+        }
+        JtdsStatement stmt = createStatement();
+        try {
+            ResultSet rs = readText(stmt, pos - 1, len);
+            return rs.getBytes(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Reads a range of a character addressed <code>text</code> or
+     * <code>ntext</code> value, with the semantics of
+     * <code>Clob.getSubString()</code>.
+     *
+     * @param pos the position of the first character, starting at 1
+     * @param len the number of characters to read
+     * @return the characters read, fewer if the end of the value was reached
+     * @throws SQLException if the range is invalid or the value cannot be read
+     */
+    String getSubString(long pos, int len) throws SQLException {
+        len = checkRange(pos, len);
+        if (len == 0) {
+            return "";
+        }
+        JtdsStatement stmt = createStatement();
+        try {
+            ResultSet rs = readText(stmt, pos - 1, len);
+            return rs.getString(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Reads the whole of an <code>image</code> value.
+     *
+     * @return the value, buffered in memory or on disk
+     * @throws SQLException if the value cannot be read
+     */
+    BlobImpl getBlob() throws SQLException {
+        JtdsStatement stmt = createStatement();
+        try {
+            return (BlobImpl) readText(stmt, 0, length).getBlob(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Reads the whole of a <code>text</code> or <code>ntext</code> value.
+     *
+     * @return the value, buffered in memory or on disk
+     * @throws SQLException if the value cannot be read
+     */
+    ClobImpl getClob() throws SQLException {
+        JtdsStatement stmt = createStatement();
+        try {
+            return (ClobImpl) readText(stmt, 0, length).getClob(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Validates a range in the way <code>BlobBuffer</code> does.
+     *
+     * @param pos the position of the first unit, starting at 1
+     * @param len the number of units requested
+     * @return the number of units available from the position
+     * @throws SQLException if the position or length are invalid
+     */
+    private int checkRange(long pos, int len) throws SQLException {
+        if (pos < 1) {
+            throw new SQLException(Messages.get("error.blobclob.badpos"), "HY090");
+        }
+        if (pos - 1 > length) {
+            throw new SQLException(Messages.get("error.blobclob.badposlen"), "HY090");
+        }
+        if (len < 0) {
+            throw new SQLException(Messages.get("error.blobclob.badlen"), "HY090");
+        }
+        return (int) Math.min(len, length - (pos - 1));
+    }
+
+    /**
+     * Creates the statement used to read the value. Its results must not be
+     * read lazily again.
+     */
+    private JtdsStatement createStatement() throws SQLException {
+        JtdsStatement stmt = (JtdsStatement) connection.createStatement();
+        stmt.getTds().setLazyLOBs(false);
+        return stmt;
+    }
+
+    /**
+     * Executes <code>READTEXT</code> and positions on the row returned.
+     *
+     * @param stmt   the statement to use
+     * @param offset the number of units to skip
+     * @param size   the number of units to read, greater than zero
+     * @return the result set positioned on the value
+     * @throws SQLException if the text pointer is no longer valid
+     */
+    private ResultSet readText(JtdsStatement stmt, long offset, int size)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(96);
+        sql.append("READTEXT ");
+        if (ci.schema != null) {
+            // Names from a TDS_TABNAME token, already split
+            if (ci.catalog != null) {
+                appendName(sql, ci.catalog);
+                sql.append('.');
+            }
+            appendName(sql, ci.schema);
+            sql.append('.');
+            appendName(sql, ci.tableName);
+        } else {
+            // The (possibly qualified) name sent with the column
+            int start = 0;
+            int dot;
+            while ((dot = ci.tableName.indexOf('.', start)) >= 0) {
+                appendName(sql, ci.tableName.substring(start, dot));
+                sql.append('.');
+                start = dot + 1;
+            }
+            appendName(sql, ci.tableName.substring(start));
+        }
+        sql.append('.');
+        appendName(sql, ci.realName);
+        sql.append(" 0x").append(Support.toHex(textPtr));
+        sql.append(' ').append(offset);
+        sql.append(' ').append(size);
+
+        ResultSet rs = stmt.executeQuery(sql.toString());
+        if (!rs.next()) {
+            throw new SQLException(
+                    Messages.get("error.blobclob.notavailable", ci.realName), "HY000");
+        }
+        return rs;
+    }
+
+    /**
+     * Appends a delimited identifier.
+     */
+    private static void appendName(StringBuilder sql, String name) {
+        sql.append('[');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ']') {
+                sql.append(']');
+            }
+            sql.append(c);
+        }
+        sql.append(']');
+    }
+}
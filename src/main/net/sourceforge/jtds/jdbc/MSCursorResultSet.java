@@ -85,6 +85,22 @@ public class MSCursorResultSet extends JtdsResultSet {
      */
     private static final Integer SQL_ROW_DELETED = new Integer(2);
 
+    /**
+     * Upper limit for the number of rows requested by an adaptive fetch.
+     */
+    private static final int MAX_ADAPTIVE_FETCH_SIZE = 32768;
+
+    /**
+     * Target duration of an adaptive fetch in milliseconds; fetches completing
+     * faster may grow, fetches taking more than twice as long will shrink.
+     */
+    private static final long ADAPTIVE_FETCH_TARGET = 250;
+
+    /**
+     * Maximum number of rows sampled to estimate the row width.
+     */
+    private static final int ROW_WIDTH_SAMPLES = 8;
+
     /*
      * Instance variables.
      */
@@ -96,6 +112,14 @@ public class MSCursorResultSet extends JtdsResultSet {
     private ParamInfo[] updateRow;
     /** The row cache used instead {@link #currentRow}. */
     private Object[][] rowCache;
+    /** Number of valid rows in {@link #rowCache}. */
+    private int rowsCached;
+    /** Number of rows requested by the next <code>sp_cursorfetch</code>. */
+    private int blockSize;
+    /** Memory budget in bytes for adaptive fetches or 0 if disabled. */
+    private int fetchBudget;
+    /** Running average of the estimated row width in bytes. */
+    private int avgRowWidth;
     /** Actual position of the cursor. */
     private int cursorPos;
     /** The cursor is being built asynchronously. */
@@ -150,6 +174,15 @@ public class MSCursorResultSet extends JtdsResultSet {
 
         PARAM_NUMROWS_IN.value = new Integer(fetchSize);
         rowCache = new Object[fetchSize][];
+        blockSize = fetchSize;
+
+        // Only adapt the fetch size if the application didn't choose one and
+        // no positioned updates are required
+        int budget = ((JtdsConnection) statement.getConnection()).getCursorFetchBuffer();
+        if (budget > 0 && cursorName == null
+                && fetchSize == statement.getDefaultFetchSize()) {
+            fetchBudget = budget * 1024;
+        }
 
         cursorCreate(sql, procName, procedureParams);
         if (asyncCursor) {
@@ -685,13 +718,20 @@ public class MSCursorResultSet extends JtdsResultSet {
         PARAM_ROWNUM_IN.value = new Integer(rowNum);
         param[2] = PARAM_ROWNUM_IN;
         // Setup numRows parameter
-        if (((Integer) PARAM_NUMROWS_IN.value).intValue() != fetchSize) {
+        if (((Integer) PARAM_NUMROWS_IN.value).intValue() != blockSize) {
             // If the fetch size changed, update the parameter and cache size
-            PARAM_NUMROWS_IN.value = new Integer(fetchSize);
-            rowCache = new Object[fetchSize][];
+            PARAM_NUMROWS_IN.value = new Integer(blockSize);
+            if (blockSize > rowCache.length) {
+                // Keep the existing row arrays for reuse
+                Object[][] tmp = new Object[blockSize][];
+                System.arraycopy(rowCache, 0, tmp, 0, rowCache.length);
+                rowCache = tmp;
+            }
         }
         param[3] = PARAM_NUMROWS_IN;
 
+        long start = fetchBudget > 0 ? System.currentTimeMillis() : 0;
+
         synchronized (tds) {
             // No meta data, no timeout (we're not sending it yet), no row
             // limit, don't send yet
@@ -718,6 +758,10 @@ public class MSCursorResultSet extends JtdsResultSet {
         // Load rows
         processOutput(tds, false);
 
+        if (fetchBudget > 0) {
+            adaptBlockSize(fetchType, System.currentTimeMillis() - start);
+        }
+
         cursorPos = ((Integer) PARAM_ROWNUM_OUT.getOutValue()).intValue();
         if (fetchType != FETCH_REPEAT) {
             // Do not change ResultSet position when refreshing
@@ -733,6 +777,70 @@ public class MSCursorResultSet extends JtdsResultSet {
         return getCurrentRow() != null;
     }
 
+    /**
+     * Adapts the number of rows requested by the next fetch to the observed
+     * row width and fetch duration. The block size is only grown while
+     * reading forward through the cursor and receiving full blocks, and it's
+     * always kept within the {@link #fetchBudget}.
+     *
+     * @param fetchType the type of the fetch just completed
+     * @param elapsed   the duration of the fetch in milliseconds
+     */
+    private void adaptBlockSize(Integer fetchType, long elapsed) {
+        if (rowsCached > 0) {
+            // Estimate the row width from a sample of the fetched rows
+            int step = Math.max(1, rowsCached / ROW_WIDTH_SAMPLES);
+            long width = 0;
+            int samples = 0;
+            for (int i = 0; i < rowsCached; i += step) {
+                width += estimateRowWidth(rowCache[i]);
+                samples++;
+            }
+            int rowWidth = (int) (width / samples);
+            avgRowWidth = (avgRowWidth == 0) ? rowWidth
+                    : (avgRowWidth * 3 + rowWidth) / 4;
+        }
+
+        int limit = MAX_ADAPTIVE_FETCH_SIZE;
+        if (avgRowWidth > 0) {
+            limit = Math.max(1, Math.min(limit, fetchBudget / avgRowWidth));
+        }
+
+        if (elapsed > 2 * ADAPTIVE_FETCH_TARGET) {
+            // Fetches are getting slow, reduce the time spent per round trip
+            blockSize = Math.max(1, blockSize / 2);
+        } else if (fetchType == FETCH_NEXT && rowsCached == blockSize
+                && elapsed < ADAPTIVE_FETCH_TARGET) {
+            // Sequential scan, fewer round trips will pay off
+            blockSize = blockSize * 2;
+        }
+
+        blockSize = Math.min(blockSize, limit);
+    }
+
+    /**
+     * Estimates the memory used by a cached row.
+     *
+     * @param row the row data
+     * @return the estimated row width in bytes
+     */
+    private static int estimateRowWidth(Object[] row) {
+        int width = 16 + 4 * row.length;
+
+        for (int i = 0; i < row.length; i++) {
+            Object value = row[i];
+            if (value instanceof String) {
+                width += 40 + 2 * ((String) value).length();
+            } else if (value instanceof byte[]) {
+                width += 16 + ((byte[]) value).length;
+            } else if (value != null) {
+                width += 24;
+            }
+        }
+
+        return width;
+    }
+
     /**
      * Support general cursor operations such as delete, update etc.
      *
@@ -955,7 +1063,16 @@ public class MSCursorResultSet extends JtdsResultSet {
             // then the data. This case also used if meta data not supressed.
             if (tds.isRowData() || tds.getNextRow()) {
                 do {
-                    rowCache[i++] = copyRow(tds.getRowData());
+                    Object[] row = tds.getRowData();
+                    Object[] cached = rowCache[i];
+                    if (cached != null && cached.length == columns.length
+                            && row.length <= cached.length) {
+                        // Reuse the row array from the previous fetch
+                        System.arraycopy(row, 0, cached, 0, row.length);
+                    } else {
+                        rowCache[i] = copyRow(row);
+                    }
+                    i++;
                 } while (tds.getNextRow());
             }
         } else if (setMeta) {
@@ -963,10 +1080,8 @@ public class MSCursorResultSet extends JtdsResultSet {
                     Messages.get("error.statement.noresult"), "24000"));
         }
 
-        // Set the rest of the rows to null
-        for (; i < rowCache.length; ++i) {
-            rowCache[i] = null;
-        }
+        // Rows beyond this point are invalid, their arrays are kept for reuse
+        rowsCached = i;
 
         tds.clearResponseQueue();
         statement.messages.checkErrors();
@@ -1181,6 +1296,14 @@ public class MSCursorResultSet extends JtdsResultSet {
         return SQL_ROW_DELETED.equals(currentRow[columns.length - 1]);
     }
 
+    public void setFetchSize(int rows) throws SQLException {
+        super.setFetchSize(rows);
+
+        // An explicit fetch size disables adaptive fetching
+        fetchBudget = 0;
+        blockSize = fetchSize;
+    }
+
     public boolean rowInserted() throws SQLException {
         checkOpen();
         // No way to find out
@@ -1221,7 +1344,7 @@ public class MSCursorResultSet extends JtdsResultSet {
                 // then restore pos
                 int savePos = pos;
                 boolean result = cursorFetch(FETCH_RELATIVE,
-                        pos - cursorPos - fetchSize + 1);
+                        pos - cursorPos - blockSize + 1);
                 if (result) {
                     pos = savePos;
                 } else {
@@ -1237,7 +1360,7 @@ public class MSCursorResultSet extends JtdsResultSet {
     }
 
     protected Object[] getCurrentRow() {
-        if (pos < cursorPos || pos >= cursorPos + rowCache.length) {
+        if (pos < cursorPos || pos >= cursorPos + rowsCached) {
             return null;
         }
 
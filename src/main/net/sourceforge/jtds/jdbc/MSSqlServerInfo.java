@@ -20,6 +20,8 @@ package net.sourceforge.jtds.jdbc;
 import java.io.InterruptedIOException;
 import java.sql.SQLException;
 import java.net.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.sourceforge.jtds.util.Logger;
 
@@ -46,11 +48,42 @@ import net.sourceforge.jtds.util.Logger;
  * < 000000d0 45 59 5c 70 69 70 65 5c 4d 53 53 51 4c 24 44 4f # EY\pipe\MSSQL$DO
  * < 000000e0 47 5c 73 71 6c 5c 71 75 65 72 79 3b 3b          # G\sql\query;;
  * </pre>
+ * <p>
+ * As the lookup adds a UDP round trip (and a point of failure) to every
+ * connection, {@link #getPortForInstance(String, String, int)} caches the
+ * resolved ports driver-wide. Expired entries keep being used while they are
+ * refreshed in the background, and failed lookups are cached for a short
+ * time too.
  *
  * @author Matt Brinkley
  * @version $Id: MSSqlServerInfo.java,v 1.8.2.1 2009-07-30 10:50:05 ickzon Exp $
  */
 public class MSSqlServerInfo {
+    /** Maximum time in milliseconds to cache a failed lookup. */
+    private static final long NEGATIVE_TTL = 10000;
+
+    /** Cached instance ports, keyed by host and instance name. */
+    private static final ConcurrentHashMap<String, CachedPort> portCache =
+            new ConcurrentHashMap<>();
+
+    /**
+     * A cached instance port.
+     */
+    private static final class CachedPort {
+        /** The instance port, -1 if the instance was not found or 0 if the
+         *  browser service did not respond. */
+        final int port;
+        /** Time after which the entry has to be refreshed. */
+        final long expires;
+        /** Set while a background refresh is running. */
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedPort(int port, long expires) {
+            this.port = port;
+            this.expires = expires;
+        }
+    }
+
     private final int numRetries = 3;
     private final int timeout = 2000;
     private String[] serverInfoStrings;
@@ -167,6 +200,114 @@ public class MSSqlServerInfo {
         return -1;
     }
 
+    /**
+     * Determines the port a named instance is listening on, using the
+     * driver-wide port cache.
+     * <p>
+     * If the cache entry for the instance has expired but the port was known,
+     * the last known port is returned at once and the entry is refreshed in
+     * the background. If the refresh fails the last known port continues to be
+     * used.
+     *
+     * @param host         the server host name
+     * @param instanceName the instance name
+     * @param cacheTtl     the time in seconds to cache the port, or 0 to
+     *                     always query the SQL Server Browser service
+     * @return the port the instance is listening on, or -1 if the instance
+     *         was not found
+     * @throws SQLException if the SQL Server Browser service did not respond
+     */
+    static int getPortForInstance(final String host, final String instanceName,
+                                  int cacheTtl) throws SQLException {
+        if (cacheTtl <= 0) {
+            return new MSSqlServerInfo(host).getPortForInstance(instanceName);
+        }
+
+        final long ttl = cacheTtl * 1000L;
+        final String key = cacheKey(host, instanceName);
+        CachedPort cached = portCache.get(key);
+
+        if (cached != null) {
+            if (System.currentTimeMillis() < cached.expires) {
+                if (cached.port == 0) {
+                    throw new SQLException(
+                            Messages.get("error.msinfo.badinfo", host), "HY000");
+                }
+                return cached.port;
+            }
+
+            if (cached.port > 0) {
+                // Use the last known port and refresh the entry in the background
+                if (cached.refreshing.compareAndSet(false, true)) {
+                    final CachedPort stale = cached;
+                    Thread refresh = new Thread("jTDS SQL Browser lookup") {
+                        public void run() {
+                            try {
+                                lookup(host, instanceName, key, ttl, stale);
+                            } catch (SQLException e) {
+                                // Already logged, last known port is kept
+                            }
+                        }
+                    };
+                    refresh.setDaemon(true);
+                    refresh.start();
+                }
+                return cached.port;
+            }
+        }
+
+        return lookup(host, instanceName, key, ttl, cached);
+    }
+
+    /**
+     * Queries the SQL Server Browser service and updates the port cache.
+     *
+     * @param previous the previous cache entry or <code>null</code>
+     */
+    private static int lookup(String host, String instanceName, String key,
+                              long ttl, CachedPort previous)
+            throws SQLException {
+        long negativeTtl = Math.min(ttl, NEGATIVE_TTL);
+
+        try {
+            int port = new MSSqlServerInfo(host).getPortForInstance(instanceName);
+
+            portCache.put(key, new CachedPort(port, System.currentTimeMillis()
+                    + (port > 0 ? ttl : negativeTtl)));
+
+            return port;
+        } catch (SQLException e) {
+            if (previous != null && previous.port > 0) {
+                // Browser service not responding, keep the last known port
+                portCache.put(key, new CachedPort(previous.port,
+                        System.currentTimeMillis() + negativeTtl));
+
+                return previous.port;
+            }
+
+            portCache.put(key, new CachedPort(0,
+                    System.currentTimeMillis() + negativeTtl));
+
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the cached port of an instance, e.g. because connecting to it
+     * failed.
+     *
+     * @param host         the server host name
+     * @param instanceName the instance name
+     */
+    static void invalidate(String host, String instanceName) {
+        portCache.remove(cacheKey(host, instanceName));
+    }
+
+    private static String cacheKey(String host, String instanceName) {
+        return host.toLowerCase() + '\\'
+                + (instanceName == null ? "" : instanceName.toUpperCase());
+    }
+
     private static final String extractString(byte[] buf, int len) {
         // the first three bytes are unknown; after that, it should be a narrow string...
         final int headerLength = 3;
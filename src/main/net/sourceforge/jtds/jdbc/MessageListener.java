@@ -0,0 +1,47 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+/**
+ * Receives the informational messages sent by the server (the output of
+ * <code>PRINT</code> statements and other messages with a severity of 10 or
+ * less) as they are read from the network.
+ * <p/>
+ * A listener is registered with
+ * {@link JtdsConnection#setMessageListener(MessageListener)}. It is called on
+ * the thread reading the response, so it should return quickly and must not
+ * use the connection.
+ */
+public interface MessageListener {
+    /**
+     * Called for each informational message received on the connection.
+     *
+     * @param number   the message number, 0 for <code>PRINT</code> output
+     * @param state    the server state code
+     * @param severity the message severity
+     * @param message  the message text
+     * @param server   the server name
+     * @param procName the name of the procedure that sent the message
+     * @param line     the line number in the SQL batch or procedure
+     * @return <code>true</code> if the message has been handled and is not
+     *         to be added to the warning chain, <code>false</code> to also
+     *         return it as a <code>SQLWarning</code>
+     */
+    boolean messageReceived(int number, int state, int severity, String message,
+                            String server, String procName, int line);
+}
@@ -0,0 +1,118 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sourceforge.jtds.jdbc.cache.SimpleLRUCache;
+
+/**
+ * Driver wide cache of <code>DatabaseMetaData</code> results.
+ * <p/>
+ * There is one cache for each server and user, as the rows returned by the
+ * catalog procedures depend on the permissions of the user. Each entry holds
+ * a copy of the rows of one result and expires after the time to live set by
+ * the connection that stored it. Once a cache is full the least recently used
+ * entries are discarded.
+ */
+final class MetaDataCache {
+    /** The caches, keyed by server and user. */
+    private static final ConcurrentHashMap<String, MetaDataCache> caches =
+            new ConcurrentHashMap<>();
+
+    /** The cached results, keyed by method and arguments. */
+    private final SimpleLRUCache<String, Entry> entries;
+
+    private MetaDataCache(int size) {
+        entries = new SimpleLRUCache<>(size);
+    }
+
+    /**
+     * Retrieves the cache for a server and user, creating it if necessary.
+     * The size of a cache is set by the first connection that uses it.
+     *
+     * @param key  the server and user key
+     * @param size the maximum number of entries
+     * @return the cache
+     */
+    static MetaDataCache getInstance(String key, int size) {
+        MetaDataCache cache = caches.get(key);
+        if (cache == null) {
+            cache = new MetaDataCache(size);
+            MetaDataCache existing = caches.putIfAbsent(key, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Retrieves a cached result.
+     *
+     * @param key the method and arguments key
+     * @return the entry or <code>null</code> if not cached or expired
+     */
+    Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a result.
+     *
+     * @param key         the method and arguments key
+     * @param columns     the column descriptors of the result
+     * @param columnCount the number of visible columns
+     * @param rows        the rows of the result, not to be modified afterwards
+     * @param ttl         the time to live in milliseconds
+     */
+    void put(String key, ColInfo[] columns, int columnCount, List rows, long ttl) {
+        entries.put(key, new Entry(columns, columnCount, rows,
+                System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A cached result.
+     */
+    static final class Entry {
+        final ColInfo[] columns;
+        final int columnCount;
+        final List rows;
+        final long expires;
+
+        Entry(ColInfo[] columns, int columnCount, List rows, long expires) {
+            this.columns = columns;
+            this.columnCount = columnCount;
+            this.rows = rows;
+            this.expires = expires;
+        }
+    }
+}
@@ -23,6 +23,10 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 
 import net.sourceforge.jtds.jdbc.SharedSocket.VirtualSocket;
 import net.sourceforge.jtds.util.*;
@@ -57,6 +61,8 @@ public class RequestStream {
     private final int bufferSize;
     /** The maximum decimal precision. */
     private final int maxPrecision;
+    /** Scratch buffer used to encode non-Unicode strings, lazily allocated. */
+    private ByteBuffer encodeBuffer;
 
     /**
      * Construct a RequestStream object.
@@ -308,21 +314,28 @@ public class RequestStream {
     void write(String s) throws IOException {
         if (socket.getTdsVersion() >= Driver.TDS70) {
             int len = s.length();
+            int i = 0;
 
-            for (int i = 0; i < len; ++i) {
-                int c = s.charAt(i);
+            while (i < len) {
+                int available = (buffer.length - bufferPtr) >> 1;
 
-                if (bufferPtr == buffer.length) {
-                    putPacket(0);
+                if (available == 0) {
+                    i = writeSplitChar(s.charAt(i), i);
+                    continue;
                 }
 
-                buffer[bufferPtr++] = (byte) c;
+                // encode as many chars as fit into the current packet
+                int limit = (len - i > available) ? i + available : len;
+                byte[] buf = buffer;
+                int ptr = bufferPtr;
 
-                if (bufferPtr == buffer.length) {
-                    putPacket(0);
+                for (; i < limit; i++) {
+                    char c = s.charAt(i);
+                    buf[ptr++] = (byte) c;
+                    buf[ptr++] = (byte) (c >> 8);
                 }
 
-                buffer[bufferPtr++] = (byte) (c >> 8);
+                bufferPtr = ptr;
             }
         } else {
             writeAscii(s);
@@ -339,40 +352,107 @@ public class RequestStream {
         int i = off;
         int limit = (off + len) > s.length ? s.length : off + len;
 
-        for ( ; i < limit; i++) {
-            char c = s[i];
+        while (i < limit) {
+            int available = (buffer.length - bufferPtr) >> 1;
 
-            if (bufferPtr == buffer.length) {
-                putPacket(0);
+            if (available == 0) {
+                i = writeSplitChar(s[i], i);
+                continue;
             }
 
-            buffer[bufferPtr++] = (byte) c;
+            // encode as many chars as fit into the current packet
+            int end = (limit - i > available) ? i + available : limit;
+            byte[] buf = buffer;
+            int ptr = bufferPtr;
 
-            if (bufferPtr == buffer.length) {
-                putPacket(0);
+            for (; i < end; i++) {
+                char c = s[i];
+                buf[ptr++] = (byte) c;
+                buf[ptr++] = (byte) (c >> 8);
             }
 
-            buffer[bufferPtr++] = (byte) (c >> 8);
+            bufferPtr = ptr;
         }
     }
 
+    /**
+     * Handle the case of less than two bytes left in the current packet while
+     * writing UCS-2 data: either send the full packet or write a single char
+     * split across the packet boundary.
+     *
+     * @param c the next char to write
+     * @param i the index of <code>c</code> in the source
+     * @return the index of the next char to write
+     * @throws IOException
+     */
+    private int writeSplitChar(char c, int i) throws IOException {
+        if (bufferPtr == buffer.length) {
+            putPacket(0);
+            return i;
+        }
+
+        buffer[bufferPtr++] = (byte) c;
+        putPacket(0);
+        buffer[bufferPtr++] = (byte) (c >> 8);
+        return i + 1;
+    }
+
     /**
      * Write a String to the output stream as translated bytes.
+     * <p>
+     * The String is encoded using a cached <code>CharsetEncoder</code> into a
+     * scratch buffer of packet size and copied into the packet buffer from
+     * there, avoiding a <code>byte[]</code> allocation per call.
      *
      * @param s The String to write.
      * @throws IOException
      */
     void writeAscii(String s) throws IOException {
-        String charsetName = socket.getCharset();
+        CharsetInfo ci = socket.getCharsetInfo();
+        CharsetEncoder enc = ci == null ? null : ci.getEncoder();
 
-        if (charsetName != null) {
-            try {
-                write(s.getBytes(charsetName));
-            } catch (UnsupportedEncodingException e) {
+        if (enc == null) {
+            String charsetName = ci == null ? null : ci.getCharset();
+
+            if (charsetName != null) {
+                try {
+                    write(s.getBytes(charsetName));
+                } catch (UnsupportedEncodingException e) {
+                    write(s.getBytes());
+                }
+            } else {
                 write(s.getBytes());
             }
-        } else {
-            write(s.getBytes());
+
+            return;
+        }
+
+        if (encodeBuffer == null) {
+            encodeBuffer = ByteBuffer.allocate(bufferSize);
+        }
+
+        CharBuffer in = CharBuffer.wrap(s);
+        boolean encoded = false;
+        boolean flushed = false;
+
+        while (!flushed) {
+            encodeBuffer.clear();
+            // The input must be encoded at least once, even if empty, before
+            // the encoder may be flushed
+            CoderResult cr = encoded ? CoderResult.UNDERFLOW : enc.encode(in, encodeBuffer, true);
+
+            if (cr.isUnderflow()) {
+                encoded = true;
+                cr = enc.flush(encodeBuffer);
+                flushed = cr.isUnderflow();
+            }
+
+            if (cr.isError()) {
+                // can't happen, encoder replaces malformed/unmappable input
+                cr.throwException();
+            }
+
+            write(encodeBuffer.array(), 0, encodeBuffer.position());
         }
     }
 
@@ -414,7 +494,6 @@ public class RequestStream {
      */
     void writeReaderChars(Reader in, int length) throws IOException {
         char cbuffer[] = new char[512];
-        byte bbuffer[] = new byte[1024];
 
         while (length > 0) {
             int res = in.read(cbuffer);
@@ -424,12 +503,7 @@ public class RequestStream {
                         "Data in stream less than specified by length");
             }
 
-            for (int i = 0, j = -1; i < res; i++) {
-                bbuffer[++j] = (byte) cbuffer[i];
-                bbuffer[++j] = (byte) (cbuffer[i] >> 8);
-            }
-
-            write(bbuffer, 0, res * 2);
+            write(cbuffer, 0, res);
             length -= res;
         }
 
@@ -463,7 +537,7 @@ public class RequestStream {
                         "More data in stream than specified by length");
             }
 
-            write(Support.encodeString(socket.getCharset(), new String(buffer, 0, result)));
+            writeAscii(new String(buffer, 0, result));
             i += result;
         }
     }
@@ -563,6 +637,9 @@ public class RequestStream {
         buffer[6] = (byte) ((socket.getTdsVersion() >= Driver.TDS70) ? 1 : 0);
         buffer[7] = 0;
 
+        if (PacketTrace.isActive()) {
+            PacketTrace.record(_VirtualSocket.id, false, buffer);
+        }
         if (Logger.isActive()) {
             Logger.logPacket(_VirtualSocket.id, false, buffer);
         }
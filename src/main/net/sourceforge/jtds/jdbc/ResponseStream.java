@@ -478,6 +478,9 @@ public class ResponseStream {
             bufferLen = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
             bufferPtr = TdsCore.PKT_HDR_LEN;
 
+            if (PacketTrace.isActive()) {
+                PacketTrace.record(_VirtualSocket.id, true, buffer);
+            }
             if (Logger.isActive()) {
                 Logger.logPacket(_VirtualSocket.id, true, buffer);
             }
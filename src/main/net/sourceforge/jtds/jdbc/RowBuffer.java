@@ -0,0 +1,438 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Column oriented buffer for cached result set rows.
+ * <p/>
+ * Rows are added and retrieved as <code>Object[]</code> arrays but are held
+ * column by column:
+ * <ol>
+ *   <li>Integer, long and floating point columns are held in primitive arrays
+ *     with a separate null bitmap, avoiding one boxed object per value.
+ *   <li>Character columns are dictionary encoded for as long as the number of
+ *     distinct values stays small compared to the number of rows.
+ *   <li>All other values (<code>BigDecimal</code>, <code>byte[]</code>,
+ *     <code>DateTime</code>, LOBs etc) are held as plain references.
+ * </ol>
+ * The layout of a column is chosen from the first non null value stored in
+ * it. If a value of a different class turns up later the column falls back
+ * to plain references, so any mix of values can be stored.
+ * <p/>
+ * Rows are returned either as new arrays or, to avoid an allocation for each
+ * row a cursor visits, copied into an array supplied by the caller; changes
+ * made to them must be written back with {@link #set}. A <code>null</code>
+ * row represents the hole left by a deleted row.
+ */
+class RowBuffer {
+
+    /** Dictionaries with up to this many entries are always kept. */
+    private static final int MIN_DICTIONARY_SIZE = 256;
+    /** Dictionaries are dropped once they grow beyond this size. */
+    private static final int MAX_DICTIONARY_SIZE = 65536;
+
+    /** The number of columns in each row. */
+    private final int width;
+    /** Column stores, <code>null</code> while a column holds only nulls. */
+    private final Column[] columns;
+    /** Rows that have been deleted or released. */
+    private final BitSet deleted = new BitSet();
+    /** The number of rows in the buffer. */
+    private int size;
+    /** The number of rows the column stores can hold. */
+    private int capacity;
+
+    /**
+     * Creates a new row buffer.
+     *
+     * @param width           the number of columns in each row
+     * @param initialCapacity the initial number of rows to allocate space for
+     */
+    RowBuffer(int width, int initialCapacity) {
+        this.width = width;
+        this.columns = new Column[width];
+        this.capacity = Math.max(initialCapacity, 1);
+    }
+
+    /**
+     * Retrieves the number of rows in the buffer, including deleted rows.
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends a row to the end of the buffer. The values are copied, the
+     * array itself is not retained.
+     *
+     * @param row the row to add
+     */
+    void add(Object[] row) {
+        if (size == capacity) {
+            capacity = capacity + (capacity >> 1) + 1;
+            for (int c = 0; c < width; c++) {
+                if (columns[c] != null) {
+                    columns[c].ensureCapacity(capacity);
+                }
+            }
+        }
+        store(size++, row);
+    }
+
+    /**
+     * Retrieves a copy of a row.
+     *
+     * @param index the zero based row index
+     * @return the row as a new <code>Object[]</code> or <code>null</code> if
+     *         the row has been deleted
+     */
+    Object[] get(int index) {
+        return get(index, null);
+    }
+
+    /**
+     * Retrieves a row into an existing array.
+     *
+     * @param index the zero based row index
+     * @param row   the array to copy the row into, reused if it has the width
+     *              of the rows, or <code>null</code>
+     * @return <code>row</code> or a new <code>Object[]</code> holding the row,
+     *         or <code>null</code> if the row has been deleted
+     */
+    Object[] get(int index, Object[] row) {
+        checkIndex(index);
+        if (deleted.get(index)) {
+            return null;
+        }
+        if (row == null || row.length != width) {
+            row = new Object[width];
+        }
+        for (int c = 0; c < width; c++) {
+            row[c] = columns[c] == null ? null : columns[c].get(index);
+        }
+        return row;
+    }
+
+    /**
+     * Replaces a row.
+     * <p/>
+     * Setting a row to <code>null</code> deletes it and releases any object
+     * references held for it.
+     *
+     * @param index the zero based row index
+     * @param row   the new row values or <code>null</code>
+     */
+    void set(int index, Object[] row) {
+        checkIndex(index);
+        store(index, row);
+    }
+
+    /**
+     * Stores the values of a row at the specified index.
+     */
+    private void store(int index, Object[] row) {
+        if (row == null) {
+            deleted.set(index);
+            for (int c = 0; c < width; c++) {
+                if (columns[c] != null) {
+                    columns[c].release(index);
+                }
+            }
+            return;
+        }
+        deleted.clear(index);
+        int count = Math.min(width, row.length);
+        for (int c = 0; c < width; c++) {
+            Object value = c < count ? row[c] : null;
+            Column column = columns[c];
+            if (column == null) {
+                if (value == null) {
+                    continue;
+                }
+                column = newColumn(value, capacity);
+                column.fillNull(0, size);
+                columns[c] = column;
+            }
+            if (!column.set(index, value)) {
+                // Value does not fit the column layout, use plain references
+                ObjectColumn objects = new ObjectColumn(capacity);
+                for (int i = 0; i < size; i++) {
+                    objects.set(i, column.get(i));
+                }
+                objects.set(index, value);
+                columns[c] = objects;
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Creates a column store suited to the class of the supplied value.
+     */
+    private static Column newColumn(Object value, int capacity) {
+        Class type = value.getClass();
+        if (type == Integer.class || type == Short.class
+                || type == Byte.class || type == Boolean.class
+                || type == Float.class) {
+            return new IntColumn(type, capacity);
+        }
+        if (type == Long.class || type == Double.class) {
+            return new LongColumn(type, capacity);
+        }
+        if (type == String.class) {
+            return new StringColumn(capacity);
+        }
+        return new ObjectColumn(capacity);
+    }
+
+    /**
+     * Storage for the values of one column.
+     */
+    private abstract static class Column {
+        /**
+         * Stores a value.
+         *
+         * @return <code>false</code> if the value cannot be held by this
+         *         column, in which case nothing is stored
+         */
+        abstract boolean set(int index, Object value);
+
+        abstract Object get(int index);
+
+        abstract void ensureCapacity(int capacity);
+
+        /**
+         * Marks the values in the specified range as null.
+         */
+        abstract void fillNull(int from, int to);
+
+        /**
+         * Drops any object reference held for a deleted row.
+         */
+        void release(int index) {
+        }
+    }
+
+    /**
+     * Stores <code>int</code> sized values: Integer, Short, Byte, Boolean and
+     * Float (as raw bits).
+     */
+    private static final class IntColumn extends Column {
+        private final Class type;
+        private final BitSet nulls = new BitSet();
+        private int[] values;
+
+        IntColumn(Class type, int capacity) {
+            this.type = type;
+            this.values = new int[capacity];
+        }
+
+        boolean set(int index, Object value) {
+            if (value == null) {
+                nulls.set(index);
+                return true;
+            }
+            if (value.getClass() != type) {
+                return false;
+            }
+            int v;
+            if (type == Integer.class) {
+                v = ((Integer) value).intValue();
+            } else if (type == Float.class) {
+                v = Float.floatToRawIntBits(((Float) value).floatValue());
+            } else if (type == Boolean.class) {
+                v = ((Boolean) value).booleanValue() ? 1 : 0;
+            } else {
+                v = ((Number) value).intValue();
+            }
+            values[index] = v;
+            nulls.clear(index);
+            return true;
+        }
+
+        Object get(int index) {
+            if (nulls.get(index)) {
+                return null;
+            }
+            int v = values[index];
+            if (type == Integer.class) {
+                return Integer.valueOf(v);
+            } else if (type == Float.class) {
+                return Float.valueOf(Float.intBitsToFloat(v));
+            } else if (type == Boolean.class) {
+                return Boolean.valueOf(v != 0);
+            } else if (type == Short.class) {
+                return Short.valueOf((short) v);
+            }
+            return Byte.valueOf((byte) v);
+        }
+
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void fillNull(int from, int to) {
+            nulls.set(from, to);
+        }
+    }
+
+    /**
+     * Stores <code>long</code> sized values: Long and Double (as raw bits).
+     */
+    private static final class LongColumn extends Column {
+        private final Class type;
+        private final BitSet nulls = new BitSet();
+        private long[] values;
+
+        LongColumn(Class type, int capacity) {
+            this.type = type;
+            this.values = new long[capacity];
+        }
+
+        boolean set(int index, Object value) {
+            if (value == null) {
+                nulls.set(index);
+                return true;
+            }
+            if (value.getClass() != type) {
+                return false;
+            }
+            if (type == Long.class) {
+                values[index] = ((Long) value).longValue();
+            } else {
+                values[index] = Double.doubleToRawLongBits(((Double) value).doubleValue());
+            }
+            nulls.clear(index);
+            return true;
+        }
+
+        Object get(int index) {
+            if (nulls.get(index)) {
+                return null;
+            }
+            if (type == Long.class) {
+                return Long.valueOf(values[index]);
+            }
+            return Double.valueOf(Double.longBitsToDouble(values[index]));
+        }
+
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void fillNull(int from, int to) {
+            nulls.set(from, to);
+        }
+    }
+
+    /**
+     * Stores strings as indexes into a dictionary of distinct values.
+     */
+    private static final class StringColumn extends Column {
+        private final ArrayList<String> dictionary = new ArrayList<>();
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        /** Dictionary index of each value, -1 for null. */
+        private int[] values;
+
+        StringColumn(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        boolean set(int index, Object value) {
+            if (value == null) {
+                values[index] = -1;
+                return true;
+            }
+            if (value.getClass() != String.class) {
+                return false;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                int entries = dictionary.size();
+                if (entries >= MAX_DICTIONARY_SIZE
+                        || (entries >= MIN_DICTIONARY_SIZE && entries > index / 2)) {
+                    // Too many distinct values for the dictionary to pay off
+                    return false;
+                }
+                code = Integer.valueOf(entries);
+                dictionary.add((String) value);
+                codes.put((String) value, code);
+            }
+            values[index] = code.intValue();
+            return true;
+        }
+
+        Object get(int index) {
+            int code = values[index];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void fillNull(int from, int to) {
+            Arrays.fill(values, from, to, -1);
+        }
+    }
+
+    /**
+     * Stores plain object references.
+     */
+    private static final class ObjectColumn extends Column {
+        private Object[] values;
+
+        ObjectColumn(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        boolean set(int index, Object value) {
+            values[index] = value;
+            return true;
+        }
+
+        Object get(int index) {
+            return values[index];
+        }
+
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void fillNull(int from, int to) {
+            Arrays.fill(values, from, to, null);
+        }
+
+        void release(int index) {
+            values[index] = null;
+        }
+    }
+}
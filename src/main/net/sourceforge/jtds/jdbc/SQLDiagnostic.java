@@ -20,11 +20,17 @@ package net.sourceforge.jtds.jdbc;
 import java.sql.DataTruncation;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
-import java.util.HashMap;
+import java.util.ArrayList;
 
 /**
  * Helper class for handling SQL warnings and errors. <p>Assigns SQL state values
  * in accordance to the native error number returned by the database server.
+ * <p>
+ * Server messages are offered to the connection's {@link MessageListener}
+ * first. The <code>SQLWarning</code> objects for the remaining messages are
+ * only created when the warning chain is retrieved, and the number of
+ * warnings retained can be limited with the <code>maxWarnings</code>
+ * connection property.
  *
  * @author Alin Sinpalean
  * @author Mike Hutchinson
@@ -36,289 +42,289 @@ class SQLDiagnostic {
      * The values in this table are derived from the list compiled by the
      * FreeTDS project. Thank you for the hard work.
      */
-    private final static HashMap mssqlStates = new HashMap();
+    private final static IntMap mssqlStates = new IntMap(256);
 
     /**
      * Map to convert Sybase SQL server error codes to ANSI SQLSTATE codes.
      * The values in this table are derived from the list compiled by the
      * FreeTDS project. Thank you for the hard work.
      */
-    private final static HashMap sybStates = new HashMap();
+    private final static IntMap sybStates = new IntMap(64);
 
     static {
         // When adding values into this map please ensure that you maintain
         // the ascending order. This is for readability purposes only, but it's
         // still important.
-        mssqlStates.put(new Integer(102), "42000"); // ADDED
-        mssqlStates.put(new Integer(105), "37000"); // ADDED
-        mssqlStates.put(new Integer(109), "21S01");
-        mssqlStates.put(new Integer(110), "21S01");
-        mssqlStates.put(new Integer(113), "42000");
-        mssqlStates.put(new Integer(131), "37000");
-        mssqlStates.put(new Integer(168), "22003");
-        mssqlStates.put(new Integer(170), "37000");
-        mssqlStates.put(new Integer(174), "37000");
-        mssqlStates.put(new Integer(195), "42000"); // ADDED
-        mssqlStates.put(new Integer(201), "37000");
-        mssqlStates.put(new Integer(206), "22005"); // ADDED
-        mssqlStates.put(new Integer(207), "42S22"); // (i-net is 42000)
-        mssqlStates.put(new Integer(208), "S0002"); // MODIFIED: was 42S02 (i-net is 42000) (Microsoft is S0002)
-        mssqlStates.put(new Integer(210), "22007"); // ? (i-net is 22008)
-        mssqlStates.put(new Integer(211), "22008"); // ADDED
-        mssqlStates.put(new Integer(213), "42000"); // MODIFIED: was 21S01
-        mssqlStates.put(new Integer(220), "22003");
-        mssqlStates.put(new Integer(229), "42000");
-        mssqlStates.put(new Integer(230), "42000");
-        mssqlStates.put(new Integer(232), "22003");
-        mssqlStates.put(new Integer(233), "23000"); // ADDED
-        mssqlStates.put(new Integer(234), "22003"); // ADDED
-        mssqlStates.put(new Integer(235), "22005"); // ADDED
-        mssqlStates.put(new Integer(236), "22003"); // ADDED
-        mssqlStates.put(new Integer(237), "22003"); // ADDED
-        mssqlStates.put(new Integer(238), "22003"); // ADDED
-        mssqlStates.put(new Integer(241), "22007"); // ? (i-net is 22008)
-        mssqlStates.put(new Integer(242), "22008");
-        mssqlStates.put(new Integer(244), "22003"); // ADDED
-        mssqlStates.put(new Integer(245), "22018"); // ? (i-net is 22005)
-        mssqlStates.put(new Integer(246), "22003"); // ADDED
-        mssqlStates.put(new Integer(247), "22005"); // ADDED
-        mssqlStates.put(new Integer(248), "22003"); // ADDED
-        mssqlStates.put(new Integer(249), "22005"); // ADDED
-        mssqlStates.put(new Integer(256), "22005"); // ADDED
-        mssqlStates.put(new Integer(257), "22005"); // ADDED
-        mssqlStates.put(new Integer(260), "42000"); // ADDED
-        mssqlStates.put(new Integer(262), "42000");
-        mssqlStates.put(new Integer(266), "25000");
-        mssqlStates.put(new Integer(272), "23000"); // ADDED
-        mssqlStates.put(new Integer(273), "23000"); // ADDED
-        mssqlStates.put(new Integer(277), "25000"); // ADDED
-        mssqlStates.put(new Integer(295), "22007"); // ? (i-net is 22008)
-        mssqlStates.put(new Integer(296), "22008");
-        mssqlStates.put(new Integer(298), "22008");
-        mssqlStates.put(new Integer(305), "22005"); // ADDED
-        mssqlStates.put(new Integer(307), "42S12");
-        mssqlStates.put(new Integer(308), "42S12");
-        mssqlStates.put(new Integer(310), "22025"); // ADDED
-        mssqlStates.put(new Integer(409), "22005"); // ADDED
-        mssqlStates.put(new Integer(506), "22019"); // ADDED
-        mssqlStates.put(new Integer(512), "21000");
-        mssqlStates.put(new Integer(515), "23000");
-        mssqlStates.put(new Integer(517), "22008"); // ?
-        mssqlStates.put(new Integer(518), "22005"); // ADDED
-        mssqlStates.put(new Integer(519), "22003"); // ADDED
-        mssqlStates.put(new Integer(520), "22003"); // ADDED
-        mssqlStates.put(new Integer(521), "22003"); // ADDED
-        mssqlStates.put(new Integer(522), "22003"); // ADDED
-        mssqlStates.put(new Integer(523), "22003"); // ADDED
-        mssqlStates.put(new Integer(524), "22003"); // ADDED
-        mssqlStates.put(new Integer(529), "22005"); // ADDED
-        mssqlStates.put(new Integer(530), "23000"); // ADDED
-        mssqlStates.put(new Integer(532), "01001"); // ADDED
-        mssqlStates.put(new Integer(535), "22003"); // MODIFIED: was 22008
-        mssqlStates.put(new Integer(542), "22008");
-        mssqlStates.put(new Integer(544), "23000");
-        mssqlStates.put(new Integer(547), "23000");
-        mssqlStates.put(new Integer(550), "44000"); // MODIFIED: was 23000
-        mssqlStates.put(new Integer(611), "25000"); // ADDED
-        mssqlStates.put(new Integer(626), "25000");
-        mssqlStates.put(new Integer(627), "25000");
-        mssqlStates.put(new Integer(628), "25000");
-        mssqlStates.put(new Integer(911), "08004"); // WRONG: db not found != connection rejected
-        mssqlStates.put(new Integer(1007), "22003");
-        mssqlStates.put(new Integer(1010), "22019"); // ADDED
-        mssqlStates.put(new Integer(1205), "40001"); // ADDED
-        mssqlStates.put(new Integer(1211), "40001"); // ADDED
-        mssqlStates.put(new Integer(1505), "23000");
-        mssqlStates.put(new Integer(1508), "23000");
-        mssqlStates.put(new Integer(1774), "21S02");
-        mssqlStates.put(new Integer(1911), "42S22");
-        mssqlStates.put(new Integer(1913), "42S11");
-        mssqlStates.put(new Integer(2526), "37000");
-        mssqlStates.put(new Integer(2557), "42000");
-        mssqlStates.put(new Integer(2571), "42000");
-        mssqlStates.put(new Integer(2601), "23000"); // ADDED
-        mssqlStates.put(new Integer(2615), "23000"); // ADDED
-        mssqlStates.put(new Integer(2625), "40001"); // ADDED
-        mssqlStates.put(new Integer(2626), "23000"); // ADDED
-        mssqlStates.put(new Integer(2627), "23000");
-        mssqlStates.put(new Integer(2714), "S0001"); // MODIFIED: was 42S01 (Microsoft is S0001)
-        mssqlStates.put(new Integer(2760), "42000");
-        mssqlStates.put(new Integer(2812), "37000");
-        mssqlStates.put(new Integer(3110), "42000");
-        mssqlStates.put(new Integer(3309), "40001"); // ADDED
-        mssqlStates.put(new Integer(3604), "23000"); // ADDED
-        mssqlStates.put(new Integer(3605), "23000"); // ADDED
-        mssqlStates.put(new Integer(3606), "22003");
-        mssqlStates.put(new Integer(3607), "22012");
-        mssqlStates.put(new Integer(3621), "01000");
-        mssqlStates.put(new Integer(3701), "42S02");
-        mssqlStates.put(new Integer(3704), "42000");
-        mssqlStates.put(new Integer(3725), "23000");
-        mssqlStates.put(new Integer(3726), "23000");
-        mssqlStates.put(new Integer(3902), "25000");
-        mssqlStates.put(new Integer(3903), "25000");
-        mssqlStates.put(new Integer(3906), "25000"); // ADDED
-        mssqlStates.put(new Integer(3908), "25000"); // ADDED
-        mssqlStates.put(new Integer(3915), "25000"); // ADDED
-        mssqlStates.put(new Integer(3916), "25000");
-        mssqlStates.put(new Integer(3918), "25000");
-        mssqlStates.put(new Integer(3919), "25000");
-        mssqlStates.put(new Integer(3921), "25000");
-        mssqlStates.put(new Integer(3922), "25000");
-        mssqlStates.put(new Integer(3926), "25000");
-        mssqlStates.put(new Integer(3960), "S0005"); // ADDED for Feature Request 1491811
-        mssqlStates.put(new Integer(4415), "44000"); // MODIFIED: was 23000
-        mssqlStates.put(new Integer(4613), "42000");
-        mssqlStates.put(new Integer(4618), "42000");
-        mssqlStates.put(new Integer(4712), "23000");
-        mssqlStates.put(new Integer(4834), "42000");
-        mssqlStates.put(new Integer(4924), "42S22");
-        mssqlStates.put(new Integer(4925), "42S21");
-        mssqlStates.put(new Integer(4926), "42S22");
-        mssqlStates.put(new Integer(5011), "42000");
-        mssqlStates.put(new Integer(5116), "42000");
-        mssqlStates.put(new Integer(5146), "22003");
-        mssqlStates.put(new Integer(5812), "42000");
-        mssqlStates.put(new Integer(6004), "42000");
-        mssqlStates.put(new Integer(6102), "42000");
-        mssqlStates.put(new Integer(6104), "37000");
-        mssqlStates.put(new Integer(6401), "25000"); // ADDED
-        mssqlStates.put(new Integer(7112), "40001"); // ADDED
-        mssqlStates.put(new Integer(7956), "42000");
-        mssqlStates.put(new Integer(7969), "25000");
-        mssqlStates.put(new Integer(8114), "37000");
-        mssqlStates.put(new Integer(8115), "22003");
-        mssqlStates.put(new Integer(8134), "22012");
-        mssqlStates.put(new Integer(8144), "37000");
-        mssqlStates.put(new Integer(8152), "22001");
-        mssqlStates.put(new Integer(8162), "37000"); // ADDED
-        mssqlStates.put(new Integer(8153), "01003");
-        mssqlStates.put(new Integer(8506), "25000");
-        mssqlStates.put(new Integer(10015), "22003"); // ADDED
-        mssqlStates.put(new Integer(10033), "42S12");
-        mssqlStates.put(new Integer(10055), "23000");
-        mssqlStates.put(new Integer(10065), "23000");
-        mssqlStates.put(new Integer(10095), "01001"); // ADDED
-        mssqlStates.put(new Integer(11010), "42000");
-        mssqlStates.put(new Integer(11011), "23000");
-        mssqlStates.put(new Integer(11040), "23000");
-        mssqlStates.put(new Integer(11045), "42000");
-        mssqlStates.put(new Integer(14126), "42000");
-        mssqlStates.put(new Integer(15247), "42000");
-        mssqlStates.put(new Integer(15323), "42S12");
-        mssqlStates.put(new Integer(15605), "42S11");
-        mssqlStates.put(new Integer(15622), "42000");
-        mssqlStates.put(new Integer(15626), "25000");
-        mssqlStates.put(new Integer(15645), "42S22");
-        mssqlStates.put(new Integer(16905), "24000");
-        mssqlStates.put(new Integer(16909), "24000"); // ADDED
-        mssqlStates.put(new Integer(16911), "24000"); // ADDED
-        mssqlStates.put(new Integer(16917), "24000");
-        mssqlStates.put(new Integer(16934), "24000"); // ADDED
-        mssqlStates.put(new Integer(16946), "24000");
-        mssqlStates.put(new Integer(16950), "24000");
-        mssqlStates.put(new Integer(16999), "24000");
-        mssqlStates.put(new Integer(17308), "42000");
-        mssqlStates.put(new Integer(17571), "42000");
-        mssqlStates.put(new Integer(18002), "42000");
-        mssqlStates.put(new Integer(18452), "28000");
-        mssqlStates.put(new Integer(18456), "28000");
-        mssqlStates.put(new Integer(18833), "42S12");
-        mssqlStates.put(new Integer(20604), "42000");
-        mssqlStates.put(new Integer(21049), "42000");
-        mssqlStates.put(new Integer(21166), "42S22");
-        mssqlStates.put(new Integer(21255), "42S21");
+        mssqlStates.put(102, "42000"); // ADDED
+        mssqlStates.put(105, "37000"); // ADDED
+        mssqlStates.put(109, "21S01");
+        mssqlStates.put(110, "21S01");
+        mssqlStates.put(113, "42000");
+        mssqlStates.put(131, "37000");
+        mssqlStates.put(168, "22003");
+        mssqlStates.put(170, "37000");
+        mssqlStates.put(174, "37000");
+        mssqlStates.put(195, "42000"); // ADDED
+        mssqlStates.put(201, "37000");
+        mssqlStates.put(206, "22005"); // ADDED
+        mssqlStates.put(207, "42S22"); // (i-net is 42000)
+        mssqlStates.put(208, "S0002"); // MODIFIED: was 42S02 (i-net is 42000) (Microsoft is S0002)
+        mssqlStates.put(210, "22007"); // ? (i-net is 22008)
+        mssqlStates.put(211, "22008"); // ADDED
+        mssqlStates.put(213, "42000"); // MODIFIED: was 21S01
+        mssqlStates.put(220, "22003");
+        mssqlStates.put(229, "42000");
+        mssqlStates.put(230, "42000");
+        mssqlStates.put(232, "22003");
+        mssqlStates.put(233, "23000"); // ADDED
+        mssqlStates.put(234, "22003"); // ADDED
+        mssqlStates.put(235, "22005"); // ADDED
+        mssqlStates.put(236, "22003"); // ADDED
+        mssqlStates.put(237, "22003"); // ADDED
+        mssqlStates.put(238, "22003"); // ADDED
+        mssqlStates.put(241, "22007"); // ? (i-net is 22008)
+        mssqlStates.put(242, "22008");
+        mssqlStates.put(244, "22003"); // ADDED
+        mssqlStates.put(245, "22018"); // ? (i-net is 22005)
+        mssqlStates.put(246, "22003"); // ADDED
+        mssqlStates.put(247, "22005"); // ADDED
+        mssqlStates.put(248, "22003"); // ADDED
+        mssqlStates.put(249, "22005"); // ADDED
+        mssqlStates.put(256, "22005"); // ADDED
+        mssqlStates.put(257, "22005"); // ADDED
+        mssqlStates.put(260, "42000"); // ADDED
+        mssqlStates.put(262, "42000");
+        mssqlStates.put(266, "25000");
+        mssqlStates.put(272, "23000"); // ADDED
+        mssqlStates.put(273, "23000"); // ADDED
+        mssqlStates.put(277, "25000"); // ADDED
+        mssqlStates.put(295, "22007"); // ? (i-net is 22008)
+        mssqlStates.put(296, "22008");
+        mssqlStates.put(298, "22008");
+        mssqlStates.put(305, "22005"); // ADDED
+        mssqlStates.put(307, "42S12");
+        mssqlStates.put(308, "42S12");
+        mssqlStates.put(310, "22025"); // ADDED
+        mssqlStates.put(409, "22005"); // ADDED
+        mssqlStates.put(506, "22019"); // ADDED
+        mssqlStates.put(512, "21000");
+        mssqlStates.put(515, "23000");
+        mssqlStates.put(517, "22008"); // ?
+        mssqlStates.put(518, "22005"); // ADDED
+        mssqlStates.put(519, "22003"); // ADDED
+        mssqlStates.put(520, "22003"); // ADDED
+        mssqlStates.put(521, "22003"); // ADDED
+        mssqlStates.put(522, "22003"); // ADDED
+        mssqlStates.put(523, "22003"); // ADDED
+        mssqlStates.put(524, "22003"); // ADDED
+        mssqlStates.put(529, "22005"); // ADDED
+        mssqlStates.put(530, "23000"); // ADDED
+        mssqlStates.put(532, "01001"); // ADDED
+        mssqlStates.put(535, "22003"); // MODIFIED: was 22008
+        mssqlStates.put(542, "22008");
+        mssqlStates.put(544, "23000");
+        mssqlStates.put(547, "23000");
+        mssqlStates.put(550, "44000"); // MODIFIED: was 23000
+        mssqlStates.put(611, "25000"); // ADDED
+        mssqlStates.put(626, "25000");
+        mssqlStates.put(627, "25000");
+        mssqlStates.put(628, "25000");
+        mssqlStates.put(911, "08004"); // WRONG: db not found != connection rejected
+        mssqlStates.put(1007, "22003");
+        mssqlStates.put(1010, "22019"); // ADDED
+        mssqlStates.put(1205, "40001"); // ADDED
+        mssqlStates.put(1211, "40001"); // ADDED
+        mssqlStates.put(1505, "23000");
+        mssqlStates.put(1508, "23000");
+        mssqlStates.put(1774, "21S02");
+        mssqlStates.put(1911, "42S22");
+        mssqlStates.put(1913, "42S11");
+        mssqlStates.put(2526, "37000");
+        mssqlStates.put(2557, "42000");
+        mssqlStates.put(2571, "42000");
+        mssqlStates.put(2601, "23000"); // ADDED
+        mssqlStates.put(2615, "23000"); // ADDED
+        mssqlStates.put(2625, "40001"); // ADDED
+        mssqlStates.put(2626, "23000"); // ADDED
+        mssqlStates.put(2627, "23000");
+        mssqlStates.put(2714, "S0001"); // MODIFIED: was 42S01 (Microsoft is S0001)
+        mssqlStates.put(2760, "42000");
+        mssqlStates.put(2812, "37000");
+        mssqlStates.put(3110, "42000");
+        mssqlStates.put(3309, "40001"); // ADDED
+        mssqlStates.put(3604, "23000"); // ADDED
+        mssqlStates.put(3605, "23000"); // ADDED
+        mssqlStates.put(3606, "22003");
+        mssqlStates.put(3607, "22012");
+        mssqlStates.put(3621, "01000");
+        mssqlStates.put(3701, "42S02");
+        mssqlStates.put(3704, "42000");
+        mssqlStates.put(3725, "23000");
+        mssqlStates.put(3726, "23000");
+        mssqlStates.put(3902, "25000");
+        mssqlStates.put(3903, "25000");
+        mssqlStates.put(3906, "25000"); // ADDED
+        mssqlStates.put(3908, "25000"); // ADDED
+        mssqlStates.put(3915, "25000"); // ADDED
+        mssqlStates.put(3916, "25000");
+        mssqlStates.put(3918, "25000");
+        mssqlStates.put(3919, "25000");
+        mssqlStates.put(3921, "25000");
+        mssqlStates.put(3922, "25000");
+        mssqlStates.put(3926, "25000");
+        mssqlStates.put(3960, "S0005"); // ADDED for Feature Request 1491811
+        mssqlStates.put(4415, "44000"); // MODIFIED: was 23000
+        mssqlStates.put(4613, "42000");
+        mssqlStates.put(4618, "42000");
+        mssqlStates.put(4712, "23000");
+        mssqlStates.put(4834, "42000");
+        mssqlStates.put(4924, "42S22");
+        mssqlStates.put(4925, "42S21");
+        mssqlStates.put(4926, "42S22");
+        mssqlStates.put(5011, "42000");
+        mssqlStates.put(5116, "42000");
+        mssqlStates.put(5146, "22003");
+        mssqlStates.put(5812, "42000");
+        mssqlStates.put(6004, "42000");
+        mssqlStates.put(6102, "42000");
+        mssqlStates.put(6104, "37000");
+        mssqlStates.put(6401, "25000"); // ADDED
+        mssqlStates.put(7112, "40001"); // ADDED
+        mssqlStates.put(7956, "42000");
+        mssqlStates.put(7969, "25000");
+        mssqlStates.put(8114, "37000");
+        mssqlStates.put(8115, "22003");
+        mssqlStates.put(8134, "22012");
+        mssqlStates.put(8144, "37000");
+        mssqlStates.put(8152, "22001");
+        mssqlStates.put(8162, "37000"); // ADDED
+        mssqlStates.put(8153, "01003");
+        mssqlStates.put(8506, "25000");
+        mssqlStates.put(10015, "22003"); // ADDED
+        mssqlStates.put(10033, "42S12");
+        mssqlStates.put(10055, "23000");
+        mssqlStates.put(10065, "23000");
+        mssqlStates.put(10095, "01001"); // ADDED
+        mssqlStates.put(11010, "42000");
+        mssqlStates.put(11011, "23000");
+        mssqlStates.put(11040, "23000");
+        mssqlStates.put(11045, "42000");
+        mssqlStates.put(14126, "42000");
+        mssqlStates.put(15247, "42000");
+        mssqlStates.put(15323, "42S12");
+        mssqlStates.put(15605, "42S11");
+        mssqlStates.put(15622, "42000");
+        mssqlStates.put(15626, "25000");
+        mssqlStates.put(15645, "42S22");
+        mssqlStates.put(16905, "24000");
+        mssqlStates.put(16909, "24000"); // ADDED
+        mssqlStates.put(16911, "24000"); // ADDED
+        mssqlStates.put(16917, "24000");
+        mssqlStates.put(16934, "24000"); // ADDED
+        mssqlStates.put(16946, "24000");
+        mssqlStates.put(16950, "24000");
+        mssqlStates.put(16999, "24000");
+        mssqlStates.put(17308, "42000");
+        mssqlStates.put(17571, "42000");
+        mssqlStates.put(18002, "42000");
+        mssqlStates.put(18452, "28000");
+        mssqlStates.put(18456, "28000");
+        mssqlStates.put(18833, "42S12");
+        mssqlStates.put(20604, "42000");
+        mssqlStates.put(21049, "42000");
+        mssqlStates.put(21166, "42S22");
+        mssqlStates.put(21255, "42S21");
 
         // When adding values into this map please ensure that you maintain
         // the ascending order. This is for readability purposes only, but it's
         // still important.
-        sybStates.put(new Integer(102), "37000");
-        sybStates.put(new Integer(109), "21S01");
-        sybStates.put(new Integer(110), "21S01");
-        sybStates.put(new Integer(113), "42000");
-        sybStates.put(new Integer(168), "22003");
-        sybStates.put(new Integer(201), "37000");
-        sybStates.put(new Integer(207), "42S22");
-        sybStates.put(new Integer(208), "42S02");
-        sybStates.put(new Integer(213), "21S01");
-        sybStates.put(new Integer(220), "22003");
-        sybStates.put(new Integer(227), "22003");
-        sybStates.put(new Integer(229), "42000");
-        sybStates.put(new Integer(230), "42000");
-        sybStates.put(new Integer(232), "22003");
-        sybStates.put(new Integer(233), "23000");
-        sybStates.put(new Integer(245), "22018");
-        sybStates.put(new Integer(247), "22003");
-        sybStates.put(new Integer(257), "37000");
-        sybStates.put(new Integer(262), "42000");
-        sybStates.put(new Integer(277), "25000");
-        sybStates.put(new Integer(307), "42S12");
-        sybStates.put(new Integer(512), "21000");
-        sybStates.put(new Integer(517), "22008");
-        sybStates.put(new Integer(535), "22008");
-        sybStates.put(new Integer(542), "22008");
-        sybStates.put(new Integer(544), "23000");
-        sybStates.put(new Integer(545), "23000");
-        sybStates.put(new Integer(546), "23000");
-        sybStates.put(new Integer(547), "23000");
-        sybStates.put(new Integer(548), "23000");
-        sybStates.put(new Integer(549), "23000");
-        sybStates.put(new Integer(550), "23000");
-        sybStates.put(new Integer(558), "24000");
-        sybStates.put(new Integer(559), "24000");
-        sybStates.put(new Integer(562), "24000");
-        sybStates.put(new Integer(565), "24000");
-        sybStates.put(new Integer(583), "24000");
-        sybStates.put(new Integer(611), "25000");
-        sybStates.put(new Integer(627), "25000");
-        sybStates.put(new Integer(628), "25000");
-        sybStates.put(new Integer(641), "25000");
-        sybStates.put(new Integer(642), "25000");
-        sybStates.put(new Integer(911), "08004");
-        sybStates.put(new Integer(1276), "25000");
-        sybStates.put(new Integer(1505), "23000");
-        sybStates.put(new Integer(1508), "23000");
-        sybStates.put(new Integer(1715), "21S02");
-        sybStates.put(new Integer(1720), "42S22");
-        sybStates.put(new Integer(1913), "42S11");
-        sybStates.put(new Integer(1921), "42S21");
-        sybStates.put(new Integer(2526), "37000");
-        sybStates.put(new Integer(2714), "42S01");
-        sybStates.put(new Integer(2812), "37000");
-        sybStates.put(new Integer(3606), "22003");
-        sybStates.put(new Integer(3607), "22012");
-        sybStates.put(new Integer(3621), "01000");
-        sybStates.put(new Integer(3701), "42S02");
-        sybStates.put(new Integer(3902), "25000");
-        sybStates.put(new Integer(3903), "25000");
-        sybStates.put(new Integer(4602), "42000");
-        sybStates.put(new Integer(4603), "42000");
-        sybStates.put(new Integer(4608), "42000");
-        sybStates.put(new Integer(4934), "42S22");
-        sybStates.put(new Integer(6104), "37000");
-        sybStates.put(new Integer(6235), "24000");
-        sybStates.put(new Integer(6259), "24000");
-        sybStates.put(new Integer(6260), "24000");
-        sybStates.put(new Integer(7010), "42S12");
-        sybStates.put(new Integer(7327), "37000");
-        sybStates.put(new Integer(9501), "01003");
-        sybStates.put(new Integer(9502), "22001");
-        sybStates.put(new Integer(10306), "42000");
-        sybStates.put(new Integer(10323), "42000");
-        sybStates.put(new Integer(10330), "42000");
-        sybStates.put(new Integer(10331), "42000");
-        sybStates.put(new Integer(10332), "42000");
-        sybStates.put(new Integer(11021), "37000");
-        sybStates.put(new Integer(11110), "42000");
-        sybStates.put(new Integer(11113), "42000");
-        sybStates.put(new Integer(11118), "42000");
-        sybStates.put(new Integer(11121), "42000");
-        sybStates.put(new Integer(17222), "42000");
-        sybStates.put(new Integer(17223), "42000");
-        sybStates.put(new Integer(18091), "42S12");
-        sybStates.put(new Integer(18117), "42S22");
-        sybStates.put(new Integer(18350), "42000");
-        sybStates.put(new Integer(18351), "42000");
+        sybStates.put(102, "37000");
+        sybStates.put(109, "21S01");
+        sybStates.put(110, "21S01");
+        sybStates.put(113, "42000");
+        sybStates.put(168, "22003");
+        sybStates.put(201, "37000");
+        sybStates.put(207, "42S22");
+        sybStates.put(208, "42S02");
+        sybStates.put(213, "21S01");
+        sybStates.put(220, "22003");
+        sybStates.put(227, "22003");
+        sybStates.put(229, "42000");
+        sybStates.put(230, "42000");
+        sybStates.put(232, "22003");
+        sybStates.put(233, "23000");
+        sybStates.put(245, "22018");
+        sybStates.put(247, "22003");
+        sybStates.put(257, "37000");
+        sybStates.put(262, "42000");
+        sybStates.put(277, "25000");
+        sybStates.put(307, "42S12");
+        sybStates.put(512, "21000");
+        sybStates.put(517, "22008");
+        sybStates.put(535, "22008");
+        sybStates.put(542, "22008");
+        sybStates.put(544, "23000");
+        sybStates.put(545, "23000");
+        sybStates.put(546, "23000");
+        sybStates.put(547, "23000");
+        sybStates.put(548, "23000");
+        sybStates.put(549, "23000");
+        sybStates.put(550, "23000");
+        sybStates.put(558, "24000");
+        sybStates.put(559, "24000");
+        sybStates.put(562, "24000");
+        sybStates.put(565, "24000");
+        sybStates.put(583, "24000");
+        sybStates.put(611, "25000");
+        sybStates.put(627, "25000");
+        sybStates.put(628, "25000");
+        sybStates.put(641, "25000");
+        sybStates.put(642, "25000");
+        sybStates.put(911, "08004");
+        sybStates.put(1276, "25000");
+        sybStates.put(1505, "23000");
+        sybStates.put(1508, "23000");
+        sybStates.put(1715, "21S02");
+        sybStates.put(1720, "42S22");
+        sybStates.put(1913, "42S11");
+        sybStates.put(1921, "42S21");
+        sybStates.put(2526, "37000");
+        sybStates.put(2714, "42S01");
+        sybStates.put(2812, "37000");
+        sybStates.put(3606, "22003");
+        sybStates.put(3607, "22012");
+        sybStates.put(3621, "01000");
+        sybStates.put(3701, "42S02");
+        sybStates.put(3902, "25000");
+        sybStates.put(3903, "25000");
+        sybStates.put(4602, "42000");
+        sybStates.put(4603, "42000");
+        sybStates.put(4608, "42000");
+        sybStates.put(4934, "42S22");
+        sybStates.put(6104, "37000");
+        sybStates.put(6235, "24000");
+        sybStates.put(6259, "24000");
+        sybStates.put(6260, "24000");
+        sybStates.put(7010, "42S12");
+        sybStates.put(7327, "37000");
+        sybStates.put(9501, "01003");
+        sybStates.put(9502, "22001");
+        sybStates.put(10306, "42000");
+        sybStates.put(10323, "42000");
+        sybStates.put(10330, "42000");
+        sybStates.put(10331, "42000");
+        sybStates.put(10332, "42000");
+        sybStates.put(11021, "37000");
+        sybStates.put(11110, "42000");
+        sybStates.put(11113, "42000");
+        sybStates.put(11118, "42000");
+        sybStates.put(11121, "42000");
+        sybStates.put(17222, "42000");
+        sybStates.put(17223, "42000");
+        sybStates.put(18091, "42S12");
+        sybStates.put(18117, "42S22");
+        sybStates.put(18350, "42000");
+        sybStates.put(18351, "42000");
     }
 
     /**
@@ -327,18 +333,37 @@ class SQLDiagnostic {
      */
     private final int serverType;
 
+    /**
+     * The connection owning this object, for the message listener, or
+     * <code>null</code>.
+     */
+    private final JtdsConnection connection;
+
+    /**
+     * The maximum number of warnings retained, 0 for no limit.
+     */
+    private final int maxWarnings;
+
     SQLException exceptions;
     SQLException lastException;
-    SQLWarning warnings;
-    SQLWarning lastWarning;
+    private SQLWarning warnings;
+    private SQLWarning lastWarning;
+
+    /**
+     * Warnings not yet added to the chain, each either a
+     * <code>SQLWarning</code> or a <code>ServerMessage</code>.
+     */
+    private final ArrayList pending = new ArrayList();
+
+    /**
+     * Number of warnings retained since the chain was last cleared.
+     */
+    private int warningCount;
 
     void addWarning(SQLWarning w) {
-        if (warnings == null) {
-            warnings = w;
-        } else {
-            lastWarning.setNextWarning(w);
+        if (retainWarning()) {
+            pending.add(w);
         }
-        lastWarning = w;
     }
 
     void addException(SQLException e) {
@@ -350,6 +375,24 @@ class SQLDiagnostic {
         lastException = e;
     }
 
+    /**
+     * Counts a new warning against the limit, adding a warning that reports
+     * the limit when it is reached.
+     *
+     * @return <code>true</code> if the warning is to be retained
+     */
+    private boolean retainWarning() {
+        if (maxWarnings > 0 && warningCount >= maxWarnings) {
+            if (warningCount++ == maxWarnings) {
+                pending.add(new SQLWarning(
+                        Messages.get("warning.limit", new Integer(maxWarnings)), "01000"));
+            }
+            return false;
+        }
+        warningCount++;
+        return true;
+    }
+
     /**
      * Create a dianostic SQLException or SQLWarning.
      *
@@ -390,15 +433,14 @@ class SQLDiagnostic {
 
             addException(e);
         } else {
-            if (number == 0) {
-                // Output from a TransactSQL print statement.
-                SQLWarning w = new SQLWarning(message, null, 0);
-                addWarning(w);
-            } else {
-                SQLWarning w = new SQLWarning(message,
-                                              getStateCode(number, serverType, "01000"),
-                                              number);
-                addWarning(w);
+            MessageListener listener = connection == null ? null : connection.getMessageListener();
+            if (listener != null && listener.messageReceived(
+                    number, state, serverity, message, server, procName, line)) {
+                return;
+            }
+            if (retainWarning()) {
+                // The SQLWarning is created when the chain is retrieved
+                pending.add(new ServerMessage(number, message));
             }
         }
     }
@@ -408,6 +450,9 @@ class SQLDiagnostic {
      */
     void clearWarnings() {
         warnings = null;
+        lastWarning = null;
+        pending.clear();
+        warningCount = 0;
     }
 
     /**
@@ -430,6 +475,30 @@ class SQLDiagnostic {
      * @return The warning chain head as a <code>SQLWarning</code>.
      */
     SQLWarning getWarnings() {
+        for (int i = 0; i < pending.size(); i++) {
+            Object item = pending.get(i);
+            SQLWarning w;
+            if (item instanceof ServerMessage) {
+                ServerMessage msg = (ServerMessage) item;
+                if (msg.number == 0) {
+                    // Output from a TransactSQL print statement.
+                    w = new SQLWarning(msg.message, null, 0);
+                } else {
+                    w = new SQLWarning(msg.message,
+                                       getStateCode(msg.number, serverType, "01000"),
+                                       msg.number);
+                }
+            } else {
+                w = (SQLWarning) item;
+            }
+            if (warnings == null) {
+                warnings = w;
+            } else {
+                lastWarning.setNextWarning(w);
+            }
+            lastWarning = w;
+        }
+        pending.clear();
         return warnings;
     }
 
@@ -440,6 +509,20 @@ class SQLDiagnostic {
      */
     SQLDiagnostic(final int serverType) {
         this.serverType = serverType;
+        this.connection = null;
+        this.maxWarnings = 0;
+    }
+
+    /**
+     * Create an SQL message object for a connection.
+     *
+     * @param connection the connection providing the server type, the
+     *                   message listener and the warning limit
+     */
+    SQLDiagnostic(final JtdsConnection connection) {
+        this.serverType = connection.getServerType();
+        this.connection = connection;
+        this.maxWarnings = connection.getMaxWarnings();
     }
 
     /**
@@ -453,8 +536,8 @@ class SQLDiagnostic {
     private static String getStateCode(final int number,
                                        final int serverType,
                                        final String defState) {
-        final HashMap stateTable = (serverType == Driver.SYBASE) ? sybStates : mssqlStates;
-        final String state = (String) stateTable.get(new Integer(number));
+        final IntMap stateTable = (serverType == Driver.SYBASE) ? sybStates : mssqlStates;
+        final String state = (String) stateTable.get(number);
 
         if (state != null) {
             return state;
@@ -462,4 +545,17 @@ class SQLDiagnostic {
 
         return defState;
     }
+
+    /**
+     * A server message held until the warning chain is retrieved.
+     */
+    private static class ServerMessage {
+        final int number;
+        final String message;
+
+        ServerMessage(int number, String message) {
+            this.number = number;
+            this.message = message;
+        }
+    }
 }
\ No newline at end of file
@@ -39,6 +39,8 @@ import javax.net.SocketFactory;
 
 import net.sourceforge.jtds.ssl.*;
 import net.sourceforge.jtds.util.Logger;
+import net.sourceforge.jtds.util.PacketTrace;
+import net.sourceforge.jtds.util.ResourceCleaner;
 
 /**
  * This class manages the physical connection to the SQL Server and
@@ -137,6 +139,14 @@ class SharedSocket {
      * Table of stream objects sharing this socket.
      */
     private final ConcurrentMap<Integer,VirtualSocket> _VirtualSockets = new ConcurrentHashMap<>();
+    /**
+     * The network resources to release if this socket is not closed.
+     */
+    private final SocketCleanup resources = new SocketCleanup(_VirtualSockets);
+    /**
+     * Registration of this socket with the cleaner.
+     */
+    private final ResourceCleaner.Cleanable cleanable;
     /**
      * The virtual socket of the object that is expecting a response from the server.
      */
@@ -235,6 +245,7 @@ class SharedSocket {
     	this.bufferDir = bufferDir;
         this.tdsVersion = tdsVersion;
         this.serverType = serverType;
+        cleanable = ResourceCleaner.register(this, resources, "Socket");
     }
 
     /**
@@ -249,6 +260,7 @@ class SharedSocket {
         host = connection.getServerName();
         port = connection.getPortNumber();
         socket = createSocketForJDBC3(connection);
+        resources.socket = socket;
         setOut(new DataOutputStream(socket.getOutputStream()));
         setIn(new DataInputStream(socket.getInputStream()));
         socket.setTcpNoDelay(connection.getTcpNoDelay());
@@ -521,6 +533,9 @@ class SharedSocket {
                     cancel[7] = 0;
                     getOut().write(cancel, 0, TDS_HDR_LEN);
                     getOut().flush();
+                    if (PacketTrace.isActive()) {
+                        PacketTrace.record(vsock.id, false, cancel);
+                    }
                     if (Logger.isActive()) {
                         Logger.logPacket(vsock.id, false, cancel);
                     }
@@ -548,23 +563,7 @@ class SharedSocket {
       }
 
       // see if any temporary files need deleting
-      for( VirtualSocket vsock : _VirtualSockets.values() )
-      {
-         if( vsock != null && vsock.diskQueue != null )
-         {
-            try
-            {
-               vsock.diskQueue.close();
-               vsock.queueFile.delete();
-            }
-            catch( IOException ioe )
-            {
-               // ignore errors
-            }
-         }
-      }
-
-      _VirtualSockets.clear();
+      deleteQueueFiles( _VirtualSockets );
 
       try
       {
@@ -576,6 +575,8 @@ class SharedSocket {
       }
       finally
       {
+         cleanable.cancel();
+
          // close physical socket
          if( socket != null )
          {
@@ -584,6 +585,33 @@ class SharedSocket {
       }
    }
 
+   /**
+    * Deletes the disk queues of all virtual sockets.
+    *
+    * @param virtualSockets
+    *    the virtual sockets to release
+    */
+   private static void deleteQueueFiles( ConcurrentMap<Integer,VirtualSocket> virtualSockets )
+   {
+      for( VirtualSocket vsock : virtualSockets.values() )
+      {
+         if( vsock != null && vsock.diskQueue != null )
+         {
+            try
+            {
+               vsock.diskQueue.close();
+               vsock.queueFile.delete();
+            }
+            catch( IOException ioe )
+            {
+               // ignore errors
+            }
+         }
+      }
+
+      virtualSockets.clear();
+   }
+
     /**
      * Force close the socket causing any pending reads/writes to fail.
      * <p>
@@ -1000,6 +1028,7 @@ class SharedSocket {
      */
     protected void setIn(DataInputStream in) {
         this.in = in;
+        resources.in = in;
     }
 
     /**
@@ -1018,6 +1047,7 @@ class SharedSocket {
      */
     protected void setOut(DataOutputStream out) {
         this.out = out;
+        resources.out = out;
     }
 
     /**
@@ -1038,20 +1068,43 @@ class SharedSocket {
         return port;
     }
 
-   /**
-    * Ensure all resources are released.
-    */
-   protected void finalize()
-      throws Throwable
-   {
-      try
-      {
-         close();
-      }
-      finally
-      {
-         super.finalize();
-      }
-   }
+    /**
+     * Cleanup action for sockets reclaimed without being closed. Holds the
+     * network resources but not the <code>SharedSocket</code> itself.
+     */
+    private static class SocketCleanup implements Runnable {
+        private final ConcurrentMap<Integer,VirtualSocket> virtualSockets;
+        volatile Socket socket;
+        volatile InputStream in;
+        volatile OutputStream out;
+
+        SocketCleanup(ConcurrentMap<Integer,VirtualSocket> virtualSockets) {
+            this.virtualSockets = virtualSockets;
+        }
 
+        public void run() {
+            deleteQueueFiles(virtualSockets);
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -41,6 +41,7 @@ import java.sql.Types;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.TimeZone;
 
 import net.sourceforge.jtds.util.Logger;
 
@@ -81,6 +82,8 @@ public class Support {
     private static final BigDecimal MAX_VALUE_LONG_BD = new BigDecimal(String.valueOf(Long.MAX_VALUE));
     private static final BigInteger MAX_VALUE_28 = new BigInteger("9999999999999999999999999999");
     private static final BigInteger MAX_VALUE_38 = new BigInteger("99999999999999999999999999999999999999");
+    /** The default switch from the Julian to the Gregorian calendar. */
+    private static final long GREGORIAN_CHANGE = new GregorianCalendar().getGregorianChange().getTime();
 
     /**
      * Convert java clases to java.sql.Type constant.
@@ -1291,6 +1294,13 @@ public class Support {
      * @return the new timestamp value as a <code>long</code>
      */
     public static long timeToZone(java.util.Date value, Calendar target) {
+        if (isGregorian(target)) {
+            long millis = DateTime.changeZone(value.getTime(),
+                    TimeZone.getDefault(), target.getTimeZone());
+            if (millis != Long.MIN_VALUE) {
+                return millis;
+            }
+        }
         java.util.Date tmp = target.getTime();
         try {
             GregorianCalendar cal = new GregorianCalendar();
@@ -1316,6 +1326,13 @@ public class Support {
      * @return The new timestamp value as a <code>long</code>.
      */
     public static long timeFromZone(java.util.Date value , Calendar target) {
+        if (isGregorian(target)) {
+            long millis = DateTime.changeZone(value.getTime(),
+                    target.getTimeZone(), TimeZone.getDefault());
+            if (millis != Long.MIN_VALUE) {
+                return millis;
+            }
+        }
         java.util.Date tmp = target.getTime();
         try {
             GregorianCalendar cal = new GregorianCalendar();
@@ -1334,6 +1351,22 @@ public class Support {
         }
     }
 
+    /**
+     * Checks whether a <code>Calendar</code> is a plain
+     * <code>GregorianCalendar</code>, so that only its time zone matters to
+     * {@link #timeToZone} and {@link #timeFromZone}.
+     *
+     * @param cal the calendar to check
+     * @return <code>true</code> if the calendar is a
+     *         <code>GregorianCalendar</code> with the default switch from the
+     *         Julian calendar
+     */
+    private static boolean isGregorian(Calendar cal) {
+        return cal.getClass() == GregorianCalendar.class
+                && ((GregorianCalendar) cal).getGregorianChange().getTime()
+                        == GREGORIAN_CHANGE;
+    }
+
     /**
      * Converts a LOB to the equivalent Java type, i.e. <code>Clob</code> to
      * <code>String</code> and <code>Blob</code> to <code>byte[]</code>. If the
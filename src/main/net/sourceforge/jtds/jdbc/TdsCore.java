@@ -410,6 +410,16 @@ public class TdsCore {
     private Object[] computedRowData;
     /** The array of table names associated with this result. */
     private TableMetaData[] tables;
+    /** True if text and image values are read on demand, see LobLocator. */
+    private boolean lazyLOBs;
+    /** True if row data is skipped rather than decoded (response is discarded). */
+    private boolean skipRows;
+    /** True if the current request starts with deferred session state. */
+    private boolean sessionStatePrefixed;
+    /** True if unchanged column meta data is reused across executions. */
+    private boolean reuseColumns;
+    /** Column meta data of the previous execution, reused if unchanged. */
+    private ColInfo[] reusableColumns;
     /** The descriptor object for the current TDS token. */
     private final TdsToken currentToken = new TdsToken();
     /** The stored procedure return status. */
@@ -433,6 +443,8 @@ public class TdsCore {
     private Semaphore connectionLock;
     /** Indicates processing a batch. */
     private boolean inBatch;
+    /** The parameters of each call in the batch request being sent, in order. */
+    private ArrayList batchCalls;
     /** Indicates type of SSL connection. */
     private int sslMode = SSL_NO_ENCRYPT;
     /** Indicates pending cancel that needs to be cleared. */
@@ -468,6 +480,7 @@ public class TdsCore {
         tdsVersion = socket.getTdsVersion();
         out = socket.getRequestStream(connection.getNetPacketSize(), connection.getMaxPrecision());
         in = socket.getResponseStream(out, connection.getNetPacketSize());
+        lazyLOBs = connection.getLazyLOBs() && serverType == Driver.SQLSERVER;
     }
 
     /**
@@ -493,6 +506,17 @@ public class TdsCore {
        return tdsVersion;
     }
 
+    /**
+     * Sets whether text and image values of the results are read on demand
+     * (see the <code>lazyLOBs</code> connection property). Statements used
+     * to fetch the values themselves must read them eagerly.
+     *
+     * @param lazyLOBs <code>true</code> to read LOB values on demand
+     */
+    void setLazyLOBs(boolean lazyLOBs) {
+        this.lazyLOBs = lazyLOBs && serverType == Driver.SQLSERVER;
+    }
+
     /**
      * Retrieve the current result set column descriptors.
      *
@@ -513,6 +537,23 @@ public class TdsCore {
         tables  = null;
     }
 
+    /**
+     * Enables the reuse of column meta data across executions of the same
+     * statement. If a result set is described by exactly the same column
+     * meta data as the previous one, the previous <code>ColInfo[]</code> is
+     * kept, so that it and the <code>ResultSetMetaData</code> built from it
+     * can be shared by all executions.
+     *
+     * @param columns column meta data obtained when preparing the statement
+     *                or <code>null</code> if not available
+     */
+    void setReusableColumns(ColInfo[] columns) {
+        reuseColumns = true;
+        if (columns != null) {
+            reusableColumns = columns;
+        }
+    }
+
     /**
      * Retrieve the parameter meta data from a Sybase prepare.
      *
@@ -765,8 +806,14 @@ public class TdsCore {
      */
     void clearResponseQueue() throws SQLException {
         checkOpen();
-        while (!endOfResponse) {
-            nextToken();
+        // The rows are discarded, so don't decode them
+        skipRows = true;
+        try {
+            while (!endOfResponse) {
+                nextToken();
+            }
+        } finally {
+            skipRows = false;
         }
     }
 
@@ -779,13 +826,18 @@ public class TdsCore {
      */
     void consumeOneResponse() throws SQLException {
         checkOpen();
-        while (!endOfResponse) {
-            nextToken();
-            // If it's a response terminator, return
-            if (currentToken.isEndToken()
-                    && (currentToken.status & DONE_END_OF_RESPONSE) != 0) {
-                return;
+        skipRows = true;
+        try {
+            while (!endOfResponse) {
+                nextToken();
+                // If it's a response terminator, return
+                if (currentToken.isEndToken()
+                        && (currentToken.status & DONE_END_OF_RESPONSE) != 0) {
+                    return;
+                }
             }
+        } finally {
+            skipRows = false;
         }
     }
 
@@ -895,6 +947,44 @@ public class TdsCore {
         }
     }
 
+    /**
+     * Discards the rest of the current response: cancels the request and
+     * skips the remaining packets, up to the cancel acknowledgement, without
+     * parsing them. Any results, messages or environment changes that were
+     * still to be read are lost.
+     * <p/>
+     * Must only be called by the thread reading the response.
+     */
+    void cancelAndSkipResponse() {
+        if (endOfResponse) {
+            return;
+        }
+
+        Semaphore mutex = null;
+        try {
+            mutex = connection.getMutex();
+            synchronized (cancelMonitor) {
+                if (!cancelPending) {
+                    // Not sent if the whole response has already arrived
+                    socket.cancel(out.getVirtualSocket());
+                }
+            }
+        } finally {
+            if (mutex != null) {
+                mutex.release();
+            }
+        }
+
+        // Read packets until the socket reports the end of the response
+        in.skipToEnd();
+
+        synchronized (cancelMonitor) {
+            cancelPending = false;
+            endOfResponse = true;
+            endOfResults = true;
+        }
+    }
+
     /**
      * Send (only) one cancel packet to the server.
      *
@@ -990,6 +1080,29 @@ public class TdsCore {
             // Also checks if connection is open
             clearResponseQueue();
             messages.exceptions = null;
+            if (!inBatch) {
+                // Still set while the requests of a batch are being built
+                sessionStatePrefixed = false;
+            }
+
+            //
+            // Apply the session state changes deferred by the connection.
+            // On SQL Server these are prepended to a plain SQL batch, any
+            // others are sent with the row count and text size below. So
+            // are the changes preceding a CREATE or ALTER, which may have to
+            // be the first statement in the batch (e.g. CREATE PROCEDURE).
+            //
+            if (sql != null && serverType == Driver.SQLSERVER
+                    && (procName == null || procName.length() == 0)
+                    && (parameters == null || parameters.length == 0)
+                    && !startsWithCreateOrAlter(sql)) {
+                String prefix = connection.takeSessionStateSql(true);
+                if (prefix != null) {
+                    sql = prefix + sql;
+                    sessionStatePrefixed = true;
+                }
+            }
+            String sessionSql = connection.takeSessionStateSql(false);
 
             //
             // Set the connection row count and text size if required.
@@ -998,7 +1111,7 @@ public class TdsCore {
             // only occur once a the start of a batch.
             // No other thread can send until this one has finished.
             //
-            setRowCountAndTextSize(maxRows, maxFieldSize);
+            setRowCountAndTextSize(maxRows, maxFieldSize, sessionSql);
 
             messages.clearWarnings();
             returnStatus = null;
@@ -1059,6 +1172,15 @@ public class TdsCore {
                 }
             }
 
+            if (inBatch) {
+                // Remember the parameters of each call so that the return
+                // values can be assigned to the call they belong to
+                if (batchCalls == null) {
+                    batchCalls = new ArrayList();
+                }
+                batchCalls.add(parameters);
+            }
+
             try {
                 switch (tdsVersion) {
                     case Driver.TDS42:
@@ -1101,6 +1223,9 @@ public class TdsCore {
                 connectionLock.release();
                 connectionLock = null;
             }
+            if (sendFailed) {
+                batchCalls = null;
+            }
             // Clear the in batch flag
             if (sendNow) {
                 inBatch = false;
@@ -1471,17 +1596,59 @@ public class TdsCore {
      *         if the connection is closed
      */
     SQLException getBatchCounts(ArrayList counts, SQLException sqlEx) throws SQLException {
+        return getBatchCounts(counts, null, sqlEx);
+    }
+
+    /**
+     * Obtain the counts and generated keys from a batch of SQL updates.
+     * <p/>
+     * Each statement of the batch may be followed by a query returning its
+     * generated key, in a single column named
+     * {@link JtdsStatement#GENKEYCOL}. The rows of these result sets are added
+     * to <code>keys</code> and the end token of the query is not counted, so
+     * there is still one update count per statement.
+     *
+     * @param counts the <code>ArrayList</code> containing the update counts
+     * @param keys   the <code>ArrayList</code> receiving the generated key
+     *               rows as <code>Object[]</code> or <code>null</code> if
+     *               no keys are expected
+     * @param sqlEx  any previous <code>SQLException</code>(s) encountered
+     * @return updated <code>SQLException</code> or <code>null</code> if no
+     *         error has yet occurred
+     * @throws SQLException
+     *         if the connection is closed
+     */
+    SQLException getBatchCounts(ArrayList counts, ArrayList keys, SQLException sqlEx)
+            throws SQLException {
         Integer lastCount = JtdsStatement.SUCCESS_NO_INFO;
+        int call = 0;
+        boolean inKeys = false;
 
         try {
             checkOpen();
+            selectBatchCall(call);
             while (!endOfResponse) {
                 nextToken();
                 if (currentToken.isResultSet()) {
-                    // Serious error, statement must not return a result set
-                    throw new SQLException(
-                            Messages.get("error.statement.batchnocount"),
-                            "07000");
+                    if (keys == null || columns.length != 1
+                            || !JtdsStatement.GENKEYCOL.equals(columns[0].name)) {
+                        // Serious error, statement must not return a result set
+                        throw new SQLException(
+                                Messages.get("error.statement.batchnocount"),
+                                "07000");
+                    }
+                    if (currentToken.isRowData()) {
+                        keys.add(rowData.clone());
+                    }
+                    inKeys = true;
+                    continue;
+                }
+                if (inKeys && currentToken.isEndToken()) {
+                    // End of the generated key query, not an update count
+                    inKeys = false;
+                    if (currentToken.token != TDS_DONEPROC_TOKEN) {
+                        continue;
+                    }
                 }
                 //
                 // Analyse type of end token and try to extract correct
@@ -1516,6 +1683,7 @@ public class TdsCore {
                             counts.add(lastCount);
                         }
                         lastCount = JtdsStatement.SUCCESS_NO_INFO;
+                        selectBatchCall(++call);
                         break;
                 }
             }
@@ -1534,6 +1702,7 @@ public class TdsCore {
                 sqlEx = e;
             }
         } finally {
+            batchCalls = null;
             while (!endOfResponse) {
                 // Flush rest of response
                 try {
@@ -1553,6 +1722,29 @@ public class TdsCore {
         return sqlEx;
     }
 
+    /**
+     * Selects the call of a batch request whose return status and output
+     * parameters are read next.
+     * <p/>
+     * Each call of the request ends with a <code>DONEPROC</code> token, so the
+     * return values following it belong to the next call.
+     *
+     * @param call the index of the call in the request
+     */
+    private void selectBatchCall(int call) {
+        if (batchCalls == null || call >= batchCalls.size()) {
+            return;
+        }
+        parameters = (ParamInfo[]) batchCalls.get(call);
+        if (parameters != null && parameters[0].isRetVal) {
+            returnParam = parameters[0];
+            nextParam = 0;
+        } else {
+            returnParam = null;
+            nextParam = -1;
+        }
+    }
+
    /**
     * <p> Retrieve the current computed result set column descriptors, if any.
     * </p>
@@ -2668,6 +2860,8 @@ public class TdsCore {
             return;
         }
 
+        ColInfo[] previous = reusableColumns != null
+                && reusableColumns.length == colCnt ? reusableColumns : null;
         columns = new ColInfo[colCnt];
         rowData = new Object[colCnt];
         tables = null;
@@ -2695,8 +2889,22 @@ public class TdsCore {
 
             col.realName = in.readUnicodeString(clen);
             col.name = col.realName;
+            // The table name is only sent for text, ntext and image columns
+            // and is empty for computed values, which READTEXT cannot read
+            col.lazyLob = lazyLOBs
+                    && col.tableName != null && col.tableName.length() > 0;
 
             columns[i] = col;
+            if (previous != null && !col.isSameDescriptor(previous[i])) {
+                previous = null;
+            }
+        }
+
+        if (previous != null) {
+            // Unchanged, keep the previous descriptors
+            columns = previous;
+        } else if (reuseColumns) {
+            reusableColumns = columns;
         }
     }
 
@@ -2972,6 +3180,12 @@ public class TdsCore {
         {
            _ErrorReceived = true;
 
+           if (sessionStatePrefixed) {
+               // The prepended session state may not have been applied
+               sessionStatePrefixed = false;
+               connection.sessionStateFailed();
+           }
+
             if (severity < 10) {
                 severity = 11; // Ensure treated as error
             }
@@ -3171,8 +3385,14 @@ public class TdsCore {
      * @throws ProtocolException
      */
     private void tdsRowToken() throws IOException, ProtocolException {
-        for (int i = 0; i < columns.length; i++) {
-            rowData[i] =  TdsData.readData(connection, in, columns[i]);
+        if (skipRows) {
+            for (int i = 0; i < columns.length; i++) {
+                TdsData.skipData(in, columns[i]);
+            }
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                rowData[i] =  TdsData.readData(connection, in, columns[i]);
+            }
         }
 
         endOfResults = false;
@@ -4062,6 +4282,70 @@ public class TdsCore {
         }
     }
 
+    /**
+     * Checks whether an SQL batch starts with a statement which must be the
+     * first in its batch, i.e. <code>CREATE</code> or <code>ALTER</code>
+     * (e.g. <code>CREATE PROCEDURE</code>, <code>VIEW</code> or
+     * <code>TRIGGER</code>), ignoring leading white space and comments,
+     * including nested ones.
+     *
+     * @param sql the SQL batch
+     * @return <code>true</code> if nothing may be prepended to the batch
+     */
+    private static boolean startsWithCreateOrAlter(String sql) {
+        int len = sql.length();
+        int pos = 0;
+
+        while (pos < len) {
+            char c = sql.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '-' && sql.startsWith("--", pos)) {
+                pos = sql.indexOf('\n', pos);
+                if (pos < 0) {
+                    // Nothing but comments, leave the batch alone
+                    return true;
+                }
+            } else if (c == '/' && sql.startsWith("/*", pos)) {
+                // Block comments nest in Transact-SQL
+                int depth = 1;
+                pos += 2;
+                while (depth > 0) {
+                    if (pos >= len - 1) {
+                        // Unterminated, leave the error to the server
+                        return true;
+                    }
+                    if (sql.startsWith("/*", pos)) {
+                        depth++;
+                        pos += 2;
+                    } else if (sql.startsWith("*/", pos)) {
+                        depth--;
+                        pos += 2;
+                    } else {
+                        pos++;
+                    }
+                }
+            } else {
+                break;
+            }
+        }
+
+        return startsWithWord(sql, pos, "create")
+                || startsWithWord(sql, pos, "alter");
+    }
+
+    /**
+     * Checks whether a whole word occurs at a position in an SQL string,
+     * ignoring case.
+     */
+    private static boolean startsWithWord(String sql, int pos, String word) {
+        int end = pos + word.length();
+
+        return sql.regionMatches(true, pos, word, 0, word.length())
+                && (end == sql.length()
+                    || !Character.isJavaIdentifierPart(sql.charAt(end)));
+    }
+
     /**
      * Sets the server row count (to limit the number of rows in a result set)
      * and text size (to limit the size of returned TEXT/NTEXT fields).
@@ -4070,17 +4354,23 @@ public class TdsCore {
      *                 leave as is
      * @param textSize the maximum number of bytes in a TEXT column to return
      *                 or -1 to leave as is
+     * @param sessionSql deferred session state changes to send first or
+     *                 <code>null</code>
      * @throws SQLException if an error is returned by the server
      */
-    private void setRowCountAndTextSize(int rowCount, int textSize)
+    private void setRowCountAndTextSize(int rowCount, int textSize,
+                                        String sessionSql)
             throws SQLException {
         boolean newRowCount =
                 rowCount >= 0 && rowCount != connection.getRowCount();
         boolean newTextSize =
                 textSize >= 0 && textSize != connection.getTextSize();
-        if (newRowCount || newTextSize) {
+        if (newRowCount || newTextSize || sessionSql != null) {
             try {
                 StringBuilder query = new StringBuilder(64);
+                if (sessionSql != null) {
+                    query.append(sessionSql);
+                }
                 if (newRowCount) {
                     query.append("SET ROWCOUNT ").append(rowCount);
                 }
@@ -4097,8 +4387,10 @@ public class TdsCore {
                 clearResponseQueue();
                 messages.checkErrors();
                 // Update the values stored in the Connection
-                connection.setRowCount(rowCount);
-                connection.setTextSize(textSize);
+                if (newRowCount || newTextSize) {
+                    connection.setRowCount(rowCount);
+                    connection.setTextSize(textSize);
+                }
             } catch (IOException ioe) {
                 throw new SQLException(
                             Messages.get("error.generic.ioerror",
@@ -4149,6 +4441,9 @@ public class TdsCore {
             columns = null;
             rowData = null;
             tables = null;
+            reuseColumns = false;
+            reusableColumns = null;
+            lazyLOBs = connection.getLazyLOBs() && serverType == Driver.SQLSERVER;
             computedColumns = null;
             computedRowData = null;
             // clean up warnings
@@ -4373,6 +4668,15 @@ public class TdsCore {
       // unique ID of the SQL statement that created the that generated the totals
       short id = in.readShort();
 
+      if( skipRows )
+      {
+         for( int i = 0; i < computedColumns.length; i ++ )
+         {
+            TdsData.skipData( in, computedColumns[i] );
+         }
+         return;
+      }
+
       computedRowData = new Object[computedColumns.length];
 
       // load computed result
@@ -296,9 +296,13 @@ public class TdsData {
      */
     static int getCollation(ResponseStream in, ColInfo ci) throws IOException {
         if (TdsData.isCollation(ci)) {
-            // Read TDS8 collation info
-            ci.collation = new byte[5];
-            in.read(ci.collation);
+            // Read TDS8 collation info into the shared collation array, so
+            // that wide result sets don't allocate one array per column
+            long key = 0;
+            for (int i = 0; i < 5; i++) {
+                key |= (long) in.read() << (i * 8);
+            }
+            ci.collation = CharsetInfo.internCollation(key);
 
             return 5;
         }
@@ -328,17 +332,10 @@ public class TdsData {
         } else if (ci.collation != null) {
             // TDS version will be 8.0 or higher in this case and connection
             // collation will be non-null
+            // Collations are interned, so equal collations are the same array
             byte[] collation = ci.collation;
-            byte[] defaultCollation = connection.getCollation();
-            int i;
-
-            for (i = 0; i < 5; ++i) {
-                if (collation[i] != defaultCollation[i]) {
-                    break;
-                }
-            }
 
-            if (i == 5) {
+            if (collation == connection.getCollation()) {
                 ci.charsetInfo = connection.getCharsetInfo();
             } else {
                 ci.charsetInfo = CharsetInfo.getCharset(collation);
@@ -751,6 +748,9 @@ public class TdsData {
                 len = in.read();
 
                 if (len > 0) {
+                    if (ci.lazyLob) {
+                        return readLobLocator(connection, in, ci, len);
+                    }
                     in.skip(24); // Skip textptr and timestamp
                     int dataLen = in.readInt();
                     BlobImpl blob;
@@ -794,6 +794,9 @@ public class TdsData {
                 len = in.read();
 
                 if (len > 0) {
+                    if (ci.lazyLob) {
+                        return readLobLocator(connection, in, ci, len);
+                    }
                     String charset;
                     if (ci.charsetInfo != null) {
                         charset = ci.charsetInfo.getCharset();
@@ -807,54 +810,42 @@ public class TdsData {
                         // column that has been updated to null.
                         break;
                     }
-                    ClobImpl clob = new ClobImpl(connection);
-                    BlobBuffer blobBuffer = clob.getBlobBuffer();
+                    Reader rdr = new InputStreamReader(
+                            in.getInputStream(dataLen), charset);
                     if (dataLen <= connection.getLobBuffer()) {
                         //
                         // OK Small enough to load into memory
                         //
-                        BufferedReader rdr =
-                            new BufferedReader(
-                                 new InputStreamReader(in.getInputStream(dataLen),
-                                                                         charset),
-                                                                         1024);
-                        byte[] data = new byte[dataLen * 2];
+                        char[] data = new char[dataLen];
                         int p = 0;
                         int c;
-                        while ((c = rdr.read()) >= 0) {
-                            data[p++] = (byte)c;
-                            data[p++] = (byte)(c >> 8);
+                        while (p < data.length
+                                && (c = rdr.read(data, p, data.length - p)) >= 0) {
+                            p += c;
                         }
                         rdr.close();
-                        blobBuffer.setBuffer(data, false);
-                        if (p == 2 && data[0] == 0x20 && data[1] == 0
+                        if (p == 1 && data[0] == ' '
                             && in.getTdsVersion() < Driver.TDS70) {
                             // Single space with Sybase equates to empty string
                             p = 0;
                         }
-                        // Explicitly set length as multi byte character sets
-                        // may not fill array completely.
-                        blobBuffer.setLength(p);
-                    } else {
-                        // Too big, need to write straight to disk
-                        BufferedReader rdr =
-                            new BufferedReader(
-                                 new InputStreamReader(in.getInputStream(dataLen),
-                                                                         charset),
-                                                                         1024);
-                        try {
-                            OutputStream out = blobBuffer.setBinaryStream(1, false);
-                            int c;
-                            while ((c = rdr.read()) >= 0) {
-                                out.write(c);
-                                out.write(c >> 8);
-                            }
-                            out.close();
-                            rdr.close();
-                        } catch (SQLException e) {
-                            // Turn back into an IOException
-                            throw new IOException(e.getMessage());
+                        // Kept in single bytes if possible, see ClobImpl
+                        return new ClobImpl(connection, new String(data, 0, p));
+                    }
+                    // Too big, need to write straight to disk
+                    ClobImpl clob = new ClobImpl(connection);
+                    try {
+                        Writer out = clob.setCharacterStream(1);
+                        char[] buffer = new char[1024];
+                        int c;
+                        while ((c = rdr.read(buffer, 0, buffer.length)) >= 0) {
+                            out.write(buffer, 0, c);
                         }
+                        out.close();
+                        rdr.close();
+                    } catch (SQLException e) {
+                        // Turn back into an IOException
+                        throw new IOException(e.getMessage());
                     }
                     return clob;
                 }
@@ -866,6 +857,9 @@ public class TdsData {
                 len = in.read();
 
                 if (len > 0) {
+                    if (ci.lazyLob) {
+                        return readLobLocator(connection, in, ci, len);
+                    }
                     in.skip(24); // Skip textptr and timestamp
                     int dataLen = in.readInt();
                     if (dataLen == 0 && in.getTdsVersion() <= Driver.TDS50) {
@@ -1143,6 +1137,160 @@ public class TdsData {
         return null;
     }
 
+    /**
+     * Reads the text pointer of a <code>text</code>, <code>ntext</code> or
+     * <code>image</code> value that is read on demand and skips the value
+     * itself (see the <code>lazyLOBs</code> connection property).
+     *
+     * @param connection the connection performing the read
+     * @param in         the server ResponseStream
+     * @param ci         the ColInfo column descriptor object
+     * @param ptrLen     the length of the text pointer, already read
+     * @return the <code>BlobImpl</code> or <code>ClobImpl</code> object
+     * @throws IOException
+     */
+    private static Object readLobLocator(JtdsConnection connection,
+                                         ResponseStream in,
+                                         ColInfo ci,
+                                         int ptrLen)
+            throws IOException {
+        byte[] textPtr = new byte[ptrLen];
+        in.read(textPtr);
+        in.skip(8); // Skip timestamp
+        int dataLen = in.readInt();
+        in.skip(dataLen);
+
+        switch (ci.tdsType) {
+            case SYBIMAGE:
+                if (dataLen == 0) {
+                    return new BlobImpl(connection);
+                }
+                return new BlobImpl(
+                        new LobLocator(connection, ci, textPtr, dataLen, false));
+
+            case SYBNTEXT:
+                if (dataLen == 0) {
+                    return new ClobImpl(connection);
+                }
+                // READTEXT counts ntext in characters
+                return new ClobImpl(connection,
+                        new LobLocator(connection, ci, textPtr, dataLen / 2, true));
+
+            default:
+                if (dataLen == 0) {
+                    return new ClobImpl(connection);
+                }
+                CharsetInfo charsetInfo = (ci.charsetInfo != null)
+                        ? ci.charsetInfo : connection.getCharsetInfo();
+                // Bytes are only characters in a single byte character set
+                return new ClobImpl(connection, new LobLocator(connection, ci,
+                        textPtr, dataLen, !charsetInfo.isWideChars()));
+        }
+    }
+
+    /**
+     * Skips a TDS data item in the Response Stream without decoding it,
+     * using the same length rules as {@link #readData}.
+     *
+     * @param in The server ResponseStream.
+     * @param ci The ColInfo column descriptor object.
+     * @throws IOException
+     * @throws ProtocolException
+     */
+    static void skipData(ResponseStream in, ColInfo ci)
+            throws IOException, ProtocolException {
+        int len;
+
+        switch (ci.tdsType) {
+            // Fixed length types
+            case SYBINT1:
+            case SYBINT2:
+            case SYBINT4:
+            case SYBINT8:
+            case SYBSINT8:
+            case SYBUINT2:
+            case SYBUINT4:
+            case SYBUINT8:
+            case SYBMONEY4:
+            case SYBMONEY:
+            case SYBDATETIME4:
+            case SYBDATETIME:
+            case SYBDATE:
+            case SYBTIME:
+            case SYBBIT:
+            case SYBREAL:
+            case SYBFLT8:
+                in.skip(types[ci.tdsType].size);
+                break;
+
+            // Types with a one byte length
+            case SYBINTN:
+            case SYBUINTN:
+            case SYBCHAR:
+            case SYBVARCHAR:
+            case SYBNVARCHAR:
+            case SYBVARBINARY:
+            case SYBBINARY:
+            case SYBMONEYN:
+            case SYBDATETIMN:
+            case SYBDATEN:
+            case SYBTIMEN:
+            case SYBBITN:
+            case SYBFLTN:
+            case SYBUNIQUE:
+            case SYBNUMERIC:
+            case SYBDECIMAL:
+                in.skip(in.read());
+                break;
+
+            case XSYBCHAR:
+            case XSYBVARCHAR:
+                if (in.getTdsVersion() == Driver.TDS50) {
+                    // Sybase wide table String
+                    len = in.readInt();
+                    if (len > 0) {
+                        in.skip(len);
+                    }
+                    break;
+                }
+                len = in.readShort();
+                if (len != -1) {
+                    in.skip(len);
+                }
+                break;
+
+            case XSYBNCHAR:
+            case XSYBNVARCHAR:
+            case XSYBVARBINARY:
+            case XSYBBINARY:
+                len = in.readShort();
+                if (len != -1) {
+                    in.skip(len);
+                }
+                break;
+
+            case SYBIMAGE:
+            case SYBTEXT:
+            case SYBUNITEXT:
+            case SYBNTEXT:
+                len = in.read();
+                if (len > 0) {
+                    in.skip(24); // Skip textptr and timestamp
+                    in.skip(in.readInt());
+                }
+                break;
+
+            case SYBLONGBINARY:
+            case SYBVARIANT:
+                in.skip(in.readInt());
+                break;
+
+            default:
+                throw new ProtocolException("Unsupported TDS data type 0x"
+                        + Integer.toHexString(ci.tdsType & 0xFF));
+        }
+    }
+
     /**
      * Retrieve the signed status of the column.
      *
@@ -99,4 +99,30 @@ public class SimpleLRUCache<K,V>
       return _Map.get( key );
    }
 
+   /**
+    * <p> Removes the entry for the given key, if any. </p>
+    *
+    * @see
+    *    java.util.Map#remove(Object)
+    *
+    * @param key
+    *    the key whose mapping is to be removed
+    *
+    * @return
+    *    the previous value associated with key, or {@code null} if there was
+    *    no mapping for key
+    */
+   public synchronized V remove( K key )
+   {
+      return _Map.remove( key );
+   }
+
+   /**
+    * <p> Removes all entries from the cache. </p>
+    */
+   public synchronized void clear()
+   {
+      _Map.clear();
+   }
+
 }
\ No newline at end of file
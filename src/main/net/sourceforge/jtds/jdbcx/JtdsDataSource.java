@@ -684,6 +684,116 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return Boolean.valueOf( (String) _Config.get( Driver.USEJCIFS ) ).booleanValue();
    }
 
+   public void setCursorFetchBuffer( int cursorFetchBuffer )
+   {
+      _Config.put( Driver.CURSORFETCHBUFFER, String.valueOf( cursorFetchBuffer ) );
+   }
+
+   public int getCursorFetchBuffer()
+   {
+      return getIntProperty( Driver.CURSORFETCHBUFFER );
+   }
+
+   public void setInstanceCacheTtl( int instanceCacheTtl )
+   {
+      _Config.put( Driver.INSTANCECACHETTL, String.valueOf( instanceCacheTtl ) );
+   }
+
+   public int getInstanceCacheTtl()
+   {
+      return getIntProperty( Driver.INSTANCECACHETTL );
+   }
+
+   public void setMaxWarnings( int maxWarnings )
+   {
+      _Config.put( Driver.MAXWARNINGS, String.valueOf( maxWarnings ) );
+   }
+
+   public int getMaxWarnings()
+   {
+      return getIntProperty( Driver.MAXWARNINGS );
+   }
+
+   public void setDeferRowUpdates( boolean deferRowUpdates )
+   {
+      _Config.put( Driver.DEFERROWUPDATES, String.valueOf( deferRowUpdates ) );
+   }
+
+   public boolean getDeferRowUpdates()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.DEFERROWUPDATES ) ).booleanValue();
+   }
+
+   public void setPackedCallBatch( boolean packedCallBatch )
+   {
+      _Config.put( Driver.PACKEDCALLBATCH, String.valueOf( packedCallBatch ) );
+   }
+
+   public boolean getPackedCallBatch()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.PACKEDCALLBATCH ) ).booleanValue();
+   }
+
+   public void setMetaDataCacheTtl( int metaDataCacheTtl )
+   {
+      _Config.put( Driver.METADATACACHETTL, String.valueOf( metaDataCacheTtl ) );
+   }
+
+   public int getMetaDataCacheTtl()
+   {
+      return getIntProperty( Driver.METADATACACHETTL );
+   }
+
+   public void setMetaDataCacheSize( int metaDataCacheSize )
+   {
+      _Config.put( Driver.METADATACACHESIZE, String.valueOf( metaDataCacheSize ) );
+   }
+
+   public int getMetaDataCacheSize()
+   {
+      return getIntProperty( Driver.METADATACACHESIZE );
+   }
+
+   public void setDeferSessionState( boolean deferSessionState )
+   {
+      _Config.put( Driver.DEFERSESSIONSTATE, String.valueOf( deferSessionState ) );
+   }
+
+   public boolean getDeferSessionState()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.DEFERSESSIONSTATE ) ).booleanValue();
+   }
+
+   public void setCloseCancelThreshold( int closeCancelThreshold )
+   {
+      _Config.put( Driver.CLOSECANCELTHRESHOLD, String.valueOf( closeCancelThreshold ) );
+   }
+
+   public int getCloseCancelThreshold()
+   {
+      return getIntProperty( Driver.CLOSECANCELTHRESHOLD );
+   }
+
+   public void setLazyLOBs( boolean lazyLOBs )
+   {
+      _Config.put( Driver.LAZYLOBS, String.valueOf( lazyLOBs ) );
+   }
+
+   public boolean getLazyLOBs()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.LAZYLOBS ) ).booleanValue();
+   }
+
+   public void setMaxPooledStatements( int maxPooledStatements )
+   {
+      _Config.put( Driver.MAXPOOLEDSTATEMENTS, String.valueOf( maxPooledStatements ) );
+   }
+
+   public int getMaxPooledStatements()
+   {
+      return getIntProperty( Driver.MAXPOOLEDSTATEMENTS );
+   }
+
    private void addNonNullProperties( Properties props, String user, String password )
    {
       Iterator it = _Config.entrySet().iterator();
@@ -96,7 +96,18 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.USER,
             Driver.SENDSTRINGPARAMETERSASUNICODE,
             Driver.WSID,
-            Driver.XAEMULATION
+            Driver.XAEMULATION,
+            Driver.CURSORFETCHBUFFER,
+            Driver.INSTANCECACHETTL,
+            Driver.MAXWARNINGS,
+            Driver.DEFERROWUPDATES,
+            Driver.PACKEDCALLBATCH,
+            Driver.METADATACACHETTL,
+            Driver.METADATACACHESIZE,
+            Driver.DEFERSESSIONSTATE,
+            Driver.CLOSECANCELTHRESHOLD,
+            Driver.LAZYLOBS,
+            Driver.MAXPOOLEDSTATEMENTS
          } );
 
          return new JtdsDataSource( props );
@@ -24,19 +24,34 @@ import javax.sql.*;
 
 import net.sourceforge.jtds.jdbc.*;
 import net.sourceforge.jtds.jdbcx.proxy.*;
+import net.sourceforge.jtds.util.Logger;
 
 /**
  * jTDS implementation of the <code>PooledConnection</code> interface.
+ * <p/>
+ * Prepared and callable statements closed by the application are kept open
+ * in a pool of up to <code>maxPooledStatements</code> idle statements and are
+ * reused by later calls preparing the same SQL with the same result set type
+ * and concurrency, saving the parsing of the SQL and the allocation of its
+ * parameters. The least recently returned statement is closed when the
+ * pool is full.
  *
  * @version $Id: PooledConnection.java,v 1.11.6.3 2009-12-30 08:45:34 ickzon Exp $
  */
 public class PooledConnection implements javax.sql.PooledConnection {
     private ArrayList listeners = new ArrayList();
+    private ArrayList statementListeners = new ArrayList();
+    /** Idle statements by key, least recently returned first. */
+    private final LinkedHashMap statementPool = new LinkedHashMap();
+    private final int maxPooledStatements;
 
     protected Connection connection;
 
     public PooledConnection(Connection connection) {
         this.connection = connection;
+        // Only pool the statements of jTDS connections
+        maxPooledStatements = connection instanceof JtdsConnection
+                ? ((JtdsConnection) connection).getMaxPooledStatements() : 0;
     }
 
     /**
@@ -61,6 +76,8 @@ public class PooledConnection implements javax.sql.PooledConnection {
      * @throws SQLException if an error occurs
      */
     public synchronized void close() throws SQLException {
+        // The statements are closed together with the connection
+        statementPool.clear();
         connection.close();
         connection = null; // Garbage collect the connection
     }
@@ -115,6 +132,61 @@ public class PooledConnection implements javax.sql.PooledConnection {
         return new ConnectionProxy(this, connection);
     }
 
+    /**
+     * Removes an idle statement from the statement pool.
+     *
+     * @param key the SQL, result set type and concurrency of the statement
+     * @return the statement or <code>null</code> if there is no open idle
+     *         statement with this key
+     */
+    public synchronized JtdsPreparedStatement takeStatement(String key) {
+        JtdsPreparedStatement statement = (JtdsPreparedStatement) statementPool.remove(key);
+
+        try {
+            if (statement != null && statement.isClosed()) {
+                statement = null;
+            }
+        } catch (SQLException ex) {
+            // Will never occur
+        }
+
+        return statement;
+    }
+
+    /**
+     * Adds a statement closed by the application to the statement pool,
+     * closing the least recently returned statement if the pool is full.
+     *
+     * @param key       the SQL, result set type and concurrency of the
+     *                  statement
+     * @param statement the statement, already reset by
+     *                  {@link JtdsStatement#recycle()}
+     * @return <code>false</code> if the statement was not pooled and must be
+     *         closed by the caller
+     */
+    public synchronized boolean returnStatement(String key, JtdsPreparedStatement statement) {
+        if (connection == null || maxPooledStatements == 0
+                || statementPool.containsKey(key)) {
+            return false;
+        }
+
+        statementPool.put(key, statement);
+
+        if (statementPool.size() > maxPooledStatements) {
+            Iterator iterator = statementPool.values().iterator();
+            JtdsPreparedStatement eldest = (JtdsPreparedStatement) iterator.next();
+            iterator.remove();
+
+            try {
+                eldest.close();
+            } catch (SQLException ex) {
+                Logger.logException(ex);
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Removes the specified listener from the list.
      *
@@ -133,20 +205,60 @@ public class PooledConnection implements javax.sql.PooledConnection {
 
     /////// JDBC4 demarcation, do NOT put any JDBC3 code below this line ///////
 
-    /* (non-Javadoc)
-     * @see javax.sql.PooledConnection#addStatementEventListener(javax.sql.StatementEventListener)
+    /**
+     * Adds the specified statement listener to the list.
+     *
+     * @see #fireStatementEvent
+     * @see #removeStatementEventListener
      */
-    public void addStatementEventListener(StatementEventListener listener) {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+    public synchronized void addStatementEventListener(StatementEventListener listener) {
+        // Clone the list of listeners to avoid concurrent modifications, as
+        // for the connection listeners
+        statementListeners = (ArrayList) statementListeners.clone();
+        statementListeners.add(listener);
     }
 
-    /* (non-Javadoc)
-     * @see javax.sql.PooledConnection#removeStatementEventListener(javax.sql.StatementEventListener)
+    /**
+     * Fires a new statement event on all statement listeners.
+     *
+     * @param statement    the statement proxy the application used
+     * @param sqlException <code>null</code> if the statement has been closed,
+     *        otherwise the <code>SQLException</code> after which the statement
+     *        may no longer be used
+     */
+    public synchronized void fireStatementEvent(PreparedStatement statement,
+                                                SQLException sqlException) {
+        if (statementListeners.size() > 0) {
+            StatementEvent statementEvent = new StatementEvent(this, statement, sqlException);
+            Iterator iterator = statementListeners.iterator();
+
+            while (iterator.hasNext()) {
+                StatementEventListener listener = (StatementEventListener) iterator.next();
+
+                if (sqlException == null) {
+                    listener.statementClosed(statementEvent);
+                } else {
+                    try {
+                        if (connection == null || connection.isClosed()) {
+                            listener.statementErrorOccurred(statementEvent);
+                        }
+                    } catch (SQLException ex) {
+                        // Will never occur
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the specified statement listener from the list.
+     *
+     * @see #addStatementEventListener
+     * @see #fireStatementEvent
      */
-    public void removeStatementEventListener(StatementEventListener listener) {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+    public synchronized void removeStatementEventListener(StatementEventListener listener) {
+        statementListeners = (ArrayList) statementListeners.clone();
+        statementListeners.remove(listener);
     }
 
 }
\ No newline at end of file
@@ -38,8 +38,9 @@ extends PreparedStatementProxy
 implements CallableStatement {
     private JtdsCallableStatement _callableStatement;
     
-    CallableStatementProxy(ConnectionProxy connection, JtdsCallableStatement callableStatement) {
-        super(connection, callableStatement);
+    CallableStatementProxy(ConnectionProxy connection, JtdsCallableStatement callableStatement,
+                           String poolKey) {
+        super(connection, callableStatement, poolKey);
         
         _callableStatement = callableStatement;
     }
@@ -1915,30 +1916,6 @@ implements CallableStatement {
         throw new AbstractMethodError();
     }
 
-    /* (non-Javadoc)
-     * @see java.sql.Statement#isClosed()
-     */
-    public boolean isClosed() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
-    }
-
-    /* (non-Javadoc)
-     * @see java.sql.Statement#isPoolable()
-     */
-    public boolean isPoolable() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
-    }
-
-    /* (non-Javadoc)
-     * @see java.sql.Statement#setPoolable(boolean)
-     */
-    public void setPoolable(boolean poolable) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
-    }
-
     /* (non-Javadoc)
      * @see java.sql.Wrapper#isWrapperFor(java.lang.Class)
      */
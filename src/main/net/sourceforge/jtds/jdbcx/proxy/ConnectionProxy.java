@@ -328,34 +328,38 @@ public class ConnectionProxy implements Connection {
     }
 
     /**
-     * Delgates calls to the connection; SQLExceptions thrown from the connection
-     * will cause an event to be fired on the connection pool listeners.
+     * Reuses an idle statement from the statement pool of the pooled
+     * connection or delegates the call to the connection; SQLExceptions thrown
+     * from the connection will cause an event to be fired on the connection
+     * pool listeners.
      *
      * @throws SQLException if an error occurs
      */
     public CallableStatement prepareCall(String sql) throws SQLException {
-        validateConnection();
-
-        try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql));
-        } catch (SQLException sqlException) {
-            processSQLException(sqlException);
-        }
-
-        return null;
+        return prepareCall(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
     }
 
     /**
-     * Delgates calls to the connection; SQLExceptions thrown from the connection
-     * will cause an event to be fired on the connection pool listeners.
+     * Reuses an idle statement from the statement pool of the pooled
+     * connection or delegates the call to the connection; SQLExceptions thrown
+     * from the connection will cause an event to be fired on the connection
+     * pool listeners.
      *
      * @throws SQLException if an error occurs
      */
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
         validateConnection();
 
+        String key = statementKey("C", sql, resultSetType, resultSetConcurrency);
+
         try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency));
+            JtdsCallableStatement statement = (JtdsCallableStatement) _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+            }
+
+            return new CallableStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -373,7 +377,7 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+            return new CallableStatementProxy(this, (JtdsCallableStatement) _connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -382,21 +386,15 @@ public class ConnectionProxy implements Connection {
     }
 
     /**
-     * Delgates calls to the connection; SQLExceptions thrown from the connection
-     * will cause an event to be fired on the connection pool listeners.
+     * Reuses an idle statement from the statement pool of the pooled
+     * connection or delegates the call to the connection; SQLExceptions thrown
+     * from the connection will cause an event to be fired on the connection
+     * pool listeners.
      *
      * @throws SQLException if an error occurs
      */
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        validateConnection();
-
-        try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql));
-        } catch (SQLException sqlException) {
-            processSQLException(sqlException);
-        }
-
-        return null;
+        return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
     }
 
     /**
@@ -409,7 +407,7 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, autoGeneratedKeys));
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, autoGeneratedKeys), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -427,7 +425,7 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnIndexes));
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnIndexes), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -445,7 +443,7 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnNames));
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, columnNames), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -454,16 +452,26 @@ public class ConnectionProxy implements Connection {
     }
 
     /**
-     * Delgates calls to the connection; SQLExceptions thrown from the connection
-     * will cause an event to be fired on the connection pool listeners.
+     * Reuses an idle statement from the statement pool of the pooled
+     * connection or delegates the call to the connection; SQLExceptions thrown
+     * from the connection will cause an event to be fired on the connection
+     * pool listeners.
      *
      * @throws SQLException if an error occurs
      */
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
         validateConnection();
 
+        String key = statementKey("P", sql, resultSetType, resultSetConcurrency);
+
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+            JtdsPreparedStatement statement = _pooledConnection.takeStatement(key);
+
+            if (statement == null) {
+                statement = (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            }
+
+            return new PreparedStatementProxy(this, statement, key);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -481,7 +489,7 @@ public class ConnectionProxy implements Connection {
         validateConnection();
 
         try {
-            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+            return new PreparedStatementProxy(this, (JtdsPreparedStatement) _connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), null);
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
@@ -687,6 +695,54 @@ public class ConnectionProxy implements Connection {
         throw sqlException;
     }
 
+    /**
+     * Processes SQLExceptions thrown by prepared and callable statements.
+     */
+    void processSQLException(PreparedStatementProxy proxy, SQLException sqlException) throws SQLException {
+        _pooledConnection.fireStatementEvent(proxy, sqlException);
+
+        processSQLException(sqlException);
+    }
+
+    /**
+     * Returns a statement closed by the application to the statement pool,
+     * or closes it if it cannot be reused, and fires an event on the
+     * statement listeners.
+     *
+     * @param proxy     the statement proxy closed by the application
+     * @param key       the statement pool key or <code>null</code> if the
+     *                  statement is not to be pooled
+     * @param statement the statement
+     * @throws SQLException if the statement cannot be closed
+     */
+    void closeStatement(PreparedStatementProxy proxy, String key, JtdsPreparedStatement statement)
+            throws SQLException {
+        boolean pooled = false;
+
+        if (key != null) {
+            try {
+                pooled = statement.recycle() && _pooledConnection.returnStatement(key, statement);
+            } catch (SQLException sqlException) {
+                // The statement can't be reused, any error is reported by close()
+            }
+        }
+
+        if (!pooled) {
+            statement.close();
+        }
+
+        _pooledConnection.fireStatementEvent(proxy, null);
+    }
+
+    /**
+     * Builds the statement pool key of a prepared (<code>"P"</code>) or
+     * callable (<code>"C"</code>) statement.
+     */
+    private static String statementKey(String kind, String sql,
+                                       int resultSetType, int resultSetConcurrency) {
+        return kind + resultSetType + ',' + resultSetConcurrency + ':' + sql;
+    }
+
     /**
      * Closes the proxy, releasing the connection.
      */
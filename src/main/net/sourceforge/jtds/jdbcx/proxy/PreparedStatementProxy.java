@@ -37,11 +37,16 @@ public class PreparedStatementProxy
 extends StatementProxy
 implements PreparedStatement {
     private JtdsPreparedStatement _preparedStatement;
+    /** The statement pool key or <code>null</code> if not pooled. */
+    private String _poolKey;
+    private boolean _poolable = true;
     
-    PreparedStatementProxy(ConnectionProxy connection, JtdsPreparedStatement preparedStatement) {
+    PreparedStatementProxy(ConnectionProxy connection, JtdsPreparedStatement preparedStatement,
+                           String poolKey) {
         super(connection, preparedStatement);
         
         _preparedStatement = preparedStatement;
+        _poolKey = poolKey;
     }
 
     /**
@@ -683,6 +688,23 @@ implements PreparedStatement {
         return null;
     }
 
+    /**
+     * Returns the prepared statement to the statement pool of the pooled
+     * connection, unless it is not poolable, and fires a statement event.
+     *
+     * @throws SQLException if an error occurs
+     */
+    void closeStatement() throws SQLException {
+        _connection.closeStatement(this, _poolable ? _poolKey : null, _preparedStatement);
+    }
+
+    /**
+     * Processes SQLExceptions.
+     */
+    protected void processSQLException(SQLException sqlException) throws SQLException {
+        _connection.processSQLException(this, sqlException);
+    }
+
     /////// JDBC4 demarcation, do NOT put any JDBC3 code below this line ///////
 
     /* (non-Javadoc)
@@ -843,28 +865,28 @@ implements PreparedStatement {
         throw new AbstractMethodError();
     }
 
-    /* (non-Javadoc)
-     * @see java.sql.Statement#isClosed()
-     */
-    public boolean isClosed() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
-    }
-
-    /* (non-Javadoc)
-     * @see java.sql.Statement#isPoolable()
+    /**
+     * Returns whether the statement is returned to the statement pool when
+     * closed; <code>true</code> by default.
+     *
+     * @throws SQLException if an error occurs
      */
     public boolean isPoolable() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        validateConnection();
+
+        return _poolable;
     }
 
-    /* (non-Javadoc)
-     * @see java.sql.Statement#setPoolable(boolean)
+    /**
+     * Sets whether the statement is returned to the statement pool when
+     * closed.
+     *
+     * @throws SQLException if an error occurs
      */
     public void setPoolable(boolean poolable) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        validateConnection();
+
+        _poolable = poolable;
     }
 
     /* (non-Javadoc)
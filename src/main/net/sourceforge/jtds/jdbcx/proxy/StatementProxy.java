@@ -30,8 +30,9 @@ import net.sourceforge.jtds.jdbc.*;
  * @version $Id: StatementProxy.java,v 1.4.4.3 2009-12-30 08:45:34 ickzon Exp $
  */
 public class StatementProxy implements Statement {
-    private ConnectionProxy _connection;
+    final ConnectionProxy _connection;
     private JtdsStatement _statement;
+    private boolean _closed;
 
     StatementProxy(ConnectionProxy connection, JtdsStatement statement) {
         _connection = connection;
@@ -81,15 +82,29 @@ public class StatementProxy implements Statement {
      * @throws SQLException if an error occurs
      */
     public void close() throws SQLException {
+        if (_closed) {
+            return;
+        }
+
         validateConnection();
+        _closed = true;
 
         try {
-            _statement.close();
+            closeStatement();
         } catch (SQLException sqlException) {
             processSQLException(sqlException);
         }
     }
 
+    /**
+     * Releases the statement once the application has closed the proxy.
+     *
+     * @throws SQLException if an error occurs
+     */
+    void closeStatement() throws SQLException {
+        _statement.close();
+    }
+
     /**
      * Delgates calls to the statement; SQLExceptions thrown from the statement
      * will cause an event to be fired on the connection pool listeners.
@@ -681,12 +696,16 @@ public class StatementProxy implements Statement {
     }
 
     /**
-     * Validates the connection state.
+     * Validates the connection and statement state.
      */
     protected void validateConnection() throws SQLException {
         if (_connection.isClosed()) {
             throw new SQLException(Messages.get("error.conproxy.noconn"), "HY010");
         }
+
+        if (_closed) {
+            throw new SQLException(Messages.get("error.generic.closed", "Statement"), "HY010");
+        }
     }
 
     /**
@@ -704,8 +723,7 @@ public class StatementProxy implements Statement {
      * @see java.sql.Statement#isClosed()
      */
     public boolean isClosed() throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        return _closed || _statement.isClosed();
     }
 
     /* (non-Javadoc)
@@ -18,6 +18,8 @@
 package net.sourceforge.jtds.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.SQLException;
 
 import net.sourceforge.jtds.jdbc.Messages;
@@ -28,26 +30,26 @@ import net.sourceforge.jtds.jdbc.Messages;
  * <p/>
  * The data can be purely memory based until the size exceeds the value
  * dictated by the <code>lobBuffer</code> URL property after which it will be
- * written to disk. The disk array is accessed randomly one page (1024 bytes)
- * at a time.
+ * written to disk. The disk array is accessed randomly one page at a time,
+ * using positional reads and writes on the file channel. The page size adapts
+ * to the access pattern: it doubles (up to 64KB) while pages are read in
+ * sequence and halves (down to 1KB) on random access.
  * <p/>
  * This class is not synchronized and concurrent open input and output
  * streams can conflict.
  * <p/>
  * Tuning hints:
  * <ol>
- *   <li>The <code>PAGE_SIZE</code> governs how much data is buffered when
- *     reading or writing data a byte at a time. 1024 bytes seems to work well
- *     but if very large objects are being written a byte at a time 4096 may be
- *     better. <b>NB.</b> ensure that the <code>PAGE_MASK</code> and
- *     <code>BYTE_MASK</code> fields are also adjusted to match.
+ *   <li>The page size governs how much data is buffered when reading or
+ *     writing data a byte at a time. <code>MIN_PAGE_SIZE</code> and
+ *     <code>MAX_PAGE_SIZE</code> bound the adaptive page size and must be
+ *     powers of 2.
  *   <li>Reading or writing byte arrays that are greater than or equal to the
- *     page size will go directly to or from the random access file cutting out
- *     an ArrayCopy operation.
- *   <li>If BLOBs are being buffered exclusively in memory you may wish to
- *     adjust the <code>MAX_BUF_INC</code> value. Every time the buffer is
- *     expanded the existing contents are copied and this may get expensive
- *     with very large BLOBs.
+ *     page size will go directly to or from the file cutting out an ArrayCopy
+ *     operation.
+ *   <li>If BLOBs are being buffered exclusively in memory the buffer grows
+ *     geometrically, so the contents of a large BLOB are only copied a few
+ *     times while it is written.
  *   <li>The BLOB file will be kept open for as long as there are open input or
  *     output streams. Therefore BLOB streams should be explicitly closed as
  *     soon as they are finished with.
@@ -63,21 +65,17 @@ public class BlobBuffer {
      */
     private static final byte[] EMPTY_BUFFER = new byte[0];
     /**
-     * Default page size (must be power of 2).
+     * Minimum (and initial) page size (must be power of 2).
      */
-    private static final int PAGE_SIZE = 1024;
+    private static final int MIN_PAGE_SIZE = 1024;
     /**
-     * Mask for page component of read/write pointer.
-     */
-    private static final int PAGE_MASK = 0xFFFFFC00;
-    /**
-     * Mask for page offset component of R/W pointer.
+     * Maximum page size (must be power of 2).
      */
-    private static final int BYTE_MASK = 0x000003FF;
+    private static final int MAX_PAGE_SIZE = 65536;
     /**
-     * Maximum buffer increment.
+     * Minimum size of an in memory buffer.
      */
-    private static final int MAX_BUF_INC = 16384;
+    private static final int MIN_BUF_SIZE = 1024;
     /**
      * Invalid page marker.
      */
@@ -95,6 +93,18 @@ public class BlobBuffer {
      * The number of the current page in memory.
      */
     private int currentPage;
+    /**
+     * The current page size, adapted to the access pattern.
+     */
+    private int pageSize = MIN_PAGE_SIZE;
+    /**
+     * Mask for page component of read/write pointer.
+     */
+    private int pageMask = -MIN_PAGE_SIZE;
+    /**
+     * Mask for page offset component of R/W pointer.
+     */
+    private int byteMask = MIN_PAGE_SIZE - 1;
     /**
      * The name of the temporary BLOB disk file.
      */
@@ -103,10 +113,23 @@ public class BlobBuffer {
      * The RA file object reference or null if closed.
      */
     private RandomAccessFile raFile;
+    /**
+     * The channel of the RA file, used for positional reads and writes.
+     */
+    private FileChannel channel;
     /**
      * Indicates page in memory must be saved.
      */
     private boolean bufferDirty;
+    /**
+     * The work file resources to release if this buffer is reclaimed, or
+     * null if there is no work file.
+     */
+    private FileCleanup fileCleanup;
+    /**
+     * Registration of this buffer with the cleaner, while a work file exists.
+     */
+    private ResourceCleaner.Cleanable cleanable;
     /**
      * Count of callers that have opened the BLOB file.
      */
@@ -140,23 +163,6 @@ public class BlobBuffer {
        buffer = EMPTY_BUFFER;
     }
 
-    /**
-     * Finalizes this object by deleting any work files.
-     */
-    protected void finalize() throws Throwable {
-        try {
-            if (raFile != null) {
-                raFile.close();
-            }
-        } catch (IOException e) {
-            // Ignore we are going to delete anyway
-        } finally {
-            if (blobFile != null) {
-                blobFile.delete();
-            }
-        }
-    }
-
     /**
      * Creates a random access disk file to use as backing storage for the LOB
      * data.
@@ -173,21 +179,27 @@ public class BlobBuffer {
             blobFile = File.createTempFile("jtds", ".tmp", bufferDir);
             // blobFile.deleteOnExit(); memory leak, see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6664633
             raFile = new RandomAccessFile(blobFile, "rw");
+            channel = raFile.getChannel();
+            // Delete the work file if this buffer is reclaimed
+            fileCleanup = new FileCleanup(blobFile, raFile);
+            cleanable = ResourceCleaner.register(this, fileCleanup, "BLOB buffer");
             if (length > 0) {
-                raFile.write(buffer, 0, length);
+                writeFully(0, buffer, 0, length);
             }
-            buffer = new byte[PAGE_SIZE];
+            setPageSize(MIN_PAGE_SIZE);
             currentPage = INVALID_PAGE;
             openCount = 0;
         } catch (SecurityException e) {
             blobFile = null;
             raFile = null;
+            channel = null;
             isMemOnly = true;
             Logger.println("SecurityException creating BLOB file:");
             Logger.logException(e);
         } catch (IOException ioe) {
             blobFile = null;
             raFile = null;
+            channel = null;
             isMemOnly = true;
             Logger.println("IOException creating BLOB file:");
             Logger.logException(ioe);
@@ -207,9 +219,11 @@ public class BlobBuffer {
         if (raFile == null && blobFile != null) {
             // reopen file
             raFile = new RandomAccessFile(blobFile, "rw");
+            channel = raFile.getChannel();
+            fileCleanup.raFile = raFile;
             openCount = 1;
             currentPage = INVALID_PAGE;
-            buffer = new byte[PAGE_SIZE];
+            buffer = new byte[pageSize];
             return;
         }
         if (raFile != null) {
@@ -221,8 +235,7 @@ public class BlobBuffer {
      * Reads byte from the BLOB buffer at the specified location.
      * <p/>
      * The read pointer is partitioned into a page number and an offset within
-     * the page. This routine will read new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * the page. This routine will read new pages as required.
      *
      * @param readPtr the offset in the buffer of the required byte
      * @return the byte value as an <code>int</code> or -1 if at EOF
@@ -235,13 +248,13 @@ public class BlobBuffer {
         }
         if (raFile != null) {
             // Paged storage as a file exists
-            if (currentPage != (readPtr & PAGE_MASK)) {
+            if (currentPage != (readPtr & pageMask)) {
                 // Requested page not in memory so read it
                 readPage(readPtr);
             }
             // Use the byte offset to return the correct
             // byte from the page.
-            return buffer[readPtr & BYTE_MASK] & 0xFF;
+            return buffer[readPtr & byteMask] & 0xFF;
         } else {
             // In memory buffer just return byte.
             return buffer[readPtr] & 0xFF;
@@ -277,27 +290,28 @@ public class BlobBuffer {
         if (raFile != null) {
             // Need to read from disk file
             len = Math.min(length - readPtr, len);
-            if (len >= PAGE_SIZE) {
-                // This is a big write so we optimize by reading directly
-                // from the RA File.
+            if (len >= pageSize) {
+                // This is a big read so we optimize by reading directly
+                // from the file.
                 if (bufferDirty) {
                     writePage(currentPage);
                 }
                 currentPage = INVALID_PAGE;
-                raFile.seek(readPtr);
-                raFile.readFully(bytes, offset, len);
+                if (readFully(readPtr, bytes, offset, len) != len) {
+                    throw new EOFException();
+                }
             } else {
                 //
                 // Partial read so buffer locally
                 //
                 int count = len;
                 while (count > 0) {
-                    if (currentPage != (readPtr & PAGE_MASK)) {
+                    if (currentPage != (readPtr & pageMask)) {
                         // Requested page not in memory so read it
                         readPage(readPtr);
                     }
-                    int inBuffer = Math.min(PAGE_SIZE - (readPtr & BYTE_MASK), count);
-                    System.arraycopy(buffer, readPtr & BYTE_MASK, bytes, offset, inBuffer);
+                    int inBuffer = Math.min(pageSize - (readPtr & byteMask), count);
+                    System.arraycopy(buffer, readPtr & byteMask, bytes, offset, inBuffer);
                     offset += inBuffer;
                     readPtr += inBuffer;
                     count -= inBuffer;
@@ -316,8 +330,7 @@ public class BlobBuffer {
      * Inserts a byte into the buffer at the specified location.
      * <p/>
      * The write pointer is partitioned into a page number and an offset within
-     * the page. This routine will write new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * the page. This routine will write new pages as required.
      *
      * @param writePtr the offset in the buffer of the required byte
      * @param b        the byte value to write
@@ -342,11 +355,11 @@ public class BlobBuffer {
 
         if (raFile != null) {
             // OK we have a disk based buffer
-            if (currentPage != (writePtr & PAGE_MASK)) {
+            if (currentPage != (writePtr & pageMask)) {
                 // The page we need is not in memory
                 readPage(writePtr);
             }
-            buffer[writePtr & BYTE_MASK] = (byte) b;
+            buffer[writePtr & byteMask] = (byte) b;
             // Ensure change will saved if buffer is replaced
             bufferDirty = true;
         } else {
@@ -390,15 +403,14 @@ public class BlobBuffer {
         if (raFile != null) {
             // dealing with disk storage (normal case)
             //
-            if (len >= PAGE_SIZE) {
+            if (len >= pageSize) {
                 // This is a big write so we optimize by writing directly
-                // to the RA File.
+                // to the file.
                 if (bufferDirty) {
                     writePage(currentPage);
                 }
                 currentPage = INVALID_PAGE;
-                raFile.seek(writePtr);
-                raFile.write(bytes, offset, len);
+                writeFully(writePtr, bytes, offset, len);
                 writePtr += len;
             } else {
                 // Small writes so use the page buffer for
@@ -406,14 +418,14 @@ public class BlobBuffer {
                 int count = len;
                 while (count > 0) {
                     // Paged storage as a file exists
-                    if (currentPage != (writePtr & PAGE_MASK)) {
+                    if (currentPage != (writePtr & pageMask)) {
                         // Requested page not in memory so read it
                         readPage(writePtr);
                     }
                     int inBuffer = Math.min(
-                            PAGE_SIZE - (writePtr & BYTE_MASK), count);
+                            pageSize - (writePtr & byteMask), count);
                     System.arraycopy(bytes, offset, buffer,
-                            writePtr & BYTE_MASK, inBuffer);
+                            writePtr & byteMask, inBuffer);
                     bufferDirty = true;
                     offset += inBuffer;
                     writePtr += inBuffer;
@@ -436,29 +448,34 @@ public class BlobBuffer {
     /**
      * Reads in the specified page from the disk buffer.
      * <p/>
-     * Any existing dirty page is first saved to disk.
+     * Any existing dirty page is first saved to disk. The page size is
+     * doubled if the page follows the current one and halved otherwise.
      *
      * @param page the page number
      * @throws IOException if an I/O error occurs
      */
     public void readPage(int page) throws IOException {
-        page = page & PAGE_MASK;
         if (bufferDirty) {
             writePage(currentPage);
         }
-        if (page > raFile.length()) {
+        if (currentPage != INVALID_PAGE
+                && (page & pageMask) == currentPage + pageSize) {
+            // Sequential access, read more at a time
+            if (pageSize < MAX_PAGE_SIZE) {
+                setPageSize(pageSize * 2);
+            }
+        } else if (pageSize > MIN_PAGE_SIZE) {
+            // Random access, don't read more than needed
+            setPageSize(pageSize / 2);
+        }
+        page = page & pageMask;
+        if (page > channel.size()) {
             throw new IOException("readPage: Invalid page number " + page);
         }
         currentPage = page;
-        // Locate and read requested page
+        // Read requested page
         // NB. Page may not be completely filled.
-        raFile.seek(currentPage);
-        // Repeat reading until buffer is filled or EOF is reached
-        int count = 0, res;
-        do {
-            res = raFile.read(buffer, count, buffer.length - count);
-            count += (res == -1) ? 0 : res;
-        } while (count < PAGE_SIZE && res != -1);
+        readFully(currentPage, buffer, 0, pageSize);
     }
 
     /**
@@ -468,18 +485,73 @@ public class BlobBuffer {
      * @throws IOException if an I/O error occurs
      */
     public void writePage(int page) throws IOException {
-        page = page & PAGE_MASK;
-        if (page > raFile.length()) {
+        page = page & pageMask;
+        if (page > channel.size()) {
             throw new IOException("writePage: Invalid page number " + page);
         }
-        if (buffer.length != PAGE_SIZE) {
+        if (buffer.length != pageSize) {
             throw new IllegalStateException("writePage: buffer size invalid");
         }
-        raFile.seek(page);
-        raFile.write(buffer);
+        writeFully(page, buffer, 0, pageSize);
         bufferDirty = false;
     }
 
+    /**
+     * Changes the page size, allocating a new page buffer. The current page
+     * must have been saved.
+     *
+     * @param size the new page size (must be a power of 2)
+     */
+    private void setPageSize(int size) {
+        pageSize = size;
+        pageMask = -size;
+        byteMask = size - 1;
+        buffer = new byte[size];
+        currentPage = INVALID_PAGE;
+    }
+
+    /**
+     * Reads from the disk file at the specified position until the array
+     * range is filled or the end of the file is reached.
+     *
+     * @param pos    the position in the file
+     * @param bytes  the byte array to fill
+     * @param offset the start position in the byte array
+     * @param len    the number of bytes to read
+     * @return the number of bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    private int readFully(long pos, byte[] bytes, int offset, int len)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes, offset, len);
+        int count = 0;
+        while (bb.hasRemaining()) {
+            int res = channel.read(bb, pos + count);
+            if (res < 0) {
+                break;
+            }
+            count += res;
+        }
+        return count;
+    }
+
+    /**
+     * Writes to the disk file at the specified position.
+     *
+     * @param pos    the position in the file
+     * @param bytes  the byte array to write
+     * @param offset the start position in the byte array
+     * @param len    the number of bytes to write
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFully(long pos, byte[] bytes, int offset, int len)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes, offset, len);
+        while (bb.hasRemaining()) {
+            pos += channel.write(bb, pos);
+        }
+    }
+
     /**
      * Logically closes the file or physically close it if the open count is
      * now zero.
@@ -498,6 +570,8 @@ public class BlobBuffer {
                     }
                     raFile.close();
                     raFile = null;
+                    channel = null;
+                    fileCleanup.raFile = null;
                 }
                 // Allow buffer to be garbage collected
                 buffer = EMPTY_BUFFER;
@@ -509,20 +583,24 @@ public class BlobBuffer {
     /**
      * Increases the size of the in memory buffer for situations where disk
      * storage of BLOB is not possible.
+     * <p/>
+     * The buffer grows by half its size (doubling while small) so that a BLOB
+     * written in small pieces is only copied a logarithmic number of times.
      *
      * @param minSize the minimum size of buffer required
      */
     public void growBuffer(int minSize) {
         if (buffer.length == 0) {
             // Assign initial buffer
-            buffer = new byte[Math.max(PAGE_SIZE, minSize)];
+            buffer = new byte[Math.max(MIN_BUF_SIZE, minSize)];
         } else {
-            byte[] tmp;
-            if (buffer.length * 2 > minSize && buffer.length <= MAX_BUF_INC) {
-                tmp = new byte[buffer.length * 2];
-            } else {
-                tmp = new byte[minSize + MAX_BUF_INC];
+            int newSize = buffer.length < 1024 * 1024
+                    ? buffer.length * 2 : buffer.length + (buffer.length >> 1);
+            if (newSize < minSize || newSize < 0) {
+                // Large write or overflow, grow to the size required
+                newSize = minSize;
             }
+            byte[] tmp = new byte[newSize];
             // Copy over existing data
             System.arraycopy(buffer, 0, tmp, 0, buffer.length);
             buffer = tmp; // Assign new buffer.
@@ -545,6 +623,32 @@ public class BlobBuffer {
         length = buffer.length;
     }
 
+    /**
+     * Cleanup action deleting the work file of a buffer reclaimed by the
+     * garbage collector. Holds the file but not the buffer itself.
+     */
+    private static class FileCleanup implements Runnable {
+        private final File file;
+        volatile RandomAccessFile raFile;
+
+        FileCleanup(File file, RandomAccessFile raFile) {
+            this.file = file;
+            this.raFile = raFile;
+        }
+
+        public void run() {
+            try {
+                if (raFile != null) {
+                    raFile.close();
+                }
+            } catch (IOException e) {
+                // Ignore we are going to delete anyway
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
     //
     // ---- Inner classes implementing the various input/output stream classes ---
     //
@@ -568,22 +672,6 @@ public class BlobBuffer {
             readPtr = (int) pos;
         }
 
-        /**
-         * Ensures underlying BLOB file can be closed even if user does not
-         * close this stream.
-         */
-        protected void finalize() throws Throwable {
-            if (open) {
-                try {
-                    close();
-                } catch (IOException e) {
-                    // Ignore closing anyway
-                } finally {
-                    super.finalize();
-                }
-            }
-        }
-
         /**
          * Returns the number of bytes available to read.
          *
@@ -656,22 +744,6 @@ public class BlobBuffer {
             readPtr = (int) pos;
         }
 
-        /**
-         * Ensures underlying BLOB file can be closed even if user does not
-         * close this stream.
-         */
-        protected void finalize() throws Throwable {
-            if (open) {
-                try {
-                    close();
-                } catch (IOException e) {
-                    // Ignore closing anyway
-                } finally {
-                    super.finalize();
-                }
-            }
-        }
-
         /**
          * Returns the number of bytes available to read.
          *
@@ -737,22 +809,6 @@ public class BlobBuffer {
             readPtr = (int) pos;
         }
 
-        /**
-         * Ensures underlying BLOB file can be closed even if user does not
-         * close this stream.
-         */
-        protected void finalize() throws Throwable {
-            if (open) {
-                try {
-                    close();
-                } catch (IOException e) {
-                    // Ignore closing anyway
-                } finally {
-                    super.finalize();
-                }
-            }
-        }
-
         /**
          * Returns the number of bytes available to read.
          *
@@ -819,22 +875,6 @@ public class BlobBuffer {
             writePtr = (int) pos;
         }
 
-        /**
-         * Ensures underlying BLOB file can be closed even if user does not
-         * close this stream.
-         */
-        protected void finalize() throws Throwable {
-            if (open) {
-                try {
-                    close();
-                } catch (IOException e) {
-                    // Ignore closing anyway
-                } finally {
-                    super.finalize();
-                }
-            }
-        }
-
         /**
          * Write a byte to the BLOB buffer.
          *
@@ -891,22 +931,6 @@ public class BlobBuffer {
             writePtr = (int) pos;
         }
 
-        /**
-         * Ensures underlying BLOB file can be closed even if user does not
-         * close this stream.
-         */
-        protected void finalize() throws Throwable {
-            if (open) {
-                try {
-                    close();
-                } catch (IOException e) {
-                    // Ignore closing anyway
-                } finally {
-                    super.finalize();
-                }
-            }
-        }
-
         /**
          * Writes a byte to the BLOB buffer.
          *
@@ -1201,9 +1225,15 @@ public class BlobBuffer {
                         e.getMessage()),
                         "HY000");
             } finally {
+                if (cleanable != null) {
+                    cleanable.cancel();
+                    cleanable = null;
+                    fileCleanup = null;
+                }
                 buffer = EMPTY_BUFFER;
                 blobFile = null;
                 raFile = null;
+                channel = null;
                 openCount = 0;
                 currentPage = INVALID_PAGE;
             }
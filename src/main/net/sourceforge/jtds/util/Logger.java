@@ -96,6 +96,9 @@ public class Logger {
     private static final char hex[] =
     {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
 
+    /** Line separator used in packet dumps. */
+    private static final String NEWLINE = System.getProperty("line.separator");
+
     /**
      * Print a dump of the current input or output network packet.
      *
@@ -104,9 +107,25 @@ public class Logger {
      * @param pkt      the packet data
      */
     public static void logPacket(int streamId, boolean in, byte[] pkt) {
-        int len = ((pkt[2] & 0xFF) << 8)| (pkt[3] & 0xFF);
+        // Print the whole dump at once rather than flushing line by line
+        println(formatPacket(streamId, in, pkt));
+    }
 
-        StringBuffer line = new StringBuffer(80);
+    /**
+     * Format a hex dump of a network packet, as printed by
+     * {@link #logPacket}. If the packet array is shorter than the length in
+     * the packet header (e.g. a truncated packet from a
+     * {@link PacketTrace} file) only the available bytes are dumped.
+     *
+     * @param streamId the owner of this packet
+     * @param in       true if this is an input packet
+     * @param pkt      the packet data
+     * @return the formatted dump, without a trailing line separator
+     */
+    public static String formatPacket(int streamId, boolean in, byte[] pkt) {
+        int len = Math.min(((pkt[2] & 0xFF) << 8)| (pkt[3] & 0xFF), pkt.length);
+
+        StringBuilder line = new StringBuilder(80 + (len / 16 + 1) * 76);
 
         line.append("----- Stream #");
         line.append(streamId);
@@ -149,11 +168,11 @@ public class Logger {
                 break;
         }
 
-        println(line.toString());
-        println("");
-        line.setLength(0);
+        line.append(NEWLINE);
 
         for (int i = 0; i < len; i += 16) {
+            line.append(NEWLINE);
+
             if (i < 1000) {
                 line.append(' ');
             }
@@ -196,11 +215,11 @@ public class Logger {
             }
 
             line.append('|');
-            println(line.toString());
-            line.setLength(0);
         }
 
-        println("");
+        line.append(NEWLINE);
+
+        return line.toString();
     }
 
    /**
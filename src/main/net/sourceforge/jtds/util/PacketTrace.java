@@ -0,0 +1,320 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low overhead binary recorder for network packets.
+ * <p/>
+ * Unlike {@link Logger#logPacket}, which formats a hex dump of every packet
+ * on the calling thread, the recorder only copies the sampled packets into a
+ * bounded queue. A background daemon thread writes them to a binary trace
+ * file. If the writer cannot keep up, records are dropped rather than slowing
+ * down the driver; the number of dropped records is written to the trace.
+ * <p/>
+ * Each record holds a timestamp, the stream id (which identifies the
+ * statement's virtual socket), the direction and the first bytes of the
+ * packet, which include the packet header and, for replies, the first token.
+ * <p/>
+ * The recorder is controlled with {@link #start} and {@link #stop}, or with
+ * these system properties when the class is loaded:
+ * <ul>
+ *   <li><code>net.sourceforge.jtds.trace.file</code> - the trace file
+ *   <li><code>net.sourceforge.jtds.trace.sample</code> - record one in every
+ *     <i>n</i> packets (default 1, all packets)
+ *   <li><code>net.sourceforge.jtds.trace.capture</code> - maximum number of
+ *     bytes recorded per packet (default 0, the whole packet)
+ * </ul>
+ * A trace file is rendered in the {@link Logger} hex dump format with:
+ * <pre>
+ * java -cp jtds.jar net.sourceforge.jtds.util.PacketTrace trace.bin
+ * </pre>
+ */
+public class PacketTrace {
+    /** Identifies a trace file. */
+    private static final int MAGIC = 0x6A544453; // "jTDS"
+    /** Trace file format version. */
+    private static final int VERSION = 1;
+    /** Record flag for packets read from the server. */
+    private static final int FLAG_IN = 1;
+    /** Record type of a packet. */
+    private static final int RECORD_PACKET = 1;
+    /** Record type of a dropped records count. */
+    private static final int RECORD_DROPPED = 2;
+    /** Maximum number of records waiting to be written. */
+    private static final int QUEUE_SIZE = 4096;
+    /** TDS packet header length. */
+    private static final int HDR_LEN = 8;
+
+    /** The active recorder or <code>null</code>. */
+    private static volatile PacketTrace active;
+
+    static {
+        String file = System.getProperty("net.sourceforge.jtds.trace.file");
+        if (file != null) {
+            try {
+                start(file,
+                      Integer.getInteger("net.sourceforge.jtds.trace.sample", 1).intValue(),
+                      Integer.getInteger("net.sourceforge.jtds.trace.capture", 0).intValue());
+            } catch (IOException e) {
+                Logger.logException(e);
+            }
+        }
+    }
+
+    /** Records waiting to be written. */
+    private final ArrayBlockingQueue queue = new ArrayBlockingQueue(QUEUE_SIZE);
+    /** The trace file. */
+    private final DataOutputStream out;
+    /** Record one in every <code>sample</code> packets. */
+    private final int sample;
+    /** Maximum bytes recorded per packet, 0 for the whole packet. */
+    private final int capture;
+    /** Number of packets seen, used for sampling. */
+    private final AtomicLong packets = new AtomicLong();
+    /** Number of records dropped because the queue was full. */
+    private final AtomicLong dropped = new AtomicLong();
+    /** The writer thread. */
+    private final Thread writer;
+    /** Set when the recorder is stopped. */
+    private volatile boolean stopped;
+
+    private PacketTrace(String file, int sample, int capture) throws IOException {
+        this.sample = Math.max(sample, 1);
+        this.capture = Math.max(capture, 0);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // Base for the record timestamps
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(System.nanoTime());
+        writer = new Thread("jTDS PacketTrace") {
+            public void run() {
+                writeRecords();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts recording packets, stopping any active recorder first.
+     *
+     * @param file    the trace file to create
+     * @param sample  record one in every <code>sample</code> packets
+     * @param capture the maximum number of bytes to record per packet, or 0
+     *                to record whole packets
+     * @throws IOException if the trace file cannot be created
+     */
+    public static synchronized void start(String file, int sample, int capture)
+            throws IOException {
+        stop();
+        active = new PacketTrace(file, sample, capture);
+    }
+
+    /**
+     * Stops recording, writes any queued records and closes the trace file.
+     */
+    public static synchronized void stop() {
+        PacketTrace trace = active;
+        if (trace != null) {
+            active = null;
+            trace.stopped = true;
+            trace.writer.interrupt();
+            try {
+                trace.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the active status of the recorder.
+     *
+     * @return <code>true</code> if packets are being recorded
+     */
+    public static boolean isActive() {
+        return active != null;
+    }
+
+    /**
+     * Records a network packet, if selected by the sampling rate.
+     *
+     * @param streamId the owner of this packet
+     * @param in       true if this is an input packet
+     * @param pkt      the packet data
+     */
+    public static void record(int streamId, boolean in, byte[] pkt) {
+        PacketTrace trace = active;
+        if (trace != null) {
+            trace.add(streamId, in, pkt);
+        }
+    }
+
+    private void add(int streamId, boolean in, byte[] pkt) {
+        if (sample > 1 && packets.getAndIncrement() % sample != 0) {
+            return;
+        }
+        int len = ((pkt[2] & 0xFF) << 8) | (pkt[3] & 0xFF);
+        len = Math.max(Math.min(len, pkt.length), Math.min(HDR_LEN, pkt.length));
+        if (capture > 0 && len > capture) {
+            len = Math.max(capture, Math.min(HDR_LEN, pkt.length));
+        }
+        byte[] record = new byte[16 + len];
+        long time = System.nanoTime();
+        record[0] = (byte) RECORD_PACKET;
+        record[1] = (byte) (in ? FLAG_IN : 0);
+        putShort(record, 2, len);
+        putInt(record, 4, streamId);
+        putInt(record, 8, (int) (time >>> 32));
+        putInt(record, 12, (int) time);
+        System.arraycopy(pkt, 0, record, 16, len);
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static void putShort(byte[] b, int off, int v) {
+        b[off]     = (byte) (v >> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off]     = (byte) (v >> 24);
+        b[off + 1] = (byte) (v >> 16);
+        b[off + 2] = (byte) (v >> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    /**
+     * Main loop of the writer thread.
+     */
+    private void writeRecords() {
+        try {
+            while (true) {
+                byte[] record = (byte[]) queue.poll();
+                if (record == null) {
+                    writeDropped();
+                    out.flush();
+                    if (stopped) {
+                        break;
+                    }
+                    try {
+                        record = (byte[]) queue.take();
+                    } catch (InterruptedException e) {
+                        // stop() called, drain the queue and exit
+                        continue;
+                    }
+                }
+                out.write(record);
+            }
+        } catch (IOException e) {
+            Logger.logException(e);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private void writeDropped() throws IOException {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            out.writeByte(RECORD_DROPPED);
+            out.writeByte(0);
+            out.writeShort(0);
+            out.writeInt(0);
+            out.writeLong(count);
+        }
+    }
+
+    /**
+     * Renders a trace file in the {@link Logger} hex dump format.
+     *
+     * @param file the trace file
+     * @param pw   the output stream
+     * @throws IOException if the trace file cannot be read
+     */
+    public static void render(String file, PrintWriter pw) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a jTDS trace file: " + file);
+            }
+            long baseMillis = in.readLong();
+            long baseNanos = in.readLong();
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            while (true) {
+                int type;
+                try {
+                    type = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int flags = in.readUnsignedByte();
+                int len = in.readUnsignedShort();
+                int streamId = in.readInt();
+                long time = in.readLong();
+                if (type == RECORD_DROPPED) {
+                    pw.println("----- " + time + " packets dropped");
+                    pw.println();
+                    continue;
+                }
+                byte[] pkt = new byte[len];
+                in.readFully(pkt);
+                long millis = baseMillis + (time - baseNanos) / 1000000L;
+                pw.print(format.format(new Date(millis)));
+                pw.print(' ');
+                pw.println(Logger.formatPacket(streamId, (flags & FLAG_IN) != 0, pkt));
+            }
+        } finally {
+            in.close();
+        }
+        pw.flush();
+    }
+
+    /**
+     * Offline renderer entry point.
+     *
+     * @param args the trace file name
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java net.sourceforge.jtds.util.PacketTrace <trace file>");
+            System.exit(1);
+        }
+        render(args[0], new PrintWriter(System.out));
+    }
+}
@@ -0,0 +1,150 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases the resources of objects that are garbage collected without
+ * having been closed.
+ * <p/>
+ * This replaces <code>finalize()</code> methods, which make every instance
+ * of a class expensive to allocate and take two garbage collection cycles
+ * to reclaim. An object is registered together with a cleanup action, which
+ * holds the resources to release but must not refer to the object itself.
+ * When the object is closed the registration is cancelled; if the object
+ * becomes unreachable first, a phantom reference to it is enqueued and a
+ * daemon thread runs the cleanup action.
+ * <p/>
+ * Objects reclaimed without having been closed are reported to the
+ * {@link Logger}. If the system property
+ * <code>net.sourceforge.jtds.leakReport</code> is set to <code>true</code>
+ * the stack trace of the code that allocated each object is recorded and
+ * included in the report, which helps to find the code that does not close
+ * its statements or connections.
+ */
+public final class ResourceCleaner {
+    /** Record allocation stack traces for leak reports. */
+    private static final boolean TRACE_ALLOCATION =
+            Boolean.getBoolean("net.sourceforge.jtds.leakReport");
+
+    /** Queue of references to objects that have been reclaimed. */
+    private static final ReferenceQueue queue = new ReferenceQueue();
+
+    /** Keeps the registered references reachable until cleaned or cancelled. */
+    private static final Set registered =
+            Collections.newSetFromMap(new ConcurrentHashMap());
+
+    static {
+        Thread cleaner = new Thread("jTDS Cleaner") {
+            public void run() {
+                while (true) {
+                    try {
+                        ((Cleanable) queue.remove()).reclaimed();
+                    } catch (InterruptedException e) {
+                        // Ignore, the thread runs for the lifetime of the JVM
+                    }
+                }
+            }
+        };
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    private ResourceCleaner() {
+    }
+
+    /**
+     * Registers an object whose resources must be released if it is garbage
+     * collected before being closed.
+     *
+     * @param obj    the object to track
+     * @param action the cleanup action; must not hold a reference to
+     *               <code>obj</code> or the object will never be reclaimed
+     * @param type   description of the object used in leak reports
+     * @return the registration, to be cancelled when the object is closed
+     */
+    public static Cleanable register(Object obj, Runnable action, String type) {
+        Cleanable cleanable = new Cleanable(obj, action, type);
+        registered.add(cleanable);
+        return cleanable;
+    }
+
+    /**
+     * The registration of an object with the cleaner.
+     */
+    public static final class Cleanable extends PhantomReference {
+        private final Runnable action;
+        private final String type;
+        /** Where the object was allocated, if leak tracing is enabled. */
+        private final Exception allocation;
+
+        private Cleanable(Object obj, Runnable action, String type) {
+            super(obj, queue);
+            this.action = action;
+            this.type = type;
+            allocation = TRACE_ALLOCATION
+                    ? new Exception(type + " allocated here") : null;
+        }
+
+        /**
+         * Cancels the registration without running the cleanup action,
+         * because the object has released its resources itself.
+         */
+        public void cancel() {
+            if (registered.remove(this)) {
+                clear();
+            }
+        }
+
+        /**
+         * Cancels the registration and runs the cleanup action, unless the
+         * registration has already been cancelled or cleaned.
+         */
+        public void clean() {
+            if (registered.remove(this)) {
+                clear();
+                action.run();
+            }
+        }
+
+        /**
+         * Called by the cleaner thread once the object has been reclaimed.
+         */
+        private void reclaimed() {
+            if (!registered.contains(this)) {
+                return;
+            }
+            if (allocation != null) {
+                Logger.println("Unclosed " + type + " reclaimed by the garbage collector");
+                Logger.logException(allocation);
+            } else if (Logger.isActive()) {
+                Logger.println("Unclosed " + type + " reclaimed by the garbage collector");
+            }
+            try {
+                clean();
+            } catch (RuntimeException e) {
+                Logger.logException(e);
+            }
+        }
+    }
+}
@@ -17,8 +17,7 @@
 //
 package net.sourceforge.jtds.util;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple timer class used to implement login and query timeouts.
@@ -28,6 +27,14 @@ import java.util.ListIterator;
  * <p/>
  * It provides both a singleton implementation and a default constructor for
  * the case when more than one timer thread is desired.
+ * <p/>
+ * Requests are kept in a hashed timing wheel: time is divided into ticks of
+ * {@link #TICK} milliseconds and each request is linked into the bucket of
+ * the tick in which it expires (modulo the wheel size). Each bucket has its
+ * own lock, setting a timer is a constant time insert into one bucket and
+ * cancelling it only flags the request, so there is no single lock that all
+ * executing statements contend for. Cancelled requests are unlinked when the
+ * timer thread next passes their bucket.
  *
  * @author Alin Sinpalean
  * @author Mike Hutchinson
@@ -44,41 +51,72 @@ public class TimerThread extends Thread {
         void timerExpired();
     }
 
+    /** Timer resolution in milliseconds. */
+    static final int TICK = 20;
+    /** Timer resolution in nanoseconds. */
+    private static final long TICK_NANOS = TICK * 1000000L;
+    /** Number of buckets in the wheel, must be a power of 2. */
+    static final int WHEEL_SIZE = 256;
+
+    /** Request is waiting to expire. */
+    private static final int PENDING = 0;
+    /** Request has been cancelled. */
+    private static final int CANCELLED = 1;
+    /** Request has expired and its target has been notified. */
+    private static final int EXPIRED = 2;
+
     /**
      * Internal class associating a login or query timeout value with a target
      * <code>TimerListener</code>.
      */
     private static class TimerRequest {
-        /** The time when this timeout will expire. */
-        final long time;
+        /** State of the request: PENDING, CANCELLED or EXPIRED. */
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        /** The tick in which this timeout will expire. */
+        final long tick;
         /** Target to notify when the timeout expires. */
         final TimerListener target;
+        /** Next request in the same bucket. */
+        TimerRequest next;
 
         /**
          * Create a <code>TimerRequest</code>.
          *
-         * @param timeout the desired timeout in milliseconds
-         * @param target  the target object; one of <code>SharedSocket</code> or
-         *                <code>TdsCore</code>
-         * @throws IllegalArgumentException if the timeout is negative or 0
+         * @param tick   the tick in which the timeout expires
+         * @param target the target object; one of <code>SharedSocket</code> or
+         *               <code>TdsCore</code>
          */
-        TimerRequest(int timeout, TimerListener target) {
-            if (timeout <= 0) {
-                throw new IllegalArgumentException("Invalid timeout parameter "
-                        + timeout);
-            }
-            this.time = System.currentTimeMillis() + (timeout);
+        TimerRequest(long tick, TimerListener target) {
+            this.tick = tick;
             this.target = target;
         }
     }
 
+    /**
+     * A wheel bucket, holding a linked list of requests. Also serves as the
+     * lock guarding the list.
+     */
+    private static class Bucket {
+        /** First request in the bucket. */
+        TimerRequest head;
+    }
+
     /** Singleton instance. */
     private static TimerThread instance;
 
-    /** List of <code>TimerRequest</code>s to execute, ordered by time. */
-    private final LinkedList timerList = new LinkedList();
-    /** Time when the first request time out should occur. */
-    private long nextTimeout;
+    /** The timing wheel. */
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    /** Time origin of this timer, from <code>System.nanoTime()</code>. */
+    private final long origin = System.nanoTime();
+    /**
+     * Last tick processed by the timer thread. Only changed while holding the
+     * lock of the bucket for the new tick.
+     */
+    private volatile long processedTick = -1;
+    /** Number of requests linked into the wheel, including cancelled ones. */
+    private final AtomicInteger linked = new AtomicInteger();
+    /** Monitor the timer thread waits on while the wheel is empty. */
+    private final Object idle = new Object();
 
     /**
      * Singleton getter.
@@ -99,90 +137,136 @@ public class TimerThread extends Thread {
         super("jTDS TimerThread");
         // Ensure that this thread does not prevent the VM from exiting
         this.setDaemon(true);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
     }
 
     /**
      * Execute the <code>TimerThread</code> main loop.
      */
     public void run() {
-        synchronized (timerList) {
-            boolean run = true;
-            while (run) {
-                try {
-                    long ms;
-                    while ((ms = nextTimeout - System.currentTimeMillis()) > 0 || nextTimeout == 0) {
-                        // positive timeout, wait appropriately
-                        timerList.wait(nextTimeout==0 ? 0 : ms);
+        try {
+            while (true) {
+                synchronized (idle) {
+                    while (linked.get() == 0) {
+                        idle.wait();
                     }
+                }
 
-                    // Fire expired timeout requests
-                    long time = System.currentTimeMillis();
-                    while (!timerList.isEmpty()) {
-                        // Examine the head of the list and see
-                        // if the timer has expired.
-                        TimerRequest t = (TimerRequest) timerList.getFirst();
-                        if (t.time > time) {
-                            break; // No timers have expired
-                        }
-                        // Notify target of timeout
-                        t.target.timerExpired();
-                        // Remove the fired timeout request
-                        timerList.removeFirst();
-                    }
+                long current = elapsed() / TICK_NANOS;
+                long from = processedTick + 1;
+                if (current - from >= WHEEL_SIZE) {
+                    // Fell behind (or was idle); one turn visits every bucket
+                    from = current - WHEEL_SIZE + 1;
+                }
+                for (long tick = from; tick <= current; tick++) {
+                    expire(tick);
+                }
 
-                    // Determine next timeout
-                    updateNextTimeout();
-                } catch (InterruptedException e) {
-                    // stopThread() called, or thread interrupted externally
-                    run = false;
-                    timerList.clear();
+                long ms = ((current + 1) * TICK_NANOS - elapsed()) / 1000000L;
+                Thread.sleep(Math.max(ms, 1));
+            }
+        } catch (InterruptedException e) {
+            // stopThread() called, or thread interrupted externally
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                synchronized (wheel[i]) {
+                    wheel[i].head = null;
                 }
             }
+            linked.set(0);
+        }
+    }
+
+    /**
+     * Processes the bucket for the specified tick: unlinks cancelled requests
+     * and fires the ones due by this tick.
+     *
+     * @param tick the tick to process
+     */
+    private void expire(long tick) {
+        TimerRequest fired = null;
+        int removed = 0;
+        Bucket bucket = wheel[(int) tick & (WHEEL_SIZE - 1)];
+
+        synchronized (bucket) {
+            TimerRequest prev = null;
+            TimerRequest t = bucket.head;
+            while (t != null) {
+                TimerRequest next = t.next;
+                boolean due = t.tick <= tick;
+                if (due || t.state.get() != PENDING) {
+                    // Unlink the request
+                    if (prev == null) {
+                        bucket.head = next;
+                    } else {
+                        prev.next = next;
+                    }
+                    removed++;
+                    if (due && t.state.compareAndSet(PENDING, EXPIRED)) {
+                        t.next = fired;
+                        fired = t;
+                    } else {
+                        t.next = null;
+                    }
+                } else {
+                    prev = t;
+                }
+                t = next;
+            }
+            processedTick = tick;
+        }
+
+        if (removed > 0) {
+            linked.addAndGet(-removed);
+        }
+        // Notify targets outside of the bucket lock
+        while (fired != null) {
+            TimerRequest t = fired;
+            fired = t.next;
+            t.next = null;
+            t.target.timerExpired();
         }
     }
 
     /**
      * Add a timer request to the queue.
-     * <p/>
-     * The queue is ordered by time so that the head of the list is always the
-     * first timer to expire.
      *
      * @param timeout the interval in milliseconds after which the timer will
      *                expire
      * @param l       <code>TimerListener</code> to be notified on timeout
      * @return a handle to the timer request, that can later be used with
      *         <code>cancelTimer</code>
+     * @throws IllegalArgumentException if the timeout is negative or 0
      */
     public Object setTimer(int timeout, TimerListener l) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Invalid timeout parameter "
+                    + timeout);
+        }
+        // Round up so that the request never fires early
+        long tick = (elapsed() + timeout * 1000000L + TICK_NANOS - 1) / TICK_NANOS;
+
         // Create a new timer request
-        TimerRequest t = new TimerRequest(timeout, l);
-
-        synchronized (timerList) {
-            if (timerList.isEmpty()) {
-                // List was empty, just add new request
-                timerList.add(t);
-            } else {
-                // Tiny optimization; new requests will usually go to the end
-                TimerRequest crt = (TimerRequest) timerList.getLast();
-                if (t.time >= crt.time) {
-                    timerList.addLast(t);
-                } else {
-                    // Iterate the list and insert it into the right place
-                    for (ListIterator li = timerList.listIterator(); li.hasNext(); ) {
-                        crt = (TimerRequest) li.next();
-                        if (t.time < crt.time) {
-                            li.previous();
-                            li.add(t);
-                            break;
-                        }
-                    }
+        TimerRequest t;
+        while (true) {
+            long first = processedTick + 1;
+            t = new TimerRequest(Math.max(tick, first), l);
+            Bucket bucket = wheel[(int) t.tick & (WHEEL_SIZE - 1)];
+            synchronized (bucket) {
+                // Retry if the timer thread has just gone past this tick
+                if (t.tick > processedTick) {
+                    t.next = bucket.head;
+                    bucket.head = t;
+                    break;
                 }
             }
+        }
 
-            // If this request is now the first in the list, interrupt timer
-            if (timerList.getFirst() == t) {
-                nextTimeout = t.time;
-                timerList.notifyAll();
+        if (linked.getAndIncrement() == 0) {
+            // Wheel was empty, wake up the timer thread
+            synchronized (idle) {
+                idle.notifyAll();
             }
         }
 
@@ -200,13 +284,8 @@ public class TimerThread extends Thread {
     public boolean cancelTimer(Object handle) {
         TimerRequest t = (TimerRequest) handle;
 
-        synchronized (timerList) {
-            boolean result = timerList.remove(t);
-            if (nextTimeout == t.time) {
-                updateNextTimeout();
-            }
-            return result;
-        }
+        // The request is unlinked when the timer thread next visits its bucket
+        return t.state.compareAndSet(PENDING, CANCELLED);
     }
 
     /**
@@ -231,14 +310,13 @@ public class TimerThread extends Thread {
     public boolean hasExpired(Object handle) {
         TimerRequest t = (TimerRequest) handle;
 
-        synchronized (timerList) {
-            return !timerList.contains(t);
-        }
+        return t.state.get() != PENDING;
     }
 
-    /** Internal method that updates the value of {@link #nextTimeout}. */
-    private void updateNextTimeout() {
-        nextTimeout = timerList.isEmpty() ? 0
-                : ((TimerRequest) timerList.getFirst()).time;
+    /**
+     * Retrieves the number of nanoseconds since this timer was created.
+     */
+    private long elapsed() {
+        return System.nanoTime() - origin;
     }
 }
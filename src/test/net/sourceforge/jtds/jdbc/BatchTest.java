@@ -305,6 +305,70 @@ public class BatchTest extends DatabaseTestCase {
         }
     }
 
+    /**
+     * Test a large batch of procedure calls sent one call per request and
+     * packed into as few requests as possible (<code>packedCallBatch=true</code>,
+     * only differs on Sybase). The update count, return status and output
+     * parameter of every call must be those of that call.
+     */
+    public void testPackedCallStmtBatch() throws Exception {
+        final int n = 2000;
+        dropTable("jTDS_PackedBatch");
+        dropProcedure("jTDS_PROC");
+        try {
+            Statement stmt = con.createStatement();
+            stmt.execute("create table jTDS_PackedBatch (id int, data varchar(255))");
+            stmt.execute("create proc jTDS_PROC @p1 int, @p2 varchar(255), @p3 int output as " +
+                    "INSERT INTO jTDS_PackedBatch VALUES (@p1, @p2) " +
+                    "SELECT @p3 = @p1 * 2 " +
+                    "RETURN @p1 % 1000");
+
+            for (int pass = 0; pass < 2; pass++) {
+                stmt.execute("TRUNCATE TABLE jTDS_PackedBatch");
+                Properties override = new Properties();
+                override.setProperty(Messages.get(Driver.PACKEDCALLBATCH), String.valueOf(pass == 1));
+                Connection con2 = getConnection(override);
+                try {
+                    JtdsCallableStatement cstmt = (JtdsCallableStatement)
+                            con2.prepareCall("{?=call jTDS_PROC (?, ?, ?)}");
+                    cstmt.registerOutParameter(1, Types.INTEGER);
+                    cstmt.registerOutParameter(4, Types.INTEGER);
+                    for (int i = 0; i < n; i++) {
+                        cstmt.setInt(2, i);
+                        cstmt.setString(3, "This is line " + i);
+                        cstmt.addBatch();
+                    }
+                    // The parameters of each call, which receive its return
+                    // values; the batch is cleared by executeBatch()
+                    ArrayList calls = new ArrayList(cstmt.batchValues);
+                    int counts[] = cstmt.executeBatch();
+                    assertEquals(n, counts.length);
+                    for (int i = 0; i < n; i++) {
+                        assertEquals("Count of call " + i, 1, counts[i]);
+                        ParamInfo[] params = (ParamInfo[]) calls.get(i);
+                        assertEquals("Return status of call " + i, i % 1000,
+                                ((Number) params[0].getOutValue()).intValue());
+                        assertEquals("Output parameter of call " + i, i * 2,
+                                ((Number) params[3].getOutValue()).intValue());
+                    }
+                    cstmt.close();
+                } finally {
+                    con2.close();
+                }
+
+                ResultSet rs = stmt.executeQuery("select count(*), sum(id) from jTDS_PackedBatch");
+                assertTrue(rs.next());
+                assertEquals(n, rs.getInt(1));
+                assertEquals(n * (n - 1) / 2, rs.getInt(2));
+                rs.close();
+            }
+            stmt.close();
+        } finally {
+            dropProcedure("jTDS_PROC");
+            dropTable("jTDS_PackedBatch");
+        }
+    }
+
     /**
      * Test large batch behavior.
      */
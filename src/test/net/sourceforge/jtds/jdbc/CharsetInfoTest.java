@@ -0,0 +1,71 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>CharsetInfo</code> class.
+ */
+public class CharsetInfoTest extends TestCase {
+
+    public CharsetInfoTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test that equal collations are interned to the same array and resolve
+     * to the same charset as the LCID or sort order they contain.
+     */
+    public void testInternCollation() throws SQLException {
+        // Latin1_General_CI_AS: LCID 0x0409, sort order 0
+        byte[] latin1 = {0x09, 0x04, (byte) 0xD0, 0x00, 0x00};
+        byte[] interned = CharsetInfo.internCollation(
+                CharsetInfo.collationKey(latin1));
+        assertNotSame(latin1, interned);
+        assertTrue(Arrays.equals(latin1, interned));
+        assertSame(interned, CharsetInfo.internCollation(
+                CharsetInfo.collationKey((byte[]) latin1.clone())));
+        assertSame(CharsetInfo.getCharsetForLCID(0x0409),
+                CharsetInfo.getCharset(latin1));
+
+        // SQL_Latin1_General_CP1_CI_AS: sort order 52
+        byte[] sql = {0x09, 0x04, (byte) 0xD0, 0x00, 0x34};
+        assertSame(CharsetInfo.getCharsetForSortOrder(52),
+                CharsetInfo.getCharset(sql));
+    }
+
+    /**
+     * Test that an unknown collation is reported with SQLSTATE 2C000.
+     */
+    public void testUnknownCollation() {
+        try {
+            CharsetInfo.getCharset(new byte[] {0x7F, 0x7F, 0x0F, 0, 0});
+            fail("Expected SQLException");
+        } catch (SQLException e) {
+            assertEquals("2C000", e.getSQLState());
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CharsetInfoTest.class);
+    }
+}
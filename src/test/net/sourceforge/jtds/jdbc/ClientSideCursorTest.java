@@ -21,6 +21,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
 
 /**
  * Test case to illustrate use of Cached cursor result set.
@@ -216,6 +217,177 @@ public class ClientSideCursorTest extends DatabaseTestCase {
         stmt.close();
     }
 
+    /**
+     * Test that updates, deletes and inserts queued with
+     * <code>deferRowUpdates</code> are held until the result set scrolls
+     * back or is closed, and that they are sent batched.
+     * <p/>
+     * The result set is built directly, as SQL Server scrollable updatable
+     * statements use server side cursors.
+     */
+    public void testDeferredRowUpdates() throws Exception {
+        Properties override = new Properties();
+        override.setProperty(Messages.get(Driver.DEFERROWUPDATES), "true");
+        Connection con2 = getConnection(override);
+        try {
+            Statement stmt = con2.createStatement();
+            stmt.execute("CREATE TABLE #TESTDEFER (id int primary key, data varchar(255) null)");
+            for (int i = 0; i < 10; i++) {
+                stmt.executeUpdate("INSERT INTO #TESTDEFER VALUES("+i+", 'Test line "+i+"')");
+            }
+
+            JtdsStatement cursorStmt = (JtdsStatement) con2.createStatement(
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            CachedResultSet rs = new CachedResultSet(cursorStmt,
+                    "SELECT id, data FROM #TESTDEFER", null, null,
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            while (rs.next()) {
+                rs.updateString(2, "UPDATED " + rs.getInt(1));
+                rs.updateRow();
+            }
+            // The changes are held until a flush point
+            assertEquals(10, countRows(stmt, "#TESTDEFER", "data LIKE 'Test line %'"));
+
+            boolean isSybase = ((JtdsConnection) con2).getServerType() == Driver.SYBASE;
+            long reads = isSybase ? 0 : getPacketsRead(stmt);
+            // Scrolling back sends the queued changes
+            assertTrue(rs.first());
+            assertEquals(10, countRows(stmt, "#TESTDEFER", "data LIKE 'UPDATED %'"));
+            if (!isSybase) {
+                // One request for the batch and one for the query, where
+                // sending the changes one by one would take ten
+                assertTrue(getPacketsRead(stmt) - reads <= 3);
+            }
+
+            rs.beforeFirst();
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (id == 3) {
+                    rs.deleteRow();
+                } else if (id == 5) {
+                    rs.updateNull(2);
+                    rs.updateRow();
+                    break;
+                }
+            }
+            rs.moveToInsertRow();
+            rs.updateInt(1, 10);
+            rs.updateString(2, "INSERTED");
+            rs.insertRow();
+            assertEquals(10, countRows(stmt, "#TESTDEFER", "data IS NOT NULL"));
+            // Closing the result set sends the queued changes
+            rs.close();
+            cursorStmt.close();
+
+            ResultSet rs2 = stmt.executeQuery("SELECT id, data FROM #TESTDEFER ORDER BY id");
+            for (int i = 0; i <= 10; i++) {
+                if (i == 3) {
+                    continue;
+                }
+                assertTrue(rs2.next());
+                assertEquals(i, rs2.getInt(1));
+                if (i == 10) {
+                    assertEquals("INSERTED", rs2.getString(2));
+                } else if (i == 5) {
+                    assertNull(rs2.getString(2));
+                } else {
+                    assertEquals("UPDATED " + i, rs2.getString(2));
+                }
+            }
+            assertFalse(rs2.next());
+            stmt.close();
+        } finally {
+            con2.close();
+        }
+    }
+
+    /**
+     * Test that queued row changes are sent by a commit and discarded by a
+     * rollback.
+     */
+    public void testDeferredRowUpdatesTransaction() throws Exception {
+        Properties override = new Properties();
+        override.setProperty(Messages.get(Driver.DEFERROWUPDATES), "true");
+        Connection con2 = getConnection(override);
+        try {
+            Statement stmt = con2.createStatement();
+            stmt.execute("CREATE TABLE #TESTDEFERTX (id int primary key, data varchar(255) null)");
+            for (int i = 0; i < 4; i++) {
+                stmt.executeUpdate("INSERT INTO #TESTDEFERTX VALUES("+i+", 'Test line "+i+"')");
+            }
+            con2.setAutoCommit(false);
+
+            JtdsStatement cursorStmt = (JtdsStatement) con2.createStatement(
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            CachedResultSet rs = new CachedResultSet(cursorStmt,
+                    "SELECT id, data FROM #TESTDEFERTX", null, null,
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            assertTrue(rs.next());
+            rs.updateString(2, "COMMITTED");
+            rs.updateRow();
+            assertTrue(rs.next());
+            rs.updateString(2, "COMMITTED");
+            rs.updateRow();
+            assertEquals(0, countRows(stmt, "#TESTDEFERTX", "data = 'COMMITTED'"));
+            con2.commit();
+            assertEquals(2, countRows(stmt, "#TESTDEFERTX", "data = 'COMMITTED'"));
+            con2.commit();
+
+            assertTrue(rs.next());
+            rs.updateString(2, "ROLLED BACK");
+            rs.updateRow();
+            con2.rollback();
+            // Closing the result set must not send the discarded change
+            rs.close();
+            cursorStmt.close();
+            assertEquals(0, countRows(stmt, "#TESTDEFERTX", "data = 'ROLLED BACK'"));
+            assertEquals(2, countRows(stmt, "#TESTDEFERTX", "data = 'COMMITTED'"));
+            con2.rollback();
+
+            // The changes of a result set dropped before the commit are sent
+            cursorStmt = (JtdsStatement) con2.createStatement(
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            rs = new CachedResultSet(cursorStmt,
+                    "SELECT id, data FROM #TESTDEFERTX", null, null,
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            assertTrue(rs.last());
+            rs.updateString(2, "DROPPED");
+            rs.updateRow();
+            rs = null;
+            cursorStmt = null;
+            System.gc();
+            con2.commit();
+            assertEquals(1, countRows(stmt, "#TESTDEFERTX", "data = 'DROPPED'"));
+            stmt.close();
+        } finally {
+            con2.close();
+        }
+    }
+
+    /**
+     * Counts the rows of a table matching a condition.
+     */
+    private static int countRows(Statement stmt, String table, String where)
+            throws SQLException {
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + where);
+        assertTrue(rs.next());
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+
+    /**
+     * Retrieves the number of packets SQL Server has read on this connection.
+     */
+    private static long getPacketsRead(Statement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery(
+                "SELECT num_reads FROM sys.dm_exec_connections WHERE session_id = @@SPID");
+        assertTrue(rs.next());
+        long reads = rs.getLong(1);
+        rs.close();
+        return reads;
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(ClientSideCursorTest.class);
     }
@@ -0,0 +1,191 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>ColumnConverter</code> class.
+ */
+public class ColumnConverterTest extends TestCase {
+
+    private static final int[] COLUMN_TYPES = {
+        Types.TINYINT, Types.INTEGER, Types.BIGINT, Types.REAL, Types.DOUBLE,
+        Types.DECIMAL, Types.BIT, Types.TIMESTAMP, Types.VARCHAR
+    };
+
+    private Object[] values;
+
+    public ColumnConverterTest(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+        values = new Object[] {
+            null, new Integer(0), new Integer(100), new Integer(-200),
+            new Integer(70000), new Integer(Integer.MIN_VALUE),
+            new Long(5), new Long(Long.MAX_VALUE), new Float(2.75f),
+            new Double(-1e10), new BigDecimal("12.345"), Boolean.TRUE,
+            Boolean.FALSE, "42",
+            new DateTime(Timestamp.valueOf("2004-06-07 12:34:56.78"))
+        };
+    }
+
+    /**
+     * Test that every converter returns the same values and throws the same
+     * errors as <code>Support.convert</code>, whether or not the value is of
+     * the type expected in the column.
+     */
+    public void testSameAsSupport() throws Exception {
+        for (int c = 0; c < COLUMN_TYPES.length; c++) {
+            ColumnConverter conv = ColumnConverter.forType(COLUMN_TYPES[c]);
+
+            for (int v = 0; v < values.length; v++) {
+                Object x = values[v];
+                String msg = COLUMN_TYPES[c] + ": " + x;
+
+                assertEquals(msg, convert(x, Types.TINYINT, "byteValue"), getByte(conv, x));
+                assertEquals(msg, convert(x, Types.SMALLINT, "shortValue"), getShort(conv, x));
+                assertEquals(msg, convert(x, Types.INTEGER, "intValue"), getInt(conv, x));
+                assertEquals(msg, convert(x, Types.BIGINT, "longValue"), getLong(conv, x));
+                assertEquals(msg, convert(x, Types.REAL, null), getFloat(conv, x));
+                assertEquals(msg, convert(x, Types.DOUBLE, null), getDouble(conv, x));
+                assertEquals(msg, convert(x, JtdsStatement.BOOLEAN, null), getBoolean(conv, x));
+                assertEquals(msg, convert(x, Types.DECIMAL, null), getBigDecimal(conv, x));
+                assertEquals(msg, convert(x, Types.TIMESTAMP, null), getTimestamp(conv, x));
+                assertEquals(msg, convert(x, Types.DATE, null), getDate(conv, x));
+                assertEquals(msg, convert(x, Types.TIME, null), getTime(conv, x));
+            }
+        }
+    }
+
+    /**
+     * Converts a value with <code>Support.convert</code>, returning the
+     * exception (SQL state) instead of throwing it.
+     */
+    private static Object convert(Object x, int jdbcType, String narrow) {
+        try {
+            Object result = Support.convert(null, x, jdbcType, null);
+            if ("byteValue".equals(narrow)) {
+                return new Byte(((Integer) result).byteValue());
+            } else if ("shortValue".equals(narrow)) {
+                return new Short(((Integer) result).shortValue());
+            }
+            return result;
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getByte(ColumnConverter conv, Object x) {
+        try {
+            return new Byte(conv.getByte(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getShort(ColumnConverter conv, Object x) {
+        try {
+            return new Short(conv.getShort(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getInt(ColumnConverter conv, Object x) {
+        try {
+            return new Integer(conv.getInt(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getLong(ColumnConverter conv, Object x) {
+        try {
+            return new Long(conv.getLong(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getFloat(ColumnConverter conv, Object x) {
+        try {
+            return new Float(conv.getFloat(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getDouble(ColumnConverter conv, Object x) {
+        try {
+            return new Double(conv.getDouble(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getBoolean(ColumnConverter conv, Object x) {
+        try {
+            return Boolean.valueOf(conv.getBoolean(null, x));
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getBigDecimal(ColumnConverter conv, Object x) {
+        try {
+            return conv.getBigDecimal(null, x);
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getTimestamp(ColumnConverter conv, Object x) {
+        try {
+            return conv.getTimestamp(null, x);
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getDate(ColumnConverter conv, Object x) {
+        try {
+            return conv.getDate(null, x);
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    private static Object getTime(ColumnConverter conv, Object x) {
+        try {
+            return conv.getTime(null, x);
+        } catch (SQLException e) {
+            return e.getSQLState();
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ColumnConverterTest.class);
+    }
+}
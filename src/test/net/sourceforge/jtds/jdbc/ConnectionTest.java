@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.sql.*;
@@ -270,6 +271,110 @@ public class ConnectionTest extends UnitTestBase
       }
    }
 
+   /**
+    * Test that deferred session state changes are applied with the next
+    * request and that changes cancelling each other out are not sent.
+    */
+   public void testDeferredSessionState() throws Exception
+   {
+      Properties props = new Properties();
+      props.setProperty( Messages.get( Driver.DEFERSESSIONSTATE ), "true" );
+      Connection con = getConnectionOverrideProperties( props );
+
+      try
+      {
+         Statement stmt = con.createStatement();
+         String catalog = con.getCatalog();
+
+         // Changes are visible through the connection immediately
+         con.setCatalog( "master" );
+         assertEquals( "master", con.getCatalog() );
+         con.setTransactionIsolation( Connection.TRANSACTION_SERIALIZABLE );
+         con.setAutoCommit( false );
+
+         // ... and on the server with the next request
+         ResultSet rs = stmt.executeQuery( "select db_name(), @@OPTIONS & 2, "
+               + "(select transaction_isolation_level from sys.dm_exec_sessions where session_id = @@SPID)" );
+         assertTrue( rs.next() );
+         assertEquals( "master", rs.getString( 1 ) );
+         assertEquals( 2, rs.getInt( 2 ) );
+         assertEquals( 4, rs.getInt( 3 ) );
+         rs.close();
+         con.rollback();
+
+         // Back to the original state; switching auto commit on commits
+         con.setAutoCommit( true );
+         con.setTransactionIsolation( Connection.TRANSACTION_READ_COMMITTED );
+         con.setCatalog( catalog );
+         rs = stmt.executeQuery( "select db_name(), @@OPTIONS & 2" );
+         assertTrue( rs.next() );
+         assertEquals( catalog, rs.getString( 1 ) );
+         assertEquals( 0, rs.getInt( 2 ) );
+         rs.close();
+
+         // An unknown catalog is reported by the next statement
+         con.setCatalog( "jtds_no_such_database" );
+         try
+         {
+            stmt.executeQuery( "select db_name()" );
+            fail( "Expected SQLException" );
+         }
+         catch( SQLException e )
+         {
+            // expected
+         }
+         assertEquals( catalog, con.getCatalog() );
+
+         stmt.close();
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
+   /**
+    * Test that statements which must be first in their batch, such as
+    * <code>CREATE PROCEDURE</code>, can be executed after a deferred session
+    * state change and that the change is still applied.
+    */
+   public void testDeferredSessionStateCreateProcedure() throws Exception
+   {
+      Properties props = new Properties();
+      props.setProperty( Messages.get( Driver.DEFERSESSIONSTATE ), "true" );
+      Connection con = getConnectionOverrideProperties( props );
+
+      try
+      {
+         Statement stmt = con.createStatement();
+         con.setTransactionIsolation( Connection.TRANSACTION_SERIALIZABLE );
+         con.setAutoCommit( false );
+
+         stmt.execute( "/* comment */ CREATE PROCEDURE #jtdsDeferred AS SELECT @@OPTIONS & 2, "
+               + "(select transaction_isolation_level from sys.dm_exec_sessions where session_id = @@SPID)" );
+         // Defer another change before each of the following batches
+         con.setTransactionIsolation( Connection.TRANSACTION_READ_COMMITTED );
+         stmt.execute( "\r\n  -- leading comment\r\n/* outer /* nested */ comment */ "
+               + "CREATE VIEW jtdsDeferredView AS SELECT 1 AS x" );
+         con.setTransactionIsolation( Connection.TRANSACTION_SERIALIZABLE );
+         stmt.execute( "/* comment */\tCREATE TRIGGER jtdsDeferredTrigger ON jtdsDeferredView "
+               + "INSTEAD OF INSERT AS SELECT 1" );
+
+         ResultSet rs = stmt.executeQuery( "EXEC #jtdsDeferred" );
+         assertTrue( rs.next() );
+         assertEquals( 2, rs.getInt( 1 ) );
+         assertEquals( 4, rs.getInt( 2 ) );
+         rs.close();
+         con.rollback();
+
+         stmt.close();
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
    /**
     * Regression test for bug #673, function expansion causes buffer overflow.
     */
@@ -281,6 +386,92 @@ public class ConnectionTest extends UnitTestBase
       stmt.execute( "SELECT {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}, {fn curdate()}" );
    }
 
+   /**
+    * Test that connections initialized from the cached server charset (only
+    * cached for servers whose charset has to be queried: Sybase and SQL Server
+    * 6.5) behave like the first connection to the server, and measure the
+    * time taken to connect.
+    */
+   public void testServerInfoCache() throws Exception
+   {
+      final int CONNECTIONS = 20;
+
+      // the first connection populates the cache
+      JtdsConnection first = (JtdsConnection) getConnection();
+      int maxPrecision = first.getMaxPrecision();
+      String charset = first.getCharset();
+      first.close();
+
+      long time = System.currentTimeMillis();
+
+      for( int i = 0; i < CONNECTIONS; i ++ )
+      {
+         JtdsConnection con = (JtdsConnection) getConnection();
+         assertEquals( maxPrecision, con.getMaxPrecision() );
+         assertEquals( charset, con.getCharset() );
+
+         Statement stmt = con.createStatement();
+         ResultSet rs = stmt.executeQuery( "SELECT 'abc', CAST(1.5 AS DECIMAL(10,2))" );
+         assertTrue( rs.next() );
+         assertEquals( "abc", rs.getString( 1 ) );
+         assertEquals( new BigDecimal( "1.50" ), rs.getBigDecimal( 2 ) );
+         rs.close();
+         stmt.close();
+         con.close();
+      }
+
+      time = System.currentTimeMillis() - time;
+      System.out.println( "Connect using cached server info: " + ( time / CONNECTIONS ) + " ms per connection" );
+   }
+
+   /**
+    * Test the <code>maxWarnings</code> property and the message listener with
+    * a batch that prints in a loop.
+    */
+   public void testMessageListener() throws Exception
+   {
+      Properties props = new Properties();
+      props.setProperty( Messages.get( Driver.MAXWARNINGS ), "10" );
+      JtdsConnection con = (JtdsConnection) getConnectionOverrideProperties( props );
+
+      try
+      {
+         String sql = "declare @i int set @i = 0 while @i < 1000 begin print 'line' set @i = @i + 1 end";
+         Statement stmt = con.createStatement();
+
+         // without a listener the warning chain is limited
+         stmt.execute( sql );
+         int count = 0;
+         for( SQLWarning w = stmt.getWarnings(); w != null; w = w.getNextWarning() )
+         {
+            count ++;
+         }
+         // 10 messages and the warning reporting the limit
+         assertEquals( 11, count );
+
+         // the listener receives all messages, none are retained
+         final int[] received = new int[1];
+         con.setMessageListener( new MessageListener()
+         {
+            public boolean messageReceived( int number, int state, int severity, String message, String server, String procName, int line )
+            {
+               assertEquals( "line", message );
+               received[0] ++;
+               return true;
+            }
+         } );
+         stmt.execute( sql );
+         assertEquals( 1000, received[0] );
+         assertNull( stmt.getWarnings() );
+
+         stmt.close();
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
    /**
     * Test that temporary procedures created within transactions with savepoints
     * which are released are still kept in the procedure cache.
@@ -905,6 +905,79 @@ public class DatabaseMetaDataTest extends MetaDataTestCase {
         st.close();
     }
 
+    /**
+     * Test that cached <code>DatabaseMetaData</code> results are returned
+     * until the cache is invalidated.
+     */
+    public void testMetaDataCache() throws Exception {
+        dropTable("jtds_metaCacheFK");
+        dropTable("jtds_metaCache");
+        Properties props = new Properties();
+        props.setProperty(Messages.get(Driver.METADATACACHETTL), "600");
+        Connection con = getConnection(props);
+
+        try {
+            Statement st = con.createStatement();
+            st.execute("create table jtds_metaCache (id int primary key, data varchar(10))");
+
+            JtdsDatabaseMetaData meta = (JtdsDatabaseMetaData) con.getMetaData();
+            meta.invalidateCache();
+            assertEquals(2, countRows(meta.getColumns(null, null, "jtds_metaCache", "%")));
+
+            st.execute("alter table jtds_metaCache add extra int null");
+            // Cached result, also for a new connection as the same user
+            assertEquals(2, countRows(meta.getColumns(null, null, "jtds_metaCache", "%")));
+            Connection con2 = getConnection(props);
+            try {
+                assertEquals(2, countRows(con2.getMetaData().getColumns(null, null, "jtds_metaCache", "%")));
+            } finally {
+                con2.close();
+            }
+
+            meta.invalidateCache();
+            assertEquals(3, countRows(meta.getColumns(null, null, "jtds_metaCache", "%")));
+
+            // Results for a null catalog are kept per current catalog
+            st.execute("create table jtds_metaCacheFK (id int references jtds_metaCache (id))");
+            String catalog = con.getCatalog();
+            assertEquals(1, countRows(meta.getCrossReference(null, null, "jtds_metaCache",
+                    null, null, "jtds_metaCacheFK")));
+            con.setCatalog("master");
+            assertEquals(0, countRows(meta.getCrossReference(null, null, "jtds_metaCache",
+                    null, null, "jtds_metaCacheFK")));
+            assertEquals(0, countRows(meta.getColumns(null, null, "jtds_metaCache", "%")));
+            con.setCatalog(catalog);
+            assertEquals(1, countRows(meta.getCrossReference(null, null, "jtds_metaCache",
+                    null, null, "jtds_metaCacheFK")));
+
+            // Cached type info is the same as the type info from the server
+            meta.preloadCache(null, null);
+            ResultSet cached = meta.getTypeInfo();
+            ResultSet uncached = this.con.getMetaData().getTypeInfo();
+            assertEquals(uncached.getMetaData().getColumnCount(), cached.getMetaData().getColumnCount());
+            while (uncached.next()) {
+                assertTrue(cached.next());
+                assertEquals(uncached.getString(1), cached.getString(1));
+                assertEquals(uncached.getInt(2), cached.getInt(2));
+            }
+            assertFalse(cached.next());
+            st.close();
+        } finally {
+            con.close();
+            dropTable("jtds_metaCacheFK");
+            dropTable("jtds_metaCache");
+        }
+    }
+
+    private static int countRows(ResultSet rs) throws SQLException {
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        return count;
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(DatabaseMetaDataTest.class);
     }
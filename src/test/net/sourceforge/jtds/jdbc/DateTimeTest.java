@@ -0,0 +1,185 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>DateTime</code> class.
+ */
+public class DateTimeTest extends TestCase {
+
+    /** Zones with daylight saving time, odd offsets and historic changes. */
+    private static final String[] ZONES = {
+        "UTC", "Europe/London", "America/New_York", "America/Sao_Paulo",
+        "Australia/Lord_Howe", "Asia/Kolkata", "Pacific/Apia",
+        "Europe/Amsterdam"
+    };
+
+    private TimeZone defaultZone;
+
+    public DateTimeTest(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() {
+        defaultZone = TimeZone.getDefault();
+    }
+
+    protected void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    /**
+     * Test that server values convert to the same <code>Timestamp</code>,
+     * <code>Date</code> and <code>Time</code> values a
+     * <code>GregorianCalendar</code> gives, including local times skipped or
+     * repeated at daylight saving time transitions and dates before the
+     * switch to the Gregorian calendar.
+     */
+    public void testToJava() {
+        Random random = new Random(1);
+
+        for (int z = 0; z < ZONES.length; z++) {
+            TimeZone.setDefault(TimeZone.getTimeZone(ZONES[z]));
+
+            for (int i = 0; i < 20000; i++) {
+                // Any date from 0001-01-01 to 9999-12-31 (Sybase date range)
+                int date = random.nextInt(2958463) - 693595;
+                // Often on the hour or half hour, where transitions are
+                int time = (i % 2 == 0)
+                        ? random.nextInt(48) * 30 * 18000
+                        : random.nextInt(25920000);
+                DateTime dt = new DateTime(date, time);
+
+                // toString() gives the unpacked fields
+                String str = dt.toString();
+                int year = Integer.parseInt(str.substring(0, 4));
+                int month = Integer.parseInt(str.substring(5, 7));
+                int day = Integer.parseInt(str.substring(8, 10));
+                int hour = Integer.parseInt(str.substring(11, 13));
+                int minute = Integer.parseInt(str.substring(14, 16));
+                int second = Integer.parseInt(str.substring(17, 19));
+                String fraction = (str.length() > 20) ? str.substring(20) + "00" : "000";
+                int millis = Integer.parseInt(fraction.substring(0, 3));
+
+                String msg = ZONES[z] + " " + str;
+                assertEquals(msg, calendarTime(year, month, day, hour, minute, second, millis),
+                        new DateTime(date, time).toTimestamp().getTime());
+                assertEquals(msg, calendarTime(year, month, day, 0, 0, 0, 0),
+                        new DateTime(date, time).toDate().getTime());
+                assertEquals(msg, calendarTime(1970, 1, 1, hour, minute, second, millis),
+                        new DateTime(date, time).toTime().getTime());
+            }
+        }
+    }
+
+    /**
+     * Test that Java values are unpacked into the fields a
+     * <code>GregorianCalendar</code> gives.
+     */
+    public void testFromJava() throws Exception {
+        Random random = new Random(2);
+
+        for (int z = 0; z < ZONES.length; z++) {
+            TimeZone.setDefault(TimeZone.getTimeZone(ZONES[z]));
+            GregorianCalendar cal = new GregorianCalendar();
+
+            for (int i = 0; i < 20000; i++) {
+                // 1753-01-01 to 9999-12-31 (datetime range)
+                long millis = -6847804800000L
+                        + (long) (random.nextDouble() * 2.6e14);
+                millis -= millis % 1000;
+                cal.setTimeInMillis(millis);
+
+                DateTime dt = new DateTime(new Timestamp(millis));
+                String str = dt.toString();
+                String msg = ZONES[z] + " " + millis;
+                assertEquals(msg, cal.get(Calendar.YEAR), Integer.parseInt(str.substring(0, 4)));
+                assertEquals(msg, cal.get(Calendar.MONTH) + 1, Integer.parseInt(str.substring(5, 7)));
+                assertEquals(msg, cal.get(Calendar.DAY_OF_MONTH), Integer.parseInt(str.substring(8, 10)));
+                assertEquals(msg, cal.get(Calendar.HOUR_OF_DAY), Integer.parseInt(str.substring(11, 13)));
+                assertEquals(msg, cal.get(Calendar.MINUTE), Integer.parseInt(str.substring(14, 16)));
+                assertEquals(msg, cal.get(Calendar.SECOND), Integer.parseInt(str.substring(17, 19)));
+            }
+        }
+    }
+
+    /**
+     * Test <code>Support.timeToZone</code> and
+     * <code>Support.timeFromZone</code> against conversions of the fields with
+     * calendars.
+     */
+    public void testChangeZone() {
+        Random random = new Random(3);
+
+        for (int z = 0; z < ZONES.length; z++) {
+            TimeZone.setDefault(TimeZone.getTimeZone(ZONES[z]));
+            Calendar target = new GregorianCalendar(
+                    TimeZone.getTimeZone(ZONES[(z + 3) % ZONES.length]));
+            GregorianCalendar cal = new GregorianCalendar();
+
+            for (int i = 0; i < 20000; i++) {
+                long millis = -6847804800000L
+                        + (long) (random.nextDouble() * 2.6e14);
+                Timestamp ts = new Timestamp(millis);
+
+                cal.setTimeInMillis(millis);
+                target.clear();
+                target.set(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH),
+                        cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY),
+                        cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND));
+                target.set(Calendar.MILLISECOND, cal.get(Calendar.MILLISECOND));
+                assertEquals(ZONES[z] + " " + millis,
+                        target.getTimeInMillis(), Support.timeToZone(ts, target));
+
+                target.setTimeInMillis(millis);
+                cal.clear();
+                cal.set(target.get(Calendar.YEAR), target.get(Calendar.MONTH),
+                        target.get(Calendar.DAY_OF_MONTH), target.get(Calendar.HOUR_OF_DAY),
+                        target.get(Calendar.MINUTE), target.get(Calendar.SECOND));
+                cal.set(Calendar.MILLISECOND, target.get(Calendar.MILLISECOND));
+                assertEquals(ZONES[z] + " " + millis,
+                        cal.getTimeInMillis(), Support.timeFromZone(ts, target));
+            }
+        }
+    }
+
+    /**
+     * Converts local date and time fields with a
+     * <code>GregorianCalendar</code> in the default time zone.
+     */
+    private static long calendarTime(int year, int month, int day, int hour,
+                                     int minute, int second, int millis) {
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute, second);
+        cal.set(Calendar.MILLISECOND, millis);
+        return cal.getTimeInMillis();
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DateTimeTest.class);
+    }
+}
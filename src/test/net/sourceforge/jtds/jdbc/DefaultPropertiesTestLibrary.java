@@ -469,6 +469,149 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>cursorFetchBuffer</code> property.
+     */
+    public void test_cursorFetchBuffer() {
+        String fieldName = "cursorFetchBuffer";
+        String messageKey = Driver.CURSORFETCHBUFFER;
+        String expectedValue = DefaultProperties.CURSOR_FETCH_BUFFER;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>instanceCacheTtl</code> property.
+     */
+    public void test_instanceCacheTtl() {
+        String fieldName = "instanceCacheTtl";
+        String messageKey = Driver.INSTANCECACHETTL;
+        String expectedValue = DefaultProperties.INSTANCE_CACHE_TTL;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>maxWarnings</code> property.
+     */
+    public void test_maxWarnings() {
+        String fieldName = "maxWarnings";
+        String messageKey = Driver.MAXWARNINGS;
+        String expectedValue = DefaultProperties.MAX_WARNINGS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>deferRowUpdates</code> property.
+     */
+    public void test_deferRowUpdates() {
+        String fieldName = "deferRowUpdates";
+        String messageKey = Driver.DEFERROWUPDATES;
+        String expectedValue = DefaultProperties.DEFER_ROW_UPDATES;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>packedCallBatch</code> property.
+     */
+    public void test_packedCallBatch() {
+        String fieldName = "packedCallBatch";
+        String messageKey = Driver.PACKEDCALLBATCH;
+        String expectedValue = DefaultProperties.PACKED_CALL_BATCH;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>metaDataCacheTtl</code> property.
+     */
+    public void test_metaDataCacheTtl() {
+        String fieldName = "metaDataCacheTtl";
+        String messageKey = Driver.METADATACACHETTL;
+        String expectedValue = DefaultProperties.METADATA_CACHE_TTL;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>metaDataCacheSize</code> property.
+     */
+    public void test_metaDataCacheSize() {
+        String fieldName = "metaDataCacheSize";
+        String messageKey = Driver.METADATACACHESIZE;
+        String expectedValue = DefaultProperties.METADATA_CACHE_SIZE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>deferSessionState</code> property.
+     */
+    public void test_deferSessionState() {
+        String fieldName = "deferSessionState";
+        String messageKey = Driver.DEFERSESSIONSTATE;
+        String expectedValue = DefaultProperties.DEFER_SESSION_STATE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>closeCancelThreshold</code> property.
+     */
+    public void test_closeCancelThreshold() {
+        String fieldName = "closeCancelThreshold";
+        String messageKey = Driver.CLOSECANCELTHRESHOLD;
+        String expectedValue = DefaultProperties.CLOSE_CANCEL_THRESHOLD;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>lazyLOBs</code> property.
+     */
+    public void test_lazyLOBs() {
+        String fieldName = "lazyLOBs";
+        String messageKey = Driver.LAZYLOBS;
+        String expectedValue = DefaultProperties.LAZY_LOBS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>maxPooledStatements</code> property.
+     */
+    public void test_maxPooledStatements() {
+        String fieldName = "maxPooledStatements";
+        String messageKey = Driver.MAXPOOLEDSTATEMENTS;
+        String expectedValue = DefaultProperties.MAX_POOLED_STATEMENTS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>wsid</code> property.
      */
@@ -18,6 +18,7 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
+import java.util.Properties;
 
 /**
  * Test case to illustrate JDBC 3 GetGeneratedKeys() function.
@@ -140,6 +141,57 @@ public class GenKeyTest extends TestBase {
         }
     }
 
+    /**
+     * Test that a batch returns the generated key of each statement, with
+     * every <code>prepareSQL</code> mode and batches sent in several chunks.
+     */
+    public void testBatch() throws Exception {
+        for (int prepareSql = 0; prepareSql <= 3; prepareSql++) {
+            Properties props = new Properties();
+            props.setProperty(Messages.get(Driver.PREPARESQL), String.valueOf(prepareSql));
+            props.setProperty(Messages.get(Driver.BATCHSIZE), "4");
+            Connection con2 = getConnection(props);
+
+            try {
+                Statement stmt = con2.createStatement();
+                stmt.execute("CREATE TABLE #gkbatch (id INT IDENTITY (1,1) PRIMARY KEY, data INT)");
+
+                PreparedStatement pstmt = con2.prepareStatement(
+                        "INSERT INTO #gkbatch (data) VALUES (?)",
+                        Statement.RETURN_GENERATED_KEYS);
+                for (int i = 0; i < 10; i++) {
+                    pstmt.setInt(1, i);
+                    pstmt.addBatch();
+                }
+                int[] counts = pstmt.executeBatch();
+                assertEquals(10, counts.length);
+
+                ResultSet rs = pstmt.getGeneratedKeys();
+                assertEquals("ID", rs.getMetaData().getColumnName(1));
+                for (int i = 0; i < 10; i++) {
+                    assertEquals("prepareSQL=" + prepareSql, 1, counts[i]);
+                    assertTrue("prepareSQL=" + prepareSql, rs.next());
+                    assertEquals("prepareSQL=" + prepareSql, i + 1, rs.getInt(1));
+                }
+                assertFalse(rs.next());
+                rs.close();
+
+                // A single execution afterwards still returns its key
+                pstmt.setInt(1, 10);
+                assertEquals(1, pstmt.executeUpdate());
+                rs = pstmt.getGeneratedKeys();
+                assertTrue(rs.next());
+                assertEquals(11, rs.getInt(1));
+                rs.close();
+
+                pstmt.close();
+                stmt.close();
+            } finally {
+                con2.close();
+            }
+        }
+    }
+
     /**
      * Test empty result set returned when no keys available.
      */
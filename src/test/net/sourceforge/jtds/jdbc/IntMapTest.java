@@ -0,0 +1,53 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>IntMap</code> class.
+ */
+public class IntMapTest extends TestCase {
+
+    public IntMapTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test lookups of present and missing keys, including negative and zero
+     * keys and growth beyond the initial capacity.
+     */
+    public void testPutGet() {
+        IntMap map = new IntMap(4);
+        for (int i = -500; i < 500; i++) {
+            map.put(i * 3, "v" + i);
+        }
+        assertEquals(1000, map.size());
+        for (int i = -500; i < 500; i++) {
+            assertEquals("v" + i, map.get(i * 3));
+            assertNull(map.get(i * 3 + 1));
+        }
+        map.put(0, "zero");
+        assertEquals(1000, map.size());
+        assertEquals("zero", map.get(0));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(IntMapTest.class);
+    }
+}
@@ -3209,6 +3209,39 @@ public class LOBTest extends TestBase {
         assertEquals("ABCDEFGH", new String(bbuf));
     }
 
+    /**
+     * Test that a <code>Clob</code> read from a single byte <code>text</code>
+     * column is converted correctly when characters outside of the
+     * ISO-8859-1 range are written to it.
+     */
+    public void testClobWidening() throws Exception {
+        Statement stmt = con.createStatement();
+        stmt.execute("CREATE TABLE #TESTCLOB (clob text)");
+        assertEquals(1, stmt.executeUpdate(
+                "INSERT INTO #TESTCLOB (clob) VALUES ('ABCDEFGH')"));
+        ResultSet rs = stmt.executeQuery("SELECT * FROM #TESTCLOB");
+        assertTrue(rs.next());
+        Clob clob = rs.getClob(1);
+        rs.close();
+        stmt.close();
+
+        assertEquals(-1, clob.position("\u20AC", 1));
+        assertEquals(2, clob.setString(3, "\u20AC\u0100"));
+        assertEquals(8, clob.length());
+        assertEquals("AB\u20AC\u0100EFGH", clob.getSubString(1, 8));
+        assertEquals(4, clob.position("\u0100E", 1));
+
+        Writer out = clob.setCharacterStream(9);
+        out.write("IJ\u0394");
+        out.close();
+        assertEquals("AB\u20AC\u0100EFGHIJ\u0394", clob.getSubString(1, 11));
+
+        byte bbuf[] = new byte[(int) clob.length()];
+        InputStream is = clob.getAsciiStream();
+        assertEquals(bbuf.length, is.read(bbuf));
+        assertEquals("AB??EFGHIJ?", new String(bbuf, "ASCII"));
+    }
+
     private byte[] getBlobTestData() {
         return blobData;
     }
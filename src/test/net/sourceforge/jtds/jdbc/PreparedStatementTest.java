@@ -1305,6 +1305,76 @@ public class PreparedStatementTest extends TestBase {
         }
     }
 
+    /**
+     * Benchmark for sending large <code>nvarchar</code> parameters, dominated
+     * by the UCS-2 encoding performed in {@link RequestStream#write(String)}.
+     */
+    public void testLargeNVarcharPerformance() throws Exception {
+        Statement st = con.createStatement();
+        st.execute("create table #testLargeNVarchar (id int, data nvarchar(max))");
+        st.close();
+
+        StringBuilder sb = new StringBuilder(1000000);
+        for (int i = 0; i < 1000000; i ++) {
+            sb.append((char) ('a' + i % 26 + (i % 7 == 0 ? 0x400 : 0)));
+        }
+        String value = sb.toString();
+
+        final int iterations = 50;
+
+        PreparedStatement ps = con.prepareStatement("insert into #testLargeNVarchar values (?, ?)");
+
+        System.gc();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i ++) {
+            ps.setInt(1, i);
+            ps.setString(2, value);
+            assertEquals(1, ps.executeUpdate());
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("sent " + iterations + " x " + value.length() + " chars in " + elapsed + " ms");
+        ps.close();
+
+        ps = con.prepareStatement("select data from #testLargeNVarchar where id = ?");
+        ps.setInt(1, iterations - 1);
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(value, rs.getString(1));
+        rs.close();
+        ps.close();
+    }
+
+    /**
+     * Test that repeated executions of a prepared statement share the result
+     * set meta data as long as the columns don't change.
+     */
+    public void testResultSetMetaDataReuse() throws Exception {
+        Statement stmt = con.createStatement();
+        stmt.execute("CREATE TABLE #testMetaDataReuse (id int primary key, data varchar(32))");
+        stmt.execute("INSERT INTO #testMetaDataReuse (id, data) VALUES (1, 'a')");
+        stmt.close();
+
+        PreparedStatement pstmt = con.prepareStatement(
+                "SELECT id, data FROM #testMetaDataReuse WHERE id = ?");
+        ResultSetMetaData rsmd = null;
+        for (int i = 0; i < 3; i++) {
+            pstmt.setInt(1, 1);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(2));
+            if (rsmd == null) {
+                rsmd = rs.getMetaData();
+            } else {
+                assertSame(rsmd, rs.getMetaData());
+            }
+            assertEquals("data", rs.getMetaData().getColumnName(2));
+            rs.close();
+        }
+        pstmt.close();
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(PreparedStatementTest.class);
     }
@@ -19,6 +19,7 @@ package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
 import java.io.*;
+import java.util.Properties;
 
 /**
  * Test case to illustrate use of READTEXT for text and image columns.
@@ -31,6 +32,26 @@ public class ReadTextTest extends TestBase {
     }
 
     public void testReadText() throws Exception {
+        readText(con);
+    }
+
+    /**
+     * Test that values are read with READTEXT when the <code>lazyLOBs</code>
+     * property is set, including ranges of the values.
+     */
+    public void testLazyReadText() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(Messages.get(Driver.LAZYLOBS), "true");
+        Connection con2 = getConnection(props);
+
+        try {
+            readText(con2);
+        } finally {
+            con2.close();
+        }
+    }
+
+    private void readText(Connection con) throws Exception {
         byte[] byteBuf = new byte[5000]; // Just enough to require more than one READTEXT
 
         for (int i = 0; i < byteBuf.length; i++) {
@@ -89,6 +110,21 @@ public class ReadTextTest extends TestBase {
         rs = stmt.executeQuery("SELECT * FROM #TEST");
         validateReadTextResult(rs, data, byteBuf);
 
+        // Read back again, ranges only
+        rs = stmt.executeQuery("SELECT * FROM #TEST");
+        while (rs.next()) {
+            assertEquals(data.length(), rs.getClob(2).length());
+            assertEquals(data.substring(4949, 5000), rs.getClob(2).getSubString(4950, 100));
+            assertEquals(data.substring(100, 150), rs.getClob(3).getSubString(101, 50));
+            Blob blob = rs.getBlob(4);
+            assertEquals(byteBuf.length, blob.length());
+            byte[] bytes = blob.getBytes(4001, 10);
+            for (int i = 0; i < bytes.length; i++) {
+                assertEquals(byteBuf[4000 + i], bytes[i]);
+            }
+        }
+        rs.close();
+
         pstmt.close();
         stmt.close();
     }
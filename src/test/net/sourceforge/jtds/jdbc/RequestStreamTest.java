@@ -0,0 +1,83 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>RequestStream</code> class.
+ */
+public class RequestStreamTest extends TestCase {
+
+    /** The bytes written to the network, without packet headers. */
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    public RequestStreamTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Creates a request stream on a socket which records the packet contents
+     * instead of sending them.
+     */
+    private RequestStream createStream(String serverCharset) throws Exception {
+        SharedSocket socket = new SharedSocket(null, Driver.TDS70, Driver.SQLSERVER) {
+            byte[] sendNetPacket(VirtualSocket vsock, byte[] buffer) {
+                int length = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
+                sent.write(buffer, TdsCore.PKT_HDR_LEN, length - TdsCore.PKT_HDR_LEN);
+                return buffer;
+            }
+        };
+        socket.setCharsetInfo(CharsetInfo.getCharset(serverCharset));
+        return new RequestStream(socket, null, TdsCore.MIN_PKT_SIZE, TdsData.DEFAULT_PRECISION_38);
+    }
+
+    /**
+     * Test that an empty string writes nothing, as sent for the default
+     * instance name in the prelogin packet.
+     */
+    public void testWriteAsciiEmpty() throws Exception {
+        RequestStream out = createStream("iso_1");
+        out.writeAscii("");
+        out.write((byte) 0);
+        out.flush();
+        assertTrue(Arrays.equals(new byte[] {0}, sent.toByteArray()));
+    }
+
+    /**
+     * Test that a string longer than the packet size is encoded completely,
+     * and that the encoder can be reused afterwards.
+     */
+    public void testWriteAsciiLong() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append(i % 10 == 0 ? '\u00e9' : (char) ('a' + i % 26));
+        }
+        String s = buf.toString();
+        RequestStream out = createStream("iso_1");
+        out.writeAscii(s);
+        out.writeAscii("");
+        out.writeAscii(s);
+        out.flush();
+        byte[] expected = (s + s).getBytes("Cp1252");
+        assertTrue(Arrays.equals(expected, sent.toByteArray()));
+    }
+}
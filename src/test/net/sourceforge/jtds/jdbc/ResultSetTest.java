@@ -23,6 +23,7 @@ import java.math.BigDecimal;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * @version 1.0
@@ -1979,6 +1980,52 @@ public class ResultSetTest extends DatabaseTestCase {
         }
     }
 
+    /**
+     * Test scrolling through a server-side cursor with adaptive fetching
+     * enabled, ensuring no rows are lost or duplicated while the number of
+     * rows per fetch changes.
+     */
+    public void testAdaptiveCursorFetch() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("cursorFetchBuffer", "64");
+        Connection con = getConnection(props);
+
+        try {
+            Statement st = con.createStatement();
+            st.execute("create table #adaptive (id int primary key, data varchar(255))");
+            st.execute("declare @i int set @i = 0 while @i < 10000 begin"
+                    + " insert into #adaptive values (@i, replicate('x', @i % 255))"
+                    + " set @i = @i + 1 end");
+            st.close();
+
+            st = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            ResultSet rs = st.executeQuery("select id, data from #adaptive order by id");
+
+            for (int i = 0; i < 10000; i ++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i % 255, rs.getString(2).length());
+            }
+            assertFalse(rs.next());
+
+            // scroll backwards across fetch block boundaries
+            assertTrue(rs.absolute(5000));
+            assertEquals(4999, rs.getInt(1));
+            for (int i = 4998; i >= 3999; i --) {
+                assertTrue(rs.previous());
+                assertEquals(i, rs.getInt(1));
+            }
+
+            assertTrue(rs.relative(-1000));
+            assertEquals(2999, rs.getInt(1));
+
+            rs.close();
+            st.close();
+        } finally {
+            con.close();
+        }
+    }
+
     /**
      * Test for bug [1855125], numeric overflow not reported by jTDS.
      */
@@ -2055,6 +2102,97 @@ public class ResultSetTest extends DatabaseTestCase {
         st.close();
     }
 
+    /**
+     * Test that closing a large result set early cancels the rest of the
+     * response when <code>closeCancelThreshold</code> is set, and that the
+     * connection remains usable.
+     */
+    public void testCloseCancelThreshold() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(Messages.get(Driver.CLOSECANCELTHRESHOLD), "100");
+        Connection con2 = getConnection(props);
+
+        try {
+            Statement stmt = con2.createStatement();
+            String sql = "select a.id * 10000 + b.id"
+                    + " from (select top 1000 row_number() over (order by object_id) id from sys.all_columns) a"
+                    + " cross join (select top 1000 row_number() over (order by object_id) id from sys.all_columns) b";
+
+            long start = System.currentTimeMillis();
+            ResultSet rs = stmt.executeQuery(sql);
+            for (int i = 0; i < 10; i++) {
+                assertTrue(rs.next());
+            }
+            rs.close();
+            System.out.println("close with cancel: "
+                    + (System.currentTimeMillis() - start) + " ms");
+
+            // The connection must be in a consistent state afterwards
+            rs = stmt.executeQuery("select 42");
+            assertTrue(rs.next());
+            assertEquals(42, rs.getInt(1));
+            assertFalse(rs.next());
+
+            // Fewer remaining rows than the threshold are simply read
+            rs = stmt.executeQuery("select top 50 object_id from sys.all_columns");
+            assertTrue(rs.next());
+            rs.close();
+            rs = stmt.executeQuery("select 43");
+            assertTrue(rs.next());
+            assertEquals(43, rs.getInt(1));
+            rs.close();
+
+            // Further results of a batch must not be cancelled
+            rs = stmt.executeQuery(sql + " select 44");
+            assertTrue(rs.next());
+            rs.close();
+            assertTrue(stmt.getMoreResults());
+            rs = stmt.getResultSet();
+            assertTrue(rs.next());
+            assertEquals(44, rs.getInt(1));
+            rs.close();
+
+            stmt.close();
+        } finally {
+            con2.close();
+        }
+    }
+
+    /**
+     * Test <code>getObject(int, Class)</code> with the standard JDBC classes.
+     */
+    public void testGetObjectWithType() throws Exception {
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery(
+                "select 42, cast('2011-02-03 04:05:06.007' as datetime),"
+                + " cast(12.5 as decimal(5,2)), 'abc', null");
+        assertTrue(rs.next());
+
+        assertEquals(new Integer(42), rs.getObject(1, Integer.class));
+        assertEquals(new Long(42), rs.getObject(1, Long.class));
+        assertEquals("42", rs.getObject(1, String.class));
+        assertEquals(Timestamp.valueOf("2011-02-03 04:05:06.007"),
+                rs.getObject(2, Timestamp.class));
+        assertEquals(java.sql.Date.valueOf("2011-02-03"),
+                rs.getObject(2, java.sql.Date.class));
+        assertEquals(java.sql.Time.valueOf("04:05:06").getTime() + 7,
+                rs.getObject(2, java.sql.Time.class).getTime());
+        assertEquals(new BigDecimal("12.50"), rs.getObject(3, BigDecimal.class));
+        assertEquals("abc", rs.getObject(4, String.class));
+        assertNull(rs.getObject(5, Integer.class));
+        assertTrue(rs.wasNull());
+
+        try {
+            rs.getObject(4, Timestamp.class);
+            fail("Expecting a conversion error");
+        } catch (SQLException e) {
+            // Expected
+        }
+
+        rs.close();
+        stmt.close();
+    }
+
     /**
      * Test for bug #548, Select statement very slow with date parameter.
      */
@@ -0,0 +1,139 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>RowBuffer</code> class.
+ */
+public class RowBufferTest extends TestCase {
+
+    public RowBufferTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test that rows of all the common value classes survive a round trip,
+     * including growth beyond the initial capacity.
+     */
+    public void testRoundTrip() {
+        RowBuffer buffer = new RowBuffer(9, 4);
+        Object[][] rows = new Object[1000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] {
+                    new Integer(i),
+                    i % 3 == 0 ? null : new Long(i * 1000000000L),
+                    new Double(i / 7.0),
+                    new Float(i / 3.0f),
+                    Boolean.valueOf(i % 2 == 0),
+                    new Short((short) i),
+                    "value" + (i % 10),
+                    new BigDecimal(i).movePointLeft(2),
+                    null};
+            buffer.add(rows[i]);
+        }
+        assertEquals(rows.length, buffer.size());
+        for (int i = 0; i < rows.length; i++) {
+            assertTrue("Row " + i, Arrays.equals(rows[i], buffer.get(i)));
+        }
+    }
+
+    /**
+     * Test that columns fall back to plain references when values of
+     * different classes or too many distinct strings are stored.
+     */
+    public void testMixedValues() {
+        RowBuffer buffer = new RowBuffer(2, 10);
+        Object[][] rows = new Object[2000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] {
+                    i == 1500 ? (Object) "text" : new Integer(i),
+                    "distinct" + i};
+            buffer.add(rows[i]);
+        }
+        for (int i = 0; i < rows.length; i++) {
+            assertTrue("Row " + i, Arrays.equals(rows[i], buffer.get(i)));
+        }
+    }
+
+    /**
+     * Test that rows can be replaced and deleted, and that the returned rows
+     * are copies.
+     */
+    public void testUpdateAndDelete() {
+        RowBuffer buffer = new RowBuffer(2, 10);
+        buffer.add(new Object[] {new Integer(1), "a"});
+        buffer.add(new Object[] {null, null});
+        buffer.add(new Object[] {new Integer(3), "c"});
+
+        Object[] row = buffer.get(0);
+        row[0] = new Integer(10);
+        assertEquals(new Integer(1), buffer.get(0)[0]);
+        buffer.set(0, row);
+        assertEquals(new Integer(10), buffer.get(0)[0]);
+
+        assertTrue(Arrays.equals(new Object[] {null, null}, buffer.get(1)));
+        buffer.set(1, new Object[] {new Integer(2), "b"});
+        assertTrue(Arrays.equals(new Object[] {new Integer(2), "b"}, buffer.get(1)));
+
+        buffer.set(2, null);
+        assertNull(buffer.get(2));
+        assertEquals(3, buffer.size());
+
+        try {
+            buffer.get(3);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that rows can be read into a reused array, and that a new array
+     * is only allocated if the supplied one does not fit.
+     */
+    public void testGetInto() {
+        RowBuffer buffer = new RowBuffer(3, 10);
+        buffer.add(new Object[] {new Integer(1), "a", new Double(1.5)});
+        buffer.add(new Object[] {new Integer(2), null, null});
+        buffer.add(new Object[] {new Integer(3), "c", new Double(3.5)});
+        buffer.set(2, null);
+
+        Object[] view = new Object[3];
+        assertSame(view, buffer.get(0, view));
+        assertTrue(Arrays.equals(new Object[] {new Integer(1), "a", new Double(1.5)}, view));
+        // Values of the previous row must not remain in the array
+        assertSame(view, buffer.get(1, view));
+        assertTrue(Arrays.equals(new Object[] {new Integer(2), null, null}, view));
+
+        assertNull(buffer.get(2, view));
+        assertTrue(Arrays.equals(new Object[] {new Integer(2), null, null}, view));
+
+        Object[] row = buffer.get(0, new Object[2]);
+        assertEquals(3, row.length);
+        assertTrue(Arrays.equals(view, buffer.get(1, null)));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(RowBufferTest.class);
+    }
+}
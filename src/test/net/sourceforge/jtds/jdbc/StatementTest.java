@@ -831,4 +831,30 @@ public class StatementTest extends TestBase
        st.close();
     }
 
+    /**
+     * Test that result sets discarded by the driver, with rows of all kinds of
+     * types, are skipped correctly and leave the connection usable.
+     */
+    public void testSkipDiscardedRows() throws Exception
+    {
+       Statement st = con.createStatement();
+       st.execute( "create table #skip (A int, B varchar(50), C nvarchar(50), D text, E image, F datetime, G decimal(28,10), H float, I money, J bit, K uniqueidentifier, L varbinary(20))" );
+       st.execute( "insert into #skip values (1, 'abc', N'def', 'ghi', 0x0102, getdate(), 12.5, 1.5, 2.25, 1, newid(), 0x03)" );
+       st.execute( "insert into #skip values (null, null, null, null, null, null, null, null, null, null, null, null)" );
+
+       // the first result set is never read, the rest are discarded on close
+       assertTrue( st.execute( "select * from #skip select * from #skip select count(*) from #skip" ) );
+       assertEquals( 1, st.executeUpdate( "update #skip set A = 2 where A = 1" ) );
+
+       ResultSet rs = st.executeQuery( "select * from #skip select * from #skip" );
+       rs.close();
+
+       rs = st.executeQuery( "select A from #skip where A is not null" );
+       assertTrue( rs.next() );
+       assertEquals( 2, rs.getInt( 1 ) );
+       assertFalse( rs.next() );
+       rs.close();
+       st.close();
+    }
+
 }
\ No newline at end of file
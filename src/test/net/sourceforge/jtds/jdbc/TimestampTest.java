@@ -2836,4 +2836,53 @@ public class TimestampTest extends DatabaseTestCase {
         out.close();
     }
 
+    /**
+     * Measure the throughput of encoding <code>Timestamp</code> parameters
+     * and decoding <code>datetime</code> values.
+     * <p/>
+     * Parameters are sent as binary <code>datetime</code> values; the
+     * SQL Server 2008 types (<code>date</code>, <code>time</code>,
+     * <code>datetime2</code>, <code>datetimeoffset</code>) need TDS 7.3,
+     * which the driver does not negotiate.
+     */
+    public void testDatetimeThroughput() throws Exception {
+        final int rows = 5000;
+        final long base = Timestamp.valueOf("2010-06-01 08:00:00").getTime();
+
+        Statement stmt = con.createStatement();
+        stmt.execute("create table #dtperf (id int primary key, ts datetime)");
+
+        PreparedStatement pstmt = con.prepareStatement(
+                "insert into #dtperf (id, ts) values (?, ?)");
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < rows; i++) {
+            pstmt.setInt(1, i);
+            pstmt.setTimestamp(2, new Timestamp(base + i * 1001L));
+            pstmt.addBatch();
+            if (i % 500 == 499) {
+                pstmt.executeBatch();
+            }
+        }
+        pstmt.executeBatch();
+        long encode = System.currentTimeMillis() - start;
+        pstmt.close();
+
+        start = System.currentTimeMillis();
+        ResultSet rs = stmt.executeQuery("select id, ts from #dtperf order by id");
+        int count = 0;
+        while (rs.next()) {
+            // datetime values are rounded to 1/300 of a second
+            assertEquals(base + rs.getInt(1) * 1001L,
+                    rs.getTimestamp(2).getTime(), 2);
+            count++;
+        }
+        long decode = System.currentTimeMillis() - start;
+        rs.close();
+        assertEquals(rows, count);
+
+        System.out.println("datetime parameters: " + rows + " in " + encode
+                + " ms, values: " + rows + " in " + decode + " ms");
+        stmt.close();
+    }
+
 }
\ No newline at end of file
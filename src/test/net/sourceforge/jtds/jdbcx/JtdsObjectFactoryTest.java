@@ -130,17 +130,28 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.BUFFERMINPACKETS             , DefaultProperties.BUFFER_MIN_PACKETS    );
       defaults.put( Driver.CACHEMETA                    , DefaultProperties.CACHEMETA             );
       defaults.put( Driver.CHARSET                      , DefaultProperties.CHARSET               );
+      defaults.put( Driver.CLOSECANCELTHRESHOLD         , DefaultProperties.CLOSE_CANCEL_THRESHOLD );
+      defaults.put( Driver.CURSORFETCHBUFFER            , DefaultProperties.CURSOR_FETCH_BUFFER   );
       defaults.put( Driver.DATABASENAME                 , DefaultProperties.DATABASE_NAME         );
+      defaults.put( Driver.DEFERROWUPDATES              , DefaultProperties.DEFER_ROW_UPDATES     );
+      defaults.put( Driver.DEFERSESSIONSTATE            , DefaultProperties.DEFER_SESSION_STATE   );
       defaults.put( Driver.DOMAIN                       , DefaultProperties.DOMAIN                );
       defaults.put( Driver.INSTANCE                     , DefaultProperties.INSTANCE              );
+      defaults.put( Driver.INSTANCECACHETTL             , DefaultProperties.INSTANCE_CACHE_TTL    );
       defaults.put( Driver.LANGUAGE                     , DefaultProperties.LANGUAGE              );
       defaults.put( Driver.LASTUPDATECOUNT              , DefaultProperties.LAST_UPDATE_COUNT     );
+      defaults.put( Driver.LAZYLOBS                     , DefaultProperties.LAZY_LOBS             );
       defaults.put( Driver.LOBBUFFER                    , DefaultProperties.LOB_BUFFER_SIZE       );
       defaults.put( Driver.LOGFILE                      , DefaultProperties.LOGFILE               );
       defaults.put( Driver.LOGINTIMEOUT                 , DefaultProperties.LOGIN_TIMEOUT         );
       defaults.put( Driver.MACADDRESS                   , DefaultProperties.MAC_ADDRESS           );
+      defaults.put( Driver.MAXPOOLEDSTATEMENTS          , DefaultProperties.MAX_POOLED_STATEMENTS );
       defaults.put( Driver.MAXSTATEMENTS                , DefaultProperties.MAX_STATEMENTS        );
+      defaults.put( Driver.MAXWARNINGS                  , DefaultProperties.MAX_WARNINGS          );
+      defaults.put( Driver.METADATACACHESIZE            , DefaultProperties.METADATA_CACHE_SIZE   );
+      defaults.put( Driver.METADATACACHETTL             , DefaultProperties.METADATA_CACHE_TTL    );
       defaults.put( Driver.NAMEDPIPE                    , DefaultProperties.NAMED_PIPE            );
+      defaults.put( Driver.PACKEDCALLBATCH              , DefaultProperties.PACKED_CALL_BATCH     );
       defaults.put( Driver.PACKETSIZE                   , DefaultProperties.PACKET_SIZE_42        );
       defaults.put( Driver.PASSWORD                     , DefaultProperties.PASSWORD              );
       defaults.put( Driver.PORTNUMBER                   , DefaultProperties.PORT_NUMBER_SQLSERVER );
@@ -215,6 +226,17 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setUser                         ( "1234" ); assertEquals( "1234", ds.getUser()                          );
       ds.setWsid                         ( "1234" ); assertEquals( "1234", ds.getWsid()                          );
       ds.setXaEmulation                  ( false  ); assertEquals( false , ds.getXaEmulation()                   );
+      ds.setMaxPooledStatements          ( 123456 ); assertEquals( 123456, ds.getMaxPooledStatements()            );
+      ds.setLazyLOBs                     ( true   ); assertEquals( true  , ds.getLazyLOBs()                       );
+      ds.setCloseCancelThreshold         ( 123456 ); assertEquals( 123456, ds.getCloseCancelThreshold()           );
+      ds.setDeferSessionState            ( true   ); assertEquals( true  , ds.getDeferSessionState()              );
+      ds.setMetaDataCacheSize            ( 123456 ); assertEquals( 123456, ds.getMetaDataCacheSize()              );
+      ds.setMetaDataCacheTtl             ( 123456 ); assertEquals( 123456, ds.getMetaDataCacheTtl()               );
+      ds.setPackedCallBatch              ( true   ); assertEquals( true  , ds.getPackedCallBatch()                );
+      ds.setDeferRowUpdates              ( true   ); assertEquals( true  , ds.getDeferRowUpdates()                );
+      ds.setMaxWarnings                  ( 123456 ); assertEquals( 123456, ds.getMaxWarnings()                    );
+      ds.setInstanceCacheTtl             ( 123456 ); assertEquals( 123456, ds.getInstanceCacheTtl()               );
+      ds.setCursorFetchBuffer            ( 123456 ); assertEquals( 123456, ds.getCursorFetchBuffer()              );
    }
 
    private void checkDefaults( JtdsDataSource ds )
@@ -260,6 +282,17 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.USER                 , String.valueOf( ds.getUser()                          ) );
       assertEquals( DefaultProperties.WSID                 , String.valueOf( ds.getWsid()                          ) );
       assertEquals( DefaultProperties.XAEMULATION          , String.valueOf( ds.getXaEmulation()                   ) );
+      assertEquals( DefaultProperties.MAX_POOLED_STATEMENTS, String.valueOf( ds.getMaxPooledStatements()            ) );
+      assertEquals( DefaultProperties.LAZY_LOBS            , String.valueOf( ds.getLazyLOBs()                       ) );
+      assertEquals( DefaultProperties.CLOSE_CANCEL_THRESHOLD, String.valueOf( ds.getCloseCancelThreshold()           ) );
+      assertEquals( DefaultProperties.DEFER_SESSION_STATE  , String.valueOf( ds.getDeferSessionState()              ) );
+      assertEquals( DefaultProperties.METADATA_CACHE_SIZE  , String.valueOf( ds.getMetaDataCacheSize()              ) );
+      assertEquals( DefaultProperties.METADATA_CACHE_TTL   , String.valueOf( ds.getMetaDataCacheTtl()               ) );
+      assertEquals( DefaultProperties.PACKED_CALL_BATCH    , String.valueOf( ds.getPackedCallBatch()                ) );
+      assertEquals( DefaultProperties.DEFER_ROW_UPDATES    , String.valueOf( ds.getDeferRowUpdates()                ) );
+      assertEquals( DefaultProperties.MAX_WARNINGS         , String.valueOf( ds.getMaxWarnings()                    ) );
+      assertEquals( DefaultProperties.INSTANCE_CACHE_TTL   , String.valueOf( ds.getInstanceCacheTtl()               ) );
+      assertEquals( DefaultProperties.CURSOR_FETCH_BUFFER  , String.valueOf( ds.getCursorFetchBuffer()              ) );
    }
 
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+//jTDS JDBC Driver for Microsoft SQL Server and Sybase
+//Copyright (C) 2004 The jTDS Project
+//
+//This library is free software; you can redistribute it and/or
+//modify it under the terms of the GNU Lesser General Public
+//License as published by the Free Software Foundation; either
+//version 2.1 of the License, or (at your option) any later version.
+//
+//This library is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//Lesser General Public License for more details.
+//
+//You should have received a copy of the GNU Lesser General Public
+//License along with this library; if not, write to the Free Software
+//Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbcx;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import javax.sql.StatementEvent;
+import javax.sql.StatementEventListener;
+
+import net.sourceforge.jtds.jdbc.Driver;
+import net.sourceforge.jtds.jdbc.Messages;
+import net.sourceforge.jtds.jdbc.TestBase;
+
+/**
+ * Tests the statement pool and the statement events of
+ * {@link PooledConnection}.
+ */
+public class PooledConnectionTest extends TestBase {
+
+    public PooledConnectionTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test that a closed prepared statement is reused, with its default
+     * settings restored, by the next logical connection preparing the same
+     * SQL and that the statement listeners are notified of the close.
+     */
+    public void testStatementPool() throws Exception {
+        PooledConnection pc = new PooledConnection(getConnection());
+        final ArrayList closed = new ArrayList();
+        pc.addStatementEventListener(new StatementEventListener() {
+            public void statementClosed(StatementEvent event) {
+                closed.add(event.getStatement());
+            }
+
+            public void statementErrorOccurred(StatementEvent event) {
+                fail("Unexpected error event");
+            }
+        });
+
+        try {
+            Connection c = pc.getConnection();
+            PreparedStatement pstmt = c.prepareStatement("SELECT ?");
+            assertTrue(pstmt.isPoolable());
+            pstmt.setMaxRows(5);
+            pstmt.setInt(1, 1);
+            Statement physical = selectValue(pstmt, 1);
+            pstmt.close();
+            pstmt.close();
+
+            assertTrue(pstmt.isClosed());
+            assertEquals(1, closed.size());
+            assertSame(pstmt, closed.get(0));
+            try {
+                pstmt.setInt(1, 2);
+                fail("Statement should be closed");
+            } catch (SQLException e) {
+                assertEquals("HY010", e.getSQLState());
+            }
+            c.close();
+
+            c = pc.getConnection();
+            pstmt = c.prepareStatement("SELECT ?");
+            assertEquals(0, pstmt.getMaxRows());
+            try {
+                pstmt.executeQuery();
+                fail("Parameters should have been cleared");
+            } catch (SQLException e) {
+                // Expected
+            }
+            pstmt.setInt(1, 2);
+            assertSame(physical, selectValue(pstmt, 2));
+
+            // Different concurrency, not the same statement
+            PreparedStatement other = c.prepareStatement("SELECT ?",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
+            other.setInt(1, 3);
+            assertNotSame(physical, selectValue(other, 3));
+            other.close();
+
+            // Not poolable, closed instead of returned to the pool
+            pstmt.setPoolable(false);
+            pstmt.close();
+            assertEquals(3, closed.size());
+            assertTrue(physical.isClosed());
+
+            pstmt = c.prepareStatement("SELECT ?");
+            pstmt.setInt(1, 4);
+            assertNotSame(physical, selectValue(pstmt, 4));
+            pstmt.close();
+            c.close();
+        } finally {
+            pc.close();
+        }
+    }
+
+    /**
+     * Test that callable statements are pooled separately from prepared
+     * statements with the same SQL.
+     */
+    public void testCallableStatementPool() throws Exception {
+        PooledConnection pc = new PooledConnection(getConnection());
+
+        try {
+            Connection c = pc.getConnection();
+            Statement stmt = c.createStatement();
+            stmt.execute("CREATE PROCEDURE #jtdsPoolTest @p INT AS SELECT @p");
+            stmt.close();
+
+            CallableStatement cstmt = c.prepareCall("{call #jtdsPoolTest(?)}");
+            cstmt.setInt(1, 1);
+            Statement physical = selectValue(cstmt, 1);
+            cstmt.close();
+
+            PreparedStatement pstmt = c.prepareStatement("{call #jtdsPoolTest(?)}");
+            pstmt.setInt(1, 2);
+            assertNotSame(physical, selectValue(pstmt, 2));
+            pstmt.close();
+
+            cstmt = c.prepareCall("{call #jtdsPoolTest(?)}");
+            cstmt.setInt(1, 3);
+            assertSame(physical, selectValue(cstmt, 3));
+            cstmt.close();
+            c.close();
+        } finally {
+            pc.close();
+        }
+    }
+
+    /**
+     * Test that the output parameter registrations and values of a pooled
+     * callable statement are not visible to its next user.
+     */
+    public void testCallableStatementOutputReset() throws Exception {
+        PooledConnection pc = new PooledConnection(getConnection());
+
+        try {
+            Connection c = pc.getConnection();
+            Statement stmt = c.createStatement();
+            stmt.execute("CREATE PROCEDURE #jtdsPoolOut @p INT, @o INT OUTPUT AS SET @o = @p");
+            stmt.close();
+
+            CallableStatement cstmt = c.prepareCall("{call #jtdsPoolOut(?, ?)}");
+            cstmt.setInt(1, 42);
+            cstmt.registerOutParameter(2, Types.INTEGER);
+            cstmt.execute();
+            assertEquals(42, cstmt.getInt(2));
+            cstmt.close();
+            c.close();
+
+            c = pc.getConnection();
+            cstmt = c.prepareCall("{call #jtdsPoolOut(?, ?)}");
+            try {
+                cstmt.getInt(2);
+                fail("Output registration of the previous user should be gone");
+            } catch (SQLException e) {
+                assertEquals("07000", e.getSQLState());
+            }
+
+            cstmt.setInt(1, 7);
+            cstmt.registerOutParameter(2, Types.INTEGER);
+            try {
+                cstmt.getInt(2);
+                fail("Output value of the previous user should be gone");
+            } catch (SQLException e) {
+                assertEquals("HY010", e.getSQLState());
+            }
+            cstmt.execute();
+            assertEquals(7, cstmt.getInt(2));
+            cstmt.close();
+            c.close();
+        } finally {
+            pc.close();
+        }
+    }
+
+    /**
+     * Test that statements are not pooled with <code>maxPooledStatements=0</code>.
+     */
+    public void testPoolDisabled() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(Messages.get(Driver.MAXPOOLEDSTATEMENTS), "0");
+        PooledConnection pc = new PooledConnection(getConnection(props));
+
+        try {
+            Connection c = pc.getConnection();
+            PreparedStatement pstmt = c.prepareStatement("SELECT ?");
+            pstmt.setInt(1, 1);
+            Statement physical = selectValue(pstmt, 1);
+            pstmt.close();
+            assertTrue(physical.isClosed());
+
+            pstmt = c.prepareStatement("SELECT ?");
+            pstmt.setInt(1, 2);
+            assertNotSame(physical, selectValue(pstmt, 2));
+            pstmt.close();
+            c.close();
+        } finally {
+            pc.close();
+        }
+    }
+
+    /**
+     * Executes a query returning a single value and checks the value.
+     *
+     * @return the driver statement that produced the result
+     */
+    private static Statement selectValue(PreparedStatement pstmt, int expected)
+            throws SQLException {
+        ResultSet rs = pstmt.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(expected, rs.getInt(1));
+        assertFalse(rs.next());
+        Statement statement = rs.getStatement();
+        rs.close();
+        return statement;
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PooledConnectionTest.class);
+    }
+}
@@ -0,0 +1,103 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>BlobBuffer</code> class, with disk and memory storage.
+ */
+public class BlobBufferTest extends TestCase {
+    /** Larger than the maximum page size, written a byte at a time. */
+    private static final int SIZE = 300000;
+
+    public BlobBufferTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test sequential and random access to a BLOB buffered on disk.
+     */
+    public void testDiskBuffer() throws Exception {
+        BlobBuffer buffer = new BlobBuffer(
+                new File(System.getProperty("java.io.tmpdir")), 1024);
+        checkBuffer(buffer);
+    }
+
+    /**
+     * Test sequential and random access to a BLOB buffered in memory only.
+     */
+    public void testMemoryBuffer() throws Exception {
+        BlobBuffer buffer = new BlobBuffer(null, 1024);
+        checkBuffer(buffer);
+    }
+
+    private void checkBuffer(BlobBuffer buffer) throws Exception {
+        byte[] data = new byte[SIZE];
+        new Random(42).nextBytes(data);
+
+        // Write a byte at a time, then overwrite a range with an array
+        OutputStream out = buffer.setBinaryStream(1, false);
+        for (int i = 0; i < SIZE; i++) {
+            out.write(data[i]);
+        }
+        out.close();
+        assertEquals(SIZE, buffer.getLength());
+        byte[] patch = new byte[70000];
+        new Random(7).nextBytes(patch);
+        System.arraycopy(patch, 0, data, 12345, patch.length);
+        assertEquals(patch.length, buffer.setBytes(12346, patch, 0, patch.length, true));
+
+        // Sequential read, a byte at a time
+        InputStream in = buffer.getBinaryStream(false);
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(data[i] & 0xFF, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+
+        // Random reads of single bytes and ranges
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int pos = random.nextInt(SIZE);
+            int len = random.nextInt(3) == 0 ? random.nextInt(100000) : random.nextInt(100);
+            byte[] bytes = buffer.getBytes(pos + 1, len);
+            assertEquals(Math.min(len, SIZE - pos), bytes.length);
+            for (int j = 0; j < bytes.length; j++) {
+                assertEquals(data[pos + j], bytes[j]);
+            }
+        }
+
+        assertEquals(12346, buffer.position(patch, 1));
+
+        buffer.truncate(1000);
+        assertEquals(1000, buffer.getLength());
+        assertEquals(data[999], buffer.getBytes(1000, 1)[0]);
+        buffer.truncate(0);
+        assertEquals(0, buffer.getLength());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(BlobBufferTest.class);
+    }
+}
@@ -0,0 +1,110 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>PacketTrace</code> class.
+ */
+public class PacketTraceTest extends TestCase {
+
+    private File file;
+
+    public PacketTraceTest(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("jtds", ".trc");
+    }
+
+    protected void tearDown() {
+        PacketTrace.stop();
+        file.delete();
+    }
+
+    /**
+     * Creates a reply packet of the specified total length.
+     */
+    private static byte[] packet(int len, int seed) {
+        byte[] pkt = new byte[512];
+        pkt[0] = 4;
+        pkt[1] = 1;
+        pkt[2] = (byte) (len >> 8);
+        pkt[3] = (byte) len;
+        for (int i = 8; i < len; i++) {
+            pkt[i] = (byte) (i * 31 + seed);
+        }
+        return pkt;
+    }
+
+    /**
+     * Test that a trace renders in the <code>Logger</code> hex dump format.
+     */
+    public void testRender() throws Exception {
+        byte[] pkt1 = packet(100, 1);
+        byte[] pkt2 = packet(8, 2);
+
+        PacketTrace.start(file.getPath(), 1, 0);
+        assertTrue(PacketTrace.isActive());
+        PacketTrace.record(7, true, pkt1);
+        PacketTrace.record(8, false, pkt2);
+        PacketTrace.stop();
+        assertFalse(PacketTrace.isActive());
+
+        String trace = render();
+        assertTrue(trace.indexOf(Logger.formatPacket(7, true, pkt1)) > 0);
+        assertTrue(trace.indexOf(Logger.formatPacket(8, false, pkt2)) > 0);
+        assertTrue(trace.indexOf("Stream #7") < trace.indexOf("Stream #8"));
+    }
+
+    /**
+     * Test the sampling rate and capture length.
+     */
+    public void testSampleAndCapture() throws Exception {
+        PacketTrace.start(file.getPath(), 4, 32);
+        for (int i = 0; i < 20; i++) {
+            PacketTrace.record(i, true, packet(200, i));
+        }
+        PacketTrace.stop();
+
+        String trace = render();
+        int count = 0;
+        for (int i = trace.indexOf("----- Stream"); i >= 0; i = trace.indexOf("----- Stream", i + 1)) {
+            count++;
+        }
+        assertEquals(5, count);
+        assertTrue(trace.indexOf("  16: ") > 0);
+        assertTrue(trace.indexOf("  32: ") < 0);
+    }
+
+    private String render() throws Exception {
+        StringWriter sw = new StringWriter();
+        PacketTrace.render(file.getPath(), new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PacketTraceTest.class);
+    }
+}
@@ -0,0 +1,87 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>ResourceCleaner</code> class.
+ */
+public class ResourceCleanerTest extends TestCase {
+
+    public ResourceCleanerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test that the cleanup action runs once the object is reclaimed.
+     */
+    public void testReclaimed() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Object obj = new Object();
+        ResourceCleaner.register(obj, new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, "Object");
+        obj = null;
+
+        for (int i = 0; i < 50 && latch.getCount() > 0; i++) {
+            System.gc();
+            latch.await(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(0, latch.getCount());
+    }
+
+    /**
+     * Test that the cleanup action runs at most once and not at all after
+     * the registration has been cancelled.
+     */
+    public void testCleanAndCancel() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        Runnable action = new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+
+        Object obj = new Object();
+        ResourceCleaner.Cleanable cleanable = ResourceCleaner.register(obj, action, "Object");
+        cleanable.clean();
+        cleanable.clean();
+        assertEquals(1, count.get());
+
+        cleanable = ResourceCleaner.register(obj, action, "Object");
+        cleanable.cancel();
+        cleanable.clean();
+        obj = null;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(1, count.get());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ResourceCleanerTest.class);
+    }
+}
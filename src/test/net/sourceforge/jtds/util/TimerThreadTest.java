@@ -0,0 +1,171 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the <code>TimerThread</code> class.
+ */
+public class TimerThreadTest extends TestCase {
+
+    private TimerThread timer;
+
+    public TimerThreadTest(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() {
+        timer = new TimerThread();
+        timer.start();
+    }
+
+    protected void tearDown() {
+        timer.interrupt();
+    }
+
+    /**
+     * Test that timers fire, in order and not before their timeout.
+     */
+    public void testExpiry() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final long[] fired = new long[3];
+        final long start = System.nanoTime();
+        Object[] handles = new Object[3];
+        int[] timeouts = {300, 100, 200};
+
+        for (int i = 0; i < timeouts.length; i++) {
+            final int n = i;
+            handles[i] = timer.setTimer(timeouts[i], new TimerThread.TimerListener() {
+                public void timerExpired() {
+                    fired[n] = (System.nanoTime() - start) / 1000000L;
+                    latch.countDown();
+                }
+            });
+            assertFalse(timer.hasExpired(handles[i]));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < timeouts.length; i++) {
+            assertTrue("Timer " + i + " fired early", fired[i] >= timeouts[i]);
+            assertTrue(timer.hasExpired(handles[i]));
+            assertFalse(timer.cancelTimer(handles[i]));
+        }
+        assertTrue(fired[1] <= fired[2] && fired[2] <= fired[0]);
+    }
+
+    /**
+     * Test that a cancelled timer does not fire.
+     */
+    public void testCancel() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        TimerThread.TimerListener listener = new TimerThread.TimerListener() {
+            public void timerExpired() {
+                count.incrementAndGet();
+            }
+        };
+
+        Object handle = timer.setTimer(100, listener);
+        assertTrue(timer.cancelTimer(handle));
+        assertTrue(timer.hasExpired(handle));
+        assertFalse(timer.cancelTimer(handle));
+
+        // A timer further out than one turn of the wheel
+        handle = timer.setTimer(TimerThread.TICK * TimerThread.WHEEL_SIZE + 100, listener);
+        assertTrue(timer.cancelTimer(handle));
+
+        Thread.sleep(300);
+        assertEquals(0, count.get());
+    }
+
+    /**
+     * Test that invalid timeouts are rejected.
+     */
+    public void testInvalidTimeout() {
+        try {
+            timer.setTimer(0, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Measures set/cancel throughput with many threads, the pattern of
+     * statements executing with a query timeout. Each thread keeps a number
+     * of timers with different timeouts outstanding, like a pool of
+     * connections with long running statements.
+     */
+    public void testSetCancelPerformance() throws Exception {
+        final int THREADS = 16;
+        final int COUNT = 100000;
+        final int OUTSTANDING = 250;
+        final AtomicInteger count = new AtomicInteger();
+        final TimerThread.TimerListener listener = new TimerThread.TimerListener() {
+            public void timerExpired() {
+                count.incrementAndGet();
+            }
+        };
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int i = 0; i < THREADS; i++) {
+            final int n = i;
+            new Thread() {
+                public void run() {
+                    try {
+                        Object[] handles = new Object[OUTSTANDING];
+                        start.await();
+                        for (int j = 0; j < COUNT; j++) {
+                            int slot = j % OUTSTANDING;
+                            if (handles[slot] != null) {
+                                timer.cancelTimer(handles[slot]);
+                            }
+                            handles[slot] = timer.setTimer(30000 + (j * 7919 + n * 104729) % 60000, listener);
+                        }
+                        for (int j = 0; j < OUTSTANDING; j++) {
+                            timer.cancelTimer(handles[j]);
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long time = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        time = (System.nanoTime() - time) / 1000000L;
+        assertEquals(0, count.get());
+
+        System.out.println("TimerThread: " + THREADS * COUNT + " set/cancel pairs on "
+                + THREADS + " threads in " + time + " ms ("
+                + (long) THREADS * COUNT * 1000 / Math.max(time, 1) + " per second)");
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TimerThreadTest.class);
+    }
+}